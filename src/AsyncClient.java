@@ -0,0 +1,460 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para el cliente asincrono
+// ============================================================================
+
+// Importa clases de entrada/salida (archivos locales y streams)
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Importa colecciones para las tareas pendientes
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Importa futuros y ejecutores para el hilo de red
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Clase AsyncClient - Operaciones del cliente sin bloquear a quien las pide
+ *
+ * Envuelve una ClientConnection y la usa desde un unico hilo de red
+ * ("client-io"): cada operacion se encola y devuelve al instante una
+ * Task (un CompletableFuture). Las operaciones se ejecutan en el orden
+ * en que se pidieron, igual que si se llamaran una tras otra.
+ *
+ * Todo lo que ve quien llama ocurre en el ejecutor de callbacks elegido
+ * al crear el cliente (en ClientGUI, SwingUtilities::invokeLater):
+ *
+ *   - la Task se completa ahi, asi que sus thenAccept/whenComplete
+ *     corren en el EDT y pueden tocar la interfaz
+ *   - el avance de las transferencias se informa ahi, como mucho cada
+ *     PROGRESS_INTERVAL_MS
+ *
+ * Cancelar una Task (cancel) la completa enseguida con
+ * CancellationException:
+ *
+ *   - si todavia no empezo, nunca se envia
+ *   - una subida se detiene despues del trozo en curso (el servidor la
+ *     conserva para retomarla)
+ *   - una descarga deja de escribir y descarta el resto de los bytes,
+ *     asi la conexion sigue sincronizada; el archivo a medias se borra
+ *   - una peticion simple ya enviada se completa igual en el servidor,
+ *     pero su respuesta se descarta
+ */
+public class AsyncClient {
+
+    // Intervalo minimo entre dos avisos de avance de la misma transferencia
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    // Donde se completan las tareas y se informa el avance
+    private final Executor callbacks;
+
+    // Hilo de red: ejecuta las operaciones de a una, en orden
+    private final ExecutorService io;
+
+    // Conexion con el servidor (null hasta que connect() termina)
+    private volatile ClientConnection connection;
+
+    // Tareas encoladas o en curso (para cancelarlas al cerrar)
+    private final Set<Task<?>> pending = ConcurrentHashMap.newKeySet();
+
+    // Tarea que ejecuta ahora el hilo de red (null si esta libre)
+    private volatile Task<?> running;
+
+    // true despues de disconnect() o close()
+    private volatile boolean closed;
+
+    /**
+     * Crea el cliente (todavia sin conexion)
+     *
+     * @param callbacks Ejecutor donde se completan las tareas (ej: SwingUtilities::invokeLater)
+     */
+    public AsyncClient(Executor callbacks) {
+        this.callbacks = callbacks;
+        this.io = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "client-io");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // ============================================================================
+    // OPERACIONES
+    // ============================================================================
+
+    /**
+     * Abre la conexion y realiza el saludo con el servidor
+     *
+     * @param ip IP o nombre del servidor
+     * @param port Puerto del servidor
+     * @return Tarea con la conexion abierta
+     */
+    public Task<ClientConnection> connect(String ip, int port) {
+        return execute((ConnectOperation<ClientConnection>) (unused, task) -> {
+            connection = new ClientConnection(ip, port);
+            if (closed) {
+                // Se cerro mientras se conectaba: no se deja el socket abierto
+                connection.close();
+            }
+            return connection;
+        });
+    }
+
+    /**
+     * Envia una peticion y entrega su respuesta
+     *
+     * @param request La peticion a enviar
+     * @return Tarea con la respuesta del servidor
+     */
+    public Task<FileProtocol> call(FileProtocol request) {
+        return execute((c, task) -> c.call(request));
+    }
+
+    /**
+     * Envia una peticion sin ocupar el hilo de red hasta la respuesta
+     *
+     * Usa submit() de ClientConnection: la peticion viaja con un
+     * identificador y el servidor NIO puede atenderla en paralelo con
+     * otras. Solo sirve para lecturas independientes (por ejemplo, la
+     * pagina siguiente del listado); lo que debe respetar el orden usa call().
+     *
+     * @param request Peticion de respuesta unica
+     * @return Tarea con la respuesta del servidor
+     */
+    public Task<FileProtocol> submit(FileProtocol request) {
+        Task<FileProtocol> task = new Task<>(null);
+        pending.add(task);
+        try {
+            io.execute(() -> {
+                if (task.isDone()) {
+                    pending.remove(task);
+                    return;
+                }
+                try {
+                    connected().submit(request).whenComplete((response, error) -> finish(task, response, error));
+                } catch (IOException | RuntimeException e) {
+                    finish(task, null, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finish(task, null, new IOException("Cliente cerrado"));
+        }
+        return task;
+    }
+
+    /**
+     * Envia varias peticiones en un solo BATCH
+     *
+     * @param items Peticiones en el orden en que deben ejecutarse
+     * @param options Combinacion de FileProtocol.BATCH_*
+     * @return Tarea con un resultado por peticion en items
+     */
+    public Task<FileProtocol> batch(FileProtocol[] items, long options) {
+        return execute((c, task) -> c.batch(items, options));
+    }
+
+    /**
+     * Guarda un archivo existente enviando solo los bloques cambiados
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param data Contenido nuevo completo
+     * @param expectedVersion Version recibida en READ (0 = sin comprobar)
+     * @return Tarea con la respuesta de MODIFYDELTA
+     */
+    public Task<FileProtocol> modifyDelta(String fileName, byte[] data, long expectedVersion) {
+        return execute((c, task) -> c.modifyDelta(fileName, data, expectedVersion));
+    }
+
+    /**
+     * Descarga un archivo del servidor a un archivo local
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param target Archivo local (se borra si la descarga falla o se cancela)
+     * @param listener Recibe el avance en el ejecutor de callbacks (puede ser null)
+     * @return Tarea con la cabecera FILEDATA (o la respuesta de error)
+     */
+    public Task<FileProtocol> download(String fileName, File target, ClientConnection.ProgressListener listener) {
+        return execute(listener, (c, task) -> {
+            FileProtocol header;
+            boolean complete = false;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+                // Despues de cancelar se siguen leyendo los bytes, pero se descartan
+                OutputStream guarded = new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (!task.isCancelled()) {
+                            out.write(b, off, len);
+                        }
+                    }
+                };
+                header = c.download(fileName, guarded, task::progress);
+                complete = FileProtocol.RESP_OK.equals(header.getResponse()) && !task.isCancelled();
+            } finally {
+                if (!complete) {
+                    target.delete();
+                }
+            }
+            return header;
+        });
+    }
+
+    /**
+     * Sube un archivo local en trozos, retomando una subida interrumpida
+     *
+     * @param source Archivo local a subir
+     * @param fileName Nombre del archivo en el servidor
+     * @param listener Recibe el avance en el ejecutor de callbacks (puede ser null)
+     * @return Tarea con la respuesta de UPLOADCOMMIT (o el primer error)
+     */
+    public Task<FileProtocol> upload(File source, String fileName, ClientConnection.ProgressListener listener) {
+        return execute(listener, (c, task) -> c.upload(source, fileName, (done, total) -> {
+            // Entre trozos: la subida queda a medias en el servidor y se puede retomar
+            if (task.isCancelled()) {
+                throw new CancellationException("Subida cancelada");
+            }
+            task.progress(done, total);
+        }));
+    }
+
+    /**
+     * Ejecuta una operacion cualquiera con la conexion, en el hilo de red
+     *
+     * @param operation La operacion (recibe la conexion y su propia tarea)
+     * @return Tarea con el resultado de la operacion
+     */
+    public <T> Task<T> execute(Operation<T> operation) {
+        return execute(null, operation);
+    }
+
+    /**
+     * Encola una operacion con un listener de avance opcional
+     */
+    private <T> Task<T> execute(ClientConnection.ProgressListener listener, Operation<T> operation) {
+        Task<T> task = new Task<>(listener);
+        pending.add(task);
+        try {
+            io.execute(() -> run(task, operation));
+        } catch (RejectedExecutionException e) {
+            finish(task, null, new IOException("Cliente cerrado"));
+        }
+        return task;
+    }
+
+    /**
+     * Ejecuta una operacion en el hilo de red y entrega su resultado
+     */
+    private <T> void run(Task<T> task, Operation<T> operation) {
+        if (task.isDone()) {
+            // Se cancelo mientras esperaba su turno
+            pending.remove(task);
+            return;
+        }
+        running = task;
+        try {
+            ClientConnection c = operation instanceof ConnectOperation ? null : connected();
+            finish(task, operation.run(c, task), null);
+        } catch (IOException | RuntimeException e) {
+            finish(task, null, e);
+        } finally {
+            running = null;
+        }
+    }
+
+    /**
+     * Completa la tarea en el ejecutor de callbacks
+     */
+    private <T> void finish(Task<T> task, T result, Throwable error) {
+        pending.remove(task);
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        callbacks.execute(() -> {
+            if (cause == null) {
+                task.complete(result);
+            } else {
+                task.completeExceptionally(cause);
+            }
+        });
+    }
+
+    /**
+     * Obtiene la conexion abierta o falla si no la hay
+     */
+    private ClientConnection connected() throws IOException {
+        ClientConnection c = connection;
+        if (c == null || closed) {
+            throw new IOException("No hay conexion con el servidor");
+        }
+        return c;
+    }
+
+    // ============================================================================
+    // CIERRE
+    // ============================================================================
+
+    /**
+     * Se despide del servidor (DISCONNECT) y cierra la conexion
+     *
+     * Cancela las tareas pendientes. Si el hilo de red esta libre se envia
+     * DISCONNECT; si esta en medio de una transferencia, la conexion se
+     * cierra enseguida en lugar de esperarla.
+     */
+    public void disconnect() {
+        boolean busy = running != null;
+        cancelPending();
+        if (busy) {
+            close();
+            return;
+        }
+        closed = true;
+        try {
+            io.execute(() -> {
+                ClientConnection c = connection;
+                if (c != null) {
+                    try {
+                        c.send(new FileProtocol(FileProtocol.CMD_DISCONNECT));
+                    } catch (IOException | RuntimeException e) {
+                        // Ignorar errores al desconectar
+                    }
+                    c.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Ya estaba cerrado
+        }
+        io.shutdown();
+    }
+
+    /**
+     * Cierra la conexion enseguida (por ejemplo, tras un error de red)
+     *
+     * Las tareas pendientes se cancelan y la que esta en curso falla con
+     * la IOException del socket cerrado.
+     */
+    public void close() {
+        closed = true;
+        cancelPending();
+        ClientConnection c = connection;
+        if (c != null) {
+            c.close();
+        }
+        io.shutdown();
+    }
+
+    /**
+     * Cancela todas las tareas encoladas o en curso
+     */
+    private void cancelPending() {
+        for (Task<?> task : pending) {
+            task.cancel(false);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Cantidad de operaciones encoladas o en curso (para repartir trabajo)
+     * @return Tareas pendientes
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Indica si el cliente ya se cerro
+     * @return true despues de disconnect() o close()
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Obtiene la conexion (para consultar compresion o version)
+     * @return La conexion, o null si todavia no se conecto
+     */
+    public ClientConnection getConnection() {
+        return connection;
+    }
+
+    // ============================================================================
+    // TAREAS
+    // ============================================================================
+
+    /**
+     * Interfaz Operation - Trabajo que se hace con la conexion en el hilo de red
+     */
+    public interface Operation<T> {
+
+        /**
+         * Ejecuta la operacion
+         *
+         * @param connection La conexion abierta
+         * @param task La tarea de esta operacion (para isCancelled y progress)
+         * @return El resultado que recibira la tarea
+         */
+        T run(ClientConnection connection, Task<T> task) throws IOException;
+    }
+
+    /**
+     * Marca de la operacion de connect(): es la unica que corre sin conexion
+     */
+    private interface ConnectOperation<T> extends Operation<T> {
+    }
+
+    /**
+     * Clase Task - Resultado futuro de una operacion, cancelable y con avance
+     */
+    public final class Task<T> extends CompletableFuture<T> {
+
+        // Recibe el avance (null si no interesa)
+        private final ClientConnection.ProgressListener listener;
+
+        // Hora del ultimo aviso de avance (solo la toca el hilo de red)
+        private long lastProgress;
+
+        private Task(ClientConnection.ProgressListener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * Informa el avance en el ejecutor de callbacks (como mucho cada
+         * PROGRESS_INTERVAL_MS, salvo el final)
+         *
+         * @param done Bytes transferidos
+         * @param total Bytes totales
+         */
+        public void progress(long done, long total) {
+            if (listener == null || isDone()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (done < total && now - lastProgress < PROGRESS_INTERVAL_MS) {
+                return;
+            }
+            lastProgress = now;
+            callbacks.execute(() -> {
+                if (!isDone() || done >= total) {
+                    listener.onProgress(done, total);
+                }
+            });
+        }
+
+        /**
+         * Cancela la operacion (ver la descripcion de AsyncClient)
+         *
+         * @param mayInterruptIfRunning Se ignora: el hilo de red nunca se interrumpe
+         * @return true si la tarea quedo cancelada
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            pending.remove(this);
+            return super.cancel(false);
+        }
+    }
+}
@@ -0,0 +1,490 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la codificacion binaria
+// ============================================================================
+
+// Importa la excepcion para datos corruptos
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+// Importa el juego de caracteres UTF-8
+import java.nio.charset.StandardCharsets;
+
+// Importa Arrays para copiar y ampliar el buffer de escritura
+import java.util.Arrays;
+
+/**
+ * Clase BinaryCodec - Codificacion binaria compacta de FileProtocol
+ *
+ * Reemplaza a la serializacion de Java dentro de las tramas (version 2
+ * del protocolo). No usa reflexion ni envia descriptores de clase ni
+ * nombres de campos, solo los datos:
+ *
+ *   [comando (1 byte)] [respuesta (1 byte)] [mascara de campos (varint)]
+ *   [campos presentes, en el orden de sus bits]
+ *
+ * - Comando y respuesta son codigos de 1 byte (ver tabla OPCODES).
+ *   Un texto que no esta en la tabla se envia como OP_CUSTOM + texto.
+ * - Los textos van como [longitud varint][bytes UTF-8].
+ * - La mascara indica que campos tienen valor (no null / distinto de 0);
+ *   los ausentes no ocupan bytes.
+ *
+ * Un LIST completo ocupa 3 bytes, frente a mas de 150 serializado.
+ */
+public class BinaryCodec {
+
+    // ============================================================================
+    // CODIGOS DE OPERACION (1 byte por cada constante CMD_* y RESP_*)
+    // ============================================================================
+
+    // Campo null (sin comando o sin respuesta)
+    private static final int OP_NONE = 0;
+
+    // Texto fuera de la tabla: le sigue el texto completo
+    private static final int OP_CUSTOM = 0xFF;
+
+    // Tabla de textos conocidos; el indice es el codigo de operacion.
+    // El orden es parte del protocolo: solo se pueden agregar al final.
+    private static final String[] OPCODES = {
+        null,                               // 0x00 OP_NONE
+        FileProtocol.CMD_LIST_FILES,        // 0x01
+        FileProtocol.CMD_READ_FILE,         // 0x02
+        FileProtocol.CMD_WRITE_FILE,        // 0x03
+        FileProtocol.CMD_DELETE_FILE,       // 0x04
+        FileProtocol.CMD_CREATE_FILE,       // 0x05
+        FileProtocol.CMD_MODIFY_FILE,       // 0x06
+        FileProtocol.CMD_DISCONNECT,        // 0x07
+        FileProtocol.RESP_OK,               // 0x08
+        FileProtocol.RESP_ERROR,            // 0x09
+        FileProtocol.RESP_FILE_CONTENT,     // 0x0A
+        FileProtocol.RESP_FILE_LIST,        // 0x0B
+        FileProtocol.CMD_READ_STREAM,       // 0x0C
+        FileProtocol.RESP_FILE_CHUNK,       // 0x0D
+        FileProtocol.CMD_DOWNLOAD,          // 0x0E
+        FileProtocol.RESP_FILE_DATA,        // 0x0F
+        FileProtocol.CMD_UPLOAD_BEGIN,      // 0x10
+        FileProtocol.CMD_UPLOAD_CHUNK,      // 0x11
+        FileProtocol.CMD_UPLOAD_COMMIT,     // 0x12
+        FileProtocol.CMD_LIST_PAGE,         // 0x13
+        FileProtocol.RESP_FILE_PAGE,        // 0x14
+        FileProtocol.CMD_SIGNATURE,         // 0x15
+        FileProtocol.CMD_MODIFY_DELTA,      // 0x16
+        FileProtocol.CMD_BATCH,             // 0x17
+        FileProtocol.CMD_READ_RANGE,        // 0x18
+        FileProtocol.RESP_NOT_MODIFIED,     // 0x19
+        FileProtocol.RESP_CONFLICT,         // 0x1A
+        FileProtocol.CMD_SUBSCRIBE,         // 0x1B
+        FileProtocol.RESP_EVENT,            // 0x1C
+        FileProtocol.CMD_LIST_TREE,         // 0x1D
+        FileProtocol.CMD_MAKE_DIR,          // 0x1E
+    };
+
+    // ============================================================================
+    // BITS DE LA MASCARA DE CAMPOS
+    // ============================================================================
+
+    // Nombre del archivo
+    private static final int F_FILE_NAME = 1;
+
+    // Contenido del archivo o mensaje de texto
+    private static final int F_CONTENT = 1 << 1;
+
+    // Lista de nombres de archivos
+    private static final int F_FILE_LIST = 1 << 2;
+
+    // Bytes crudos: [longitud varint][bytes]
+    private static final int F_DATA = 1 << 3;
+
+    // Posicion en el archivo (varint)
+    private static final int F_OFFSET = 1 << 4;
+
+    // Tamanio total o pedido (varint)
+    private static final int F_LENGTH = 1 << 5;
+
+    // Ultimo mensaje de una secuencia (el bit es el valor, sin bytes extra)
+    private static final int F_LAST = 1 << 6;
+
+    // Entradas de un listado: [cantidad varint] y por cada una
+    // [nombre][tamanio varint][fecha varint][es directorio (1 byte)]
+    private static final int F_ENTRIES = 1 << 7;
+
+    // Mensajes de un lote: [cantidad varint] y por cada uno
+    // [longitud varint][mensaje codificado] (no se admiten lotes anidados)
+    private static final int F_ITEMS = 1 << 8;
+
+    // Identificador de correlacion (varint). Va ultimo: un decodificador
+    // que no lo conoce simplemente no lo lee
+    private static final int F_REQUEST_ID = 1 << 9;
+
+    // Version del archivo (varint), despues del identificador
+    private static final int F_VERSION = 1 << 10;
+
+    // Constructor privado: la clase solo tiene metodos estaticos
+    private BinaryCodec() {
+    }
+
+    // ============================================================================
+    // CODIFICAR
+    // ============================================================================
+
+    /**
+     * Convierte un FileProtocol en su forma binaria
+     *
+     * @param message El mensaje a codificar
+     * @return Los bytes del mensaje
+     */
+    public static byte[] encode(FileProtocol message) {
+        // Capacidad inicial suficiente para los trozos de datos crudos
+        byte[] raw = message.getData();
+        Writer w = new Writer(64 + (raw != null ? raw.length : 0));
+
+        writeOpcode(w, message.getCommand());
+        writeOpcode(w, message.getResponse());
+
+        // Mascara con los campos presentes
+        int mask = 0;
+        if (message.getFileName() != null) mask |= F_FILE_NAME;
+        if (message.getContent() != null) mask |= F_CONTENT;
+        if (message.getFileList() != null) mask |= F_FILE_LIST;
+        if (message.getData() != null) mask |= F_DATA;
+        if (message.getOffset() != 0) mask |= F_OFFSET;
+        if (message.getLength() != 0) mask |= F_LENGTH;
+        if (message.isLast()) mask |= F_LAST;
+        if (message.getEntries() != null) mask |= F_ENTRIES;
+        if (message.getItems() != null) mask |= F_ITEMS;
+        if (message.getRequestId() != 0) mask |= F_REQUEST_ID;
+        if (message.getVersion() != 0) mask |= F_VERSION;
+        w.writeVarLong(mask);
+
+        // Campos en el orden de sus bits
+        if ((mask & F_FILE_NAME) != 0) {
+            w.writeString(message.getFileName());
+        }
+        if ((mask & F_CONTENT) != 0) {
+            w.writeString(message.getContent());
+        }
+        if ((mask & F_FILE_LIST) != 0) {
+            String[] list = message.getFileList();
+            w.writeVarLong(list.length);
+            for (String name : list) {
+                w.writeString(name);
+            }
+        }
+        if ((mask & F_DATA) != 0) {
+            byte[] data = message.getData();
+            w.writeVarLong(data.length);
+            w.writeBytes(data, 0, data.length);
+        }
+        if ((mask & F_OFFSET) != 0) {
+            w.writeVarLong(message.getOffset());
+        }
+        if ((mask & F_LENGTH) != 0) {
+            w.writeVarLong(message.getLength());
+        }
+        if ((mask & F_ENTRIES) != 0) {
+            FileEntry[] entries = message.getEntries();
+            w.writeVarLong(entries.length);
+            for (FileEntry entry : entries) {
+                w.writeString(entry.getName());
+                w.writeVarLong(entry.getSize());
+                w.writeVarLong(entry.getModified());
+                w.writeByte(entry.isDirectory() ? 1 : 0);
+            }
+        }
+        if ((mask & F_ITEMS) != 0) {
+            FileProtocol[] items = message.getItems();
+            w.writeVarLong(items.length);
+            for (FileProtocol item : items) {
+                byte[] bytes = encode(item != null ? item : new FileProtocol());
+                w.writeVarLong(bytes.length);
+                w.writeBytes(bytes, 0, bytes.length);
+            }
+        }
+        if ((mask & F_REQUEST_ID) != 0) {
+            w.writeVarLong(message.getRequestId());
+        }
+        if ((mask & F_VERSION) != 0) {
+            w.writeVarLong(message.getVersion());
+        }
+        return w.toByteArray();
+    }
+
+    /**
+     * Escribe el codigo de un comando o respuesta
+     *
+     * @param w Destino de los bytes
+     * @param text Texto del comando/respuesta (puede ser null)
+     */
+    private static void writeOpcode(Writer w, String text) {
+        if (text == null) {
+            w.writeByte(OP_NONE);
+            return;
+        }
+        for (int i = 1; i < OPCODES.length; i++) {
+            if (OPCODES[i].equals(text)) {
+                w.writeByte(i);
+                return;
+            }
+        }
+        // Texto desconocido: se envia completo para no perderlo
+        w.writeByte(OP_CUSTOM);
+        w.writeString(text);
+    }
+
+    // ============================================================================
+    // DECODIFICAR
+    // ============================================================================
+
+    /**
+     * Reconstruye un FileProtocol desde su forma binaria
+     *
+     * @param data Arreglo con los bytes
+     * @param offset Posicion inicial del mensaje
+     * @param length Cantidad de bytes del mensaje
+     * @return El mensaje decodificado
+     * @throws IOException Si los datos estan truncados o son invalidos
+     */
+    public static FileProtocol decode(byte[] data, int offset, int length) throws IOException {
+        return decode(data, offset, length, false);
+    }
+
+    /**
+     * Decodifica un mensaje que puede estar dentro de un lote
+     *
+     * @param nested true si es un mensaje de un lote (no puede traer otro lote)
+     */
+    private static FileProtocol decode(byte[] data, int offset, int length, boolean nested) throws IOException {
+        Reader r = new Reader(data, offset, length);
+        FileProtocol message = new FileProtocol();
+
+        message.setCommand(readOpcode(r));
+        message.setResponse(readOpcode(r));
+
+        long mask = r.readVarLong();
+        if ((mask & F_FILE_NAME) != 0) {
+            message.setFileName(r.readString());
+        }
+        if ((mask & F_CONTENT) != 0) {
+            message.setContent(r.readString());
+        }
+        if ((mask & F_FILE_LIST) != 0) {
+            int count = r.readLength();
+            String[] list = new String[count];
+            for (int i = 0; i < count; i++) {
+                list[i] = r.readString();
+            }
+            message.setFileList(list);
+        }
+        if ((mask & F_DATA) != 0) {
+            message.setData(r.readBytes(r.readLength()));
+        }
+        if ((mask & F_OFFSET) != 0) {
+            message.setOffset(r.readVarLong());
+        }
+        if ((mask & F_LENGTH) != 0) {
+            message.setLength(r.readVarLong());
+        }
+        if ((mask & F_ENTRIES) != 0) {
+            int count = r.readLength();
+            FileEntry[] entries = new FileEntry[count];
+            for (int i = 0; i < count; i++) {
+                entries[i] = new FileEntry(r.readString(), r.readVarLong(), r.readVarLong(), r.readByte() != 0);
+            }
+            message.setEntries(entries);
+        }
+        if ((mask & F_ITEMS) != 0) {
+            if (nested) {
+                throw new StreamCorruptedException("Lote anidado");
+            }
+            int count = r.readLength();
+            FileProtocol[] items = new FileProtocol[count];
+            for (int i = 0; i < count; i++) {
+                int itemLength = r.readLength();
+                items[i] = decode(data, r.position(), itemLength, true);
+                r.skip(itemLength);
+            }
+            message.setItems(items);
+        }
+        if ((mask & F_REQUEST_ID) != 0) {
+            message.setRequestId(r.readVarLong());
+        }
+        if ((mask & F_VERSION) != 0) {
+            message.setVersion(r.readVarLong());
+        }
+        message.setLast((mask & F_LAST) != 0);
+        return message;
+    }
+
+    /**
+     * Lee el codigo de un comando o respuesta
+     *
+     * @param r Origen de los bytes
+     * @return El texto correspondiente (o null)
+     */
+    private static String readOpcode(Reader r) throws IOException {
+        int op = r.readByte();
+        if (op == OP_CUSTOM) {
+            return r.readString();
+        }
+        if (op >= OPCODES.length) {
+            throw new StreamCorruptedException("Codigo de operacion desconocido: " + op);
+        }
+        return OPCODES[op];
+    }
+
+    // ============================================================================
+    // CLASE INTERNA: Writer - Buffer de bytes que crece segun se necesite
+    // ============================================================================
+
+    /**
+     * Escritor de bytes con varints y textos UTF-8
+     */
+    static final class Writer {
+
+        // Arreglo de bytes escritos
+        private byte[] buf;
+
+        // Cantidad de bytes usados
+        private int size;
+
+        Writer(int initialCapacity) {
+            buf = new byte[initialCapacity];
+        }
+
+        /**
+         * Asegura espacio para n bytes mas
+         */
+        private void ensure(int n) {
+            if (size + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        /**
+         * Escribe un entero sin signo en formato varint (7 bits por byte)
+         */
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, size, length);
+            size += length;
+        }
+
+        /**
+         * Escribe un texto como [longitud varint][bytes UTF-8]
+         */
+        void writeString(String text) {
+            byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(utf8.length);
+            writeBytes(utf8, 0, utf8.length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    // ============================================================================
+    // CLASE INTERNA: Reader - Lector sobre un arreglo de bytes
+    // ============================================================================
+
+    /**
+     * Lector de bytes con varints y textos UTF-8
+     *
+     * Toda lectura verifica los limites y lanza StreamCorruptedException
+     * si el mensaje esta truncado.
+     */
+    static final class Reader {
+
+        // Arreglo con los datos
+        private final byte[] data;
+
+        // Posicion de lectura actual
+        private int pos;
+
+        // Posicion final (exclusiva)
+        private final int end;
+
+        Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.pos = offset;
+            this.end = offset + length;
+        }
+
+        private void require(int n) throws IOException {
+            if (n < 0 || pos + n > end) {
+                throw new StreamCorruptedException("Mensaje binario truncado");
+            }
+        }
+
+        int readByte() throws IOException {
+            require(1);
+            return data[pos++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new StreamCorruptedException("Varint demasiado largo");
+        }
+
+        /**
+         * Lee una longitud y verifica que quepa en el mensaje (un varint
+         * de 10 bytes puede dar un long negativo: tambien se rechaza)
+         */
+        int readLength() throws IOException {
+            long length = readVarLong();
+            if (length < 0 || length > end - pos) {
+                throw new StreamCorruptedException("Longitud invalida: " + length);
+            }
+            return (int) length;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            require(length);
+            byte[] bytes = Arrays.copyOfRange(data, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        /**
+         * Avanza sin copiar (los bytes ya se leyeron por otro camino)
+         */
+        void skip(int length) throws IOException {
+            require(length);
+            pos += length;
+        }
+
+        /**
+         * Posicion de lectura actual (relativa al inicio del arreglo)
+         */
+        int position() {
+            return pos;
+        }
+
+        String readString() throws IOException {
+            int length = readLength();
+            String text = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return text;
+        }
+    }
+}
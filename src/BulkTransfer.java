@@ -0,0 +1,733 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para transferir carpetas completas
+// ============================================================================
+
+// Importa clases de entrada/salida (archivos locales y stream de descarga)
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Importa utilidades de archivos para recorrer la carpeta local y
+// publicar cada descarga con un rename
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// Importa colecciones para los archivos pendientes y los que fallaron
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Importa futuros y contadores atomicos para coordinar las conexiones
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Clase BulkTransfer - Sube o descarga una carpeta completa con sus subcarpetas
+ *
+ * Primero arma la lista de archivos: recorre la carpeta local y pide el
+ * arbol del servidor con LISTTREE. Los archivos que ya estan iguales del
+ * otro lado (mismo tamanio, y fecha igual o mas nueva) se omiten: repetir
+ * una transferencia cortada sigue desde donde quedo.
+ *
+ * Despues reparte los archivos entre varias conexiones del pool (como
+ * downloadParallel con los segmentos): cada una toma el siguiente archivo
+ * pendiente al terminar el suyo, asi muchos archivos chicos no esperan
+ * uno detras de otro el viaje de red de cada peticion.
+ *
+ * - Las subidas usan UPLOADBEGIN/CHUNK/COMMIT (el servidor crea las
+ *   subcarpetas); las carpetas vacias se crean con MKDIR en un BATCH.
+ * - Cada descarga se escribe en un temporal oculto y se renombra al
+ *   terminar, con la fecha del servidor; un error no deja archivos a medias.
+ * - Un limite de ancho de banda compartido por todas las conexiones
+ *   frena las que se adelantan (cubeta de fichas).
+ * - El avance (archivos, bytes, velocidad y tiempo restante) llega al
+ *   Listener en el ejecutor de callbacks del pool.
+ * - Un archivo que falla en el servidor se anota y se sigue con los
+ *   demas; un error de red termina la transferencia con ese error.
+ *
+ * Configuracion (propiedades del sistema):
+ *   -Dcliente.transferenciasParalelas=N  archivos a la vez (conexiones - 1)
+ *   -Dcliente.limiteBytesSeg=N           bytes por segundo entre todos (0 = sin limite)
+ */
+public class BulkTransfer extends CompletableFuture<FileProtocol> {
+
+    // Sentido de la transferencia
+    public static final int UPLOAD = 1;
+    public static final int DOWNLOAD = 2;
+
+    // Archivos que se transfieren a la vez: -Dcliente.transferenciasParalelas=N
+    public static final int PARALLEL = Math.max(1,
+        Integer.getInteger("cliente.transferenciasParalelas", Math.max(1, ConnectionPool.CONNECTIONS - 1)));
+
+    // Limite de ancho de banda total: -Dcliente.limiteBytesSeg=N (0 = sin limite)
+    public static final long BANDWIDTH_LIMIT = Math.max(0, Long.getLong("cliente.limiteBytesSeg", 0));
+
+    // Intervalo minimo entre dos avisos de avance
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    // Diferencia de fecha que se considera igual (algunos discos guardan de a 2 s)
+    private static final long MTIME_TOLERANCE_MS = 2000;
+
+    // Estados del bucle de cada conexion (como en ConnectionPool)
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int SKIPPED = 2;
+
+    private final ConnectionPool pool;
+    private final int direction;
+    private final File localRoot;
+    private final String remoteRoot;
+    private final Listener listener;
+
+    // Limite de ancho de banda (null si no hay)
+    private final Throttle throttle = BANDWIDTH_LIMIT > 0 ? new Throttle(BANDWIDTH_LIMIT) : null;
+
+    // Archivos pendientes; cada conexion toma el siguiente
+    private final ConcurrentLinkedQueue<Item> queue = new ConcurrentLinkedQueue<>();
+
+    // Tareas de las conexiones (armado de la lista y bucles) para cancelarlas
+    private final List<AsyncClient.Task<?>> parts = new CopyOnWriteArrayList<>();
+
+    // Archivos que fallaron en el servidor, con el motivo
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    // Primer error de red
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    // Conexiones que todavia no terminaron su bucle
+    private final AtomicInteger active = new AtomicInteger();
+
+    // Archivos terminados y bytes transferidos entre todas las conexiones
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicLong bytesDone = new AtomicLong();
+
+    // Hora del ultimo aviso de avance
+    private final AtomicLong lastProgress = new AtomicLong();
+
+    // Totales de la lista (se escriben antes de arrancar los bucles)
+    private volatile int totalFiles;
+    private volatile long totalBytes;
+    private volatile int skipped;
+
+    // Velocidad suavizada y la muestra con que se calculo (protegidas por rateLock)
+    private final Object rateLock = new Object();
+    private final long started = System.currentTimeMillis();
+    private long rateTime = started;
+    private long rateBytes;
+    private double rate;
+
+    private BulkTransfer(ConnectionPool pool, int direction, File localRoot, String remoteRoot, Listener listener) {
+        this.pool = pool;
+        this.direction = direction;
+        this.localRoot = localRoot;
+        this.remoteRoot = remoteRoot;
+        this.listener = listener;
+    }
+
+    /**
+     * Sube una carpeta local con todo su contenido
+     *
+     * @param pool Conexiones con el servidor
+     * @param source Carpeta local
+     * @param remoteFolder Ruta de la carpeta en el servidor (se crea si no existe)
+     * @param listener Recibe el avance (puede ser null)
+     * @return Futuro cancelable: OK con el resumen, o ERROR con los archivos que fallaron en fileList
+     */
+    public static BulkTransfer upload(ConnectionPool pool, File source, String remoteFolder, Listener listener) {
+        BulkTransfer transfer = new BulkTransfer(pool, UPLOAD, source, remoteFolder, listener);
+        transfer.start();
+        return transfer;
+    }
+
+    /**
+     * Descarga una carpeta del servidor con todo su contenido
+     *
+     * @param pool Conexiones con el servidor
+     * @param remoteFolder Ruta de la carpeta en el servidor (null = todo el directorio de trabajo)
+     * @param target Carpeta local (se crea si no existe)
+     * @param listener Recibe el avance (puede ser null)
+     * @return Futuro cancelable: OK con el resumen, o ERROR con los archivos que fallaron en fileList
+     */
+    public static BulkTransfer download(ConnectionPool pool, String remoteFolder, File target, Listener listener) {
+        BulkTransfer transfer = new BulkTransfer(pool, DOWNLOAD, target, remoteFolder, listener);
+        transfer.start();
+        return transfer;
+    }
+
+    // ============================================================================
+    // LISTA DE ARCHIVOS
+    // ============================================================================
+
+    /**
+     * Arma la lista en una conexion y despues arranca los bucles
+     */
+    private void start() {
+        AsyncClient.Task<FileProtocol> plan = pool.execute((c, task) ->
+            direction == UPLOAD ? planUpload(c) : planDownload(c));
+        parts.add(plan);
+        plan.whenComplete((problem, e) -> {
+            if (isDone()) {
+                return;  // Cancelada mientras se armaba la lista
+            }
+            if (e != null) {
+                completeExceptionally(e);
+            } else if (problem != null) {
+                complete(problem);
+            } else {
+                startWorkers();
+            }
+        });
+    }
+
+    /**
+     * Pide el arbol remoto, crea las carpetas locales y anota los archivos
+     * que faltan o cambiaron
+     *
+     * @return null si se puede seguir, o la respuesta de error del servidor
+     */
+    private FileProtocol planDownload(ClientConnection connection) throws IOException {
+        String rootPath = localRoot.getCanonicalPath() + File.separator;
+        List<File> folders = new ArrayList<>();
+        folders.add(localRoot);
+        int files = 0;
+        long bytes = 0;
+        int unchanged = 0;
+        long cursor = 0;
+        boolean last = false;
+        while (!last && !isDone()) {
+            FileProtocol page = listTree(connection, cursor);
+            if (!FileProtocol.RESP_OK.equals(page.getResponse())) {
+                return page;
+            }
+            for (FileEntry entry : page.getEntries()) {
+                File target = localFile(entry.getName());
+                if (target == null || !target.getCanonicalPath().startsWith(rootPath)) {
+                    failures.add(entry.getName() + ": ruta fuera de la carpeta destino");
+                } else if (entry.isDirectory()) {
+                    folders.add(target);
+                } else if (target.isFile() && target.length() == entry.getSize()
+                        && Math.abs(target.lastModified() - entry.getModified()) < MTIME_TOLERANCE_MS) {
+                    unchanged++;
+                } else {
+                    queue.add(new Item(target, entry.getName(), entry.getSize(), entry.getModified()));
+                    files++;
+                    bytes += entry.getSize();
+                }
+            }
+            cursor = page.getOffset();
+            last = page.isLast();
+        }
+        for (File folder : folders) {
+            if (!folder.isDirectory() && !folder.mkdirs()) {
+                throw new IOException("No se pudo crear la carpeta local " + folder);
+            }
+        }
+        totalFiles = files;
+        totalBytes = bytes;
+        skipped = unchanged;
+        return null;
+    }
+
+    /**
+     * Recorre la carpeta local, compara con el arbol remoto, crea las
+     * carpetas que faltan con MKDIR y anota los archivos a subir
+     *
+     * Lo oculto (nombres que empiezan con punto) no se sube: el servidor
+     * no acepta esas rutas.
+     *
+     * @return null si se puede seguir, o la respuesta de error del servidor
+     */
+    private FileProtocol planUpload(ClientConnection connection) throws IOException {
+        // Lo que ya esta en el servidor (la carpeta puede no existir todavia)
+        Map<String, FileEntry> remote = new HashMap<>();
+        long cursor = 0;
+        boolean last = false;
+        while (!last && !isDone()) {
+            FileProtocol page = listTree(connection, cursor);
+            if (!FileProtocol.RESP_OK.equals(page.getResponse())) {
+                break;
+            }
+            for (FileEntry entry : page.getEntries()) {
+                remote.put(entry.getName(), entry);
+            }
+            cursor = page.getOffset();
+            last = page.isLast();
+        }
+
+        List<FileProtocol> folders = new ArrayList<>();
+        if (remote.isEmpty()) {
+            folders.add(new FileProtocol(FileProtocol.CMD_MAKE_DIR, remoteRoot));
+        }
+        int[] counts = new int[2];
+        long[] bytes = new long[1];
+        Path base = localRoot.toPath();
+        Files.walkFileTree(base, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(base)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                String name = remoteName(base, dir);
+                if (!remote.containsKey(name)) {
+                    folders.add(new FileProtocol(FileProtocol.CMD_MAKE_DIR, name));
+                }
+                return isDone() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || file.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String name = remoteName(base, file);
+                long modified = attrs.lastModifiedTime().toMillis();
+                FileEntry existing = remote.get(name);
+                if (existing != null && !existing.isDirectory() && existing.getSize() == attrs.size()
+                        && existing.getModified() + MTIME_TOLERANCE_MS > modified) {
+                    counts[1]++;
+                } else {
+                    queue.add(new Item(file.toFile(), name, attrs.size(), modified));
+                    counts[0]++;
+                    bytes[0] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        // Las carpetas (incluidas las vacias) en lotes de MKDIR
+        for (int i = 0; i < folders.size() && !isDone(); i += RequestProcessor.MAX_BATCH_ITEMS) {
+            List<FileProtocol> slice = folders.subList(i, Math.min(folders.size(), i + RequestProcessor.MAX_BATCH_ITEMS));
+            FileProtocol result = connection.batch(slice.toArray(new FileProtocol[0]), FileProtocol.BATCH_PARALLEL);
+            if (!FileProtocol.RESP_OK.equals(result.getResponse())) {
+                return result;
+            }
+        }
+        totalFiles = counts[0];
+        totalBytes = bytes[0];
+        skipped = counts[1];
+        return null;
+    }
+
+    /**
+     * Pide una pagina del arbol remoto
+     */
+    private FileProtocol listTree(ClientConnection connection, long cursor) throws IOException {
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_LIST_TREE, remoteRoot);
+        request.setOffset(cursor);
+        request.setLength(RequestProcessor.MAX_PAGE_SIZE);
+        return connection.call(request);
+    }
+
+    /**
+     * Archivo local de una ruta del arbol remoto
+     *
+     * @return El archivo, o null si la ruta no esta debajo de la carpeta pedida
+     */
+    private File localFile(String name) {
+        String relative = name;
+        if (remoteRoot != null) {
+            if (!name.startsWith(remoteRoot + "/")) {
+                return null;
+            }
+            relative = name.substring(remoteRoot.length() + 1);
+        }
+        return new File(localRoot, relative.replace('/', File.separatorChar));
+    }
+
+    /**
+     * Ruta en el servidor de un archivo de la carpeta local
+     */
+    private String remoteName(Path base, Path path) {
+        return remoteRoot + "/" + base.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    // ============================================================================
+    // TRANSFERENCIA EN PARALELO
+    // ============================================================================
+
+    /**
+     * Reparte los archivos pendientes entre las conexiones del pool
+     */
+    private void startWorkers() {
+        List<AsyncClient> clients = pool.transferClients(Math.min(PARALLEL, totalFiles));
+        if (clients.isEmpty()) {
+            // No habia nada que transferir
+            active.set(1);
+            workerExited();
+            return;
+        }
+        progress(true);
+        active.set(clients.size());
+        for (AsyncClient client : clients) {
+            // NEW -> RUNNING (el bucle empezo) o NEW -> SKIPPED (se cancelo antes)
+            AtomicInteger state = new AtomicInteger(NEW);
+            AsyncClient.Task<Void> worker = client.execute((c, task) -> {
+                if (!state.compareAndSet(NEW, RUNNING)) {
+                    return null;
+                }
+                try {
+                    transferFiles(c);
+                } catch (IOException | RuntimeException e) {
+                    error.compareAndSet(null, e);
+                    throw e;
+                } finally {
+                    workerExited();
+                }
+                return null;
+            });
+            parts.add(worker);
+            // Si se cerro la conexion antes de que el bucle empezara, nunca va a correr
+            worker.whenComplete((r, e) -> {
+                if (worker.isCancelled() && state.compareAndSet(NEW, SKIPPED)) {
+                    workerExited();
+                }
+            });
+        }
+    }
+
+    /**
+     * Bucle de una conexion: toma archivos pendientes hasta que no quede
+     * ninguno, se cancele la transferencia o falle la red en otra conexion
+     */
+    private void transferFiles(ClientConnection connection) throws IOException {
+        Item item;
+        while (!isDone() && error.get() == null && (item = queue.poll()) != null) {
+            FileProtocol result = direction == UPLOAD ? uploadFile(connection, item) : downloadFile(connection, item);
+            if (result == null) {
+                return;  // Cancelada a mitad del archivo
+            }
+            if (FileProtocol.RESP_OK.equals(result.getResponse())) {
+                filesDone.incrementAndGet();
+            } else {
+                failures.add(item.remote + ": " + result.getContent());
+            }
+            progress(false);
+        }
+    }
+
+    /**
+     * Sube un archivo (retoma la subida si el servidor ya tenia una parte)
+     *
+     * @return La respuesta de UPLOADCOMMIT o el error, o null si se cancelo
+     */
+    private FileProtocol uploadFile(ClientConnection connection, Item item) throws IOException {
+        if (!item.local.isFile()) {
+            FileProtocol missing = new FileProtocol();
+            missing.setResponse(FileProtocol.RESP_ERROR);
+            missing.setContent("el archivo local ya no existe");
+            return missing;
+        }
+        long[] reported = {0};
+        try {
+            return connection.upload(item.local, item.remote, (done, total) -> {
+                // Entre trozos: la subida queda a medias en el servidor y se puede retomar
+                if (isDone()) {
+                    throw new CancellationException("Subida cancelada");
+                }
+                // El primer aviso de una subida retomada incluye lo que ya estaba:
+                // solo se frena por lo que viajo en este trozo
+                transferred(done - reported[0], RequestProcessor.STREAM_CHUNK_SIZE);
+                reported[0] = done;
+            });
+        } catch (CancellationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Descarga un archivo en un temporal y lo renombra al terminar
+     *
+     * @return La cabecera FILEDATA o el error, o null si se cancelo
+     */
+    private FileProtocol downloadFile(ClientConnection connection, Item item) throws IOException {
+        File parent = item.local.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("No se pudo crear la carpeta local " + parent);
+        }
+        File temp = new File(parent, "." + item.local.getName() + ".descarga");
+        FileProtocol header;
+        boolean complete = false;
+        long[] reported = {0};
+        try {
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp))) {
+                // Despues de cancelar se siguen leyendo los bytes, pero se descartan
+                OutputStream guarded = new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (!BulkTransfer.this.isDone()) {
+                            out.write(b, off, len);
+                        }
+                    }
+                };
+                header = connection.download(item.remote, guarded, (done, total) -> {
+                    if (!isDone()) {
+                        transferred(done - reported[0], Long.MAX_VALUE);
+                        reported[0] = done;
+                    }
+                });
+            }
+            complete = FileProtocol.RESP_OK.equals(header.getResponse()) && !isDone();
+            if (complete) {
+                Files.move(temp.toPath(), item.local.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                item.local.setLastModified(item.modified);
+            }
+        } finally {
+            if (!complete) {
+                temp.delete();
+            }
+        }
+        return isDone() ? null : header;
+    }
+
+    /**
+     * Cuenta los bytes transferidos y espera si se supero el limite
+     *
+     * @param bytes Bytes transferidos desde el aviso anterior
+     * @param maxThrottled Cuantos de ellos pueden haber viajado recien
+     */
+    private void transferred(long bytes, long maxThrottled) {
+        bytesDone.addAndGet(bytes);
+        if (throttle != null) {
+            throttle.acquire(Math.min(bytes, maxThrottled));
+        }
+        progress(false);
+    }
+
+    /**
+     * Cuando termina la ultima conexion: entrega el resumen o el error de red
+     */
+    private void workerExited() {
+        if (active.decrementAndGet() > 0) {
+            return;
+        }
+        Throwable failed = error.get();
+        String[] failedFiles = failures.toArray(new String[0]);
+        FileProtocol result = new FileProtocol();
+        result.setResponse(failedFiles.length == 0 ? FileProtocol.RESP_OK : FileProtocol.RESP_ERROR);
+        result.setContent(filesDone.get() + " de " + totalFiles + " archivos transferidos, " + skipped
+            + " sin cambios" + (failedFiles.length > 0 ? ", " + failedFiles.length + " con error" : ""));
+        result.setFileList(failedFiles);
+        result.setOffset(filesDone.get());
+        result.setLength(bytesDone.get());
+        pool.getCallbacks().execute(() -> {
+            if (failed != null) {
+                completeExceptionally(failed);
+            } else {
+                complete(result);
+            }
+        });
+    }
+
+    /**
+     * Cancela la transferencia
+     *
+     * Cada conexion termina el trozo en curso (una descarga descarta el
+     * resto del archivo para seguir sincronizada) y no toma otro archivo.
+     * Los archivos ya transferidos quedan; repetir la transferencia sigue
+     * con los que faltan.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        boolean cancelled = super.cancel(false);
+        for (AsyncClient.Task<?> part : parts) {
+            part.cancel(false);
+        }
+        return cancelled;
+    }
+
+    // ============================================================================
+    // AVANCE
+    // ============================================================================
+
+    /**
+     * Informa el avance (como mucho cada PROGRESS_INTERVAL_MS, salvo force)
+     */
+    private void progress(boolean force) {
+        if (listener == null || isDone()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long last = lastProgress.get();
+        if (!force && (now - last < PROGRESS_INTERVAL_MS || !lastProgress.compareAndSet(last, now))) {
+            return;
+        }
+        Progress snapshot = snapshot(now);
+        pool.getCallbacks().execute(() -> {
+            if (!isDone()) {
+                listener.onProgress(snapshot);
+            }
+        });
+    }
+
+    /**
+     * Toma los contadores y actualiza la velocidad (promedio movil
+     * exponencial de las muestras de al menos medio segundo)
+     */
+    private Progress snapshot(long now) {
+        synchronized (rateLock) {
+            long bytes = bytesDone.get();
+            long elapsed = now - rateTime;
+            if (elapsed >= 500) {
+                double current = (bytes - rateBytes) * 1000.0 / elapsed;
+                rate = rate == 0 ? current : rate * 0.7 + current * 0.3;
+                rateTime = now;
+                rateBytes = bytes;
+            }
+            long remaining = Math.max(0, totalBytes - bytes);
+            long eta = rate > 0 ? (long) (remaining * 1000 / rate) : -1;
+            return new Progress(filesDone.get(), failures.size(), totalFiles, bytes, totalBytes, (long) rate, eta);
+        }
+    }
+
+    /**
+     * Interfaz Listener - Recibe el avance de una transferencia de carpetas
+     */
+    public interface Listener {
+
+        /**
+         * @param progress Estado de la transferencia
+         */
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * Estado de una transferencia en un momento dado
+     */
+    public static final class Progress {
+
+        private final int filesDone;
+        private final int filesFailed;
+        private final int totalFiles;
+        private final long bytesDone;
+        private final long totalBytes;
+        private final long bytesPerSecond;
+        private final long etaMillis;
+
+        Progress(int filesDone, int filesFailed, int totalFiles, long bytesDone, long totalBytes,
+                 long bytesPerSecond, long etaMillis) {
+            this.filesDone = filesDone;
+            this.filesFailed = filesFailed;
+            this.totalFiles = totalFiles;
+            this.bytesDone = bytesDone;
+            this.totalBytes = totalBytes;
+            this.bytesPerSecond = bytesPerSecond;
+            this.etaMillis = etaMillis;
+        }
+
+        public int getFilesDone() {
+            return filesDone;
+        }
+
+        public int getFilesFailed() {
+            return filesFailed;
+        }
+
+        public int getTotalFiles() {
+            return totalFiles;
+        }
+
+        public long getBytesDone() {
+            return bytesDone;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        /**
+         * @return Velocidad reciente entre todas las conexiones (0 al empezar)
+         */
+        public long getBytesPerSecond() {
+            return bytesPerSecond;
+        }
+
+        /**
+         * @return Tiempo restante estimado, o -1 si todavia no se conoce
+         */
+        public long getEtaMillis() {
+            return etaMillis;
+        }
+    }
+
+    /**
+     * Archivo pendiente: local, remoto, tamanio y fecha
+     */
+    private static final class Item {
+
+        final File local;
+        final String remote;
+        final long size;
+        final long modified;
+
+        Item(File local, String remote, long size, long modified) {
+            this.local = local;
+            this.remote = remote;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * Limite de ancho de banda compartido (cubeta de fichas)
+     *
+     * Cada byte reserva su lugar en el tiempo a razon de bytesPerSecond;
+     * la conexion que se adelanta duerme hasta su turno. Despues de un
+     * rato sin uso se permite una rafaga de hasta BURST_NANOS.
+     */
+    static final class Throttle {
+
+        // Rafaga permitida despues de estar sin uso (100 ms de ancho de banda)
+        private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+        private final long bytesPerSecond;
+
+        // Momento (nanoTime) desde el cual el ancho de banda esta libre (protegido por this)
+        private long nextFree = System.nanoTime();
+
+        Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        /**
+         * Reserva el paso de unos bytes y espera si hace falta
+         *
+         * @param bytes Bytes que acaban de viajar
+         */
+        void acquire(long bytes) {
+            if (bytes <= 0) {
+                return;
+            }
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                nextFree = Math.max(nextFree, now - BURST_NANOS) + bytes * 1_000_000_000L / bytesPerSecond;
+                wait = nextFree - now;
+            }
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,518 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para los eventos de cambios
+// ============================================================================
+
+// Importa IOException (envio fallido a un suscriptor)
+import java.io.IOException;
+
+// Importa el generador de tokens de sesion
+import java.security.SecureRandom;
+
+// Importa colecciones para los cambios pendientes de cada suscriptor
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Importa el pool de envio y contadores atomicos
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Importa las interfaces funcionales (log y lectura de tamanio/fecha)
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Clase ChangeNotifier - Envia a los clientes suscriptos los cambios del directorio
+ *
+ * Despues de SUBSCRIBE el servidor empuja mensajes EVENT por la misma
+ * conexion, sin que el cliente pregunte:
+ *
+ *   entries  = archivos creados (los primeros length) y modificados,
+ *              con tamanio y fecha
+ *   fileList = nombres borrados
+ *   content  = RESYNC si se perdieron cambios (el cliente recarga la lista)
+ *
+ * Los cambios se combinan antes de enviarlos:
+ *
+ *   - Se juntan durante una ventana corta (-Dservidor.ventanaEventosMs,
+ *     100 ms): una rafaga de escrituras sobre un archivo es un solo evento,
+ *     y crear y borrar un temporal dentro de la ventana no genera ninguno.
+ *   - Cada suscriptor tiene sus propios cambios pendientes, uno por nombre.
+ *     Mientras se le esta enviando un evento (cliente lento), los cambios
+ *     nuevos se siguen combinando ahi en lugar de encolarse.
+ *   - Si un suscriptor acumula mas de MAX_PENDING nombres, se descartan y
+ *     recibe RESYNC: cuesta menos recargar la lista que enviarlos todos.
+ *   - Los eventos se envian con offer() desde SENDERS hilos
+ *     (-Dservidor.hilosEventos, 4): en el motor NIO, si el cliente no
+ *     lee y su conexion ya tiene demasiados bytes sin escribir, el evento
+ *     se descarta y recibe RESYNC, sin dejar un hilo esperandolo.
+ *
+ * El tamanio y la fecha se leen al enviar, no al ocurrir el cambio: el
+ * evento siempre describe el estado actual del archivo.
+ *
+ * Cada suscripcion recibe un token de sesion. Si la conexion se corta, la
+ * suscripcion queda desconectada pero sigue juntando cambios (incluido el
+ * evento que no se pudo enviar) durante GRACE_MS (-Dservidor.graciaSesionMs,
+ * 60 s). Un SUBSCRIBE con ese token antes de que venza la vuelve a conectar
+ * y recibe lo que se perdio; vencido el plazo se descarta, y el cliente que
+ * vuelve con el token recibe una sesion nueva (y recarga la lista).
+ */
+public class ChangeNotifier {
+
+    // Tipos de cambio que informan los comandos y el WatchService
+    public static final int CREATED = 1;
+    public static final int MODIFIED = 2;
+    public static final int DELETED = 3;
+
+    // Contenido de un EVENT cuando se perdieron cambios
+    public static final String RESYNC = "RESYNC";
+
+    // Ventana para juntar cambios antes de enviarlos: -Dservidor.ventanaEventosMs=N
+    private static final long WINDOW_MS = Long.getLong("servidor.ventanaEventosMs", 100);
+
+    // Nombres pendientes por suscriptor a partir de los cuales se envia RESYNC
+    private static final int MAX_PENDING = 10000;
+
+    // Tiempo que se guarda una suscripcion desconectada: -Dservidor.graciaSesionMs=N
+    private static final long GRACE_MS = Long.getLong("servidor.graciaSesionMs", 60000);
+
+    // Hilos que envian eventos a la vez: -Dservidor.hilosEventos=N
+    private static final int SENDERS = Math.max(1, Integer.getInteger("servidor.hilosEventos", 4));
+
+    // Genera los tokens de sesion
+    private final SecureRandom random = new SecureRandom();
+
+    // Lee tamanio y fecha de un archivo (null si ya no existe)
+    private final Function<String, FileEntry> stat;
+
+    // Destino de los mensajes de log
+    private final Consumer<String> logger;
+
+    // Suscriptores activos
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    // Hilos que envian los eventos (a lo sumo SENDERS; cada suscriptor
+    // tiene como mucho un envio encolado o en curso)
+    private final ExecutorService senders;
+
+    // Hilo que arma los eventos (se crea con la primera suscripcion)
+    private Thread dispatcher;
+
+    // true si hay cambios sin revisar (protegido por this)
+    private boolean dirty;
+
+    // true despues de close() (protegido por this)
+    private boolean closed;
+
+    // Contadores para el log de estadisticas
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+    private final AtomicLong resumed = new AtomicLong();
+
+    /**
+     * Constructor del notificador
+     *
+     * @param stat Funcion que lee tamanio y fecha de un archivo por nombre
+     * @param logger Funcion que recibe cada mensaje de log
+     */
+    public ChangeNotifier(Function<String, FileEntry> stat, Consumer<String> logger) {
+        this.stat = stat;
+        this.logger = logger;
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(SENDERS, SENDERS, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "event-sender-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        // Sin suscriptores no quedan hilos esperando
+        pool.allowCoreThreadTimeOut(true);
+        this.senders = pool;
+    }
+
+    // ============================================================================
+    // SUSCRIPCIONES
+    // ============================================================================
+
+    /**
+     * Registra una conexion para recibir los cambios (SUBSCRIBE)
+     *
+     * Respuesta: content = token de la sesion; last = true si se retomo la
+     * sesion del token recibido (los cambios perdidos llegan como eventos).
+     *
+     * @param sink Destino de los eventos (la conexion del cliente)
+     * @param clientIP IP del cliente (para el log)
+     * @param token Token de una sesion anterior, o null
+     * @return Respuesta OK a enviar antes del primer evento
+     */
+    public FileProtocol subscribe(ResponseSink sink, String clientIP, String token) {
+        FileProtocol response = new FileProtocol();
+        synchronized (this) {
+            if (closed) {
+                response.setResponse(FileProtocol.RESP_ERROR);
+                response.setContent("El servidor se esta deteniendo");
+                return response;
+            }
+            if (dispatcher == null) {
+                dispatcher = new Thread(this::dispatchLoop, "change-events");
+                dispatcher.setDaemon(true);
+                dispatcher.start();
+            }
+        }
+        expireDetached();
+        response.setResponse(FileProtocol.RESP_OK);
+        for (Subscriber subscriber : subscribers) {
+            if (token != null && token.equals(subscriber.token)) {
+                subscriber.attach(sink);
+                resumed.incrementAndGet();
+                logger.accept("[EVENTOS] [" + clientIP + "] Sesion retomada");
+                response.setContent(token);
+                response.setLast(true);
+                // Envia lo que se junto mientras estuvo desconectado
+                signal();
+                return response;
+            }
+        }
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        Subscriber subscriber = new Subscriber(sink, clientIP, UploadManager.toHex(bytes));
+        subscribers.add(subscriber);
+        logger.accept("[EVENTOS] [" + clientIP + "] Suscripto a los cambios (" + subscribers.size() + " suscriptores)");
+        response.setContent(subscriber.token);
+        return response;
+    }
+
+    /**
+     * Descarta las suscripciones desconectadas hace mas de GRACE_MS
+     */
+    private void expireDetached() {
+        long now = System.currentTimeMillis();
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.expired(now)) {
+                subscribers.remove(subscriber);
+                logger.accept("[EVENTOS] [" + subscriber.clientIP + "] Sesion vencida");
+            }
+        }
+    }
+
+    /**
+     * Avisa un cambio en un archivo del directorio
+     *
+     * @param name Nombre del archivo
+     * @param kind CREATED, MODIFIED o DELETED
+     */
+    public void changed(String name, int kind) {
+        // Como el listado, los eventos cubren solo el primer nivel: lo que
+        // cambia dentro de una subcarpeta no cambia ninguna fila
+        if (subscribers.isEmpty() || name == null || name.indexOf('/') >= 0) {
+            return;
+        }
+        changes.incrementAndGet();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.merge(name, kind);
+        }
+        signal();
+    }
+
+    /**
+     * Avisa que no se sabe que cambio (por ejemplo, el WatchService perdio
+     * eventos): todos los suscriptores recargan la lista
+     */
+    public void resync() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.overflow();
+        }
+        signal();
+    }
+
+    /**
+     * Despierta al hilo que arma los eventos
+     */
+    private synchronized void signal() {
+        dirty = true;
+        notifyAll();
+    }
+
+    // ============================================================================
+    // ENVIO (hilo change-events)
+    // ============================================================================
+
+    /**
+     * Junta los cambios de cada ventana y entrega un evento por suscriptor
+     */
+    private void dispatchLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (!dirty && !closed) {
+                        wait();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+                // Deja que se sumen los cambios de la misma rafaga
+                Thread.sleep(WINDOW_MS);
+                synchronized (this) {
+                    dirty = false;
+                }
+                expireDetached();
+                // Cada archivo se lee una vez por ronda, aunque haya muchos suscriptores
+                Map<String, FileEntry> round = new HashMap<>();
+                Function<String, FileEntry> cached = name -> round.computeIfAbsent(name, stat);
+                for (Subscriber subscriber : subscribers) {
+                    FileProtocol event = subscriber.take(cached);
+                    if (event != null) {
+                        senders.execute(() -> subscriber.deliver(event));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Detiene el envio de eventos (al detener el servidor)
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        senders.shutdownNow();
+        subscribers.clear();
+    }
+
+    /**
+     * Genera un resumen legible para el log del servidor
+     *
+     * @return Texto con suscriptores, cambios recibidos y eventos enviados
+     */
+    public String report() {
+        int detached = 0;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.isDetached()) {
+                detached++;
+            }
+        }
+        return "[EVENTOS] Suscriptores: " + subscribers.size() + " (desconectados: " + detached + ")"
+            + " | Cambios: " + changes.get() + " | Eventos enviados: " + events.get()
+            + " | Resincronizaciones: " + resyncs.get() + " | Sesiones retomadas: " + resumed.get();
+    }
+
+    /**
+     * Combina un cambio nuevo con el que ya estaba pendiente
+     *
+     * @return El tipo combinado, o 0 si se anulan (creado y borrado)
+     */
+    private static int merge(Integer pending, int kind) {
+        if (pending == null) {
+            return kind;
+        }
+        if (pending == CREATED) {
+            return kind == DELETED ? 0 : CREATED;
+        }
+        if (kind == DELETED) {
+            return DELETED;
+        }
+        // Modificado, o borrado y vuelto a crear
+        return MODIFIED;
+    }
+
+    // ============================================================================
+    // SUSCRIPTOR
+    // ============================================================================
+
+    /**
+     * Una sesion suscripta y sus cambios pendientes
+     */
+    private class Subscriber {
+
+        final String clientIP;
+        final String token;
+
+        // Conexion actual, o null si esta desconectada (protegido por this)
+        ResponseSink sink;
+
+        // Momento en que se desconecto (protegido por this)
+        long detachedAt;
+
+        // Cambio pendiente por nombre, en orden de llegada (protegido por this)
+        final LinkedHashMap<String, Integer> pending = new LinkedHashMap<>();
+
+        // true si se descartaron cambios y se debe enviar RESYNC (protegido por this)
+        boolean lost;
+
+        // true mientras un hilo le envia un evento (protegido por this)
+        boolean sending;
+
+        Subscriber(ResponseSink sink, String clientIP, String token) {
+            this.sink = sink;
+            this.clientIP = clientIP;
+            this.token = token;
+        }
+
+        /**
+         * Vuelve a conectar la sesion a una conexion nueva (la anterior
+         * puede no haber notado todavia que se corto)
+         */
+        synchronized void attach(ResponseSink sink) {
+            this.sink = sink;
+            this.detachedAt = 0;
+        }
+
+        synchronized boolean isDetached() {
+            return sink == null;
+        }
+
+        synchronized boolean expired(long now) {
+            return sink == null && now - detachedAt > GRACE_MS;
+        }
+
+        synchronized void merge(String name, int kind) {
+            if (lost) {
+                return;  // Ya va a recargar la lista entera
+            }
+            int merged = ChangeNotifier.merge(pending.get(name), kind);
+            if (merged == 0) {
+                pending.remove(name);
+            } else {
+                pending.put(name, merged);
+            }
+            if (pending.size() > MAX_PENDING) {
+                overflow();
+            }
+        }
+
+        synchronized void overflow() {
+            pending.clear();
+            lost = true;
+        }
+
+        /**
+         * Arma el evento con los cambios pendientes (null si no hay, si
+         * todavia se esta enviando el anterior o si esta desconectada)
+         */
+        synchronized FileProtocol take(Function<String, FileEntry> stat) {
+            if (sending || sink == null || (pending.isEmpty() && !lost)) {
+                return null;
+            }
+            FileProtocol event = new FileProtocol();
+            event.setCommand(FileProtocol.RESP_EVENT);
+            event.setResponse(FileProtocol.RESP_OK);
+            if (lost) {
+                lost = false;
+                event.setContent(RESYNC);
+            } else {
+                List<FileEntry> created = new ArrayList<>();
+                List<FileEntry> modified = new ArrayList<>();
+                List<String> deleted = new ArrayList<>();
+                for (Map.Entry<String, Integer> change : pending.entrySet()) {
+                    // El estado actual manda: el archivo pudo cambiar otra vez
+                    FileEntry entry = stat.apply(change.getKey());
+                    if (entry == null) {
+                        if (change.getValue() != CREATED) {
+                            deleted.add(change.getKey());
+                        }
+                    } else if (change.getValue() == CREATED) {
+                        created.add(entry);
+                    } else {
+                        modified.add(entry);
+                    }
+                }
+                pending.clear();
+                if (created.isEmpty() && modified.isEmpty() && deleted.isEmpty()) {
+                    return null;
+                }
+                created.addAll(modified);
+                event.setEntries(created.toArray(new FileEntry[0]));
+                event.setLength(created.size() - modified.size());
+                if (!deleted.isEmpty()) {
+                    event.setFileList(deleted.toArray(new String[0]));
+                }
+            }
+            sending = true;
+            return event;
+        }
+
+        /**
+         * Envia un evento (hilo event-sender); si falla, la conexion se
+         * cerro: la sesion queda desconectada y el evento vuelve a pendientes.
+         * Si el cliente no lee (la conexion esta llena) el evento se
+         * descarta y recibira RESYNC.
+         */
+        void deliver(FileProtocol event) {
+            ResponseSink target;
+            synchronized (this) {
+                target = sink;
+            }
+            try {
+                if (target.offer(event)) {
+                    events.incrementAndGet();
+                    if (RESYNC.equals(event.getContent())) {
+                        resyncs.incrementAndGet();
+                    }
+                } else {
+                    overflow();
+                }
+            } catch (IOException e) {
+                detach(target, event);
+                logger.accept("[EVENTOS] [" + clientIP + "] Conexion perdida, se guardan los cambios "
+                    + (GRACE_MS / 1000) + " s: " + e.getMessage());
+            } finally {
+                boolean more;
+                synchronized (this) {
+                    sending = false;
+                    more = sink != null && (!pending.isEmpty() || lost);
+                }
+                if (more) {
+                    // Llegaron cambios mientras se enviaba
+                    signal();
+                }
+            }
+        }
+
+        /**
+         * Desconecta la sesion y devuelve a pendientes los cambios del evento
+         * que no llego, antes de los que se juntaron despues
+         */
+        private synchronized void detach(ResponseSink failed, FileProtocol event) {
+            if (sink == failed) {
+                sink = null;
+                detachedAt = System.currentTimeMillis();
+            }
+            if (RESYNC.equals(event.getContent())) {
+                overflow();
+                return;
+            }
+            if (lost) {
+                return;
+            }
+            LinkedHashMap<String, Integer> newer = new LinkedHashMap<>(pending);
+            pending.clear();
+            FileEntry[] entries = event.getEntries();
+            if (entries != null) {
+                for (int i = 0; i < entries.length; i++) {
+                    pending.put(entries[i].getName(), i < event.getLength() ? CREATED : MODIFIED);
+                }
+            }
+            if (event.getFileList() != null) {
+                for (String name : event.getFileList()) {
+                    pending.put(name, DELETED);
+                }
+            }
+            for (Map.Entry<String, Integer> change : newer.entrySet()) {
+                merge(change.getKey(), change.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la cache del cliente
+// ============================================================================
+
+// Importa el mapa con orden de acceso (base de la politica LRU)
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Clase ClientCache - Copia local de los archivos abiertos con READ
+ *
+ * Guarda el contenido junto con la fecha de modificacion y el tamanio
+ * que informo el servidor. Al volver a abrir un archivo, el cliente
+ * envia esos dos valores en el READ: si el archivo no cambio, el
+ * servidor responde NOTMODIFIED sin el contenido y se usa esta copia.
+ * Reabrir un archivo sin cambios cuesta un viaje de red con pocos bytes.
+ *
+ * Igual que ContentCache en el servidor, el limite es en bytes (2 por
+ * caracter) y se descartan primero las entradas usadas hace mas tiempo.
+ *
+ * Todos los metodos son seguros para llamarse desde cualquier hilo.
+ */
+public class ClientCache {
+
+    // Presupuesto por defecto: 16 MB
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    // Presupuesto maximo en bytes
+    private final long maxBytes;
+
+    // Entradas por nombre de archivo en orden de acceso (protegido por this)
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Bytes ocupados por las entradas (protegido por this)
+    private long usedBytes;
+
+    /**
+     * Constructor de la cache
+     *
+     * @param maxBytes Presupuesto en bytes
+     */
+    public ClientCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * Busca la copia local de un archivo
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @return La entrada, o null si no hay copia
+     */
+    synchronized Entry get(String fileName) {
+        return entries.get(fileName);
+    }
+
+    /**
+     * Guarda el contenido recibido en un READ
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param modified Fecha de modificacion informada por el servidor
+     * @param size Tamanio informado por el servidor
+     * @param content Contenido del archivo
+     */
+    public synchronized void put(String fileName, long modified, long size, String content) {
+        long weight = 2L * content.length();
+        remove(fileName);
+        // Sin fecha (servidor antiguo) no se puede validar; muy grande vaciaria la cache
+        if (modified == 0 || weight > maxBytes / 4) {
+            return;
+        }
+        entries.put(fileName, new Entry(content, modified, size, weight));
+        usedBytes += weight;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (usedBytes > maxBytes && it.hasNext()) {
+            usedBytes -= it.next().weight;
+            it.remove();
+        }
+    }
+
+    /**
+     * Descarta la copia de un archivo (al guardarlo o eliminarlo)
+     *
+     * @param fileName Nombre del archivo en el servidor
+     */
+    public synchronized void invalidate(String fileName) {
+        remove(fileName);
+    }
+
+    /**
+     * Descarta todas las copias (al desconectarse del servidor)
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Quita una entrada y descuenta sus bytes (con el monitor tomado)
+     */
+    private void remove(String fileName) {
+        Entry old = entries.remove(fileName);
+        if (old != null) {
+            usedBytes -= old.weight;
+        }
+    }
+
+    /**
+     * Copia local de un archivo con sus datos de validacion
+     */
+    static class Entry {
+
+        // Texto del archivo tal como lo devolvio READ
+        final String content;
+
+        // Fecha de modificacion y tamanio en el servidor
+        final long modified;
+        final long size;
+
+        // Bytes que cuenta contra el presupuesto
+        final long weight;
+
+        Entry(String content, long modified, long size, long weight) {
+            this.content = content;
+            this.modified = modified;
+            this.size = size;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,755 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la conexion del cliente
+// ============================================================================
+
+// Importa clases de entrada/salida (streams de datos con buffer)
+import java.io.*;
+
+// Importa clases para comunicacion por red (Socket)
+import java.net.*;
+
+// Importa MessageDigest para el hash de las subidas
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Importa Arrays para recortar el ultimo trozo de una subida
+import java.util.Arrays;
+
+// Importa colecciones y futuros para las peticiones en vuelo
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Clase ClientConnection - Conexion del cliente usando el protocolo de tramas
+ *
+ * Encapsula el socket y los streams que antes manejaba ClientGUI
+ * directamente. Al conectarse envia el saludo de FrameCodec, por lo que
+ * funciona tanto con el servidor de hilos como con el motor NIO.
+ *
+ * Las llamadas son sincronas: call() envia una peticion y espera
+ * la respuesta correspondiente.
+ *
+ * submit() en cambio no espera: cada peticion lleva un identificador de
+ * correlacion y un hilo lector entrega cada respuesta a su futuro. Asi
+ * puede haber muchas peticiones en vuelo en el mismo socket y el servidor
+ * NIO las responde en el orden en que terminan. Los metodos sincronos
+ * esperan a que no quede ninguna en vuelo antes de usar el socket.
+ */
+public class ClientConnection {
+
+    // Socket conectado al servidor
+    private final Socket socket;
+
+    // Stream para enviar tramas al servidor
+    private final DataOutputStream out;
+
+    // Stream para recibir tramas del servidor
+    private final DataInputStream in;
+
+    // Version del protocolo acordada en el saludo
+    private final byte version;
+
+    // Compresion acordada en el saludo (null si no hay)
+    private final Compression compression;
+
+    // Peticiones enviadas con submit() que esperan respuesta, en orden
+    // de envio (protegida por this)
+    private final Map<Long, CompletableFuture<FileProtocol>> inFlight = new LinkedHashMap<>();
+
+    // Ultimo identificador de correlacion usado (protegido por this)
+    private long lastRequestId;
+
+    // Hilo que lee las respuestas de submit() (null si no hay en vuelo)
+    private Thread reader;
+
+    // true despues de subscribe(): la conexion solo recibe eventos
+    private volatile boolean subscribed;
+
+    // true si el socket fallo o el servidor lo cerro (ver isBroken())
+    private volatile boolean broken;
+
+    // Espera maxima para abrir el socket: -Dcliente.timeoutConexionMs=N
+    private static final int CONNECT_TIMEOUT_MS = Integer.getInteger("cliente.timeoutConexionMs", 10000);
+
+    /**
+     * Abre la conexion y realiza el saludo con el servidor
+     *
+     * @param ip IP o nombre del servidor
+     * @param port Puerto del servidor
+     * @throws IOException Si no se puede conectar o el saludo falla
+     */
+    public ClientConnection(String ip, int port) throws IOException {
+        // Se conecta con un limite: sin red, un reintento no espera minutos
+        socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(ip, port), CONNECT_TIMEOUT_MS);
+
+            // Las tramas son pequenias: se desactiva Nagle para no retrasarlas
+            socket.setTcpNoDelay(true);
+
+            // Detecta conexiones muertas aunque no haya trafico (ej: eventos)
+            socket.setKeepAlive(true);
+
+            out = new DataOutputStream(new BufferedOutputStream(watch(socket.getOutputStream())));
+            in = new DataInputStream(new BufferedInputStream(watch(socket.getInputStream())));
+
+            // Ofrece la version mas alta y las compresiones soportadas,
+            // y espera lo que elige el servidor
+            FrameCodec.writeHandshake(out, FrameCodec.MAX_VERSION, Compression.clientOffer());
+            byte[] reply = FrameCodec.readHandshake(in);
+            version = reply[0];
+            compression = Compression.forOption(reply[1]);
+        } catch (IOException e) {
+            // Si la conexion o el saludo fallan no se deja el socket abierto
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Envia una peticion y espera su respuesta
+     *
+     * @param request La peticion a enviar
+     * @return La respuesta del servidor
+     */
+    public synchronized FileProtocol call(FileProtocol request) throws IOException {
+        awaitPipelineIdle();
+        FrameCodec.writeFrame(out, request, version, compression);
+        return FrameCodec.readFrame(in, version, compression);
+    }
+
+    /**
+     * Lee solo una parte de un archivo con READRANGE
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param offset Primer byte (o distancia al final si fromEnd)
+     * @param length Cantidad de bytes (el servidor la limita a MAX_RANGE_LENGTH)
+     * @param fromEnd true para contar desde el final (ej: cola de un log)
+     * @return CHUNK con data, offset absoluto y length = tamanio del archivo
+     */
+    public FileProtocol readRange(String fileName, long offset, long length, boolean fromEnd) throws IOException {
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_READ_RANGE, fileName);
+        request.setOffset(offset);
+        request.setLength(length);
+        request.setLast(fromEnd);
+        return call(request);
+    }
+
+    /**
+     * Envia varias peticiones en un solo BATCH (un viaje de red)
+     *
+     * @param items Peticiones en el orden en que deben ejecutarse
+     * @param options Combinacion de FileProtocol.BATCH_* (0 = en orden, sin detenerse)
+     * @return Respuesta con un resultado por peticion en items
+     */
+    public FileProtocol batch(FileProtocol[] items, long options) throws IOException {
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_BATCH);
+        request.setItems(items);
+        request.setOffset(options);
+        return call(request);
+    }
+
+    /**
+     * Envia una peticion de streaming y entrega cada trozo al listener
+     *
+     * Lee mensajes hasta recibir uno con last=true o una respuesta de
+     * error. Solo hay un trozo en memoria a la vez.
+     *
+     * @param request La peticion (por ejemplo READSTREAM)
+     * @param listener Recibe cada trozo en orden
+     * @return El ultimo mensaje recibido (trozo final o error)
+     */
+    public synchronized FileProtocol stream(FileProtocol request, ChunkListener listener) throws IOException {
+        awaitPipelineIdle();
+        FrameCodec.writeFrame(out, request, version, compression);
+        while (true) {
+            FileProtocol message = FrameCodec.readFrame(in, version, compression);
+            if (!FileProtocol.RESP_OK.equals(message.getResponse())) {
+                return message;
+            }
+            listener.onChunk(message);
+            if (message.isLast()) {
+                return message;
+            }
+        }
+    }
+
+    /**
+     * Descarga un archivo completo con DOWNLOAD
+     *
+     * El servidor responde con una cabecera FILEDATA (length = tamanio) y
+     * a continuacion los bytes crudos del archivo, fuera de cualquier
+     * trama. Se copian al destino en bloques sin cargar el archivo entero.
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param target Destino de los bytes
+     * @return La cabecera recibida (o la respuesta de error)
+     */
+    public FileProtocol download(String fileName, OutputStream target) throws IOException {
+        return download(fileName, 0, 0, target, null);
+    }
+
+    /**
+     * Descarga un archivo completo con DOWNLOAD informando el avance
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param target Destino de los bytes
+     * @param listener Recibe los bytes recibidos tras cada bloque (puede ser null)
+     * @return La cabecera recibida (o la respuesta de error)
+     */
+    public FileProtocol download(String fileName, OutputStream target, ProgressListener listener)
+            throws IOException {
+        return download(fileName, 0, 0, target, listener);
+    }
+
+    /**
+     * Descarga solo un rango de un archivo con DOWNLOAD
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param offset Primer byte del rango
+     * @param length Cantidad de bytes (0 = hasta el final)
+     * @param target Destino de los bytes del rango
+     * @param listener Recibe los bytes recibidos del rango (puede ser null)
+     * @return La cabecera (offset, length = bytes enviados, version) o la respuesta de error
+     */
+    public synchronized FileProtocol download(String fileName, long offset, long length, OutputStream target,
+            ProgressListener listener) throws IOException {
+        awaitPipelineIdle();
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_DOWNLOAD, fileName);
+        request.setOffset(offset);
+        request.setLength(length);
+        FrameCodec.writeFrame(out, request, version, compression);
+        FileProtocol header = FrameCodec.readFrame(in, version, compression);
+        if (!FileProtocol.RESP_OK.equals(header.getResponse())) {
+            return header;
+        }
+        byte[] buffer = new byte[64 * 1024];
+        long remaining = header.getLength();
+        while (remaining > 0) {
+            int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (n < 0) {
+                throw new EOFException("Descarga incompleta: faltan " + remaining + " bytes");
+            }
+            target.write(buffer, 0, n);
+            remaining -= n;
+            if (listener != null) {
+                listener.onProgress(header.getLength() - remaining, header.getLength());
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Sube un archivo local en trozos, retomando una subida interrumpida
+     *
+     * Primero calcula el SHA-256 del archivo y abre la sesion con
+     * UPLOADBEGIN. Si el servidor ya tenia parte del archivo (porque una
+     * conexion anterior se corto), la respuesta trae ese offset y solo se
+     * envia lo que falta. Al final UPLOADCOMMIT verifica tamanio y hash.
+     *
+     * @param source Archivo local a subir
+     * @param fileName Nombre del archivo en el servidor
+     * @param listener Recibe los bytes confirmados tras cada trozo (puede ser null)
+     * @return La respuesta de UPLOADCOMMIT (o el primer error)
+     */
+    public synchronized FileProtocol upload(File source, String fileName, ProgressListener listener) throws IOException {
+        long size = source.length();
+
+        FileProtocol begin = new FileProtocol(FileProtocol.CMD_UPLOAD_BEGIN, fileName);
+        begin.setLength(size);
+        begin.setContent(sha256(source));
+        FileProtocol response = call(begin);
+        if (!FileProtocol.RESP_OK.equals(response.getResponse())) {
+            return response;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(source, "r")) {
+            byte[] buffer = new byte[RequestProcessor.STREAM_CHUNK_SIZE];
+            FileProtocol chunk = new FileProtocol(FileProtocol.CMD_UPLOAD_CHUNK, fileName);
+            long offset = response.getOffset();
+            while (offset < size) {
+                int n = (int) Math.min(buffer.length, size - offset);
+                file.seek(offset);
+                file.readFully(buffer, 0, n);
+                chunk.setOffset(offset);
+                chunk.setData(n == buffer.length ? buffer : Arrays.copyOf(buffer, n));
+                response = call(chunk);
+                if (!FileProtocol.RESP_OK.equals(response.getResponse())) {
+                    return response;
+                }
+                // El servidor dice hasta donde tiene: se sigue desde ahi
+                offset = response.getOffset();
+                if (listener != null) {
+                    listener.onProgress(offset, size);
+                }
+            }
+        }
+
+        return call(new FileProtocol(FileProtocol.CMD_UPLOAD_COMMIT, fileName));
+    }
+
+    // ============================================================================
+    // PETICIONES EN VUELO (PIPELINING)
+    // ============================================================================
+
+    /**
+     * Envia una peticion sin esperar su respuesta
+     *
+     * La peticion recibe un identificador de correlacion (se modifica el
+     * objeto). El futuro se completa desde el hilo lector: sus callbacks
+     * pueden llamar a submit() pero no a los metodos sincronos.
+     *
+     * @param request Peticion de respuesta unica (no READSTREAM ni DOWNLOAD)
+     * @return Futuro con la respuesta del servidor
+     */
+    public synchronized CompletableFuture<FileProtocol> submit(FileProtocol request) throws IOException {
+        checkNotSubscribed();
+        if (RequestProcessor.isStreaming(request.getCommand())) {
+            throw new IllegalArgumentException("Los comandos de streaming usan stream() o download()");
+        }
+        long id = ++lastRequestId;
+        request.setRequestId(id);
+        CompletableFuture<FileProtocol> future = new CompletableFuture<>();
+        inFlight.put(id, future);
+        try {
+            FrameCodec.writeFrame(out, request, version, compression);
+        } catch (IOException e) {
+            inFlight.remove(id);
+            throw e;
+        }
+        if (reader == null) {
+            reader = new Thread(this::readResponses, "client-pipeline");
+            reader.setDaemon(true);
+            reader.start();
+        }
+        return future;
+    }
+
+    /**
+     * Envia todas las peticiones sin esperar y luego recoge las respuestas
+     *
+     * Cuesta un solo viaje de red en lugar de uno por peticion.
+     *
+     * @param requests Peticiones de respuesta unica
+     * @return Las respuestas, en el orden de las peticiones
+     */
+    public FileProtocol[] callAll(FileProtocol[] requests) throws IOException {
+        List<CompletableFuture<FileProtocol>> futures = new ArrayList<>(requests.length);
+        for (FileProtocol request : requests) {
+            futures.add(submit(request));
+        }
+        FileProtocol[] responses = new FileProtocol[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            responses[i] = await(futures.get(i));
+        }
+        return responses;
+    }
+
+    /**
+     * Espera la respuesta de un submit() convirtiendo sus errores en IOException
+     *
+     * @param future Futuro devuelto por submit()
+     * @return La respuesta del servidor
+     */
+    public static FileProtocol await(CompletableFuture<FileProtocol> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Espera interrumpida");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * Lee respuestas y completa sus futuros hasta que no quede ninguna en vuelo
+     */
+    private void readResponses() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (inFlight.isEmpty()) {
+                        // Sin peticiones en vuelo: el socket vuelve a los metodos sincronos
+                        reader = null;
+                        notifyAll();
+                        return;
+                    }
+                }
+                FileProtocol response = FrameCodec.readFrame(in, version, compression);
+                CompletableFuture<FileProtocol> future;
+                synchronized (this) {
+                    future = inFlight.remove(response.getRequestId());
+                    if (future == null && response.getRequestId() == 0) {
+                        // Servidor que no conoce los identificadores: responde en orden
+                        Iterator<CompletableFuture<FileProtocol>> oldest = inFlight.values().iterator();
+                        if (oldest.hasNext()) {
+                            future = oldest.next();
+                            oldest.remove();
+                        }
+                    }
+                }
+                if (future != null) {
+                    future.complete(response);
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                for (CompletableFuture<FileProtocol> future : inFlight.values()) {
+                    future.completeExceptionally(e);
+                }
+                inFlight.clear();
+                reader = null;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Espera a que el hilo lector termine antes de usar el socket en
+     * forma sincrona (se llama con el lock tomado)
+     */
+    private void awaitPipelineIdle() throws IOException {
+        checkNotSubscribed();
+        if (Thread.currentThread() == reader) {
+            throw new IllegalStateException("Un callback de submit() no puede usar metodos sincronos");
+        }
+        while (reader != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Espera interrumpida");
+            }
+        }
+    }
+
+    /**
+     * Falla si la conexion ya esta dedicada a los eventos de SUBSCRIBE
+     */
+    private void checkNotSubscribed() {
+        if (subscribed) {
+            throw new IllegalStateException("La conexion solo recibe eventos de SUBSCRIBE");
+        }
+    }
+
+    // ============================================================================
+    // EVENTOS DE CAMBIOS (SUBSCRIBE)
+    // ============================================================================
+
+    /**
+     * Se suscribe a los cambios del directorio del servidor
+     *
+     * Despues del OK el servidor envia mensajes EVENT en cualquier momento,
+     * asi que la conexion queda dedicada a recibirlos: un hilo los lee y
+     * los entrega al listener hasta que se cierre la conexion. Las demas
+     * operaciones deben usar otra ClientConnection.
+     *
+     * @param listener Recibe cada evento (desde el hilo lector, no el EDT)
+     * @return La respuesta a SUBSCRIBE (ERROR si el servidor no lo soporta)
+     */
+    public FileProtocol subscribe(EventListener listener) throws IOException {
+        return subscribe(null, listener);
+    }
+
+    /**
+     * Se suscribe a los cambios retomando una sesion anterior
+     *
+     * Si el servidor todavia guarda la sesion del token (la conexion se
+     * corto hace poco) responde last = true y envia como eventos los
+     * cambios que ocurrieron mientras tanto. Si no, abre una sesion nueva
+     * y quien llama debe recargar la lista.
+     *
+     * @param session Token de la sesion anterior, o null para una nueva
+     * @param listener Recibe cada evento (desde el hilo lector, no el EDT)
+     * @return La respuesta: content = token de la sesion, last = true si se retomo
+     */
+    public synchronized FileProtocol subscribe(String session, EventListener listener) throws IOException {
+        awaitPipelineIdle();
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_SUBSCRIBE);
+        request.setContent(session);
+        FrameCodec.writeFrame(out, request, version, compression);
+        FileProtocol response = FrameCodec.readFrame(in, version, compression);
+        if (FileProtocol.RESP_OK.equals(response.getResponse())) {
+            subscribed = true;
+            Thread events = new Thread(() -> readEvents(listener), "client-events");
+            events.setDaemon(true);
+            events.start();
+        }
+        return response;
+    }
+
+    /**
+     * Entrega los eventos al listener hasta que se cierre la conexion
+     */
+    private void readEvents(EventListener listener) {
+        try {
+            while (true) {
+                listener.onEvent(FrameCodec.readFrame(in, version, compression));
+            }
+        } catch (IOException e) {
+            // Conexion cerrada: termina la suscripcion
+            listener.onClosed(e);
+        }
+    }
+
+    /**
+     * Modifica un archivo enviando solo los bloques que cambiaron
+     *
+     * Pide la firma por bloques del archivo actual (SIGNATURE), arma el
+     * delta con DeltaSync y lo envia con MODIFYDELTA junto con el SHA-256
+     * del contenido nuevo. Si el servidor lo rechaza (por ejemplo, porque
+     * el archivo cambio entremedio) devuelve el error para que quien llama
+     * pueda enviar el contenido completo con MODIFY.
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param data Contenido nuevo completo
+     * @return La respuesta de MODIFYDELTA (o de SIGNATURE si fallo)
+     */
+    public FileProtocol modifyDelta(String fileName, byte[] data) throws IOException {
+        return modifyDelta(fileName, data, 0);
+    }
+
+    /**
+     * Guarda un archivo existente enviando solo los bloques que cambiaron,
+     * si el servidor todavia tiene la version que leyo este cliente
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param data Contenido nuevo completo
+     * @param expectedVersion Version recibida en READ (0 = sin comprobar)
+     * @return La respuesta de MODIFYDELTA (CONFLICT si otro cliente lo cambio)
+     */
+    public synchronized FileProtocol modifyDelta(String fileName, byte[] data, long expectedVersion)
+            throws IOException {
+        FileProtocol signature = call(new FileProtocol(FileProtocol.CMD_SIGNATURE, fileName));
+        if (!FileProtocol.RESP_OK.equals(signature.getResponse())) {
+            return signature;
+        }
+        int blockSize = (int) signature.getOffset();
+
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_MODIFY_DELTA, fileName);
+        request.setData(DeltaSync.delta(data, signature.getData(), blockSize, signature.getLength()));
+        request.setOffset(blockSize);
+        request.setLength(signature.getLength());
+        request.setContent(sha256(data));
+        request.setVersion(expectedVersion);
+        return call(request);
+    }
+
+    /**
+     * Calcula el SHA-256 de un arreglo de bytes en hexadecimal
+     *
+     * @param data Los bytes
+     * @return El hash en hexadecimal
+     */
+    private static String sha256(byte[] data) throws IOException {
+        try {
+            return UploadManager.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 no disponible", e);
+        }
+    }
+
+    /**
+     * Calcula el SHA-256 de un archivo en hexadecimal
+     *
+     * @param file El archivo
+     * @return El hash en hexadecimal
+     */
+    private static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 no disponible", e);
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[RequestProcessor.STREAM_CHUNK_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return UploadManager.toHex(digest.digest());
+    }
+
+    /**
+     * Envia un mensaje sin esperar respuesta (usado para DISCONNECT)
+     *
+     * @param message El mensaje a enviar
+     */
+    public synchronized void send(FileProtocol message) throws IOException {
+        awaitPipelineIdle();
+        FrameCodec.writeFrame(out, message, version, compression);
+    }
+
+    /**
+     * Obtiene la version del protocolo acordada con el servidor
+     * @return La version negociada
+     */
+    public byte getVersion() {
+        return version;
+    }
+
+    /**
+     * Obtiene la compresion acordada con el servidor
+     * @return La compresion, o null si los mensajes viajan sin comprimir
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Interfaz ChunkListener - Recibe los trozos de un streaming
+     */
+    public interface ChunkListener {
+
+        /**
+         * Procesa un trozo recibido
+         *
+         * @param chunk Mensaje con data y offset del trozo
+         * @throws IOException Si falla el procesamiento (ej: escribir a disco)
+         */
+        void onChunk(FileProtocol chunk) throws IOException;
+    }
+
+    /**
+     * Interfaz EventListener - Recibe los cambios del directorio (SUBSCRIBE)
+     */
+    public interface EventListener {
+
+        /**
+         * Procesa un evento
+         *
+         * @param event Mensaje EVENT: entries = creados (los primeros length)
+         *              y modificados, fileList = borrados, content = RESYNC
+         *              si hay que recargar la lista
+         */
+        void onEvent(FileProtocol event);
+
+        /**
+         * Avisa que se cerro la conexion (tambien al cerrarla quien se suscribio)
+         *
+         * @param cause Error de lectura que termino la suscripcion
+         */
+        default void onClosed(IOException cause) {
+        }
+    }
+
+    /**
+     * Interfaz ProgressListener - Recibe el avance de una transferencia
+     */
+    public interface ProgressListener {
+
+        /**
+         * Informa cuantos bytes se transfirieron hasta ahora
+         *
+         * @param done Bytes transferidos (en una subida, confirmados por el servidor)
+         * @param total Bytes totales
+         */
+        void onProgress(long done, long total);
+    }
+
+    /**
+     * Indica si la conexion ya no sirve: el socket fallo, el servidor lo
+     * cerro o se llamo a close()
+     *
+     * Distingue un error de red de uno local con el mismo tipo (ej: un
+     * EOFException al leer el archivo que se sube).
+     *
+     * @return true si hay que reconectar para seguir
+     */
+    public boolean isBroken() {
+        return broken || socket.isClosed();
+    }
+
+    /**
+     * Envuelve el stream de entrada del socket para marcar la conexion
+     * rota cuando falla o llega al final
+     */
+    private InputStream watch(InputStream stream) {
+        return new FilterInputStream(stream) {
+            @Override
+            public int read() throws IOException {
+                try {
+                    int b = super.read();
+                    broken |= b < 0;
+                    return b;
+                } catch (IOException e) {
+                    broken = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                try {
+                    int n = super.read(b, off, len);
+                    broken |= n < 0;
+                    return n;
+                } catch (IOException e) {
+                    broken = true;
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Envuelve el stream de salida del socket para marcar la conexion
+     * rota cuando falla
+     */
+    private OutputStream watch(OutputStream stream) {
+        return new FilterOutputStream(stream) {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    out.write(b);
+                } catch (IOException e) {
+                    broken = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                try {
+                    out.write(b, off, len);
+                } catch (IOException e) {
+                    broken = true;
+                    throw e;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                try {
+                    out.flush();
+                } catch (IOException e) {
+                    broken = true;
+                    throw e;
+                }
+            }
+        };
+    }
+
+    /**
+     * Cierra el socket (y con el los streams)
+     */
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignorar errores al cerrar
+        }
+        if (compression != null) {
+            compression.close();
+        }
+    }
+}
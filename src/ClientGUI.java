@@ -20,12 +20,28 @@ import java.io.*;
 // Importa clases para comunicacion por red (sockets)
 import java.net.*;
 
+// Importa el juego de caracteres UTF-8 para guardar por bloques
+import java.nio.charset.StandardCharsets;
+
 // Importa clase para formatear fechas y horas
 import java.text.SimpleDateFormat;
 
 // Importa clase Date para obtener la hora actual
 import java.util.Date;
 
+// Importa Arrays para recortar la zona mostrada de un archivo grande
+import java.util.Arrays;
+
+// Importa CompletableFuture (descargas en paralelo), la excepcion de las
+// operaciones canceladas y la de las paginas que fallan
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Importa Consumer (lo que sigue a cada operacion) y Predicate (filtro de archivos nuevos)
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
 /**
  * Clase ClientGUI - Cliente con interfaz grafica para gestion remota de archivos
  * 
@@ -64,8 +80,8 @@ public class ClientGUI extends JFrame {
     // ATRIBUTOS DEL PANEL DE ARCHIVOS
     // ============================================================================
     
-    // Modelo de datos para la tabla (permite agregar/eliminar filas)
-    private DefaultTableModel tableModel;
+    // Modelo de datos para la tabla (pide al servidor las paginas que se muestran)
+    private final RemoteFileTableModel tableModel = new RemoteFileTableModel();
     
     // Tabla que muestra la lista de archivos del servidor
     private JTable fileTable;
@@ -76,6 +92,50 @@ public class ClientGUI extends JFrame {
     // Campo de texto para el nombre del archivo
     private JTextField txtFileName;
     
+    // Filtro del listado (glob como *.txt o prefijo)
+    private JTextField txtFilter;
+    
+    // Orden del listado (nombre, tamanio o fecha)
+    private JComboBox<String> cmbSort;
+    
+    // Orden descendente (segundo clic en el encabezado de la misma columna)
+    private boolean sortDescending;
+    
+    // Copias de los archivos abiertos, para el READ condicional
+    private final ClientCache readCache = new ClientCache(ClientCache.DEFAULT_MAX_BYTES);
+    
+    // Archivo abierto en el editor y su version en el servidor
+    // (se envia al guardar para no pisar cambios de otro cliente; 0 = desconocida)
+    private String editorFile;
+    private long editorVersion;
+    
+    // Archivo grande abierto por paginas (null si el editor tiene el archivo entero)
+    private PagedDocument pagedDocument;
+    
+    // Zona del archivo grande que muestra el editor: donde empieza, sus
+    // bytes y el texto mostrado (para saber si se edito)
+    private long windowStart;
+    private byte[] windowBytes;
+    private String windowText;
+    
+    // Posicion de la zona dentro del archivo grande (visible solo con pagedDocument)
+    private JScrollBar filePosition;
+    
+    // Archivos mas grandes que esto se abren por paginas: -Dcliente.editorCompletoBytes=N
+    private static final long EDITOR_FULL_MAX = Long.getLong("cliente.editorCompletoBytes", 4L * 1024 * 1024);
+    
+    // Bytes de archivo grande que se muestran a la vez: -Dcliente.ventanaEditorBytes=N
+    private static final int WINDOW_BYTES = Math.max(4096, Integer.getInteger("cliente.ventanaEditorBytes", 256 * 1024));
+    
+    // Divisiones de la barra de posicion
+    private static final int POSITION_STEPS = 10000;
+    
+    // Claves de orden que entiende LISTPAGE (en el orden de cmbSort y de las columnas)
+    private static final String[] SORT_KEYS = {"name", "size", "mtime"};
+    
+    // Tamanio desde el cual se guarda enviando solo los bloques cambiados
+    private static final int DELTA_MIN_SIZE = 16 * 1024;
+    
     // ============================================================================
     // BOTONES DE OPERACIONES
     // ============================================================================
@@ -95,23 +155,66 @@ public class ClientGUI extends JFrame {
     // Boton para eliminar un archivo
     private JButton btnDelete;
     
+    // Boton para descargar un archivo a disco local (en trozos)
+    private JButton btnDownload;
+    
+    // Boton para subir un archivo local al servidor
+    private JButton btnUpload;
+    
+    // Botones para descargar y subir carpetas completas (con subcarpetas)
+    private JButton btnDownloadFolder;
+    private JButton btnUploadFolder;
+    
+    // Avance de la descarga o subida en curso (en la barra de estado)
+    private JProgressBar progressBar;
+    
+    // Boton para cancelar la descarga o subida en curso
+    private JButton btnCancel;
+    
+    // Descarga o subida en curso (null si no hay)
+    private CompletableFuture<FileProtocol> currentTransfer;
+    
+    // true si el usuario cancelo la transferencia en curso
+    private boolean transferCancelled;
+    
+    // Transferencia cortada por la red: se retoma al reconectar, o se
+    // abandona si no se logra (null si no hay)
+    private Runnable interruptedTransfer;
+    private Runnable abandonTransfer;
+    
+    // Veces seguidas que se retomo la transferencia en curso
+    private int transferResumes;
+    
+    // Maximo de veces que se retoma una transferencia: -Dcliente.reanudaciones=N
+    private static final int MAX_RESUMES = Math.max(0, Integer.getInteger("cliente.reanudaciones", 5));
+    
     // ============================================================================
     // ATRIBUTOS DE CONEXION DE RED
     // ============================================================================
     
-    // Socket para la conexion con el servidor
-    // A diferencia de ServerSocket, este se CONECTA a un servidor
-    private Socket socket;
+    // Conexiones con el servidor, cada una usada desde su propio hilo de
+    // red: las operaciones no bloquean el EDT, una descarga lenta no frena
+    // a las demas y los resultados vuelven al EDT (null si no hay conexion)
+    private ConnectionPool pool;
     
-    // Stream para enviar objetos al servidor
-    private ObjectOutputStream out;
-    
-    // Stream para recibir objetos del servidor
-    private ObjectInputStream in;
+    // Segunda conexion, suscripta a los cambios del directorio (SUBSCRIBE)
+    // (null si el servidor no los envia: la lista se actualiza a mano)
+    private ClientConnection eventConnection;
     
     // Bandera que indica si hay una conexion activa
     private boolean isConnected = false;
     
+    // true mientras se reintenta la conexion despues de perderla
+    private boolean reconnecting = false;
+    
+    // Servidor de la conexion actual (para reabrir la conexion de eventos)
+    private String serverIP;
+    private int serverPort;
+    
+    // Token de la sesion de eventos que entrego el servidor: al reconectar
+    // se retoma la suscripcion sin perder los cambios (null si no hay)
+    private String sessionToken;
+    
     // ============================================================================
     // AREA DE LOG
     // ============================================================================
@@ -211,6 +314,20 @@ public class ClientGUI extends JFrame {
         lblStatus.setForeground(Color.WHITE);
         statusPanel.add(lblStatus);
         
+        // Avance y cancelacion de transferencias (visibles solo durante una)
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setPreferredSize(new Dimension(260, 18));
+        progressBar.setVisible(false);
+        statusPanel.add(progressBar);
+        
+        btnCancel = new JButton("Cancelar");
+        btnCancel.setFont(new Font("Segoe UI", Font.BOLD, 11));
+        btnCancel.setFocusPainted(false);
+        btnCancel.setVisible(false);
+        btnCancel.addActionListener(e -> cancelTransfer());
+        statusPanel.add(btnCancel);
+        
         // Agrega en la parte sur (abajo)
         mainPanel.add(statusPanel, BorderLayout.SOUTH);
         
@@ -341,19 +458,34 @@ public class ClientGUI extends JFrame {
         // Tabla de archivos
         // --------------------------------------------------------------------
         
-        // Define las columnas de la tabla
-        String[] columns = {"Nombre de Archivo"};
+        // --------------------------------------------------------------------
+        // Filtro y orden del listado
+        // --------------------------------------------------------------------
+        
+        JPanel filterPanel = new JPanel(new BorderLayout(5, 5));
+        filterPanel.setBackground(new Color(50, 50, 55));
         
-        // Crea el modelo de la tabla (controla los datos)
-        // Se sobreescribe isCellEditable para que las celdas no sean editables
-        tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;  // No permite editar celdas directamente
-            }
-        };
+        JLabel lblFilter = new JLabel("Filtro:");
+        lblFilter.setForeground(Color.WHITE);
+        filterPanel.add(lblFilter, BorderLayout.WEST);
         
-        // Crea la tabla con el modelo
+        // Al presionar Enter se vuelve a pedir la primera pagina (si el glob es valido)
+        txtFilter = new JTextField();
+        txtFilter.setToolTipText("Glob (ej: *.txt) o prefijo del nombre");
+        txtFilter.addActionListener(e -> applyFilter());
+        filterPanel.add(txtFilter, BorderLayout.CENTER);
+        
+        cmbSort = new JComboBox<>(new String[] {"Nombre", "Tamanio", "Fecha"});
+        cmbSort.addActionListener(e -> {
+            sortDescending = false;
+            refreshFileList();
+        });
+        filterPanel.add(cmbSort, BorderLayout.EAST);
+        
+        panel.add(filterPanel, BorderLayout.NORTH);
+        
+        // Crea la tabla con el modelo (las columnas las define el modelo
+        // y sus celdas no son editables)
         fileTable = new JTable(tableModel);
         fileTable.setFont(new Font("Consolas", Font.PLAIN, 12));
         fileTable.setRowHeight(25);  // Altura de cada fila
@@ -367,17 +499,35 @@ public class ClientGUI extends JFrame {
         fileTable.getTableHeader().setForeground(Color.WHITE);
         fileTable.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 12));
         
+        // Clic en el encabezado: ordena por esa columna (en el servidor);
+        // otro clic en la misma invierte el orden
+        fileTable.getTableHeader().addMouseListener(new java.awt.event.MouseAdapter() {
+            @Override
+            public void mouseClicked(java.awt.event.MouseEvent e) {
+                int column = fileTable.columnAtPoint(e.getPoint());
+                if (column < 0) return;
+                column = fileTable.convertColumnIndexToModel(column);
+                if (column == cmbSort.getSelectedIndex()) {
+                    sortDescending = !sortDescending;
+                    refreshFileList();
+                } else {
+                    cmbSort.setSelectedIndex(column);  // Su listener recarga en orden ascendente
+                }
+            }
+        });
+        
         // Agrega scroll a la tabla
         JScrollPane scrollPane = new JScrollPane(fileTable);
         scrollPane.getViewport().setBackground(new Color(40, 40, 45));
+
         panel.add(scrollPane, BorderLayout.CENTER);
         
         // --------------------------------------------------------------------
         // Panel de botones de operacion
         // --------------------------------------------------------------------
         
-        // GridLayout con 2 filas y 2 columnas
-        JPanel btnPanel = new JPanel(new GridLayout(2, 2, 5, 5));
+        // GridLayout con 4 filas y 2 columnas
+        JPanel btnPanel = new JPanel(new GridLayout(4, 2, 5, 5));
         btnPanel.setBackground(new Color(50, 50, 55));
         btnPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
         
@@ -413,11 +563,47 @@ public class ClientGUI extends JFrame {
         btnDelete.setFocusPainted(false);
         btnDelete.addActionListener(e -> deleteSelectedFile());
         
+        // Boton DESCARGAR - Guarda el archivo seleccionado en disco local
+        btnDownload = new JButton("Descargar");
+        btnDownload.setFont(new Font("Segoe UI", Font.BOLD, 11));
+        btnDownload.setBackground(new Color(23, 162, 184));  // Celeste
+        btnDownload.setForeground(Color.WHITE);
+        btnDownload.setFocusPainted(false);
+        btnDownload.addActionListener(e -> downloadSelectedFile());
+        
+        // Boton SUBIR - Envia un archivo local al servidor en trozos
+        btnUpload = new JButton("Subir");
+        btnUpload.setFont(new Font("Segoe UI", Font.BOLD, 11));
+        btnUpload.setBackground(new Color(111, 66, 193));  // Morado
+        btnUpload.setForeground(Color.WHITE);
+        btnUpload.setFocusPainted(false);
+        btnUpload.addActionListener(e -> uploadLocalFile());
+        
+        // Boton DESCARGAR CARPETA - Trae la carpeta seleccionada (o todo) con sus subcarpetas
+        btnDownloadFolder = new JButton("Descargar Carpeta");
+        btnDownloadFolder.setFont(new Font("Segoe UI", Font.BOLD, 11));
+        btnDownloadFolder.setBackground(new Color(23, 162, 184));  // Celeste
+        btnDownloadFolder.setForeground(Color.WHITE);
+        btnDownloadFolder.setFocusPainted(false);
+        btnDownloadFolder.addActionListener(e -> downloadSelectedFolder());
+        
+        // Boton SUBIR CARPETA - Envia una carpeta local con sus subcarpetas
+        btnUploadFolder = new JButton("Subir Carpeta");
+        btnUploadFolder.setFont(new Font("Segoe UI", Font.BOLD, 11));
+        btnUploadFolder.setBackground(new Color(111, 66, 193));  // Morado
+        btnUploadFolder.setForeground(Color.WHITE);
+        btnUploadFolder.setFocusPainted(false);
+        btnUploadFolder.addActionListener(e -> uploadLocalFolder());
+        
         // Agrega los botones al panel
         btnPanel.add(btnRefresh);
         btnPanel.add(btnOpen);
         btnPanel.add(btnCreate);
         btnPanel.add(btnDelete);
+        btnPanel.add(btnDownload);
+        btnPanel.add(btnUpload);
+        btnPanel.add(btnDownloadFolder);
+        btnPanel.add(btnUploadFolder);
         
         panel.add(btnPanel, BorderLayout.SOUTH);
         
@@ -502,6 +688,17 @@ public class ClientGUI extends JFrame {
         editorScroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
         editorPanel.add(editorScroll, BorderLayout.CENTER);
         
+        // Barra de posicion en el archivo: solo para archivos grandes, que
+        // se muestran de a una zona (la zona se carga al soltar la barra)
+        filePosition = new JScrollBar(JScrollBar.VERTICAL, 0, 0, 0, POSITION_STEPS);
+        filePosition.setVisible(false);
+        filePosition.addAdjustmentListener(e -> {
+            if (!e.getValueIsAdjusting() && pagedDocument != null) {
+                moveWindow((long) ((double) e.getValue() / POSITION_STEPS * pagedDocument.length()));
+            }
+        });
+        editorPanel.add(filePosition, BorderLayout.EAST);
+        
         // ====================================================================
         // PANEL DEL LOG
         // ====================================================================
@@ -560,6 +757,10 @@ public class ClientGUI extends JFrame {
         btnCreate.setEnabled(enabled);
         btnSave.setEnabled(enabled);
         btnDelete.setEnabled(enabled);
+        btnDownload.setEnabled(enabled && currentTransfer == null);
+        btnUpload.setEnabled(enabled && currentTransfer == null);
+        btnDownloadFolder.setEnabled(enabled && currentTransfer == null);
+        btnUploadFolder.setEnabled(enabled && currentTransfer == null);
         txtFileContent.setEnabled(enabled);
         txtFileName.setEnabled(enabled);
     }
@@ -572,29 +773,61 @@ public class ClientGUI extends JFrame {
      * Establece conexion con el servidor
      */
     private void connect() {
+        // Obtiene la IP del campo de texto
+        String ip = txtIP.getText().trim();
+        
+        // Obtiene el puerto y lo convierte a entero
+        int port;
         try {
-            // Obtiene la IP del campo de texto
-            String ip = txtIP.getText().trim();
-            
-            // Obtiene el puerto y lo convierte a entero
-            int port = Integer.parseInt(txtPort.getText().trim());
-            
-            log("[INFO] Conectando a " + ip + ":" + port + "...");
-            
-            // ================================================================
-            // CREAR EL SOCKET - Conexion al servidor
-            // ================================================================
-            // El constructor Socket(ip, port) intenta conectarse al servidor
-            // Si el servidor no esta disponible, lanza una excepcion
-            socket = new Socket(ip, port);
+            port = Integer.parseInt(txtPort.getText().trim());
+        } catch (NumberFormatException e) {
+            // Error si el puerto no es un numero
+            JOptionPane.showMessageDialog(this, "Puerto invalido", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        log("[INFO] Conectando a " + ip + ":" + port + "...");
+        
+        // Mientras se conecta, Desconectar sirve para abandonar el intento
+        btnConnect.setEnabled(false);
+        btnDisconnect.setEnabled(true);
+        txtIP.setEnabled(false);
+        txtPort.setEnabled(false);
+        lblStatus.setText("[ CONECTANDO ] " + ip + ":" + port);
+        
+        // ================================================================
+        // CREAR LA CONEXION - Socket y saludo del protocolo de tramas
+        // ================================================================
+        // El pool abre sus sockets en paralelo, cada uno en su hilo de red,
+        // y acuerda la version con el servidor; la ventana sigue respondiendo
+        ConnectionPool newPool = new ConnectionPool(SwingUtilities::invokeLater);
+        pool = newPool;
+        serverIP = ip;
+        serverPort = port;
+        sessionToken = null;
+        newPool.connect(ip, port).whenComplete((connection, error) -> {
+            if (newPool != pool) return;  // Se abandono el intento
             
-            // ================================================================
-            // CREAR STREAMS DE COMUNICACION
-            // ================================================================
-            // Estos streams permiten enviar y recibir objetos Java
-            // IMPORTANTE: Crear output ANTES que input
-            out = new ObjectOutputStream(socket.getOutputStream());
-            in = new ObjectInputStream(socket.getInputStream());
+            if (error != null) {
+                // Error de conexion (servidor no disponible, red caida, etc.)
+                pool = null;
+                newPool.close();
+                btnConnect.setEnabled(true);
+                btnDisconnect.setEnabled(false);
+                txtIP.setEnabled(true);
+                txtPort.setEnabled(true);
+                lblStatus.setText("[ DESCONECTADO ]");
+                log("[ERROR] Error de conexion: " + error.getMessage());
+                JOptionPane.showMessageDialog(this, 
+                    "No se pudo conectar al servidor.\n" +
+                    "Verifique que:\n" +
+                    "- El servidor este activo\n" +
+                    "- La IP y puerto sean correctos\n" +
+                    "- No haya firewall bloqueando\n\n" +
+                    "Error: " + error.getMessage(), 
+                    "Error de Conexion", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
             
             // Marca la conexion como activa
             isConnected = true;
@@ -603,37 +836,22 @@ public class ClientGUI extends JFrame {
             // ACTUALIZAR INTERFAZ
             // ================================================================
             
-            btnConnect.setEnabled(false);       // Deshabilita conectar
-            btnDisconnect.setEnabled(true);     // Habilita desconectar
-            txtIP.setEnabled(false);            // Deshabilita campos
-            txtPort.setEnabled(false);
             setOperationButtonsEnabled(true);   // Habilita botones de operacion
             
             // Cambia la barra de estado a verde
             statusPanel.setBackground(new Color(40, 167, 69));
             lblStatus.setText("[ CONECTADO ] " + ip + ":" + port);
             
-            log("[OK] Conexion establecida exitosamente");
+            log("[OK] Conexion establecida exitosamente (" + newPool.size() + " conexiones)");
+            Compression compression = connection.getCompression();
+            log("[INFO] Compresion: " + (compression != null ? compression.getName() : "ninguna"));
             
             // Actualiza automaticamente la lista de archivos
             refreshFileList();
             
-        } catch (NumberFormatException e) {
-            // Error si el puerto no es un numero
-            JOptionPane.showMessageDialog(this, "Puerto invalido", "Error", JOptionPane.ERROR_MESSAGE);
-            
-        } catch (IOException e) {
-            // Error de conexion (servidor no disponible, red caida, etc.)
-            log("[ERROR] Error de conexion: " + e.getMessage());
-            JOptionPane.showMessageDialog(this, 
-                "No se pudo conectar al servidor.\n" +
-                "Verifique que:\n" +
-                "- El servidor este activo\n" +
-                "- La IP y puerto sean correctos\n" +
-                "- No haya firewall bloqueando\n\n" +
-                "Error: " + e.getMessage(), 
-                "Error de Conexion", JOptionPane.ERROR_MESSAGE);
-        }
+            // A partir de aqui la tabla se actualiza sola con los cambios del servidor
+            subscribeToChanges(false);
+        });
     }
     
     // ============================================================================
@@ -644,28 +862,22 @@ public class ClientGUI extends JFrame {
      * Cierra la conexion con el servidor
      */
     private void disconnect() {
-        try {
-            if (isConnected) {
-                // Envia comando de desconexion al servidor
-                FileProtocol request = new FileProtocol(FileProtocol.CMD_DISCONNECT);
-                out.writeObject(request);
-                out.flush();
-            }
-        } catch (IOException e) {
-            // Ignorar errores al desconectar
-        }
-        
-        // Cierra los streams y el socket
-        try {
-            if (socket != null) socket.close();
-            if (in != null) in.close();
-            if (out != null) out.close();
-        } catch (IOException e) {
-            // Ignorar errores al cerrar
+        // Envia DISCONNECT y cierra el socket desde el hilo de red
+        // (si habia una transferencia en curso, se corta)
+        if (pool != null) {
+            pool.disconnect();
+            pool = null;
+            readCache.clear();  // Otra conexion puede ser a otro servidor
+            editorVersion = 0;
         }
+        closeEventConnection();
+        endTransfer();
+        dropInterruptedTransfer();
+        sessionToken = null;
         
-        // Actualiza el estado
+        // Actualiza el estado (tambien abandona una reconexion en curso)
         isConnected = false;
+        reconnecting = false;
         
         // Restaura la interfaz
         btnConnect.setEnabled(true);
@@ -679,8 +891,9 @@ public class ClientGUI extends JFrame {
         lblStatus.setText("[ DESCONECTADO ]");
         
         // Limpia la tabla y el editor
-        tableModel.setRowCount(0);  // Elimina todas las filas
+        tableModel.clear();  // Elimina todas las filas
         txtFileName.setText("");
+        closePagedDocument();
         txtFileContent.setText("");
         
         log("[INFO] Desconectado del servidor");
@@ -691,49 +904,231 @@ public class ClientGUI extends JFrame {
     // ============================================================================
     
     /**
-     * Solicita al servidor la lista de archivos y actualiza la tabla
+     * Aplica el filtro escrito, avisando si el glob esta mal formado
+     * (ej: "a[") en lugar de pedir paginas que el servidor rechazaria
+     */
+    private void applyFilter() {
+        String filter = txtFilter.getText().trim();
+        try {
+            RequestProcessor.nameFilter(filter);
+        } catch (IllegalArgumentException e) {
+            log("[ERROR] Filtro invalido: " + filter);
+            JOptionPane.showMessageDialog(this, "Filtro invalido: " + e.getMessage(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        refreshFileList();
+    }
+    
+    /**
+     * Vuelve a cargar la lista de archivos desde la primera pagina
+     * 
+     * Usa LISTPAGE con el filtro y el orden elegidos: el servidor filtra
+     * y ordena, y la tabla pide cada pagina recien cuando se va a mostrar
+     * (al bajar o al saltar con la barra de desplazamiento).
      */
     private void refreshFileList() {
         // Verifica que haya conexion
         if (!isConnected) return;
         
-        try {
-            // Crea solicitud de tipo LIST_FILES
-            FileProtocol request = new FileProtocol(FileProtocol.CMD_LIST_FILES);
-            
-            // Envia la solicitud al servidor
-            out.writeObject(request);
-            out.flush();  // Fuerza el envio inmediato
-            
-            // Espera y recibe la respuesta
-            FileProtocol response = (FileProtocol) in.readObject();
-            
-            // Verifica si la operacion fue exitosa
-            if (FileProtocol.RESP_OK.equals(response.getResponse())) {
-                // Limpia la tabla actual
-                tableModel.setRowCount(0);
-                
-                // Obtiene la lista de archivos
-                String[] files = response.getFileList();
-                
-                // Agrega cada archivo como una fila en la tabla
-                if (files != null) {
-                    for (String file : files) {
-                        tableModel.addRow(new Object[]{file});
-                    }
+        // Filtro y orden de este listado (no cambian aunque se edite el filtro)
+        String filter = txtFilter.getText().trim();
+        String sort = (sortDescending ? "-" : "") + SORT_KEYS[cmbSort.getSelectedIndex()];
+        ConnectionPool current = pool;
+        boolean[] first = {true};
+        
+        // Las paginas se piden con submit(): varias pueden viajar a la vez
+        // y la respuesta llega al EDT
+        tableModel.reset((cursor, count) -> {
+            AsyncClient.Task<FileProtocol> page = current.submit(pageRequest(filter, sort, cursor, count));
+            onResult(page, response -> {
+                if (!FileProtocol.RESP_OK.equals(response.getResponse())) {
+                    log("[ERROR] Error al obtener lista de archivos: " + response.getContent());
+                } else if (first[0]) {
+                    first[0] = false;
+                    log("[LISTAR] Lista de archivos actualizada (" + response.getLength() + " archivos)");
+                }
+            });
+            return page;
+        });
+    }
+    
+    // ============================================================================
+    // CAMBIOS DEL DIRECTORIO EN VIVO (SUBSCRIBE)
+    // ============================================================================
+    
+    /**
+     * Abre la conexion de eventos y se suscribe a los cambios del servidor
+     * 
+     * Usa una conexion aparte porque el servidor envia los eventos en
+     * cualquier momento, incluso en medio de una descarga en la principal.
+     * Si se cierra, se perdio la conexion con el servidor: se reconecta.
+     * 
+     * Al reconectar envia el token de la sesion anterior: si el servidor
+     * todavia la guarda, los cambios ocurridos mientras tanto llegan como
+     * eventos; si no, se recarga la lista.
+     * 
+     * @param reconnected true si se llama despues de reconectar
+     */
+    private void subscribeToChanges(boolean reconnected) {
+        ConnectionPool current = pool;
+        String ip = serverIP;
+        int port = serverPort;
+        String previous = sessionToken;
+        FileProtocol[] reply = new FileProtocol[1];
+        current.<ClientConnection>execute((connection, task) -> {
+            ClientConnection events = new ClientConnection(ip, port);
+            // Los eventos llegan en el hilo lector: la tabla se toca solo en el EDT
+            reply[0] = events.subscribe(previous, new ClientConnection.EventListener() {
+                @Override
+                public void onEvent(FileProtocol event) {
+                    SwingUtilities.invokeLater(() -> applyChangeEvent(events, event));
                 }
                 
-                log("[LISTAR] Lista de archivos actualizada (" + (files != null ? files.length : 0) + " archivos)");
+                @Override
+                public void onClosed(IOException cause) {
+                    SwingUtilities.invokeLater(() -> eventConnectionClosed(events, cause));
+                }
+            });
+            if (!FileProtocol.RESP_OK.equals(reply[0].getResponse())) {
+                events.close();
+                throw new IOException("el servidor no envia cambios (" + reply[0].getContent() + ")");
+            }
+            return events;
+        }).whenComplete((events, error) -> {
+            if (current != pool || !isConnected) {
+                // Se desconecto mientras se suscribia
+                if (events != null) events.close();
+            } else if (error != null) {
+                log("[AVISO] No se pudo suscribir a los cambios: " + error.getMessage() + ", use Actualizar");
+                if (reconnected) refreshFileList();
             } else {
-                log("[ERROR] Error al obtener lista de archivos");
+                eventConnection = events;
+                sessionToken = reply[0].getContent();
+                if (!reconnected) {
+                    log("[INFO] La lista de archivos se actualiza sola con los cambios del servidor");
+                } else if (reply[0].isLast()) {
+                    log("[INFO] Sesion retomada: llegan los cambios ocurridos durante el corte");
+                } else {
+                    log("[INFO] El servidor no guardaba la sesion, se recarga la lista");
+                    refreshFileList();
+                }
             }
-            
-        } catch (IOException | ClassNotFoundException e) {
-            log("[ERROR] Error de comunicacion: " + e.getMessage());
-            handleConnectionError();  // Maneja el error de conexion
+        });
+    }
+    
+    /**
+     * Se cerro la conexion de eventos: si no fue al desconectarse, el
+     * servidor o la red se cayeron y se intenta reconectar
+     * 
+     * @param source Conexion que se cerro
+     * @param cause Error que termino la lectura de eventos
+     */
+    private void eventConnectionClosed(ClientConnection source, IOException cause) {
+        if (source != eventConnection || !isConnected) return;
+        log("[ERROR] Se cerro la conexion de eventos: " + cause.getMessage());
+        handleConnectionError();
+    }
+    
+    /**
+     * Cierra la conexion de eventos (al desconectarse)
+     */
+    private void closeEventConnection() {
+        if (eventConnection != null) {
+            eventConnection.close();
+            eventConnection = null;
         }
     }
     
+    /**
+     * Aplica un evento del servidor a la tabla, sin volver a pedir la lista
+     * 
+     * Las filas de archivos modificados se actualizan en su lugar. Si se
+     * borraron archivos, aparecio uno que pasa el filtro o el orden depende
+     * de lo que cambio (tamanio o fecha), las filas se corren: las paginas
+     * cargadas quedan viejas y se vuelven a pedir las que se muestran.
+     * 
+     * @param source Conexion por la que llego (se ignora si ya se cerro)
+     * @param event Mensaje EVENT
+     */
+    private void applyChangeEvent(ClientConnection source, FileProtocol event) {
+        if (source != eventConnection || !isConnected) return;
+        
+        if (ChangeNotifier.RESYNC.equals(event.getContent())) {
+            log("[EVENTOS] Se perdieron cambios, se recarga la lista");
+            refreshFileList();
+            return;
+        }
+        
+        boolean shifted = event.getFileList() != null && event.getFileList().length > 0;
+        
+        FileEntry[] entries = event.getEntries();
+        if (entries != null) {
+            Predicate<String> filter = eventFilter(txtFilter.getText().trim());
+            boolean byName = "name".equals(SORT_KEYS[cmbSort.getSelectedIndex()]);
+            for (FileEntry entry : entries) {
+                if (tableModel.update(entry)) {
+                    shifted |= !byName;
+                } else if (filter.test(entry.getName())) {
+                    shifted = true;  // Nuevo, o en una pagina que no esta cargada
+                }
+            }
+        }
+        if (shifted) {
+            tableModel.invalidate();
+        }
+        
+        log("[EVENTOS] " + (entries != null ? entries.length : 0) + " creados/modificados, "
+            + (event.getFileList() != null ? event.getFileList().length : 0) + " borrados");
+    }
+    
+    /**
+     * Filtro para decidir si un archivo creado entra en la lista
+     * 
+     * Si el texto no es un glob valido (se edito sin presionar Enter) se
+     * usa como prefijo: los eventos llegan al EDT y no deben fallar.
+     * 
+     * @param pattern Texto del filtro
+     * @return Condicion a aplicar a cada nombre
+     */
+    private static Predicate<String> eventFilter(String pattern) {
+        try {
+            return RequestProcessor.nameFilter(pattern);
+        } catch (IllegalArgumentException e) {
+            return name -> name.startsWith(pattern);
+        }
+    }
+    
+    /**
+     * Crea la solicitud de una pagina: filtro, orden, cursor y tamanio
+     * 
+     * @param filter Glob o prefijo del nombre
+     * @param sort Clave de orden (con "-" adelante si es descendente)
+     * @param cursor Posicion del primer archivo de la pagina
+     * @param count Archivos de la pagina
+     * @return La peticion LISTPAGE
+     */
+    private static FileProtocol pageRequest(String filter, String sort, long cursor, int count) {
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_LIST_PAGE, filter);
+        request.setContent(sort);
+        request.setOffset(cursor);
+        request.setLength(count);
+        return request;
+    }
+    
+    /**
+     * Convierte un tamanio en bytes a texto legible (B, KB, MB, GB)
+     * 
+     * @param bytes Tamanio en bytes
+     * @return Texto con la unidad mas adecuada
+     */
+    static String formatSize(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return (bytes / 1024) + " KB";
+        if (bytes < 1024L * 1024 * 1024) return (bytes / (1024 * 1024)) + " MB";
+        return (bytes / (1024L * 1024 * 1024)) + " GB";
+    }
+    
     // ============================================================================
     // METODO PARA ABRIR UN ARCHIVO
     // ============================================================================
@@ -755,33 +1150,69 @@ public class ClientGUI extends JFrame {
         }
         
         // Obtiene el nombre del archivo de la tabla
-        String fileName = (String) tableModel.getValueAt(selectedRow, 0);
+        String fileName = tableModel.getName(selectedRow);
+        if (fileName == null) return;  // Su pagina todavia no llego
+        
+        // Pide tamanio y version (READRANGE del ultimo byte): los archivos
+        // grandes se abren por paginas en lugar de traerlos enteros
+        FileProtocol stat = new FileProtocol(FileProtocol.CMD_READ_RANGE, fileName);
+        stat.setLength(1);
+        stat.setLast(true);
+        onResult(pool.call(stat), info -> {
+            if (FileProtocol.RESP_OK.equals(info.getResponse()) && info.getLength() > EDITOR_FULL_MAX) {
+                openPagedFile(fileName, info.getLength(), info.getVersion());
+            } else {
+                readWholeFile(fileName);
+            }
+        });
+    }
+    
+    /**
+     * Abre un archivo trayendo todo su contenido con READ
+     * 
+     * @param fileName Nombre del archivo en el servidor
+     */
+    private void readWholeFile(String fileName) {
+        // Crea solicitud de lectura
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_READ_FILE, fileName);
+        
+        // Si hay copia local, se envian su fecha y tamanio: el servidor
+        // solo manda el contenido si el archivo cambio
+        ClientCache.Entry cached = readCache.get(fileName);
+        if (cached != null) {
+            request.setOffset(cached.modified);
+            request.setLength(cached.size);
+        }
         
-        try {
-            // Crea solicitud de lectura
-            FileProtocol request = new FileProtocol(FileProtocol.CMD_READ_FILE, fileName);
-            out.writeObject(request);
-            out.flush();
-            
-            // Recibe la respuesta
-            FileProtocol response = (FileProtocol) in.readObject();
-            
-            if (FileProtocol.RESP_OK.equals(response.getResponse())) {
+        // Envia la solicitud; la respuesta se muestra cuando llega
+        onResult(pool.call(request), response -> {
+            if (cached != null && FileProtocol.RESP_NOT_MODIFIED.equals(response.getResponse())) {
+                // Sin cambios: se muestra la copia local
+                txtFileName.setText(fileName);
+                closePagedDocument();
+                txtFileContent.setText(cached.content);
+                txtFileContent.setCaretPosition(0);
+                editorFile = fileName;
+                editorVersion = response.getVersion();
+                log("[LEER] Archivo abierto (sin cambios, copia local): " + fileName);
+            } else if (FileProtocol.RESP_OK.equals(response.getResponse())) {
+                // Guarda la copia con los datos de validacion del servidor
+                readCache.put(fileName, response.getOffset(), response.getLength(), response.getContent());
+                
                 // Muestra el nombre y contenido en el editor
                 txtFileName.setText(fileName);
+                closePagedDocument();
                 txtFileContent.setText(response.getContent());
                 txtFileContent.setCaretPosition(0);  // Mueve el cursor al inicio
+                editorFile = fileName;
+                editorVersion = response.getVersion();
                 log("[LEER] Archivo abierto: " + fileName);
             } else {
                 log("[ERROR] Error al abrir archivo: " + response.getContent());
                 JOptionPane.showMessageDialog(this, response.getContent(), 
                     "Error", JOptionPane.ERROR_MESSAGE);
             }
-            
-        } catch (IOException | ClassNotFoundException e) {
-            log("[ERROR] Error de comunicacion: " + e.getMessage());
-            handleConnectionError();
-        }
+        });
     }
     
     // ============================================================================
@@ -803,7 +1234,10 @@ public class ClientGUI extends JFrame {
         if (fileName != null && !fileName.trim().isEmpty()) {
             // Muestra el nombre en el editor y limpia el contenido
             txtFileName.setText(fileName.trim());
+            closePagedDocument();
             txtFileContent.setText("");
+            editorFile = null;
+            editorVersion = 0;
             log("[CREAR] Preparado para crear nuevo archivo: " + fileName);
         }
     }
@@ -827,49 +1261,311 @@ public class ClientGUI extends JFrame {
             return;
         }
         
+        // Archivo grande abierto por paginas: solo se envian las zonas editadas
+        if (pagedDocument != null) {
+            savePagedFile(fileName);
+            return;
+        }
+        
         // Obtiene el contenido del editor
         String content = txtFileContent.getText();
         
-        try {
-            // Verifica si el archivo ya existe en la lista
-            boolean exists = false;
-            for (int i = 0; i < tableModel.getRowCount(); i++) {
-                if (fileName.equals(tableModel.getValueAt(i, 0))) {
-                    exists = true;
-                    break;
+        // Verifica si el archivo ya existe en la lista
+        boolean exists = tableModel.indexOf(fileName) >= 0;
+        
+        // Version leida al abrir: el servidor rechaza el guardado si otro
+        // cliente escribio el archivo despues (0 = guardar sin comprobar)
+        long expectedVersion = exists && fileName.equals(editorFile) ? editorVersion : 0;
+        
+        // No se guarda otra vez hasta que llegue la respuesta
+        btnSave.setEnabled(false);
+        
+        // Archivos grandes ya existentes: solo se envian los bloques cambiados
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (exists && bytes.length >= DELTA_MIN_SIZE) {
+            onResult(pool.modifyDelta(fileName, bytes, expectedVersion), response -> {
+                if (!FileProtocol.RESP_OK.equals(response.getResponse())
+                        && !FileProtocol.RESP_CONFLICT.equals(response.getResponse())) {
+                    log("[AVISO] No se pudo guardar por bloques (" + response.getContent() 
+                        + "), se envia el archivo completo");
+                    sendFullContent(fileName, content, exists, expectedVersion);
+                } else {
+                    saveFinished(fileName, content, exists, response);
                 }
+            });
+        } else {
+            sendFullContent(fileName, content, exists, expectedVersion);
+        }
+    }
+    
+    /**
+     * Guarda el archivo enviando el contenido completo
+     * 
+     * @param fileName Nombre del archivo
+     * @param content Contenido del editor
+     * @param exists true si el archivo ya estaba en la lista (MODIFY), false si es nuevo (CREATE)
+     * @param expectedVersion Version abierta en el editor (0 = sin comprobar)
+     */
+    private void sendFullContent(String fileName, String content, boolean exists, long expectedVersion) {
+        // Elige el comando segun si existe o no
+        // MODIFY_FILE para archivos existentes, CREATE_FILE para nuevos
+        String command = exists ? FileProtocol.CMD_MODIFY_FILE : FileProtocol.CMD_CREATE_FILE;
+        
+        // Crea y envia la solicitud con el contenido completo
+        FileProtocol request = new FileProtocol(command, fileName, content);
+        if (exists) {
+            request.setVersion(expectedVersion);
+        }
+        onResult(pool.call(request), response -> saveFinished(fileName, content, exists, response));
+    }
+    
+    /**
+     * Muestra el resultado de un guardado (o pregunta si hubo conflicto)
+     * 
+     * @param fileName Nombre del archivo
+     * @param content Contenido que se intento guardar
+     * @param exists true si era un archivo existente
+     * @param response Respuesta del servidor
+     */
+    private void saveFinished(String fileName, String content, boolean exists, FileProtocol response) {
+        if (FileProtocol.RESP_CONFLICT.equals(response.getResponse())) {
+            // Otro cliente guardo el archivo despues de que se abrio aqui
+            log("[CONFLICTO] " + fileName + " fue modificado por otro cliente");
+            int choice = JOptionPane.showConfirmDialog(this,
+                "Otro cliente modifico \"" + fileName + "\" despues de que lo abrio.\n"
+                + "Desea sobrescribir esos cambios con los suyos?",
+                "Conflicto", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (choice != JOptionPane.YES_OPTION) {
+                readCache.invalidate(fileName);
+                btnSave.setEnabled(isConnected);
+                log("[CONFLICTO] Guardado cancelado: " + fileName);
+                return;
             }
-            
-            // Elige el comando segun si existe o no
-            // MODIFY_FILE para archivos existentes, CREATE_FILE para nuevos
-            String command = exists ? FileProtocol.CMD_MODIFY_FILE : FileProtocol.CMD_CREATE_FILE;
-            
-            // Crea y envia la solicitud
-            FileProtocol request = new FileProtocol(command, fileName, content);
-            out.writeObject(request);
-            out.flush();
-            
-            // Recibe la respuesta
-            FileProtocol response = (FileProtocol) in.readObject();
-            
+            // Sobrescribe solo la version que se acaba de ver en el conflicto
+            FileProtocol request = new FileProtocol(FileProtocol.CMD_MODIFY_FILE, fileName, content);
+            request.setVersion(response.getVersion());
+            onResult(pool.call(request), retry -> saveFinished(fileName, content, exists, retry));
+            return;
+        }
+        
+        // La copia local ya no corresponde (aunque el guardado falle a medias)
+        readCache.invalidate(fileName);
+        btnSave.setEnabled(isConnected);
+        
+        if (FileProtocol.RESP_OK.equals(response.getResponse())) {
+            editorFile = fileName;
+            editorVersion = response.getVersion();
+            log("[GUARDAR] Archivo guardado: " + fileName);
+            JOptionPane.showMessageDialog(this, 
+                exists ? "Archivo modificado exitosamente" : "Archivo creado exitosamente", 
+                "Exito", JOptionPane.INFORMATION_MESSAGE);
+                
+            // Actualiza la lista de archivos
+            refreshFileList();
+        } else {
+            log("[ERROR] Error al guardar: " + response.getContent());
+            JOptionPane.showMessageDialog(this, response.getContent(), 
+                "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    // ============================================================================
+    // ARCHIVOS GRANDES (POR PAGINAS)
+    // ============================================================================
+    
+    /**
+     * Abre un archivo grande sin traerlo entero
+     * 
+     * El editor muestra una zona de WINDOW_BYTES (cortada en limites de
+     * linea) y la barra de la derecha elige que zona. PagedDocument trae
+     * solo las paginas necesarias y guarda las ediciones de cada zona.
+     * 
+     * @param fileName Nombre del archivo en el servidor
+     * @param size Tamanio del archivo
+     * @param version Version del archivo
+     */
+    private void openPagedFile(String fileName, long size, long version) {
+        ConnectionPool current = pool;
+        filePosition.setValue(0);  // Antes de abrirlo: no dispara una carga
+        pagedDocument = new PagedDocument(fileName, size, version, (offset, count, expected) -> {
+            FileProtocol request = new FileProtocol(FileProtocol.CMD_READ_RANGE, fileName);
+            request.setOffset(offset);
+            request.setLength(count);
+            return current.submit(request).thenApply(response -> {
+                // No son errores de red: se informan sin reconectar (ver moveWindow)
+                if (!FileProtocol.RESP_OK.equals(response.getResponse())) {
+                    throw new IllegalStateException(response.getContent());
+                }
+                if (response.getVersion() != expected) {
+                    throw new IllegalStateException("El archivo cambio en el servidor, vuelva a abrirlo");
+                }
+                return response.getData();
+            });
+        });
+        windowBytes = null;
+        windowText = null;
+        txtFileName.setText(fileName);
+        editorFile = fileName;
+        editorVersion = version;
+        filePosition.setVisible(true);
+        log("[LEER] Archivo grande (" + formatSize(size) + "): se abre por zonas de " + formatSize(WINDOW_BYTES));
+        moveWindow(0);
+    }
+    
+    /**
+     * Guarda las ediciones de la zona actual y muestra la que empieza en offset
+     * 
+     * @param offset Byte del documento desde donde mostrar
+     */
+    private void moveWindow(long offset) {
+        PagedDocument document = pagedDocument;
+        commitWindow();
+        long start = Math.max(0, Math.min(offset, document.length() - 1));
+        
+        // Mientras llega la zona no se edita (se perderia al reemplazarla)
+        txtFileContent.setEditable(false);
+        
+        // Unos bytes de mas al final para completar el ultimo caracter
+        CompletableFuture<byte[]> zone = document.read(start, WINDOW_BYTES + 3).exceptionally(error -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (!(cause instanceof IllegalStateException)) {
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }
+            if (document == pagedDocument) {
+                txtFileContent.setEditable(true);
+                log("[ERROR] No se pudo leer la zona: " + cause.getMessage());
+                JOptionPane.showMessageDialog(this, cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            }
+            return null;
+        });
+        onResult(zone, bytes -> {
+            if (bytes == null || document != pagedDocument) return;  // Fallo, o se abrio otro archivo
+            boolean atEnd = start + bytes.length >= document.length();
+            int from = start == 0 ? 0 : lineStart(bytes);
+            int to = atEnd ? bytes.length : lineEnd(bytes, from);
+            windowStart = start + from;
+            windowBytes = Arrays.copyOfRange(bytes, from, to);
+            windowText = new String(windowBytes, StandardCharsets.UTF_8);
+            txtFileContent.setText(windowText);
+            txtFileContent.setCaretPosition(0);
+            txtFileContent.setEditable(true);
+            filePosition.setToolTipText("Bytes " + windowStart + " a " + (windowStart + windowBytes.length) 
+                + " de " + document.length());
+        });
+    }
+    
+    /**
+     * Pasa al documento lo que se edito en la zona mostrada
+     */
+    private void commitWindow() {
+        if (pagedDocument == null || windowText == null) return;
+        String text = txtFileContent.getText();
+        if (text.equals(windowText)) return;
+        byte[] edited = text.getBytes(StandardCharsets.UTF_8);
+        pagedDocument.replaceChanged(windowStart, windowBytes, edited);
+        windowBytes = edited;
+        windowText = text;
+    }
+    
+    /**
+     * Primer byte despues del primer salto de linea de la zona (si no hay,
+     * el primer byte que empieza un caracter UTF-8)
+     */
+    private static int lineStart(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        int i = 0;
+        while (i < bytes.length && (bytes[i] & 0xC0) == 0x80) {
+            i++;
+        }
+        return i;
+    }
+    
+    /**
+     * Fin de la zona: despues del ultimo salto de linea dentro de
+     * WINDOW_BYTES (si no hay, antes del caracter UTF-8 que queda cortado)
+     */
+    private static int lineEnd(byte[] bytes, int from) {
+        int limit = Math.min(bytes.length, from + WINDOW_BYTES);
+        for (int i = limit - 1; i >= from; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        int i = limit;
+        while (i > from && i < bytes.length && (bytes[i] & 0xC0) == 0x80) {
+            i--;
+        }
+        return i;
+    }
+    
+    /**
+     * Guarda un archivo grande enviando solo las zonas editadas (MODIFYDELTA
+     * con rangos del archivo actual y los bytes nuevos)
+     * 
+     * @param fileName Nombre en el editor (debe ser el del archivo abierto)
+     */
+    private void savePagedFile(String fileName) {
+        PagedDocument document = pagedDocument;
+        if (!fileName.equals(document.getFileName())) {
+            JOptionPane.showMessageDialog(this, 
+                "Un archivo grande solo se puede guardar con su nombre: " + document.getFileName(), 
+                "Aviso", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        commitWindow();
+        if (!document.isModified()) {
+            log("[GUARDAR] Sin cambios: " + fileName);
+            return;
+        }
+        
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_MODIFY_DELTA, fileName);
+        request.setData(document.delta());
+        request.setOffset(DeltaSync.DEFAULT_BLOCK_SIZE);
+        request.setLength(document.getBaseSize());
+        request.setVersion(document.getVersion());
+        long changed = document.getChangedBytes();
+        btnSave.setEnabled(false);
+        
+        onResult(pool.call(request), response -> {
+            btnSave.setEnabled(isConnected);
             if (FileProtocol.RESP_OK.equals(response.getResponse())) {
-                log("[GUARDAR] Archivo guardado: " + fileName);
-                JOptionPane.showMessageDialog(this, 
-                    exists ? "Archivo modificado exitosamente" : "Archivo creado exitosamente", 
-                    "Exito", JOptionPane.INFORMATION_MESSAGE);
-                    
-                // Actualiza la lista de archivos
+                if (document == pagedDocument) {
+                    // La zona mostrada ya es parte del archivo guardado
+                    document.saved(response.getLength(), response.getVersion());
+                    editorVersion = response.getVersion();
+                }
+                readCache.invalidate(fileName);
+                log("[GUARDAR] Archivo guardado: " + fileName + " (" + formatSize(changed) 
+                    + " nuevos, " + formatSize(request.getData().length) + " enviados)");
                 refreshFileList();
+            } else if (FileProtocol.RESP_CONFLICT.equals(response.getResponse())) {
+                // Las zonas sin editar se copiaban del archivo que se abrio: no se puede sobrescribir
+                log("[CONFLICTO] " + fileName + " fue modificado por otro cliente");
+                JOptionPane.showMessageDialog(this,
+                    "Otro cliente modifico \"" + fileName + "\" despues de que lo abrio.\n"
+                    + "Sus cambios no se guardaron: copielos y vuelva a abrir el archivo.",
+                    "Conflicto", JOptionPane.WARNING_MESSAGE);
             } else {
                 log("[ERROR] Error al guardar: " + response.getContent());
                 JOptionPane.showMessageDialog(this, response.getContent(), 
                     "Error", JOptionPane.ERROR_MESSAGE);
             }
-            
-        } catch (IOException | ClassNotFoundException e) {
-            log("[ERROR] Error de comunicacion: " + e.getMessage());
-            handleConnectionError();
-        }
+        });
+    }
+    
+    /**
+     * Sale del modo por paginas (se abrio otro archivo o se limpio el editor)
+     */
+    private void closePagedDocument() {
+        pagedDocument = null;
+        windowBytes = null;
+        windowText = null;
+        filePosition.setVisible(false);
+        txtFileContent.setEditable(true);
     }
     
     // ============================================================================
@@ -877,22 +1573,29 @@ public class ClientGUI extends JFrame {
     // ============================================================================
     
     /**
-     * Elimina el archivo seleccionado del servidor
+     * Elimina el archivo (o los archivos) seleccionados del servidor
      */
     private void deleteSelectedFile() {
         if (!isConnected) return;
         
-        // Obtiene la fila seleccionada
-        int selectedRow = fileTable.getSelectedRow();
+        // Obtiene las filas seleccionadas (la tabla admite seleccion multiple)
+        int[] selectedRows = fileTable.getSelectedRows();
         
-        if (selectedRow == -1) {
+        if (selectedRows.length == 0) {
             JOptionPane.showMessageDialog(this, "Seleccione un archivo para eliminar", 
                 "Aviso", JOptionPane.WARNING_MESSAGE);
             return;
         }
         
+        // Varios archivos: se borran todos en un solo BATCH
+        if (selectedRows.length > 1) {
+            deleteSelectedFiles(selectedRows);
+            return;
+        }
+        
         // Obtiene el nombre del archivo
-        String fileName = (String) tableModel.getValueAt(selectedRow, 0);
+        String fileName = tableModel.getName(selectedRows[0]);
+        if (fileName == null) return;  // Su pagina todavia no llego
         
         // Pide confirmacion al usuario
         int confirm = JOptionPane.showConfirmDialog(this, 
@@ -902,21 +1605,18 @@ public class ClientGUI extends JFrame {
         // Si no confirmo, cancela la operacion
         if (confirm != JOptionPane.YES_OPTION) return;
         
-        try {
-            // Crea y envia solicitud de eliminacion
-            FileProtocol request = new FileProtocol(FileProtocol.CMD_DELETE_FILE, fileName);
-            out.writeObject(request);
-            out.flush();
-            
-            // Recibe la respuesta
-            FileProtocol response = (FileProtocol) in.readObject();
-            
+        // Crea y envia solicitud de eliminacion
+        FileProtocol request = new FileProtocol(FileProtocol.CMD_DELETE_FILE, fileName);
+        
+        onResult(pool.call(request), response -> {
             if (FileProtocol.RESP_OK.equals(response.getResponse())) {
+                readCache.invalidate(fileName);
                 log("[ELIMINAR] Archivo eliminado: " + fileName);
                 
                 // Si el archivo eliminado estaba abierto en el editor, lo limpia
                 if (fileName.equals(txtFileName.getText())) {
                     txtFileName.setText("");
+                    closePagedDocument();
                     txtFileContent.setText("");
                 }
                 
@@ -930,24 +1630,513 @@ public class ClientGUI extends JFrame {
                 JOptionPane.showMessageDialog(this, response.getContent(), 
                     "Error", JOptionPane.ERROR_MESSAGE);
             }
+        });
+    }
+    
+    /**
+     * Elimina varios archivos con un solo BATCH
+     * 
+     * Todos los DELETE viajan en una trama y el servidor los ejecuta en
+     * paralelo (son archivos distintos): cuesta un viaje de red en lugar
+     * de uno por archivo.
+     * 
+     * @param selectedRows Filas seleccionadas en la tabla
+     */
+    private void deleteSelectedFiles(int[] selectedRows) {
+        int confirm = JOptionPane.showConfirmDialog(this, 
+            "Esta seguro de eliminar " + selectedRows.length + " archivos?", 
+            "Confirmar Eliminacion", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+        if (confirm != JOptionPane.YES_OPTION) return;
+        
+        FileProtocol[] items = new FileProtocol[selectedRows.length];
+        for (int i = 0; i < selectedRows.length; i++) {
+            String fileName = tableModel.getName(selectedRows[i]);
+            if (fileName == null) {
+                log("[AVISO] Hay filas seleccionadas que todavia no se cargaron");
+                return;
+            }
+            items[i] = new FileProtocol(FileProtocol.CMD_DELETE_FILE, fileName);
+        }
+        
+        onResult(pool.batch(items, FileProtocol.BATCH_PARALLEL), response -> {
+            FileProtocol[] results = response.getItems();
+            
+            // Informa cada archivo que no se pudo eliminar
+            for (int i = 0; results != null && i < results.length; i++) {
+                String fileName = items[i].getFileName();
+                if (FileProtocol.RESP_OK.equals(results[i].getResponse())) {
+                    readCache.invalidate(fileName);
+                    if (fileName.equals(txtFileName.getText())) {
+                        txtFileName.setText("");
+                        closePagedDocument();
+                        txtFileContent.setText("");
+                    }
+                } else {
+                    log("[ERROR] Error al eliminar " + fileName + ": " + results[i].getContent());
+                }
+            }
+            log("[ELIMINAR] " + response.getContent());
+            
+            refreshFileList();
             
-        } catch (IOException | ClassNotFoundException e) {
-            log("[ERROR] Error de comunicacion: " + e.getMessage());
-            handleConnectionError();
+            JOptionPane.showMessageDialog(this, response.getContent(), "Eliminar", 
+                FileProtocol.RESP_OK.equals(response.getResponse())
+                    ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+        });
+    }
+    
+    // ============================================================================
+    // METODO PARA DESCARGAR UN ARCHIVO
+    // ============================================================================
+    
+    /**
+     * Descarga el archivo seleccionado a disco local usando DOWNLOAD
+     * 
+     * El servidor envia una cabecera con el tamanio y luego los bytes
+     * crudos del archivo (con sendfile en el motor NIO). Los bytes se
+     * escriben directo al archivo local, por lo que la memoria usada
+     * no depende del tamanio del archivo. Los archivos grandes se piden
+     * por rangos en varias conexiones del pool a la vez.
+     */
+    private void downloadSelectedFile() {
+        if (!isConnected) return;
+        
+        int selectedRow = fileTable.getSelectedRow();
+        if (selectedRow == -1) {
+            JOptionPane.showMessageDialog(this, "Seleccione un archivo para descargar", 
+                "Aviso", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        String fileName = tableModel.getName(selectedRow);
+        if (fileName == null) return;  // Su pagina todavia no llego
+        
+        // Pide al usuario donde guardar el archivo
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File(fileName));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File target = chooser.getSelectedFile();
+        
+        log("[DESCARGAR] Descargando " + fileName + " en " + target.getAbsolutePath());
+        startDownload(new ConnectionPool.PartialDownload(fileName, target), System.currentTimeMillis());
+    }
+    
+    /**
+     * Inicia o retoma una descarga
+     * 
+     * Si se corta la red, el archivo a medias queda en disco: al reconectar
+     * se piden solo los segmentos que faltan.
+     * 
+     * @param partial Archivo a descargar y segmentos ya recibidos
+     * @param start Hora de inicio de la descarga (para el log)
+     */
+    private void startDownload(ConnectionPool.PartialDownload partial, long start) {
+        // Los archivos grandes se piden por partes en varias conexiones a la vez
+        CompletableFuture<FileProtocol> task = pool.downloadParallel(partial, this::showProgress);
+        startTransfer(task, "Descargando " + partial.getFileName(), () -> {
+            log("[DESCARGAR] Retomando " + partial.getFileName() + " (" 
+                + formatSize(partial.getReceived()) + " ya recibidos)");
+            startDownload(partial, start);
+        }, partial::discard);
+        onResult(task, result -> {
+            if (FileProtocol.RESP_OK.equals(result.getResponse())) {
+                log("[OK] Descarga completa: " + result.getLength() + " bytes en " 
+                    + (System.currentTimeMillis() - start) + " ms");
+            } else {
+                log("[ERROR] Error al descargar: " + result.getContent());
+                JOptionPane.showMessageDialog(this, result.getContent(), 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+    
+    // ============================================================================
+    // METODO PARA SUBIR UN ARCHIVO
+    // ============================================================================
+    
+    /**
+     * Sube un archivo local al servidor en trozos
+     * 
+     * Si se pierde la conexion, al reconectar se retoma sola: el servidor
+     * continua desde el ultimo trozo que confirmo. Lo mismo ocurre si se
+     * vuelve a subir el archivo despues de una subida que no termino.
+     */
+    private void uploadLocalFile() {
+        if (!isConnected) return;
+        
+        // Pide al usuario el archivo a subir
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File source = chooser.getSelectedFile();
+        String fileName = source.getName();
+        
+        log("[SUBIR] Subiendo " + source.getAbsolutePath() + " como " + fileName);
+        startUpload(source, fileName, System.currentTimeMillis());
+    }
+    
+    /**
+     * Inicia o retoma una subida (el servidor indica desde que byte seguir)
+     * 
+     * @param source Archivo local
+     * @param fileName Nombre del archivo en el servidor
+     * @param start Hora de inicio de la subida (para el log)
+     */
+    private void startUpload(File source, String fileName, long start) {
+        AsyncClient.Task<FileProtocol> task = pool.upload(source, fileName, this::showProgress);
+        startTransfer(task, "Subiendo " + fileName, () -> {
+            log("[SUBIR] Retomando la subida de " + fileName);
+            startUpload(source, fileName, start);
+        }, null);
+        onResult(task, result -> {
+            if (FileProtocol.RESP_OK.equals(result.getResponse())) {
+                log("[OK] Subida completa: " + result.getOffset() + " bytes en " 
+                    + (System.currentTimeMillis() - start) + " ms");
+                refreshFileList();
+            } else {
+                log("[ERROR] Error al subir: " + result.getContent());
+                JOptionPane.showMessageDialog(this, result.getContent(), 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+    
+    // ============================================================================
+    // METODOS PARA DESCARGAR Y SUBIR CARPETAS
+    // ============================================================================
+    
+    /**
+     * Descarga la carpeta seleccionada (o todo el directorio del servidor,
+     * si no hay ninguna seleccionada) en una carpeta local
+     */
+    private void downloadSelectedFolder() {
+        if (!isConnected) return;
+        
+        // Sin seleccion se descarga todo; con seleccion debe ser una carpeta
+        String folder = null;
+        int selectedRow = fileTable.getSelectedRow();
+        if (selectedRow != -1) {
+            folder = tableModel.getName(selectedRow);
+            if (folder == null) return;  // Su pagina todavia no llego
+            if (!tableModel.isDirectory(selectedRow)) {
+                JOptionPane.showMessageDialog(this, "Seleccione una carpeta (o ninguna fila para descargar todo)", 
+                    "Aviso", JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+        }
+        
+        // Pide al usuario donde dejarla
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle("Carpeta local de destino");
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File target = folder != null ? new File(chooser.getSelectedFile(), folder) : chooser.getSelectedFile();
+        
+        log("[DESCARGAR] Descargando la carpeta " + (folder != null ? folder : "del servidor") 
+            + " en " + target.getAbsolutePath());
+        startFolderTransfer(BulkTransfer.DOWNLOAD, target, folder, System.currentTimeMillis());
+    }
+    
+    /**
+     * Sube una carpeta local, con sus subcarpetas, a una carpeta del
+     * servidor con el mismo nombre
+     */
+    private void uploadLocalFolder() {
+        if (!isConnected) return;
+        
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle("Carpeta local a subir");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        File source = chooser.getSelectedFile();
+        String folder = source.getName();
+        if (folder.isEmpty() || folder.startsWith(".")) {
+            JOptionPane.showMessageDialog(this, "El servidor no acepta carpetas ocultas ni la raiz de un disco", 
+                "Aviso", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        log("[SUBIR] Subiendo la carpeta " + source.getAbsolutePath() + " como " + folder);
+        startFolderTransfer(BulkTransfer.UPLOAD, source, folder, System.currentTimeMillis());
+    }
+    
+    /**
+     * Arranca (o retoma) la transferencia de una carpeta
+     * 
+     * Retomar es volver a empezar: los archivos que ya llegaron iguales se
+     * omiten y una subida cortada sigue desde lo que confirmo el servidor.
+     * 
+     * @param direction BulkTransfer.UPLOAD o BulkTransfer.DOWNLOAD
+     * @param local Carpeta local
+     * @param remote Carpeta en el servidor (null = todo, solo al descargar)
+     * @param start Hora de inicio (para informar la duracion total)
+     */
+    private void startFolderTransfer(int direction, File local, String remote, long start) {
+        boolean upload = direction == BulkTransfer.UPLOAD;
+        BulkTransfer task = upload
+            ? BulkTransfer.upload(pool, local, remote, this::showFolderProgress)
+            : BulkTransfer.download(pool, remote, local, this::showFolderProgress);
+        String description = (upload ? "Subiendo " : "Descargando ") + (remote != null ? remote : "todo");
+        startTransfer(task, description + " (armando la lista)", () -> {
+            log("[" + (upload ? "SUBIR" : "DESCARGAR") + "] Retomando la carpeta " + (remote != null ? remote : "del servidor"));
+            startFolderTransfer(direction, local, remote, start);
+        }, null);
+        onResult(task, result -> {
+            long elapsed = System.currentTimeMillis() - start;
+            if (FileProtocol.RESP_OK.equals(result.getResponse())) {
+                log("[OK] Carpeta " + (upload ? "subida" : "descargada") + ": " + result.getContent() 
+                    + " (" + formatSize(result.getLength()) + " en " + elapsed + " ms)");
+            } else {
+                log("[ERROR] Error al transferir la carpeta: " + result.getContent());
+                String[] failed = result.getFileList() != null ? result.getFileList() : new String[0];
+                for (String failure : failed) {
+                    log("[ERROR]   " + failure);
+                }
+                JOptionPane.showMessageDialog(this, result.getContent(), 
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+    
+    /**
+     * Muestra archivos, bytes, velocidad y tiempo restante de una
+     * transferencia de carpetas (llega al EDT desde BulkTransfer)
+     * 
+     * @param progress Estado de la transferencia
+     */
+    private void showFolderProgress(BulkTransfer.Progress progress) {
+        long total = progress.getTotalBytes();
+        progressBar.setValue(total > 0 ? (int) Math.min(100, progress.getBytesDone() * 100 / total) : 0);
+        StringBuilder text = new StringBuilder();
+        text.append(progress.getFilesDone()).append(" de ").append(progress.getTotalFiles()).append(" archivos - ")
+            .append(formatSize(progress.getBytesDone())).append(" de ").append(formatSize(total));
+        if (progress.getBytesPerSecond() > 0) {
+            text.append(" - ").append(formatSize(progress.getBytesPerSecond())).append("/s");
+        }
+        if (progress.getEtaMillis() >= 0) {
+            text.append(" - quedan ").append(formatDuration(progress.getEtaMillis()));
+        }
+        progressBar.setString(text.toString());
+    }
+    
+    /**
+     * Convierte una duracion en texto legible (h, min, s)
+     * 
+     * @param millis Duracion en milisegundos
+     * @return Texto con las dos unidades mas grandes
+     */
+    private static String formatDuration(long millis) {
+        long seconds = (millis + 999) / 1000;
+        if (seconds < 60) return seconds + " s";
+        if (seconds < 3600) return (seconds / 60) + " min " + (seconds % 60) + " s";
+        return (seconds / 3600) + " h " + (seconds % 3600 / 60) + " min";
+    }
+    
+    // ============================================================================
+    // AVANCE Y CANCELACION DE TRANSFERENCIAS
+    // ============================================================================
+    
+    /**
+     * Muestra la barra de avance y el boton Cancelar mientras dura una transferencia
+     * 
+     * @param task Descarga o subida en curso
+     * @param description Texto inicial de la barra
+     * @param resume Retoma la transferencia si la corta la red
+     * @param abandon Limpia lo transferido si no se retoma (puede ser null)
+     */
+    private void startTransfer(CompletableFuture<FileProtocol> task, String description,
+            Runnable resume, Runnable abandon) {
+        currentTransfer = task;
+        transferCancelled = false;
+        btnDownload.setEnabled(false);
+        btnUpload.setEnabled(false);
+        btnDownloadFolder.setEnabled(false);
+        btnUploadFolder.setEnabled(false);
+        progressBar.setValue(0);
+        progressBar.setString(description);
+        progressBar.setVisible(true);
+        btnCancel.setVisible(true);
+        statusPanel.revalidate();
+        
+        // Al terminar de cualquier forma (exito, error o cancelacion), en el EDT
+        task.whenComplete((result, error) -> {
+            if (currentTransfer == task) {
+                if (error != null && !transferCancelled && isConnectionFailure(error) 
+                        && transferResumes < MAX_RESUMES) {
+                    // Se corto la conexion (o la cerro la reconexion): se retoma al reconectar
+                    transferResumes++;
+                    interruptedTransfer = resume;
+                    abandonTransfer = abandon;
+                    // Si la reconexion ya termino (la parte cortada tardo en salir), se retoma ahora
+                    SwingUtilities.invokeLater(this::resumeInterruptedTransfer);
+                } else {
+                    // Termino, se cancelo, fallo algo local o se agotaron los reintentos
+                    if (error != null && !transferCancelled && transferResumes >= MAX_RESUMES 
+                            && isConnectionFailure(error)) {
+                        log("[ERROR] La transferencia se corto " + (transferResumes + 1) + " veces, se abandona");
+                    }
+                    if (error != null && abandon != null) {
+                        abandon.run();
+                    }
+                    transferResumes = 0;
+                }
+                endTransfer();
+            }
+        });
+    }
+    
+    /**
+     * Actualiza la barra con los bytes transferidos (llega al EDT desde AsyncClient)
+     * 
+     * @param done Bytes transferidos
+     * @param total Bytes totales
+     */
+    private void showProgress(long done, long total) {
+        progressBar.setValue(total > 0 ? (int) (done * 100 / total) : 100);
+        progressBar.setString(formatSize(done) + " de " + formatSize(total));
+    }
+    
+    /**
+     * Cancela la descarga o subida en curso (boton Cancelar)
+     */
+    private void cancelTransfer() {
+        transferCancelled = true;
+        if (currentTransfer != null && currentTransfer.cancel(false)) {
+            log("[INFO] Transferencia cancelada");
         }
     }
     
+    /**
+     * Oculta la barra de avance y vuelve a habilitar las transferencias
+     */
+    private void endTransfer() {
+        currentTransfer = null;
+        progressBar.setVisible(false);
+        btnCancel.setVisible(false);
+        statusPanel.revalidate();
+        btnDownload.setEnabled(isConnected);
+        btnUpload.setEnabled(isConnected);
+        btnDownloadFolder.setEnabled(isConnected);
+        btnUploadFolder.setEnabled(isConnected);
+    }
+    
+    /**
+     * Descarta la transferencia cortada que esperaba la reconexion
+     */
+    private void dropInterruptedTransfer() {
+        if (abandonTransfer != null) {
+            abandonTransfer.run();
+        }
+        interruptedTransfer = null;
+        abandonTransfer = null;
+        transferResumes = 0;
+    }
+    
     // ============================================================================
     // METODO PARA MANEJAR ERRORES DE CONEXION
     // ============================================================================
     
     /**
      * Maneja los errores de conexion (se perdio la conexion con el servidor)
+     * 
+     * En lugar de cerrar todo, reabre las conexiones del pool con espera
+     * creciente entre intentos. Al lograrlo retoma la suscripcion a los
+     * cambios y la transferencia que se corto; si se agotan los intentos,
+     * queda desconectado como antes.
      */
     private void handleConnectionError() {
+        if (reconnecting || pool == null) return;
+        ConnectionPool current = pool;
+        
+        // Marca como desconectado mientras se reintenta
+        isConnected = false;
+        reconnecting = true;
+        closeEventConnection();
+        setOperationButtonsEnabled(false);
+        
+        // Cambia la barra de estado (Desconectar sigue habilitado para abandonar)
+        statusPanel.setBackground(new Color(255, 193, 7));
+        lblStatus.setText("[ RECONECTANDO ] " + serverIP + ":" + serverPort);
+        log("[AVISO] Se perdio la conexion con el servidor, reconectando...");
+        
+        current.reconnect((attempt, delayMs, cause) -> {
+            if (current != pool) return;
+            log("[AVISO] Intento " + attempt + " fallido: " + cause.getMessage() 
+                + ", se reintenta en " + delayMs + " ms");
+            lblStatus.setText("[ RECONECTANDO ] " + serverIP + ":" + serverPort 
+                + " (intento " + (attempt + 1) + ")");
+        }).whenComplete((connection, error) -> {
+            if (current != pool) return;  // Se desconecto mientras tanto
+            reconnecting = false;
+            if (error != null) {
+                log("[ERROR] No se pudo reconectar: " + error.getMessage());
+                connectionLost();
+                return;
+            }
+            
+            isConnected = true;
+            setOperationButtonsEnabled(true);
+            statusPanel.setBackground(new Color(40, 167, 69));
+            lblStatus.setText("[ CONECTADO ] " + serverIP + ":" + serverPort);
+            log("[OK] Reconectado (" + current.size() + " conexiones)");
+            
+            // Vuelve a pedir las paginas de la tabla que fallaron durante el corte
+            tableModel.invalidate();
+            
+            // Retoma la sesion de eventos (o recarga la lista) y la transferencia cortada
+            subscribeToChanges(true);
+            resumeInterruptedTransfer();
+        });
+    }
+    
+    /**
+     * Indica si una operacion fallo por la conexion y no por algo local
+     * 
+     * Solo estos errores justifican reconectar y retomar: un archivo local
+     * que no se puede leer o crear fallaria igual en cada reintento.
+     * 
+     * @param error Error con que termino la operacion
+     * @return true si el socket fallo, la conexion esta cerrada o la
+     *         operacion la corto la reconexion en curso
+     */
+    private boolean isConnectionFailure(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        if (reconnecting) {
+            return true;
+        }
+        return error instanceof IOException && pool != null && pool.isBroken();
+    }
+    
+    /**
+     * Retoma la transferencia cortada, si hay una y la conexion ya volvio
+     */
+    private void resumeInterruptedTransfer() {
+        if (interruptedTransfer == null || !isConnected || reconnecting || currentTransfer != null) return;
+        Runnable resume = interruptedTransfer;
+        interruptedTransfer = null;
+        abandonTransfer = null;
+        resume.run();
+    }
+    
+    /**
+     * Cierra todo cuando no se pudo reconectar
+     */
+    private void connectionLost() {
         // Marca como desconectado
         isConnected = false;
         
+        // Cierra los sockets que quedaron en estado invalido (y cancela lo pendiente)
+        if (pool != null) {
+            pool.close();
+            pool = null;
+            readCache.clear();  // Otra conexion puede ser a otro servidor
+            editorVersion = 0;
+        }
+        closeEventConnection();
+        endTransfer();
+        dropInterruptedTransfer();
+        sessionToken = null;
+        
         // Restaura la interfaz
         btnConnect.setEnabled(true);
         btnDisconnect.setEnabled(false);
@@ -965,6 +2154,41 @@ public class ClientGUI extends JFrame {
             "Error de Conexion", JOptionPane.ERROR_MESSAGE);
     }
     
+    /**
+     * Continua en el EDT cuando llega el resultado de una operacion de red
+     * 
+     * Los resultados de una conexion que ya se cerro se descartan. Un
+     * error de red se trata como conexion perdida; uno local (ej: un
+     * archivo que no se puede leer) se informa una vez, sin reconectar.
+     * Una operacion cancelada solo se registra (si la cancelo la
+     * reconexion, se avisa que hay que repetirla).
+     * 
+     * @param task Tarea devuelta por el pool
+     * @param action Que hacer con el resultado
+     */
+    private <T> void onResult(CompletableFuture<T> task, Consumer<T> action) {
+        ConnectionPool source = pool;
+        task.whenComplete((result, error) -> {
+            if (source != pool) return;
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();  // Futuros derivados (thenApply) envuelven el error
+            }
+            if (error == null) {
+                action.accept(result);
+            } else if (error instanceof CancellationException) {
+                log(reconnecting ? "[AVISO] Operacion interrumpida por la desconexion" 
+                    : "[INFO] Operacion cancelada");
+            } else if (isConnectionFailure(error)) {
+                log("[ERROR] Error de comunicacion: " + error.getMessage());
+                handleConnectionError();
+            } else {
+                String message = error.getMessage() != null ? error.getMessage() : error.toString();
+                log("[ERROR] " + message);
+                JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
+    }
+    
     // ============================================================================
     // METODO PARA REGISTRAR MENSAJES EN EL LOG
     // ============================================================================
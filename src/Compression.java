@@ -0,0 +1,298 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la compresion de mensajes
+// ============================================================================
+
+// Importa la excepcion para datos corruptos
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+// Importa contadores atomicos para las estadisticas de la conexion
+import java.util.concurrent.atomic.AtomicLong;
+
+// Importa Deflater e Inflater (zlib) del JDK
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Clase Compression - Compresion por mensaje acordada en el saludo
+ *
+ * El cliente ofrece en el byte de opciones del saludo los algoritmos que
+ * entiende (OPT_DEFLATE, OPT_LZ) y el servidor responde con el que eligio
+ * (o 0 si ninguno). Cada conexion tiene su propia instancia.
+ *
+ * Con compresion activa, el cuerpo de cada trama empieza con un byte:
+ *
+ *   [RAW]                            + cuerpo sin comprimir
+ *   [DEFLATE o LZ][largo original varint] + cuerpo comprimido
+ *
+ * Es adaptativa: los cuerpos menores que el umbral, o que no se achican
+ * al comprimirlos, se envian sin comprimir.
+ *
+ * Cuenta los bytes antes y despues de comprimir en ambos sentidos para
+ * saber si vale la pena en cada conexion.
+ */
+public class Compression {
+
+    // ============================================================================
+    // OPCIONES DEL SALUDO
+    // ============================================================================
+
+    // Bit de opcion: Deflater/Inflater de java.util.zip
+    public static final byte OPT_DEFLATE = 1;
+
+    // Bit de opcion: LzCodec (LZ77 rapido en Java puro)
+    public static final byte OPT_LZ = 2;
+
+    // ============================================================================
+    // MARCAS AL INICIO DEL CUERPO
+    // ============================================================================
+
+    private static final int RAW = 0;
+    private static final int DEFLATE = 1;
+    private static final int LZ = 2;
+
+    // ============================================================================
+    // CONFIGURACION DEL SERVIDOR (propiedades del sistema)
+    // ============================================================================
+
+    // Algoritmo preferido: -Dservidor.compresion=deflate|lz|ninguna
+    private static final String SERVER_PREFERENCE = System.getProperty("servidor.compresion", "deflate");
+
+    // Nivel de Deflater (1 = rapido ... 9 = maximo): -Dservidor.nivelDeflate=N
+    private static final int DEFLATE_LEVEL = Integer.getInteger("servidor.nivelDeflate", 6);
+
+    // Bytes minimos para intentar comprimir: -Dservidor.umbralCompresion=N
+    private static final int THRESHOLD = Integer.getInteger("servidor.umbralCompresion", 512);
+
+    // Algoritmo de esta conexion (OPT_DEFLATE u OPT_LZ)
+    private final byte algorithm;
+
+    // Compresor y descompresor zlib (solo con OPT_DEFLATE)
+    private final Deflater deflater;
+    private final Inflater inflater;
+
+    // Bytes enviados antes y despues de comprimir
+    private final AtomicLong rawOut = new AtomicLong();
+    private final AtomicLong wireOut = new AtomicLong();
+
+    // Bytes recibidos antes y despues de descomprimir
+    private final AtomicLong rawIn = new AtomicLong();
+    private final AtomicLong wireIn = new AtomicLong();
+
+    // true despues de close(): zlib ya libero su memoria (protegido por this)
+    private boolean ended;
+
+    /**
+     * Crea la compresion de una conexion
+     *
+     * @param algorithm OPT_DEFLATE u OPT_LZ
+     */
+    private Compression(byte algorithm) {
+        this.algorithm = algorithm;
+        this.deflater = algorithm == OPT_DEFLATE ? new Deflater(DEFLATE_LEVEL) : null;
+        this.inflater = algorithm == OPT_DEFLATE ? new Inflater() : null;
+    }
+
+    // ============================================================================
+    // NEGOCIACION
+    // ============================================================================
+
+    /**
+     * Opciones que ofrece el cliente: todos los algoritmos soportados
+     * @return Bits de opcion para el saludo
+     */
+    public static byte clientOffer() {
+        return OPT_DEFLATE | OPT_LZ;
+    }
+
+    /**
+     * Elige el algoritmo del servidor entre los que ofrecio el cliente
+     *
+     * @param offered Byte de opciones del saludo del cliente
+     * @return El bit elegido (0 = sin compresion)
+     */
+    public static byte negotiate(byte offered) {
+        byte preferred = "lz".equalsIgnoreCase(SERVER_PREFERENCE) ? OPT_LZ
+            : "deflate".equalsIgnoreCase(SERVER_PREFERENCE) ? OPT_DEFLATE : 0;
+        return (offered & preferred) != 0 ? preferred : 0;
+    }
+
+    /**
+     * Crea la compresion para la opcion acordada
+     *
+     * @param chosen Bit elegido en el saludo
+     * @return La instancia, o null si no se comprime
+     */
+    public static Compression forOption(byte chosen) {
+        if (chosen == OPT_DEFLATE || chosen == OPT_LZ) {
+            return new Compression(chosen);
+        }
+        return null;
+    }
+
+    // ============================================================================
+    // COMPRIMIR Y DESCOMPRIMIR
+    // ============================================================================
+
+    /**
+     * Comprime el cuerpo de una trama si vale la pena
+     *
+     * @param body Cuerpo codificado (BinaryCodec o serializado)
+     * @return Cuerpo con la marca inicial
+     */
+    public byte[] compress(byte[] body) throws IOException {
+        byte[] packed = null;
+        if (body.length >= THRESHOLD) {
+            byte[] payload = algorithm == OPT_DEFLATE ? deflate(body) : LzCodec.compress(body, 0, body.length);
+            // Solo se usa si ahorra algo despues de sumar la cabecera
+            if (payload.length + 6 < body.length) {
+                BinaryCodec.Writer w = new BinaryCodec.Writer(payload.length + 6);
+                w.writeByte(algorithm == OPT_DEFLATE ? DEFLATE : LZ);
+                w.writeVarLong(body.length);
+                w.writeBytes(payload, 0, payload.length);
+                packed = w.toByteArray();
+            }
+        }
+        if (packed == null) {
+            packed = new byte[body.length + 1];
+            packed[0] = RAW;
+            System.arraycopy(body, 0, packed, 1, body.length);
+        }
+        rawOut.addAndGet(body.length);
+        wireOut.addAndGet(packed.length);
+        return packed;
+    }
+
+    /**
+     * Recupera el cuerpo original de una trama recibida
+     *
+     * @param data Arreglo con el cuerpo recibido
+     * @param off Posicion inicial
+     * @param len Cantidad de bytes
+     * @return El cuerpo sin comprimir
+     */
+    public byte[] decompress(byte[] data, int off, int len) throws IOException {
+        BinaryCodec.Reader r = new BinaryCodec.Reader(data, off, len);
+        int marker = r.readByte();
+        byte[] body;
+        if (marker == RAW) {
+            body = r.readBytes(len - 1);
+        } else {
+            long original = r.readVarLong();
+            if (original < 0 || original > FrameCodec.MAX_FRAME_SIZE) {
+                throw new StreamCorruptedException("Largo descomprimido invalido: " + original);
+            }
+            int start = r.position();
+            int payload = off + len - start;
+            if (marker == DEFLATE && inflater != null) {
+                body = inflate(data, start, payload, (int) original);
+            } else if (marker == LZ) {
+                body = LzCodec.decompress(data, start, payload, (int) original);
+            } else {
+                throw new StreamCorruptedException("Compresion no acordada: " + marker);
+            }
+        }
+        rawIn.addAndGet(body.length);
+        wireIn.addAndGet(len);
+        return body;
+    }
+
+    /**
+     * Comprime con Deflater (reutilizado; un mensaje a la vez)
+     */
+    private synchronized byte[] deflate(byte[] body) throws IOException {
+        if (ended) {
+            throw new IOException("Conexion cerrada");
+        }
+        deflater.reset();
+        deflater.setInput(body);
+        deflater.finish();
+        BinaryCodec.Writer w = new BinaryCodec.Writer(Math.max(64, body.length / 2));
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            w.writeBytes(buffer, 0, n);
+        }
+        return w.toByteArray();
+    }
+
+    /**
+     * Descomprime con Inflater (reutilizado; un mensaje a la vez)
+     */
+    private synchronized byte[] inflate(byte[] data, int off, int len, int original) throws IOException {
+        if (ended) {
+            throw new IOException("Conexion cerrada");
+        }
+        inflater.reset();
+        inflater.setInput(data, off, len);
+        byte[] body = new byte[original];
+        try {
+            int n = 0;
+            while (n < original && !inflater.finished()) {
+                int read = inflater.inflate(body, n, original - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != original) {
+                throw new StreamCorruptedException("Mensaje comprimido truncado");
+            }
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("Mensaje comprimido invalido: " + e.getMessage());
+        }
+        return body;
+    }
+
+    // ============================================================================
+    // ESTADISTICAS
+    // ============================================================================
+
+    /**
+     * Bytes de cuerpos antes de comprimir (enviados + recibidos)
+     * @return Total sin comprimir
+     */
+    public long getRawBytes() {
+        return rawOut.get() + rawIn.get();
+    }
+
+    /**
+     * Bytes de cuerpos tal como viajaron (enviados + recibidos)
+     * @return Total en la red
+     */
+    public long getWireBytes() {
+        return wireOut.get() + wireIn.get();
+    }
+
+    /**
+     * Nombre del algoritmo acordado (para el log)
+     * @return "deflate" o "lz"
+     */
+    public String getName() {
+        return algorithm == OPT_DEFLATE ? "deflate" : "lz";
+    }
+
+    /**
+     * Libera los recursos nativos de zlib (al cerrar la conexion)
+     */
+    public synchronized void close() {
+        if (deflater != null && !ended) {
+            ended = true;
+            deflater.end();
+            inflater.end();
+        }
+    }
+
+    /**
+     * Genera un resumen legible de la conexion
+     *
+     * @return Texto con algoritmo y proporcion (bytes en la red / originales)
+     */
+    public String report() {
+        long raw = getRawBytes();
+        long wire = getWireBytes();
+        return getName() + " " + (raw > 0 ? (wire * 100 / raw) + "% del original" : "sin datos")
+            + " (" + wire + " de " + raw + " bytes)";
+    }
+}
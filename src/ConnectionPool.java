@@ -0,0 +1,791 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para el pool de conexiones
+// ============================================================================
+
+// Importa clases de entrada/salida (archivo local y stream por rango)
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Importa FileChannel para escribir cada parte en su posicion
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+// Importa colecciones para las conexiones del pool y los segmentos recibidos
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Importa futuros y contadores atomicos para coordinar las partes
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Importa el planificador y el azar de los reintentos de conexion
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clase ConnectionPool - Varias conexiones al mismo servidor
+ *
+ * Abre CONNECTIONS sockets, cada uno con su AsyncClient (y su hilo de
+ * red), y reparte las operaciones: cada una va a la conexion con menos
+ * trabajo pendiente. Asi una descarga lenta ocupa una sola conexion y
+ * las demas siguen atendiendo la lista, el editor, etc.
+ *
+ * Las operaciones enviadas por conexiones distintas pueden terminar en
+ * cualquier orden: lo que depende de otra operacion se pide cuando
+ * esta termina (en su thenAccept o whenComplete).
+ *
+ * downloadParallel() parte un archivo grande en segmentos de
+ * SEGMENT_SIZE que varias conexiones piden a la vez con DOWNLOAD por
+ * rango. Cada conexion toma el siguiente segmento libre al terminar el
+ * suyo (las rapidas hacen mas) y lo escribe en su posicion del archivo
+ * local. Sirve para enlaces con mucho ancho de banda y mucha latencia,
+ * donde una sola conexion TCP no llega a llenar el enlace. Los segmentos
+ * recibidos quedan anotados en un PartialDownload: si se corta la red,
+ * la descarga se retoma pidiendo solo los que faltan.
+ *
+ * reconnect() cierra las conexiones caidas y vuelve a abrirlas con
+ * espera exponencial y aleatoria entre intentos (la mitad fija y la otra
+ * mitad al azar): muchos clientes cortados a la vez no vuelven todos en
+ * el mismo instante.
+ *
+ * Configuracion (propiedades del sistema):
+ *   -Dcliente.conexiones=N        conexiones del pool (4)
+ *   -Dcliente.segmentoBytes=N     tamanio de cada segmento (8 MB)
+ *   -Dcliente.reintentos=N        intentos de reconexion (10)
+ *   -Dcliente.reintentoBaseMs=N   espera antes del segundo intento (500 ms)
+ *   -Dcliente.reintentoMaxMs=N    espera maxima entre intentos (30 s)
+ */
+public class ConnectionPool {
+
+    // Conexiones que abre el pool: -Dcliente.conexiones=N
+    public static final int CONNECTIONS = Math.max(1, Integer.getInteger("cliente.conexiones", 4));
+
+    // Tamanio de cada segmento de una descarga en paralelo: -Dcliente.segmentoBytes=N
+    private static final long SEGMENT_SIZE = Math.max(64 * 1024, Long.getLong("cliente.segmentoBytes", 8L * 1024 * 1024));
+
+    // Intentos de reconexion: -Dcliente.reintentos=N
+    private static final int MAX_RETRIES = Math.max(1, Integer.getInteger("cliente.reintentos", 10));
+
+    // Espera base y maxima entre intentos: -Dcliente.reintentoBaseMs=N, -Dcliente.reintentoMaxMs=N
+    private static final long RETRY_BASE_MS = Math.max(1, Long.getLong("cliente.reintentoBaseMs", 500));
+    private static final long RETRY_MAX_MS = Math.max(RETRY_BASE_MS, Long.getLong("cliente.reintentoMaxMs", 30000));
+
+    // Intervalo minimo entre dos avisos de avance de una descarga en paralelo
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    // Estados del bucle de cada conexion en una descarga en paralelo
+    private static final int NEW = 0;
+    private static final int RUNNING = 1;
+    private static final int SKIPPED = 2;
+
+    // Donde se completan las tareas y se informa el avance
+    private final Executor callbacks;
+
+    // Conexiones abiertas (las que fallan al conectar se descartan)
+    private final List<AsyncClient> clients = new CopyOnWriteArrayList<>();
+
+    // true despues de disconnect() o close()
+    private volatile boolean closed;
+
+    // Servidor de connect(), para reconectar
+    private volatile String ip;
+    private volatile int port;
+
+    // Hilo que espera entre reintentos (se crea con la primera reconexion)
+    private ScheduledExecutorService retries;
+
+    // Reconexion en curso (protegida por this)
+    private CompletableFuture<ClientConnection> reconnecting;
+
+    /**
+     * Crea el pool (todavia sin conexiones)
+     *
+     * @param callbacks Ejecutor donde se completan las tareas (ej: SwingUtilities::invokeLater)
+     */
+    public ConnectionPool(Executor callbacks) {
+        this.callbacks = callbacks;
+    }
+
+    // ============================================================================
+    // CONEXION
+    // ============================================================================
+
+    /**
+     * Abre las conexiones del pool en paralelo
+     *
+     * Alcanza con que se abra una: las que fallan se cierran y el pool
+     * trabaja con las demas.
+     *
+     * @param ip IP o nombre del servidor
+     * @param port Puerto del servidor
+     * @return Futuro (completado en el ejecutor de callbacks) con la
+     *         primera conexion abierta, o con el error si no se abrio ninguna
+     */
+    public CompletableFuture<ClientConnection> connect(String ip, int port) {
+        this.ip = ip;
+        this.port = port;
+        List<AsyncClient> opening = new ArrayList<>();
+        List<AsyncClient.Task<ClientConnection>> attempts = new ArrayList<>();
+        for (int i = 0; i < CONNECTIONS; i++) {
+            AsyncClient client = new AsyncClient(callbacks);
+            opening.add(client);
+            attempts.add(client.connect(ip, port));
+        }
+        CompletableFuture<ClientConnection> result = new CompletableFuture<>();
+        CompletableFuture.allOf(attempts.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> {
+            Throwable firstError = null;
+            for (int i = 0; i < opening.size(); i++) {
+                AsyncClient.Task<ClientConnection> attempt = attempts.get(i);
+                if (!closed && !attempt.isCompletedExceptionally() && !opening.get(i).isClosed()) {
+                    clients.add(opening.get(i));
+                } else {
+                    opening.get(i).close();
+                    if (firstError == null) {
+                        firstError = attempt.handle((c, e) -> e).join();
+                    }
+                }
+            }
+            if (closed) {
+                result.completeExceptionally(new IOException("Conexion cancelada"));
+            } else if (clients.isEmpty()) {
+                result.completeExceptionally(firstError);
+            } else {
+                result.complete(clients.get(0).getConnection());
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Vuelve a abrir las conexiones despues de un error de red
+     *
+     * Cierra las conexiones actuales (sus operaciones pendientes se
+     * cancelan) y reintenta connect() hasta MAX_RETRIES veces. El primer
+     * intento es inmediato; antes del intento n+1 se espera entre la mitad
+     * y el total de min(RETRY_MAX_MS, RETRY_BASE_MS * 2^(n-1)).
+     *
+     * @param listener Recibe cada intento fallido en el ejecutor de callbacks (puede ser null)
+     * @return Futuro (completado en el ejecutor de callbacks) con la primera
+     *         conexion abierta, o con el ultimo error si se agotaron los intentos
+     */
+    public CompletableFuture<ClientConnection> reconnect(RetryListener listener) {
+        for (AsyncClient client : clients) {
+            client.close();
+        }
+        clients.clear();
+        CompletableFuture<ClientConnection> result = new CompletableFuture<>();
+        synchronized (this) {
+            reconnecting = result;
+        }
+        retry(1, result, listener);
+        return result;
+    }
+
+    /**
+     * Un intento de reconexion; si falla, programa el siguiente
+     */
+    private void retry(int attempt, CompletableFuture<ClientConnection> result, RetryListener listener) {
+        connect(ip, port).whenComplete((connection, error) -> {
+            if (error == null) {
+                result.complete(connection);
+                return;
+            }
+            long cap = Math.min(RETRY_MAX_MS, RETRY_BASE_MS << Math.min(attempt - 1, 20));
+            long delay = cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+            synchronized (this) {
+                if (closed || attempt >= MAX_RETRIES) {
+                    result.completeExceptionally(error);
+                    return;
+                }
+                if (retries == null) {
+                    retries = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread t = new Thread(r, "client-reconnect");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+                retries.schedule(() -> retry(attempt + 1, result, listener), delay, TimeUnit.MILLISECONDS);
+            }
+            if (listener != null) {
+                listener.onRetry(attempt, delay, error);
+            }
+        });
+    }
+
+    /**
+     * Cantidad de conexiones abiertas
+     * @return Conexiones del pool
+     */
+    public int size() {
+        return clients.size();
+    }
+
+    /**
+     * Indica si alguna conexion del pool se cerro o fallo su socket
+     *
+     * Sirve para saber si el error de una operacion vino de la red (hay
+     * que reconectar) o de algo local, como un archivo que no se pudo leer.
+     *
+     * @return true si alguna conexion ya no sirve
+     */
+    public boolean isBroken() {
+        for (AsyncClient client : clients) {
+            ClientConnection connection = client.getConnection();
+            if (client.isClosed() || connection == null || connection.isBroken()) {
+                return true;
+            }
+        }
+        return closed;
+    }
+
+    // ============================================================================
+    // OPERACIONES (cada una en la conexion menos ocupada)
+    // ============================================================================
+
+    /**
+     * Envia una peticion por la conexion menos ocupada
+     *
+     * @param request La peticion a enviar
+     * @return Tarea con la respuesta del servidor
+     */
+    public AsyncClient.Task<FileProtocol> call(FileProtocol request) {
+        return leastBusy().call(request);
+    }
+
+    /**
+     * Envia una peticion sin ocupar el hilo de red (ver AsyncClient.submit)
+     *
+     * @param request Peticion de respuesta unica
+     * @return Tarea con la respuesta del servidor
+     */
+    public AsyncClient.Task<FileProtocol> submit(FileProtocol request) {
+        return leastBusy().submit(request);
+    }
+
+    /**
+     * Envia varias peticiones en un solo BATCH
+     *
+     * @param items Peticiones en el orden en que deben ejecutarse
+     * @param options Combinacion de FileProtocol.BATCH_*
+     * @return Tarea con un resultado por peticion en items
+     */
+    public AsyncClient.Task<FileProtocol> batch(FileProtocol[] items, long options) {
+        return leastBusy().batch(items, options);
+    }
+
+    /**
+     * Guarda un archivo existente enviando solo los bloques cambiados
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param data Contenido nuevo completo
+     * @param expectedVersion Version recibida en READ (0 = sin comprobar)
+     * @return Tarea con la respuesta de MODIFYDELTA
+     */
+    public AsyncClient.Task<FileProtocol> modifyDelta(String fileName, byte[] data, long expectedVersion) {
+        return leastBusy().modifyDelta(fileName, data, expectedVersion);
+    }
+
+    /**
+     * Sube un archivo local en trozos por la conexion menos ocupada
+     *
+     * @param source Archivo local a subir
+     * @param fileName Nombre del archivo en el servidor
+     * @param listener Recibe el avance en el ejecutor de callbacks (puede ser null)
+     * @return Tarea con la respuesta de UPLOADCOMMIT (o el primer error)
+     */
+    public AsyncClient.Task<FileProtocol> upload(File source, String fileName, ClientConnection.ProgressListener listener) {
+        return leastBusy().upload(source, fileName, listener);
+    }
+
+    /**
+     * Ejecuta una operacion cualquiera en la conexion menos ocupada
+     *
+     * @param operation La operacion
+     * @return Tarea con su resultado
+     */
+    public <T> AsyncClient.Task<T> execute(AsyncClient.Operation<T> operation) {
+        return leastBusy().execute(operation);
+    }
+
+    /**
+     * Obtiene el ejecutor donde se completan las tareas del pool
+     * @return El ejecutor de callbacks (en ClientGUI, el EDT)
+     */
+    public Executor getCallbacks() {
+        return callbacks;
+    }
+
+    /**
+     * Elige las conexiones para un trabajo repartido (descarga en
+     * paralelo o transferencia de carpetas): todas menos una, que queda
+     * libre para el resto de la interfaz, o la unica si hay una sola
+     *
+     * @param max Cantidad maxima que sirve al trabajo
+     * @return Las conexiones elegidas, las mas libres primero
+     */
+    List<AsyncClient> transferClients(int max) {
+        List<AsyncClient> ordered = new ArrayList<>(clients);
+        ordered.sort((a, b) -> Integer.compare(a.getPendingCount(), b.getPendingCount()));
+        int count = Math.min(Math.min(Math.max(1, ordered.size() - 1), max), ordered.size());
+        return new ArrayList<>(ordered.subList(0, Math.max(0, count)));
+    }
+
+    /**
+     * Elige la conexion con menos operaciones pendientes
+     */
+    private AsyncClient leastBusy() {
+        AsyncClient best = null;
+        for (AsyncClient client : clients) {
+            if (best == null || client.getPendingCount() < best.getPendingCount()) {
+                best = client;
+            }
+        }
+        if (best == null) {
+            throw new IllegalStateException("El pool no tiene conexiones abiertas");
+        }
+        return best;
+    }
+
+    // ============================================================================
+    // DESCARGA EN PARALELO
+    // ============================================================================
+
+    /**
+     * Descarga un archivo repartiendo sus segmentos entre varias conexiones
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param target Archivo local
+     * @param listener Recibe el avance total en el ejecutor de callbacks (puede ser null)
+     * @return Futuro cancelable: FILEDATA con length = tamanio, o la respuesta de error
+     */
+    public CompletableFuture<FileProtocol> downloadParallel(String fileName, File target,
+            ClientConnection.ProgressListener listener) {
+        return downloadParallel(new PartialDownload(fileName, target), listener);
+    }
+
+    /**
+     * Descarga (o retoma) un archivo repartiendo sus segmentos entre varias conexiones
+     *
+     * Primero pide el tamanio y la version (READRANGE del ultimo byte).
+     * Usa todas las conexiones menos una (que queda libre para el resto
+     * de la interfaz), o la unica si el pool tiene una sola.
+     *
+     * Cada parte trae la version del archivo que abrio el servidor: si
+     * alguna no coincide (el archivo se reescribio a mitad de camino) la
+     * descarga falla en lugar de armar un archivo mezclado.
+     *
+     * Si falla por la red, el archivo local se conserva y partial anota
+     * los segmentos que ya estan: llamar otra vez con el mismo partial
+     * pide solo los que faltan (o todo, si la version del servidor ya no
+     * es la misma). Si se cancela o el servidor responde error, el
+     * archivo local se borra.
+     *
+     * @param partial Archivo a descargar y segmentos ya recibidos
+     * @param listener Recibe el avance total en el ejecutor de callbacks (puede ser null)
+     * @return Futuro cancelable: FILEDATA con length = tamanio, o la respuesta de error
+     */
+    public CompletableFuture<FileProtocol> downloadParallel(PartialDownload partial,
+            ClientConnection.ProgressListener listener) {
+        ParallelDownload download = new ParallelDownload(partial, listener);
+        FileProtocol stat = new FileProtocol(FileProtocol.CMD_READ_RANGE, partial.fileName);
+        stat.setOffset(0);
+        stat.setLength(1);
+        stat.setLast(true);
+        AsyncClient.Task<FileProtocol> statTask = leastBusy().call(stat);
+        download.parts.add(statTask);
+        statTask.whenComplete((info, error) -> {
+            if (download.isDone()) {
+                return;  // Cancelada mientras se pedia el tamanio
+            }
+            if (error != null) {
+                download.completeExceptionally(error);
+            } else if (!FileProtocol.RESP_OK.equals(info.getResponse())) {
+                partial.discard();
+                download.complete(info);
+            } else {
+                download.start(info.getLength(), info.getVersion());
+            }
+        });
+        return download;
+    }
+
+    /**
+     * Descarga en paralelo que se puede retomar: el archivo local y los
+     * segmentos de SEGMENT_SIZE que ya se escribieron en el
+     */
+    public static final class PartialDownload {
+
+        final String fileName;
+        final File target;
+
+        // Tamanio y version del archivo que se esta descargando (protegidos por this)
+        private long size = -1;
+        private long version;
+
+        // Segmentos completos en el archivo local (protegido por this)
+        private final BitSet done = new BitSet();
+
+        /**
+         * @param fileName Nombre del archivo en el servidor
+         * @param target Archivo local
+         */
+        public PartialDownload(String fileName, File target) {
+            this.fileName = fileName;
+            this.target = target;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public File getTarget() {
+            return target;
+        }
+
+        /**
+         * Prepara una pasada: si el archivo del servidor cambio o el local
+         * ya no esta, se empieza de cero
+         *
+         * @return true si hay que vaciar el archivo local
+         */
+        synchronized boolean begin(long size, long version) {
+            if (size != this.size || version != this.version || !target.isFile()) {
+                this.size = size;
+                this.version = version;
+                done.clear();
+            }
+            return done.isEmpty();
+        }
+
+        synchronized boolean isDone(int segment) {
+            return done.get(segment);
+        }
+
+        synchronized void markDone(int segment) {
+            done.set(segment);
+        }
+
+        /**
+         * Bytes que ya estan en el archivo local
+         * @return Suma de los segmentos completos
+         */
+        public synchronized long getReceived() {
+            long bytes = 0;
+            for (int i = done.nextSetBit(0); i >= 0; i = done.nextSetBit(i + 1)) {
+                bytes += Math.min(SEGMENT_SIZE, size - i * SEGMENT_SIZE);
+            }
+            return bytes;
+        }
+
+        /**
+         * Borra el archivo local y olvida los segmentos recibidos
+         */
+        public synchronized void discard() {
+            done.clear();
+            size = -1;
+            target.delete();
+        }
+    }
+
+    /**
+     * Descarga en paralelo en curso (se cancela con cancel)
+     */
+    private final class ParallelDownload extends CompletableFuture<FileProtocol> {
+
+        final PartialDownload partial;
+        final String fileName;
+        final ClientConnection.ProgressListener listener;
+
+        // Tareas de las conexiones (tamanio y bucles) para cancelarlas
+        final List<AsyncClient.Task<?>> parts = new CopyOnWriteArrayList<>();
+
+        // Siguiente segmento sin asignar a ninguna conexion
+        final AtomicInteger cursor = new AtomicInteger();
+
+        // Bytes recibidos entre todas las partes
+        final AtomicLong received = new AtomicLong();
+
+        // Hora del ultimo aviso de avance
+        final AtomicLong lastProgress = new AtomicLong();
+
+        // Conexiones que todavia no terminaron su bucle
+        final AtomicInteger active = new AtomicInteger();
+
+        // Primera parte que fallo o no coincidio, o primer error de red
+        final AtomicReference<FileProtocol> failure = new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        ParallelDownload(PartialDownload partial, ClientConnection.ProgressListener listener) {
+            this.partial = partial;
+            this.fileName = partial.fileName;
+            this.listener = listener;
+        }
+
+        /**
+         * Reparte el archivo entre las conexiones
+         *
+         * @param size Tamanio del archivo en el servidor
+         * @param version Version que deben traer todas las partes
+         */
+        void start(long size, long version) {
+            int segments = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            boolean fresh = partial.begin(size, version);
+            int missing = 0;
+            for (int i = 0; i < segments; i++) {
+                if (!partial.isDone(i)) {
+                    missing++;
+                }
+            }
+            received.set(partial.getReceived());
+
+            FileChannel channel;
+            try {
+                channel = fresh
+                    ? FileChannel.open(partial.target.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+                    : FileChannel.open(partial.target.toPath(), StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                completeExceptionally(e);
+                return;
+            }
+
+            int workers = Math.min(Math.max(1, clients.size() - 1), missing);
+            if (workers == 0) {
+                // Archivo vacio, o ya estaban todos los segmentos
+                active.set(1);
+                workerExited(channel, size, version);
+                return;
+            }
+
+            // Las conexiones mas libres primero; cada una corre su bucle en su hilo de red
+            List<AsyncClient> ordered = transferClients(workers);
+            active.set(workers);
+            for (int i = 0; i < workers; i++) {
+                // NEW -> RUNNING (el bucle empezo) o NEW -> SKIPPED (se cancelo antes)
+                AtomicInteger state = new AtomicInteger(NEW);
+                AsyncClient.Task<FileProtocol> worker = ordered.get(i).execute((c, task) -> {
+                    if (!state.compareAndSet(NEW, RUNNING)) {
+                        return null;
+                    }
+                    try {
+                        pullSegments(c, channel, size, version, segments);
+                    } catch (IOException | RuntimeException e) {
+                        error.compareAndSet(null, e);
+                        throw e;
+                    } finally {
+                        workerExited(channel, size, version);
+                    }
+                    return null;
+                });
+                parts.add(worker);
+                // Si se cerro la conexion antes de que el bucle empezara, nunca va a correr
+                worker.whenComplete((r, e) -> {
+                    if (worker.isCancelled() && state.compareAndSet(NEW, SKIPPED)) {
+                        workerExited(channel, size, version);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Bucle de una conexion: toma segmentos libres hasta que no quede
+         * ninguno, se cancele la descarga o falle otra parte
+         */
+        private void pullSegments(ClientConnection connection, FileChannel channel, long size, long version,
+                int segments) throws IOException {
+            int segment;
+            while (!isDone() && failure.get() == null && error.get() == null
+                    && (segment = cursor.getAndIncrement()) < segments) {
+                if (partial.isDone(segment)) {
+                    continue;  // Ya llego en una pasada anterior
+                }
+                long start = segment * SEGMENT_SIZE;
+                long length = Math.min(SEGMENT_SIZE, size - start);
+                long[] reported = {0};
+                FileProtocol header = connection.download(fileName, start, length, new PositionalStream(channel, start),
+                    (done, total) -> {
+                        progress(received.addAndGet(done - reported[0]), size);
+                        reported[0] = done;
+                    });
+                if (!FileProtocol.RESP_OK.equals(header.getResponse())) {
+                    failure.compareAndSet(null, header);
+                } else if (header.getVersion() != version || header.getLength() != length) {
+                    FileProtocol changed = new FileProtocol();
+                    changed.setResponse(FileProtocol.RESP_ERROR);
+                    changed.setContent("El archivo cambio en el servidor durante la descarga: " + fileName);
+                    failure.compareAndSet(null, changed);
+                } else if (!isDone()) {
+                    partial.markDone(segment);
+                }
+            }
+        }
+
+        /**
+         * Cuando termina la ultima conexion: cierra el archivo, lo borra si
+         * la descarga se cancelo o fallo en el servidor (un error de red lo
+         * conserva para retomarla) y entrega el resultado
+         */
+        private void workerExited(FileChannel channel, long size, long version) {
+            if (active.decrementAndGet() > 0) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignorar errores al cerrar
+            }
+            Throwable failed = error.get();
+            FileProtocol result = failure.get();
+            if (result == null) {
+                result = new FileProtocol();
+                result.setCommand(FileProtocol.RESP_FILE_DATA);
+                result.setResponse(FileProtocol.RESP_OK);
+                result.setFileName(fileName);
+                result.setLength(size);
+                result.setVersion(version);
+            }
+            if (isCancelled() || (failed == null && !FileProtocol.RESP_OK.equals(result.getResponse()))) {
+                partial.discard();
+            }
+            FileProtocol finalResult = result;
+            callbacks.execute(() -> {
+                if (failed != null) {
+                    completeExceptionally(failed);
+                } else {
+                    complete(finalResult);
+                }
+            });
+        }
+
+        /**
+         * Informa el avance total (como mucho cada PROGRESS_INTERVAL_MS, salvo el final)
+         */
+        private void progress(long done, long total) {
+            if (listener == null || isDone()) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long last = lastProgress.get();
+            if (done < total && (now - last < PROGRESS_INTERVAL_MS || !lastProgress.compareAndSet(last, now))) {
+                return;
+            }
+            callbacks.execute(() -> {
+                if (!isDone() || done >= total) {
+                    listener.onProgress(done, total);
+                }
+            });
+        }
+
+        /**
+         * Cancela la descarga
+         *
+         * Cada conexion descarta el resto de su segmento en curso (asi
+         * sigue sincronizada) y no toma otro; el archivo a medias se borra
+         * cuando termina la ultima (si no estaba corriendo ninguna, enseguida).
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(false);
+            for (AsyncClient.Task<?> part : parts) {
+                part.cancel(false);
+            }
+            return cancelled;
+        }
+
+        /**
+         * Escribe los bytes de un segmento a partir de su posicion en el
+         * archivo (FileChannel admite escrituras posicionales desde varios
+         * hilos a la vez); despues de cancelar los descarta
+         */
+        private final class PositionalStream extends OutputStream {
+
+            private final FileChannel channel;
+            private long position;
+
+            PositionalStream(FileChannel channel, long position) {
+                this.channel = channel;
+                this.position = position;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (isDone()) {
+                    return;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+        }
+    }
+
+    // ============================================================================
+    // CIERRE
+    // ============================================================================
+
+    /**
+     * Se despide del servidor por todas las conexiones y las cierra
+     */
+    public void disconnect() {
+        stopRetries();
+        for (AsyncClient client : clients) {
+            client.disconnect();
+        }
+        clients.clear();
+    }
+
+    /**
+     * Cierra todas las conexiones enseguida (tras un error de red)
+     */
+    public void close() {
+        stopRetries();
+        for (AsyncClient client : clients) {
+            client.close();
+        }
+        clients.clear();
+    }
+
+    /**
+     * Marca el pool como cerrado y detiene los reintentos programados
+     */
+    private synchronized void stopRetries() {
+        closed = true;
+        if (retries != null) {
+            retries.shutdownNow();
+        }
+        if (reconnecting != null) {
+            // Si estaba esperando el proximo intento, ese intento ya no llega
+            reconnecting.completeExceptionally(new IOException("Conexion cancelada"));
+        }
+    }
+
+    /**
+     * Interfaz RetryListener - Recibe los intentos fallidos de reconnect()
+     */
+    public interface RetryListener {
+
+        /**
+         * Informa un intento fallido
+         *
+         * @param attempt Numero del intento que fallo (desde 1)
+         * @param delayMs Espera antes del proximo intento
+         * @param cause Error del intento
+         */
+        void onRetry(int attempt, long delayMs, Throwable cause);
+    }
+}
@@ -0,0 +1,181 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la cache de contenido
+// ============================================================================
+
+// Importa File e IOException para resolver rutas canonicas
+import java.io.File;
+import java.io.IOException;
+
+// Importa el mapa con orden de acceso (base de la politica LRU)
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Clase ContentCache - Cache LRU del contenido de archivos leidos con READ
+ *
+ * Muchos clientes leen una y otra vez los mismos archivos pequenios
+ * (configuraciones, plantillas). La cache guarda el texto ya decodificado
+ * para no abrir ni decodificar el archivo en cada READ.
+ *
+ * - La clave es la ruta canonica del archivo, asi "a.txt" y "./a.txt"
+ *   comparten la misma entrada.
+ * - El limite es en bytes (2 por caracter del texto guardado). Al
+ *   superarlo se descartan las entradas usadas hace mas tiempo.
+ * - Cada entrada recuerda la fecha de modificacion y el tamanio del
+ *   archivo; si cambiaron desde fuera del servidor, la entrada se
+ *   descarta al consultarla. Los comandos que escriben o borran la
+ *   invalidan directamente.
+ *
+ * Todos los metodos son seguros para llamarse desde cualquier hilo.
+ */
+public class ContentCache {
+
+    // Presupuesto por defecto: 32 MB
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    // Presupuesto maximo de la cache en bytes (0 = desactivada)
+    private final long maxBytes;
+
+    // Entradas en orden de acceso: la primera es la menos usada
+    // (protegido por this)
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Bytes ocupados por las entradas (protegido por this)
+    private long usedBytes;
+
+    // Contadores para dimensionar la cache (protegidos por this)
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor de la cache
+     *
+     * @param maxBytes Presupuesto en bytes (0 para desactivarla)
+     */
+    public ContentCache(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * Busca el contenido de un archivo
+     *
+     * @param file El archivo a leer
+     * @return El contenido guardado, o null si no esta o quedo viejo
+     */
+    public String get(File file) throws IOException {
+        if (maxBytes == 0) {
+            return null;
+        }
+        String key = file.getCanonicalPath();
+        long modified = file.lastModified();
+        long size = file.length();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.modified == modified && entry.size == size) {
+                hits++;
+                return entry.content;
+            }
+            if (entry != null) {
+                // El archivo cambio fuera del servidor
+                remove(key);
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Guarda el contenido recien leido de un archivo
+     *
+     * Los datos de validacion se pasan tomados ANTES de leer: si el
+     * archivo cambio durante la lectura, la proxima consulta lo detecta.
+     *
+     * @param file El archivo leido
+     * @param modified Fecha de modificacion antes de leerlo
+     * @param size Tamanio antes de leerlo
+     * @param content Contenido decodificado
+     */
+    public void put(File file, long modified, long size, String content) throws IOException {
+        long weight = 2L * content.length();
+        // Una entrada que ocupe mas de un cuarto de la cache la vaciaria
+        if (maxBytes == 0 || weight > maxBytes / 4) {
+            return;
+        }
+        String key = file.getCanonicalPath();
+        synchronized (this) {
+            remove(key);
+            entries.put(key, new Entry(content, modified, size, weight));
+            usedBytes += weight;
+
+            Iterator<Entry> it = entries.values().iterator();
+            while (usedBytes > maxBytes && it.hasNext()) {
+                usedBytes -= it.next().weight;
+                it.remove();
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Descarta la entrada de un archivo (tras WRITE, MODIFY, DELETE...)
+     *
+     * @param file El archivo que cambio
+     */
+    public void invalidate(File file) throws IOException {
+        if (maxBytes == 0) {
+            return;
+        }
+        String key = file.getCanonicalPath();
+        synchronized (this) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Quita una entrada y descuenta sus bytes (con el monitor tomado)
+     */
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            usedBytes -= old.weight;
+        }
+    }
+
+    /**
+     * Genera un resumen legible para el log del servidor
+     *
+     * @return Texto con aciertos, fallos, descartes y ocupacion
+     */
+    public synchronized String report() {
+        long lookups = hits + misses;
+        return "[CACHE] Aciertos: " + hits + " | Fallos: " + misses
+            + (lookups > 0 ? " (" + (hits * 100 / lookups) + "% aciertos)" : "")
+            + " | Descartes: " + evictions
+            + " | Entradas: " + entries.size()
+            + " | Uso: " + (usedBytes / 1024) + " KB de " + (maxBytes / 1024) + " KB";
+    }
+
+    /**
+     * Entrada de la cache con sus datos de validacion
+     */
+    private static class Entry {
+
+        // Texto del archivo tal como lo devuelve READ
+        final String content;
+
+        // Fecha de modificacion y tamanio cuando se leyo
+        final long modified;
+        final long size;
+
+        // Bytes que cuenta contra el presupuesto
+        final long weight;
+
+        Entry(String content, long modified, long size, long weight) {
+            this.content = content;
+            this.modified = modified;
+            this.size = size;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la sincronizacion por bloques
+// ============================================================================
+
+// Importa clases de entrada/salida
+import java.io.*;
+
+// Importa ByteBuffer y FileChannel para leer bloques del archivo base
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Importa MessageDigest para la suma fuerte de cada bloque
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Importa colecciones para buscar bloques por su suma rodante
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clase DeltaSync - Sincronizacion de archivos por bloques (estilo rsync)
+ *
+ * Para guardar una pequenia edicion en un archivo grande no hace falta
+ * reenviarlo entero:
+ *
+ *   1. El servidor divide el archivo actual en bloques de tamanio fijo y
+ *      envia la "firma": por cada bloque una suma rodante (4 bytes) y una
+ *      suma fuerte MD5 (16 bytes).
+ *   2. El cliente recorre el contenido nuevo byte a byte con la suma
+ *      rodante. Donde encuentra un bloque que el servidor ya tiene, emite
+ *      una instruccion COPY; el resto se envia como LITERAL.
+ *   3. El servidor arma el archivo nuevo copiando sus propios bloques y
+ *      escribiendo los literales.
+ *
+ * Los bytes enviados crecen con el tamanio de la edicion, no del archivo.
+ *
+ * Formato del delta (usa los varint de BinaryCodec):
+ *   [OP_COPY][primer bloque][cantidad de bloques]
+ *   [OP_LITERAL][longitud][bytes]
+ *   [OP_RANGE][primer byte][cantidad de bytes]
+ *
+ * OP_RANGE copia un rango cualquiera del archivo base: lo usa un cliente
+ * que ya sabe que cambio (PagedDocument, con Builder) y no necesita firma.
+ */
+public class DeltaSync {
+
+    // Tamanio de bloque por defecto (2 KB)
+    public static final int DEFAULT_BLOCK_SIZE = 2048;
+
+    // Bytes de firma por bloque: suma rodante (4) + MD5 (16)
+    private static final int SIGNATURE_ENTRY = 4 + 16;
+
+    // Instruccion: copiar bloques del archivo base
+    private static final int OP_COPY = 0;
+
+    // Instruccion: escribir bytes nuevos
+    private static final int OP_LITERAL = 1;
+
+    // Instruccion: copiar un rango de bytes del archivo base
+    private static final int OP_RANGE = 2;
+
+    // Constructor privado: la clase solo tiene metodos estaticos
+    private DeltaSync() {
+    }
+
+    // ============================================================================
+    // FIRMA (servidor)
+    // ============================================================================
+
+    /**
+     * Calcula la firma de un archivo: sumas rodante y fuerte por bloque
+     *
+     * @param file Canal del archivo actual
+     * @param blockSize Tamanio de bloque
+     * @return Firma con SIGNATURE_ENTRY bytes por bloque
+     */
+    public static byte[] signature(FileChannel file, int blockSize) throws IOException {
+        long size = file.size();
+        int blocks = (int) ((size + blockSize - 1) / blockSize);
+        ByteBuffer out = ByteBuffer.allocate(blocks * SIGNATURE_ENTRY);
+        MessageDigest md5 = md5();
+        byte[] block = new byte[blockSize];
+
+        for (int i = 0; i < blocks; i++) {
+            int n = readBlock(file, (long) i * blockSize, block);
+            out.putInt(rollingChecksum(block, 0, n));
+            md5.update(block, 0, n);
+            out.put(md5.digest());
+        }
+        return out.array();
+    }
+
+    // ============================================================================
+    // DELTA (cliente)
+    // ============================================================================
+
+    /**
+     * Compara el contenido nuevo con la firma del servidor y arma el delta
+     *
+     * @param data Contenido nuevo completo
+     * @param signature Firma recibida del servidor
+     * @param blockSize Tamanio de bloque usado en la firma
+     * @param baseSize Tamanio del archivo en el servidor
+     * @return Instrucciones COPY/LITERAL codificadas
+     */
+    public static byte[] delta(byte[] data, byte[] signature, int blockSize, long baseSize) throws IOException {
+        int blocks = signature.length / SIGNATURE_ENTRY;
+        ByteBuffer sig = ByteBuffer.wrap(signature);
+
+        // Indice de bloques completos por suma rodante
+        // (el ultimo bloque puede ser corto y solo se compara al final)
+        Map<Integer, List<Integer>> byChecksum = new HashMap<>();
+        for (int i = 0; i < blocks; i++) {
+            if ((long) (i + 1) * blockSize <= baseSize) {
+                byChecksum.computeIfAbsent(sig.getInt(i * SIGNATURE_ENTRY), k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        BinaryCodec.Writer out = new BinaryCodec.Writer(256);
+        MessageDigest md5 = md5();
+        int literalStart = 0;
+        int copyStart = -1;
+        int copyCount = 0;
+        int pos = 0;
+
+        // Sumas a y b de la ventana [pos, pos + blockSize)
+        int a = 0;
+        int b = 0;
+        boolean windowValid = false;
+
+        while (pos + blockSize <= data.length) {
+            if (!windowValid) {
+                int sum = rollingChecksum(data, pos, blockSize);
+                a = sum & 0xFFFF;
+                b = sum >>> 16;
+                windowValid = true;
+            }
+            int match = findBlock(byChecksum.get((b << 16) | a), sig, md5, data, pos, blockSize);
+            if (match >= 0) {
+                // Bloque conocido: primero se emite lo literal pendiente
+                if (literalStart < pos) {
+                    flushCopy(out, copyStart, copyCount);
+                    copyStart = -1;
+                    copyCount = 0;
+                    writeLiteral(out, data, literalStart, pos - literalStart);
+                }
+                if (copyStart >= 0 && match == copyStart + copyCount) {
+                    // Bloques consecutivos se unen en una sola instruccion
+                    copyCount++;
+                } else {
+                    flushCopy(out, copyStart, copyCount);
+                    copyStart = match;
+                    copyCount = 1;
+                }
+                pos += blockSize;
+                literalStart = pos;
+                windowValid = false;
+                continue;
+            }
+            // Sin coincidencia: la ventana avanza un byte
+            if (pos + blockSize < data.length) {
+                int outByte = data[pos] & 0xFF;
+                int inByte = data[pos + blockSize] & 0xFF;
+                a = (a - outByte + inByte) & 0xFFFF;
+                b = (b - blockSize * outByte + a) & 0xFFFF;
+            }
+            pos++;
+        }
+
+        // Cola final: puede coincidir con el ultimo bloque (corto) del archivo base
+        int tailLength = data.length - literalStart;
+        int lastBlock = blocks - 1;
+        int lastLength = (int) (baseSize - (long) lastBlock * blockSize);
+        if (lastBlock >= 0 && lastLength < blockSize && tailLength >= lastLength && lastLength > 0) {
+            int tailStart = data.length - lastLength;
+            int sum = rollingChecksum(data, tailStart, lastLength);
+            if (sig.getInt(lastBlock * SIGNATURE_ENTRY) == sum
+                    && strongMatches(sig, md5, lastBlock, data, tailStart, lastLength)) {
+                if (literalStart < tailStart) {
+                    flushCopy(out, copyStart, copyCount);
+                    copyStart = -1;
+                    copyCount = 0;
+                    writeLiteral(out, data, literalStart, tailStart - literalStart);
+                }
+                if (copyStart >= 0 && lastBlock == copyStart + copyCount) {
+                    copyCount++;
+                } else {
+                    flushCopy(out, copyStart, copyCount);
+                    copyStart = lastBlock;
+                    copyCount = 1;
+                }
+                literalStart = data.length;
+            }
+        }
+
+        flushCopy(out, copyStart, copyCount);
+        if (literalStart < data.length) {
+            writeLiteral(out, data, literalStart, data.length - literalStart);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Busca entre los candidatos un bloque con la misma suma fuerte
+     *
+     * @return Indice del bloque o -1 si ninguno coincide
+     */
+    private static int findBlock(List<Integer> candidates, ByteBuffer sig, MessageDigest md5,
+                                 byte[] data, int pos, int length) {
+        if (candidates == null) {
+            return -1;
+        }
+        for (int block : candidates) {
+            if (strongMatches(sig, md5, block, data, pos, length)) {
+                return block;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compara la suma MD5 de un trozo con la de un bloque de la firma
+     */
+    private static boolean strongMatches(ByteBuffer sig, MessageDigest md5, int block,
+                                         byte[] data, int pos, int length) {
+        md5.update(data, pos, length);
+        byte[] digest = md5.digest();
+        int base = block * SIGNATURE_ENTRY + 4;
+        for (int i = 0; i < 16; i++) {
+            if (sig.get(base + i) != digest[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void flushCopy(BinaryCodec.Writer out, int start, int count) {
+        if (count > 0) {
+            out.writeByte(OP_COPY);
+            out.writeVarLong(start);
+            out.writeVarLong(count);
+        }
+    }
+
+    private static void writeLiteral(BinaryCodec.Writer out, byte[] data, int offset, int length) {
+        out.writeByte(OP_LITERAL);
+        out.writeVarLong(length);
+        out.writeBytes(data, offset, length);
+    }
+
+    // ============================================================================
+    // RECONSTRUCCION (servidor)
+    // ============================================================================
+
+    /**
+     * Arma el archivo nuevo a partir del archivo base y el delta
+     *
+     * @param base Canal del archivo actual (solo lectura)
+     * @param delta Instrucciones recibidas del cliente
+     * @param blockSize Tamanio de bloque usado en la firma
+     * @param target Canal donde se escribe el archivo nuevo
+     * @return Bytes escritos en el archivo nuevo
+     */
+    public static long apply(FileChannel base, byte[] delta, int blockSize, FileChannel target) throws IOException {
+        BinaryCodec.Reader in = new BinaryCodec.Reader(delta, 0, delta.length);
+        long baseSize = base.size();
+        long written = 0;
+        int consumed = 0;
+
+        while (consumed < delta.length) {
+            int op = in.readByte();
+            if (op == OP_COPY) {
+                // Se comprueban los numeros de bloque antes de multiplicar (no desbordan)
+                long first = in.readVarLong();
+                long blocks = in.readVarLong();
+                if (first < 0 || blocks < 0 || first > baseSize / blockSize) {
+                    throw new StreamCorruptedException("Bloque fuera del archivo base: " + first + "+" + blocks);
+                }
+                long start = first * blockSize;
+                // El ultimo bloque puede ser corto
+                long length = Math.min(blocks, (baseSize - start) / blockSize + 1) * blockSize;
+                length = Math.min(length, baseSize - start);
+                copyRange(base, start, length, target);
+                written += length;
+            } else if (op == OP_RANGE) {
+                long start = in.readVarLong();
+                long length = in.readVarLong();
+                // Sin sumar start + length: con valores enormes la suma desborda
+                if (start < 0 || length < 0 || start > baseSize || length > baseSize - start) {
+                    throw new StreamCorruptedException("Rango fuera del archivo base: " + start + "+" + length);
+                }
+                copyRange(base, start, length, target);
+                written += length;
+            } else if (op == OP_LITERAL) {
+                byte[] bytes = in.readBytes(in.readLength());
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                written += bytes.length;
+            } else {
+                throw new StreamCorruptedException("Instruccion de delta desconocida: " + op);
+            }
+            consumed = in.position();
+        }
+        return written;
+    }
+
+    /**
+     * Copia un rango del archivo base al final del archivo nuevo
+     *
+     * transferTo devuelve 0 si el rango ya no existe (el archivo base se
+     * achico): se corta en lugar de seguir pidiendo para siempre.
+     */
+    private static void copyRange(FileChannel base, long start, long length, FileChannel target) throws IOException {
+        long done = 0;
+        while (done < length) {
+            long n = base.transferTo(start + done, length - done, target);
+            if (n <= 0) {
+                throw new StreamCorruptedException("El archivo base termina antes del rango: " + (start + done));
+            }
+            done += n;
+        }
+    }
+
+    /**
+     * Arma un delta con rangos del archivo base y bytes nuevos, para
+     * quien ya conoce sus cambios (no hace falta pedir la firma)
+     */
+    public static final class Builder {
+
+        private final BinaryCodec.Writer out = new BinaryCodec.Writer(256);
+
+        /**
+         * Copia bytes del archivo base
+         *
+         * @param start Primer byte en el archivo base
+         * @param length Cantidad de bytes
+         * @return Este builder
+         */
+        public Builder copy(long start, long length) {
+            if (length > 0) {
+                out.writeByte(OP_RANGE);
+                out.writeVarLong(start);
+                out.writeVarLong(length);
+            }
+            return this;
+        }
+
+        /**
+         * Escribe bytes nuevos
+         *
+         * @param data Buffer con los bytes
+         * @param offset Primer byte en data
+         * @param length Cantidad de bytes
+         * @return Este builder
+         */
+        public Builder literal(byte[] data, int offset, int length) {
+            if (length > 0) {
+                writeLiteral(out, data, offset, length);
+            }
+            return this;
+        }
+
+        /**
+         * @return Instrucciones codificadas (para MODIFYDELTA)
+         */
+        public byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    // ============================================================================
+    // UTILIDADES
+    // ============================================================================
+
+    /**
+     * Suma rodante de rsync: a = suma de bytes, b = suma de las sumas a
+     * (ambas modulo 2^16). Devuelve (b << 16) | a.
+     */
+    static int rollingChecksum(byte[] data, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            a += data[offset + i] & 0xFF;
+            b += (length - i) * (data[offset + i] & 0xFF);
+        }
+        return ((b & 0xFFFF) << 16) | (a & 0xFFFF);
+    }
+
+    /**
+     * Lee un bloque completo desde una posicion (menos al final del archivo)
+     */
+    private static int readBlock(FileChannel file, long position, byte[] block) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+        while (buffer.hasRemaining()) {
+            int n = file.read(buffer, position + buffer.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static MessageDigest md5() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 no disponible", e);
+        }
+    }
+}
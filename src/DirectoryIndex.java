@@ -0,0 +1,294 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para el indice del directorio
+// ============================================================================
+
+// Importa File e IOException
+import java.io.File;
+import java.io.IOException;
+
+// Importa el servicio de vigilancia de archivos de NIO.2
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+// Importa colecciones concurrentes ordenadas y contadores atomicos
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Importa la interfaz funcional Consumer (usada como destino del log)
+import java.util.function.Consumer;
+
+/**
+ * Clase DirectoryIndex - Lista del directorio de trabajo mantenida en memoria
+ *
+ * Con cientos de miles de archivos, recorrer el directorio en cada LIST
+ * es caro. Este indice lo recorre una sola vez y luego se actualiza con
+ * los eventos de un WatchService (crear y borrar). Si el sistema pierde
+ * eventos (OVERFLOW) se vuelve a recorrer el directorio completo.
+ *
+ * Los comandos del propio servidor tambien avisan al indice, porque en
+ * algunos sistemas el WatchService tarda segundos en entregar eventos
+ * y un cliente espera ver su archivo en el LIST siguiente.
+ *
+ * Los eventos (tambien las modificaciones) se reenvian al ChangeNotifier
+ * para los clientes suscriptos: asi se enteran de los cambios hechos
+ * desde fuera del servidor.
+ *
+ * La lista se mantiene ordenada y sin los nombres ocultos (los que
+ * empiezan con punto). Si no se puede vigilar el directorio, el indice
+ * queda inactivo y quien lo usa debe listar el directorio directamente.
+ */
+public class DirectoryIndex {
+
+    // Directorio vigilado
+    private final File directory;
+
+    // Destino de los mensajes de log
+    private final Consumer<String> logger;
+
+    // Recibe los cambios que informa el WatchService (null si nadie escucha)
+    private final ChangeNotifier notifier;
+
+    // Nombres de los archivos, en orden alfabetico
+    private final ConcurrentSkipListSet<String> names = new ConcurrentSkipListSet<>();
+
+    // Se incrementa despues de cada cambio en names
+    private final AtomicLong version = new AtomicLong();
+
+    // Ultimo arreglo entregado por list() y la version con la que se armo
+    private volatile Snapshot snapshot;
+
+    // Servicio de vigilancia (null si no se pudo crear)
+    private WatchService watcher;
+
+    // Hilo que atiende los eventos del WatchService
+    private Thread watchThread;
+
+    // true mientras los eventos mantienen el indice al dia
+    private volatile boolean active;
+
+    /**
+     * Constructor del indice (no empieza a vigilar hasta start())
+     *
+     * @param directory Directorio a vigilar
+     * @param logger Funcion que recibe cada mensaje de log
+     */
+    public DirectoryIndex(String directory, Consumer<String> logger) {
+        this(directory, logger, null);
+    }
+
+    /**
+     * Constructor del indice que ademas reenvia los cambios vistos
+     *
+     * Los cambios hechos desde fuera del servidor solo se conocen por el
+     * WatchService; el indice se los pasa al notificador de SUBSCRIBE.
+     *
+     * @param directory Directorio a vigilar
+     * @param logger Funcion que recibe cada mensaje de log
+     * @param notifier Notificador de cambios (puede ser null)
+     */
+    public DirectoryIndex(String directory, Consumer<String> logger, ChangeNotifier notifier) {
+        this.directory = new File(directory);
+        this.logger = logger;
+        this.notifier = notifier;
+    }
+
+    /**
+     * Registra el WatchService, recorre el directorio y lanza el hilo
+     *
+     * Se registra antes de recorrer para no perder cambios que ocurran
+     * durante el recorrido (aplicarlos dos veces no hace danio).
+     */
+    public synchronized void start() {
+        try {
+            Path path = directory.toPath();
+            watcher = FileSystems.getDefault().newWatchService();
+            path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | RuntimeException e) {
+            logger.accept("[AVISO] No se puede vigilar el directorio, LIST lo recorrera cada vez: " + e.getMessage());
+            close();
+            return;
+        }
+        rescan();
+        active = true;
+
+        watchThread = new Thread(this::watchLoop, "directory-index");
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * Indica si el indice esta al dia y se puede usar para LIST
+     * @return true si el WatchService esta activo
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Devuelve los nombres del directorio, ordenados
+     *
+     * Mientras no haya cambios se devuelve el mismo arreglo sin copiarlo
+     * de nuevo (quien lo recibe no debe modificarlo).
+     *
+     * @return Arreglo con los nombres
+     */
+    public String[] list() {
+        // La version se lee ANTES de copiar: si hay un cambio durante la
+        // copia, la version ya no coincide y el proximo list() la rehace
+        long current = version.get();
+        Snapshot s = snapshot;
+        if (s != null && s.version == current) {
+            return s.names;
+        }
+        String[] copy = names.toArray(new String[0]);
+        snapshot = new Snapshot(current, copy);
+        return copy;
+    }
+
+    /**
+     * Version del indice: cambia cada vez que se agrega o quita un nombre
+     * @return Contador de cambios
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Avisa que el servidor creo un archivo
+     * @param name Nombre del archivo
+     */
+    public void added(String name) {
+        if (isListed(name) && names.add(name)) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Avisa que el servidor borro un archivo
+     * @param name Nombre del archivo
+     */
+    public void removed(String name) {
+        if (names.remove(name)) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Detiene la vigilancia (al detener el servidor)
+     */
+    public synchronized void close() {
+        active = false;
+        if (watcher != null) {
+            try {
+                // Despierta a watchLoop con ClosedWatchServiceException
+                watcher.close();
+            } catch (IOException e) {
+                // Ignorar errores al cerrar
+            }
+            watcher = null;
+        }
+    }
+
+    // ============================================================================
+    // VIGILANCIA (hilo directory-index)
+    // ============================================================================
+
+    /**
+     * Aplica los eventos del WatchService hasta que se cierre
+     */
+    private void watchLoop() {
+        WatchService service = watcher;
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    WatchEvent.Kind<?> kind = event.kind();
+                    if (kind == StandardWatchEventKinds.OVERFLOW) {
+                        // Se perdieron eventos: no se sabe que cambio
+                        rescan();
+                        if (notifier != null) {
+                            notifier.resync();
+                        }
+                        continue;
+                    }
+                    String name = ((Path) event.context()).toString();
+                    if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                        added(name);
+                        forward(name, ChangeNotifier.CREATED);
+                    } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                        removed(name);
+                        forward(name, ChangeNotifier.DELETED);
+                    } else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) {
+                        forward(name, ChangeNotifier.MODIFIED);
+                    }
+                }
+                if (!key.reset()) {
+                    // El directorio ya no existe o no se puede vigilar
+                    logger.accept("[AVISO] Se dejo de vigilar " + directory + ", LIST lo recorrera cada vez");
+                    close();
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close() detuvo la vigilancia
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+        }
+    }
+
+    /**
+     * Pasa un cambio al notificador (sin los nombres ocultos, como los temporales)
+     */
+    private void forward(String name, int kind) {
+        if (notifier != null && isListed(name)) {
+            notifier.changed(name, kind);
+        }
+    }
+
+    /**
+     * Recorre el directorio completo y corrige el indice
+     */
+    private void rescan() {
+        String[] current = directory.list((parent, name) -> isListed(name));
+        if (current == null) {
+            return;
+        }
+        // Se corrige en el lugar para no perder avisos que lleguen durante el recorrido
+        Set<String> fresh = new HashSet<>(Arrays.asList(current));
+        names.retainAll(fresh);
+        names.addAll(fresh);
+        version.incrementAndGet();
+    }
+
+    /**
+     * Indica si un nombre aparece en LIST: solo entradas directas del
+     * directorio y sin los ocultos (los que empiezan con punto)
+     */
+    private static boolean isListed(String name) {
+        return !name.startsWith(".") && name.indexOf('/') < 0 && name.indexOf(File.separatorChar) < 0;
+    }
+
+    /**
+     * Arreglo entregado por list() junto con la version del indice
+     */
+    private static class Snapshot {
+
+        final long version;
+        final String[] names;
+
+        Snapshot(long version, String[] names) {
+            this.version = version;
+            this.names = names;
+        }
+    }
+}
@@ -0,0 +1,716 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para las escrituras durables
+// ============================================================================
+
+// Importa clases de entrada/salida
+import java.io.*;
+
+// Importa ByteBuffer, canales y utilidades de archivos de NIO
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// Importa colecciones para la recuperacion y el punto de control
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Importa el lock del punto de control y contadores atomicos
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Importa la interfaz funcional Consumer (usada como destino del log)
+import java.util.function.Consumer;
+
+// Importa CRC32 para detectar registros incompletos del diario
+import java.util.zip.CRC32;
+
+/**
+ * Clase DurableWriter - Escrituras atomicas con durabilidad configurable
+ *
+ * Ninguna escritura modifica el archivo en el lugar: el contenido nuevo
+ * se escribe en un temporal oculto junto al destino y despues se
+ * renombra encima (atomico). Una caida a mitad de camino deja el archivo
+ * anterior completo, nunca uno cortado.
+ *
+ * Cuanto esfuerzo se hace para que la escritura sobreviva a una caida
+ * del sistema se elige con -Dservidor.durabilidad:
+ *
+ *   ninguna - solo temporal + rename; el sistema decide cuando llega al disco
+ *   fsync   - FileChannel.force del temporal y del directorio en cada escritura
+ *   grupo   - (por defecto) cada escritura se anota en un diario y espera a
+ *             que un hilo haga force del diario. Las escrituras que llegan
+ *             juntas comparten ese unico force, asi que muchas escrituras
+ *             por segundo cuestan pocos fsync. El archivo se renombra sin
+ *             fsync: si el sistema cae antes de que llegue al disco, al
+ *             arrancar se rehace desde el diario.
+ *
+ * El diario se vacia (punto de control) cuando supera CHECKPOINT_BYTES:
+ * se hace force de los archivos escritos desde el anterior y se trunca.
+ * Los cambios que no pasan por el diario (subidas, deltas, borrados)
+ * anotan una marca para que la recuperacion no pise su resultado con
+ * una escritura anterior del mismo archivo.
+ */
+public class DurableWriter {
+
+    // Modos de durabilidad (valores de -Dservidor.durabilidad)
+    public static final String MODE_NONE = "ninguna";
+    public static final String MODE_FSYNC = "fsync";
+    public static final String MODE_GROUP = "grupo";
+
+    // Modo elegido para este servidor
+    private static final String MODE = System.getProperty("servidor.durabilidad", MODE_GROUP);
+
+    // Milisegundos que espera el hilo del diario para juntar escrituras
+    // antes de cada force: -Dservidor.ventanaGrupoMs=N
+    private static final long GROUP_WINDOW_MS = Long.getLong("servidor.ventanaGrupoMs", 2);
+
+    // Carpeta oculta y archivo del diario
+    private static final String JOURNAL_DIR = ".journal";
+    private static final String JOURNAL_FILE = "diario.log";
+
+    // Tamanio del diario a partir del cual se hace un punto de control
+    private static final long CHECKPOINT_BYTES = 16L * 1024 * 1024;
+
+    // Escrituras mas grandes no pasan por el diario: se hace force directo
+    // (duplicarlas en el diario cuesta mas de lo que ahorra el grupo)
+    private static final int MAX_JOURNAL_RECORD = 1024 * 1024;
+
+    // Cabecera de cada registro del diario ("JRN1")
+    private static final int RECORD_MAGIC = 0x4A524E31;
+
+    // Tipos de registro
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final byte RECORD_BARRIER = 3;
+
+    // Cantidad de locks por archivo (ver stripeFor)
+    private static final int STRIPES = 64;
+
+    // Directorio de trabajo (los registros guardan rutas relativas a el)
+    private final File directory;
+
+    // Destino de los mensajes de log
+    private final Consumer<String> logger;
+
+    // Archivo del diario
+    private final File journalFile;
+
+    // Canal del diario (solo en modo grupo; protegido por this al escribir)
+    private FileChannel journal;
+
+    // Ultimo registro anotado y ultimo que ya llego al disco (protegidos por this)
+    private long appendedSeq;
+    private long forcedSeq;
+
+    // Error del hilo del diario: las escrituras que esperan fallan (protegido por this)
+    private IOException failure;
+
+    // Archivos escritos desde el ultimo punto de control (protegido por this)
+    private final Set<File> touched = new HashSet<>();
+
+    // Las escrituras toman el de lectura; el punto de control, el de escritura
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    // Hilo que hace force del diario
+    private Thread committer;
+
+    // true despues de close() (protegido por this)
+    private boolean closed;
+
+    // Un lock por grupo de archivos: el orden de los registros del diario
+    // es el mismo orden en que se aplican los cambios de un archivo
+    private final Object[] stripes = new Object[STRIPES];
+
+    // Sufijo unico de los temporales
+    private final AtomicLong tempCounter = new AtomicLong(System.nanoTime());
+
+    // Contadores para el log de estadisticas
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+
+    /**
+     * Constructor (no recupera ni abre el diario hasta start())
+     *
+     * @param directory Directorio de trabajo
+     * @param logger Funcion que recibe cada mensaje de log
+     */
+    public DurableWriter(String directory, Consumer<String> logger) {
+        this.directory = new File(directory).getAbsoluteFile();
+        this.logger = logger;
+        this.journalFile = new File(new File(this.directory, JOURNAL_DIR), JOURNAL_FILE);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Rehace lo que haya quedado en el diario y, en modo grupo, lo abre
+     * y lanza el hilo que hace force
+     */
+    public synchronized void start() throws IOException {
+        deleteStaleTemps();
+        recover();
+        if (MODE_GROUP.equals(MODE)) {
+            journalFile.getParentFile().mkdirs();
+            journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            committer = new Thread(this::commitLoop, "journal-commit");
+            committer.setDaemon(true);
+            committer.start();
+        }
+    }
+
+    /**
+     * Obtiene el modo de durabilidad
+     * @return ninguna, fsync o grupo
+     */
+    public String getMode() {
+        return MODE;
+    }
+
+    // ============================================================================
+    // OPERACIONES
+    // ============================================================================
+
+    /**
+     * Reemplaza el contenido de un archivo en forma atomica
+     *
+     * @param target Archivo destino (se crea si no existe)
+     * @param data Contenido completo
+     */
+    public void write(File target, byte[] data) throws IOException {
+        synchronized (stripeFor(target)) {
+            if (journal != null && data.length <= MAX_JOURNAL_RECORD) {
+                Lock lock = checkpointLock.readLock();
+                lock.lock();
+                try {
+                    // Primero el diario: despues del force la escritura ya sobrevive
+                    awaitForced(append(RECORD_PUT, target, data));
+                    replace(writeTemp(target, data, false), target, false);
+                    touch(target);
+                } finally {
+                    lock.unlock();
+                }
+            } else {
+                boolean sync = !MODE_NONE.equals(MODE);
+                File temp = writeTemp(target, data, sync);
+                publishTemp(temp, target, sync);
+            }
+        }
+        writes.incrementAndGet();
+    }
+
+    /**
+     * Publica un archivo ya escrito por quien llama (subida o delta)
+     *
+     * El origen debe estar cerrado y en el mismo disco que el destino.
+     *
+     * @param source Temporal con el contenido nuevo
+     * @param target Archivo destino
+     */
+    public void publish(File source, File target) throws IOException {
+        synchronized (stripeFor(target)) {
+            boolean sync = !MODE_NONE.equals(MODE);
+            if (sync) {
+                force(source);
+            }
+            publishTemp(source, target, sync);
+        }
+        writes.incrementAndGet();
+    }
+
+    /**
+     * Borra un archivo dejando constancia en el diario
+     *
+     * @param target Archivo a borrar
+     * @return true si se borro
+     */
+    public boolean delete(File target) throws IOException {
+        synchronized (stripeFor(target)) {
+            if (journal != null) {
+                Lock lock = checkpointLock.readLock();
+                lock.lock();
+                try {
+                    awaitForced(append(RECORD_DELETE, target, new byte[0]));
+                    touch(target);
+                    return target.delete();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            boolean deleted = target.delete();
+            if (deleted && MODE_FSYNC.equals(MODE)) {
+                syncDirectory(target.getParentFile());
+            }
+            return deleted;
+        }
+    }
+
+    /**
+     * Renombra un temporal sobre el destino, con marca en el diario si hay
+     */
+    private void publishTemp(File temp, File target, boolean sync) throws IOException {
+        if (journal != null) {
+            Lock lock = checkpointLock.readLock();
+            lock.lock();
+            try {
+                // La recuperacion no debe rehacer escrituras anteriores sobre este resultado
+                awaitForced(append(RECORD_BARRIER, target, new byte[0]));
+                replace(temp, target, sync);
+            } finally {
+                lock.unlock();
+            }
+        } else {
+            replace(temp, target, sync);
+        }
+    }
+
+    // ============================================================================
+    // TEMPORALES Y RENAME
+    // ============================================================================
+
+    /**
+     * Escribe el contenido en un temporal oculto junto al destino
+     *
+     * @param force true para hacer force antes de cerrarlo
+     * @return El temporal
+     */
+    private File writeTemp(File target, byte[] data, boolean force) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        while (true) {
+            File temp = new File(parent, "." + target.getName() + "." + tempCounter.incrementAndGet() + ".tmp");
+            FileChannel channel;
+            try {
+                channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                continue;
+            }
+            try (FileChannel c = channel) {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    c.write(buffer);
+                }
+                if (force) {
+                    c.force(true);
+                    syncs.incrementAndGet();
+                }
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            return temp;
+        }
+    }
+
+    /**
+     * Renombra en forma atomica el temporal sobre el destino
+     *
+     * @param sync true para hacer force del directorio (el rename llega al disco)
+     */
+    private void replace(File temp, File target, boolean sync) throws IOException {
+        try {
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (sync) {
+            syncDirectory(target.getAbsoluteFile().getParentFile());
+            File tempParent = temp.getAbsoluteFile().getParentFile();
+            if (!tempParent.equals(target.getAbsoluteFile().getParentFile())) {
+                syncDirectory(tempParent);
+            }
+        }
+    }
+
+    /**
+     * Hace force de un archivo ya cerrado
+     */
+    private void force(File file) throws IOException {
+        // Se abre para escritura: en Windows force requiere ese permiso
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        syncs.incrementAndGet();
+    }
+
+    /**
+     * Hace force de un directorio para que sus renames lleguen al disco
+     *
+     * En Windows no se puede abrir un directorio como canal: ahi el
+     * sistema ya escribe los renames en su propio diario.
+     */
+    private void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+            syncs.incrementAndGet();
+        } catch (IOException e) {
+            // Sistema que no lo permite: no hay nada mas que hacer
+        }
+    }
+
+    // ============================================================================
+    // DIARIO (modo grupo)
+    // ============================================================================
+
+    /**
+     * Anota un registro en el diario (sin esperar el force)
+     *
+     * Formato: [MAGIC][tipo][largo ruta][ruta UTF-8][largo datos][datos][CRC32]
+     *
+     * @return Numero de secuencia del registro
+     */
+    private long append(byte type, File target, byte[] data) throws IOException {
+        byte[] name = relativeName(target).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(4 + 1 + 4 + name.length + 4 + data.length + 4);
+        record.putInt(RECORD_MAGIC).put(type).putInt(name.length).put(name).putInt(data.length).put(data);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, record.position() - 4);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("El servidor se esta deteniendo");
+            }
+            while (record.hasRemaining()) {
+                journal.write(record);
+            }
+            appendedSeq++;
+            notifyAll();  // Despierta al hilo del diario
+            return appendedSeq;
+        }
+    }
+
+    /**
+     * Espera a que el diario llegue al disco hasta el registro indicado
+     */
+    private synchronized void awaitForced(long seq) throws IOException {
+        while (forcedSeq < seq) {
+            if (failure != null) {
+                throw new IOException("El diario no se pudo escribir: " + failure.getMessage(), failure);
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Escritura interrumpida");
+            }
+        }
+    }
+
+    /**
+     * Hilo del diario: un force por grupo de escrituras
+     *
+     * Mientras un force esta en curso llegan mas escrituras; el siguiente
+     * force las cubre a todas juntas.
+     */
+    private void commitLoop() {
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (appendedSeq == forcedSeq && !closed) {
+                        wait();
+                    }
+                    if (appendedSeq == forcedSeq) {
+                        return;  // Cerrado y sin nada pendiente
+                    }
+                }
+                if (GROUP_WINDOW_MS > 0) {
+                    // Da unos milisegundos para que se sumen mas escrituras
+                    Thread.sleep(GROUP_WINDOW_MS);
+                }
+                forcePending();
+                if (journal.size() > CHECKPOINT_BYTES) {
+                    checkpoint();
+                }
+            }
+        } catch (IOException e) {
+            logger.accept("[ERROR] Fallo el diario de escrituras: " + e.getMessage());
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hace force del diario y despierta a las escrituras que cubrio
+     */
+    private void forcePending() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appendedSeq;
+        }
+        if (target == forcedSeq) {
+            return;
+        }
+        journal.force(false);
+        syncs.incrementAndGet();
+        synchronized (this) {
+            forcedSeq = target;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Lleva al disco los archivos escritos y vacia el diario
+     */
+    private void checkpoint() throws IOException, InterruptedException {
+        Lock lock = checkpointLock.writeLock();
+        // Mientras espera, sigue haciendo force: las escrituras que tienen
+        // el lock de lectura pueden estar esperando uno
+        while (!lock.tryLock(GROUP_WINDOW_MS + 1, TimeUnit.MILLISECONDS)) {
+            forcePending();
+        }
+        try {
+            forcePending();
+            Set<File> files;
+            synchronized (this) {
+                files = new HashSet<>(touched);
+                touched.clear();
+            }
+            Set<File> dirs = new HashSet<>();
+            for (File file : files) {
+                if (file.isFile()) {
+                    force(file);
+                }
+                dirs.add(file.getAbsoluteFile().getParentFile());
+            }
+            for (File dir : dirs) {
+                syncDirectory(dir);
+            }
+            synchronized (this) {
+                journal.truncate(0);
+            }
+            journal.force(true);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Recuerda un archivo para el proximo punto de control
+     */
+    private synchronized void touch(File target) {
+        touched.add(target.getAbsoluteFile());
+    }
+
+    // ============================================================================
+    // RECUPERACION
+    // ============================================================================
+
+    /**
+     * Rehace las operaciones del diario que quizas no llegaron al disco
+     *
+     * Se leen los registros hasta el primero incompleto (la caida pudo
+     * cortar el ultimo). Por cada archivo vale la ultima operacion; una
+     * marca anula las anteriores. Rehacer es seguro aunque el cambio ya
+     * estuviera en el disco: se escribe el mismo contenido.
+     */
+    private void recover() throws IOException {
+        if (!journalFile.isFile() || journalFile.length() == 0) {
+            return;
+        }
+        // Ruta -> contenido (null = borrar)
+        Map<String, byte[]> pending = new LinkedHashMap<>();
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(FileChannel.open(journalFile.toPath(), StandardOpenOption.READ))))) {
+            while (true) {
+                byte[][] record = readRecord(in);
+                if (record == null) {
+                    break;
+                }
+                String name = new String(record[1], StandardCharsets.UTF_8);
+                byte type = record[0][0];
+                pending.remove(name);  // Conserva el orden de la ultima operacion
+                if (type == RECORD_PUT) {
+                    pending.put(name, record[2]);
+                } else if (type == RECORD_DELETE) {
+                    pending.put(name, null);
+                }
+                records++;
+            }
+        }
+
+        Set<File> dirs = new HashSet<>();
+        for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+            File target = new File(directory, entry.getKey());
+            if (entry.getValue() != null) {
+                replace(writeTemp(target, entry.getValue(), true), target, false);
+            } else {
+                target.delete();
+            }
+            dirs.add(target.getAbsoluteFile().getParentFile());
+        }
+        for (File dir : dirs) {
+            syncDirectory(dir);
+        }
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+            channel.force(true);
+        }
+        logger.accept("[RECUPERACION] Diario con " + records + " registros: se rehicieron "
+            + pending.size() + " archivos");
+    }
+
+    /**
+     * Lee un registro del diario
+     *
+     * @return {tipo, ruta, datos} o null si no hay mas registros completos
+     */
+    private static byte[][] readRecord(DataInputStream in) throws IOException {
+        try {
+            if (in.readInt() != RECORD_MAGIC) {
+                return null;
+            }
+            byte type = in.readByte();
+            int nameLength = in.readInt();
+            if (nameLength < 0 || nameLength > 64 * 1024) {
+                return null;
+            }
+            byte[] name = new byte[nameLength];
+            in.readFully(name);
+            int dataLength = in.readInt();
+            if (dataLength < 0 || dataLength > MAX_JOURNAL_RECORD) {
+                return null;
+            }
+            byte[] data = new byte[dataLength];
+            in.readFully(data);
+            int expected = in.readInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(ByteBuffer.allocate(4).putInt(nameLength).array());
+            crc.update(name);
+            crc.update(ByteBuffer.allocate(4).putInt(dataLength).array());
+            crc.update(data);
+            if ((int) crc.getValue() != expected) {
+                return null;
+            }
+            return new byte[][] {{type}, name, data};
+        } catch (EOFException e) {
+            return null;  // Registro cortado por la caida
+        }
+    }
+
+    /**
+     * Borra temporales que dejo una caida a mitad de una escritura
+     *
+     * Cada temporal se crea junto a su destino: se recorre todo el arbol
+     * (subcarpetas y la carpeta de subidas parciales) salvo el diario.
+     * Los enlaces simbolicos no se siguen.
+     */
+    private void deleteStaleTemps() {
+        Path journalDir = journalFile.getParentFile().toPath();
+        try {
+            Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return dir.equals(journalDir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = file.getFileName().toString();
+                    if (attrs.isRegularFile() && name.startsWith(".") && name.endsWith(".tmp")) {
+                        file.toFile().delete();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;  // Sin permiso o borrado mientras se recorre
+                }
+            });
+        } catch (IOException e) {
+            logger.accept("[AVISO] No se pudieron borrar temporales viejos: " + e.getMessage());
+        }
+    }
+
+    // ============================================================================
+    // UTILIDADES
+    // ============================================================================
+
+    /**
+     * Ruta del archivo relativa al directorio de trabajo (para el diario)
+     */
+    private String relativeName(File target) {
+        return directory.toPath().relativize(target.getAbsoluteFile().toPath()).toString();
+    }
+
+    /**
+     * Lock del grupo al que pertenece un archivo
+     */
+    private Object stripeFor(File target) {
+        return stripes[(target.getAbsolutePath().hashCode() & 0x7FFFFFFF) % STRIPES];
+    }
+
+    /**
+     * Detiene el hilo del diario despues de un punto de control
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        if (journal == null) {
+            return;
+        }
+        try {
+            committer.join();
+            // Apagado limpio: el diario queda vacio
+            if (failure == null) {
+                checkpoint();
+            }
+        } catch (IOException e) {
+            logger.accept("[ERROR] No se pudo vaciar el diario: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                // Ignorar errores al cerrar
+            }
+        }
+    }
+
+    /**
+     * Genera un resumen legible para el log del servidor
+     *
+     * @return Texto con modo, escrituras y fsync realizados
+     */
+    public String report() {
+        long w = writes.get();
+        long s = syncs.get();
+        return "[DURABILIDAD] Modo " + MODE + " | Escrituras: " + w + " | fsync: " + s
+            + (s > 0 && w > 0 ? " (" + String.format("%.1f", (double) w / s) + " escrituras por fsync)" : "");
+    }
+}
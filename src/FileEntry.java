@@ -0,0 +1,74 @@
+// Importamos la interfaz Serializable para enviar las entradas dentro de FileProtocol
+import java.io.Serializable;
+
+/**
+ * Clase FileEntry - Datos de un archivo dentro de una pagina de LISTPAGE
+ *
+ * A diferencia de fileList (solo nombres), cada entrada trae el tamanio,
+ * la fecha de modificacion y si es un directorio, para que el cliente
+ * muestre esas columnas sin pedir nada mas.
+ */
+public class FileEntry implements Serializable {
+
+    // Identificador de version para la serializacion (ver FileProtocol)
+    private static final long serialVersionUID = 1L;
+
+    // Nombre del archivo dentro del directorio de trabajo
+    private final String name;
+
+    // Tamanio en bytes (0 para directorios)
+    private final long size;
+
+    // Fecha de modificacion en milisegundos desde 1970
+    private final long modified;
+
+    // true si la entrada es un directorio
+    private final boolean directory;
+
+    /**
+     * Constructor de la entrada
+     *
+     * @param name Nombre del archivo
+     * @param size Tamanio en bytes
+     * @param modified Fecha de modificacion (ms)
+     * @param directory true si es un directorio
+     */
+    public FileEntry(String name, long size, long modified, boolean directory) {
+        this.name = name;
+        this.size = size;
+        this.modified = modified;
+        this.directory = directory;
+    }
+
+    /**
+     * Obtiene el nombre del archivo
+     * @return El nombre
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtiene el tamanio del archivo
+     * @return El tamanio en bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Obtiene la fecha de modificacion
+     * @return Milisegundos desde 1970
+     */
+    public long getModified() {
+        return modified;
+    }
+
+    /**
+     * Indica si la entrada es un directorio
+     * @return true si es un directorio
+     */
+    public boolean isDirectory() {
+        return directory;
+    }
+}
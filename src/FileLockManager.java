@@ -0,0 +1,144 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para los bloqueos por archivo
+// ============================================================================
+
+// Importa File y las excepciones de entrada/salida
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+// Importa el mapa concurrente de bloqueos y contadores atomicos
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Importa los locks de lectura/escritura
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Clase FileLockManager - Bloqueos de lectura/escritura por archivo
+ *
+ * Cada archivo (por su ruta canonica) tiene su propio ReadWriteLock:
+ *
+ *   - Varios lectores del mismo archivo trabajan en paralelo
+ *   - Los escritores de un mismo archivo pasan de a uno, y mientras
+ *     escriben no hay lectores (nadie ve un contenido a medias)
+ *   - Archivos distintos nunca comparten un lock
+ *
+ * Los locks se crean al primer uso y se descartan cuando nadie los
+ * tiene ni los espera, asi la tabla solo contiene los archivos en uso.
+ *
+ * Uso:
+ *   try (FileLockManager.Hold hold = locks.write(file)) { ... }
+ */
+public class FileLockManager {
+
+    // Locks en uso por ruta canonica
+    private final ConcurrentHashMap<String, Entry> locks = new ConcurrentHashMap<>();
+
+    // Contadores para el log de estadisticas
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+
+    /**
+     * Toma el lock compartido de un archivo (lectura)
+     *
+     * @param file Archivo a leer
+     * @return Bloqueo que se libera con close()
+     */
+    public Hold read(File file) throws IOException {
+        return acquire(file, false);
+    }
+
+    /**
+     * Toma el lock exclusivo de un archivo (escritura)
+     *
+     * @param file Archivo a escribir o borrar
+     * @return Bloqueo que se libera con close()
+     */
+    public Hold write(File file) throws IOException {
+        return acquire(file, true);
+    }
+
+    /**
+     * Registra al usuario del lock y espera a obtenerlo
+     */
+    private Hold acquire(File file, boolean exclusive) throws IOException {
+        String key = file.getCanonicalPath();
+        // compute es atomico por clave: nadie descarta la entrada mientras se suma
+        Entry entry = locks.compute(key, (k, e) -> {
+            Entry current = e != null ? e : new Entry();
+            current.users++;
+            return current;
+        });
+        Lock lock = exclusive ? entry.lock.writeLock() : entry.lock.readLock();
+        if (!lock.tryLock()) {
+            contended.incrementAndGet();
+            try {
+                lock.lockInterruptibly();
+            } catch (InterruptedException e) {
+                release(key);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Espera del bloqueo interrumpida: " + file.getName());
+            }
+        }
+        acquired.incrementAndGet();
+        return new Hold(key, lock);
+    }
+
+    /**
+     * Descuenta un usuario y descarta la entrada si era el ultimo
+     */
+    private void release(String key) {
+        locks.computeIfPresent(key, (k, e) -> --e.users == 0 ? null : e);
+    }
+
+    /**
+     * Genera un resumen legible para el log del servidor
+     *
+     * @return Texto con bloqueos tomados y cuantos tuvieron que esperar
+     */
+    public String report() {
+        long total = acquired.get();
+        long waited = contended.get();
+        return "[BLOQUEOS] Adquiridos: " + total + " | Con espera: " + waited
+            + (total > 0 ? " (" + (waited * 100 / total) + "%)" : "")
+            + " | Archivos bloqueados ahora: " + locks.size();
+    }
+
+    /**
+     * Lock de un archivo y cantidad de hilos que lo tienen o lo esperan
+     */
+    private static class Entry {
+
+        // No es fair: los lectores que llegan juntos entran juntos
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // Protegido por el compute del mapa
+        int users;
+    }
+
+    /**
+     * Bloqueo tomado; se libera al cerrarlo (try-with-resources)
+     */
+    public final class Hold implements AutoCloseable {
+
+        private final String key;
+        private final Lock lock;
+        private boolean released;
+
+        private Hold(String key, Lock lock) {
+            this.key = key;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                lock.unlock();
+                release(key);
+            }
+        }
+    }
+}
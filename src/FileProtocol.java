@@ -29,6 +29,9 @@ public class FileProtocol implements Serializable {
     public static final String CMD_LIST_FILES = "LIST";
     
     // Comando para leer/abrir el contenido de un archivo
+    // La respuesta trae la fecha de modificacion en offset y el tamanio en
+    // length. Si la peticion trae esos mismos valores (copia en cache) y el
+    // archivo no cambio, se responde NOTMODIFIED sin el contenido
     public static final String CMD_READ_FILE = "READ";
     
     // Comando para escribir contenido en un archivo (crear o sobrescribir)
@@ -46,6 +49,71 @@ public class FileProtocol implements Serializable {
     // Comando para cerrar la conexion con el servidor
     public static final String CMD_DISCONNECT = "DISCONNECT";
     
+    // Comando para leer un archivo en trozos (streaming)
+    // El servidor responde con varios mensajes CHUNK; el ultimo tiene last=true
+    public static final String CMD_READ_STREAM = "READSTREAM";
+    
+    // Comando para descargar un archivo sin copias intermedias
+    // El servidor responde con un FILEDATA (length = N) seguido de N bytes crudos
+    public static final String CMD_DOWNLOAD = "DOWNLOAD";
+    
+    // Comandos de subida en trozos (ver UploadManager)
+    // BEGIN abre o retoma la sesion y responde con el offset ya recibido
+    public static final String CMD_UPLOAD_BEGIN = "UPLOADBEGIN";
+    
+    // Envia un trozo (data) en su posicion (offset)
+    public static final String CMD_UPLOAD_CHUNK = "UPLOADCHUNK";
+    
+    // Verifica tamanio y hash y deja el archivo en su lugar
+    public static final String CMD_UPLOAD_COMMIT = "UPLOADCOMMIT";
+    
+    // Comando para listar archivos por paginas con tamanio y fecha
+    // fileName = filtro (glob o prefijo), content = orden (name, size, mtime),
+    // offset = cursor (posicion del primero), length = tamanio de pagina
+    public static final String CMD_LIST_PAGE = "LISTPAGE";
+    
+    // Comando para pedir la firma por bloques de un archivo (ver DeltaSync)
+    // length = tamanio de bloque pedido; la respuesta trae la firma en data,
+    // el tamanio de bloque en offset y el tamanio del archivo en length
+    public static final String CMD_SIGNATURE = "SIGNATURE";
+    
+    // Comando para modificar un archivo enviando solo los bloques cambiados
+    // data = delta, offset = tamanio de bloque, length = tamanio del archivo
+    // base, content = SHA-256 del resultado esperado
+    public static final String CMD_MODIFY_DELTA = "MODIFYDELTA";
+    
+    // Comando para leer solo una parte de un archivo
+    // offset = primer byte, length = cantidad de bytes, last = true para
+    // contar offset desde el final (offset 0 + length N = ultimos N bytes).
+    // Responde un CHUNK: data, offset absoluto, length = tamanio del archivo
+    // y last = true si el rango llega al final
+    public static final String CMD_READ_RANGE = "READRANGE";
+    
+    // Comando para ejecutar varias operaciones en un solo viaje
+    // items = sub-peticiones en orden, offset = opciones (BATCH_*); la
+    // respuesta trae en items un resultado por cada sub-peticion
+    public static final String CMD_BATCH = "BATCH";
+    
+    // Opcion de BATCH: las operaciones que siguen a un error no se ejecutan
+    public static final long BATCH_STOP_ON_ERROR = 1;
+    
+    // Opcion de BATCH: las operaciones sobre archivos distintos se ejecutan
+    // en paralelo (las de un mismo archivo conservan su orden)
+    public static final long BATCH_PARALLEL = 2;
+    
+    // Comando para recibir los cambios del directorio sin preguntar: despues
+    // del OK el servidor envia mensajes EVENT mientras la conexion siga abierta
+    public static final String CMD_SUBSCRIBE = "SUBSCRIBE";
+    
+    // Comando para listar un arbol completo por paginas (subidas y descargas
+    // de carpetas): fileName = carpeta (null = directorio de trabajo),
+    // offset = cursor, length = tamanio de pagina. Responde como LISTPAGE,
+    // con las rutas relativas al directorio de trabajo separadas por "/"
+    public static final String CMD_LIST_TREE = "LISTTREE";
+    
+    // Comando para crear una carpeta (y las que falten en su ruta)
+    public static final String CMD_MAKE_DIR = "MKDIR";
+    
     // ============================================================================
     // CONSTANTES DE RESPUESTAS - Definen los tipos de respuesta del servidor
     // ============================================================================
@@ -62,6 +130,28 @@ public class FileProtocol implements Serializable {
     // Respuesta que indica que se esta enviando una lista de archivos
     public static final String RESP_FILE_LIST = "FILELIST";
     
+    // Respuesta que contiene un trozo de un archivo (en data, desde offset)
+    public static final String RESP_FILE_CHUNK = "CHUNK";
+    
+    // Cabecera de una descarga: detras de la trama vienen length bytes crudos
+    public static final String RESP_FILE_DATA = "FILEDATA";
+    
+    // Respuesta a un READ condicional: la copia del cliente sigue vigente
+    public static final String RESP_NOT_MODIFIED = "NOTMODIFIED";
+    
+    // Respuesta a un MODIFY con version esperada: otro cliente cambio el
+    // archivo antes (version = la actual del servidor)
+    public static final String RESP_CONFLICT = "CONFLICT";
+    
+    // Cambios del directorio enviados a un suscriptor: entries = creados
+    // (los primeros length) y modificados, fileList = borrados,
+    // content = RESYNC si se perdieron cambios (ver ChangeNotifier)
+    public static final String RESP_EVENT = "EVENT";
+    
+    // Pagina de un listado: entries con los archivos, length = total que
+    // coinciden con el filtro, offset = cursor siguiente, last = no hay mas
+    public static final String RESP_FILE_PAGE = "FILEPAGE";
+    
     // ============================================================================
     // ATRIBUTOS - Variables que almacenan los datos del mensaje
     // ============================================================================
@@ -81,6 +171,32 @@ public class FileProtocol implements Serializable {
     // Almacena la lista de nombres de archivos (para el comando LIST)
     private String[] fileList;
     
+    // Almacena las entradas de una pagina de LISTPAGE (nombre, tamanio, fecha)
+    private FileEntry[] entries;
+    
+    // Almacena bytes crudos de un archivo (trozos de READSTREAM)
+    private byte[] data;
+    
+    // Posicion dentro del archivo a la que corresponde data
+    private long offset;
+    
+    // Tamanio total del archivo (o cantidad de bytes pedida)
+    private long length;
+    
+    // Indica que este es el ultimo mensaje de una secuencia de trozos
+    private boolean last;
+    
+    // Sub-peticiones de un BATCH (o sus resultados en la respuesta)
+    private FileProtocol[] items;
+    
+    // Identificador de correlacion: el servidor lo copia en cada respuesta
+    // a esta peticion (0 = sin identificador, una peticion a la vez)
+    private long requestId;
+    
+    // Version del archivo: el servidor la informa en READ y en cada
+    // escritura; en MODIFY es la version esperada (0 = sin comprobar)
+    private long version;
+    
     // ============================================================================
     // CONSTRUCTORES - Diferentes formas de crear un objeto FileProtocol
     // ============================================================================
@@ -215,4 +331,132 @@ public class FileProtocol implements Serializable {
     public void setFileList(String[] fileList) { 
         this.fileList = fileList;  // Asigna la nueva lista
     }
+    
+    /**
+     * Obtiene las entradas de una pagina del listado
+     * @return Array de entradas (o null si no hay)
+     */
+    public FileEntry[] getEntries() {
+        return entries;  // Retorna las entradas
+    }
+    
+    /**
+     * Establece las entradas de una pagina del listado
+     * @param entries Array de entradas
+     */
+    public void setEntries(FileEntry[] entries) {
+        this.entries = entries;  // Asigna las entradas
+    }
+    
+    /**
+     * Obtiene los bytes crudos del mensaje
+     * @return Arreglo de bytes (o null si no hay)
+     */
+    public byte[] getData() {
+        return data;  // Retorna los bytes
+    }
+    
+    /**
+     * Establece los bytes crudos del mensaje
+     * @param data Arreglo de bytes a enviar
+     */
+    public void setData(byte[] data) {
+        this.data = data;  // Asigna los bytes
+    }
+    
+    /**
+     * Obtiene la posicion dentro del archivo
+     * @return El desplazamiento en bytes
+     */
+    public long getOffset() {
+        return offset;  // Retorna la posicion
+    }
+    
+    /**
+     * Establece la posicion dentro del archivo
+     * @param offset El desplazamiento en bytes
+     */
+    public void setOffset(long offset) {
+        this.offset = offset;  // Asigna la posicion
+    }
+    
+    /**
+     * Obtiene el tamanio total (archivo o rango pedido)
+     * @return La cantidad de bytes
+     */
+    public long getLength() {
+        return length;  // Retorna el tamanio
+    }
+    
+    /**
+     * Establece el tamanio total (archivo o rango pedido)
+     * @param length La cantidad de bytes
+     */
+    public void setLength(long length) {
+        this.length = length;  // Asigna el tamanio
+    }
+    
+    /**
+     * Indica si es el ultimo mensaje de una secuencia
+     * @return true si no vienen mas trozos
+     */
+    public boolean isLast() {
+        return last;  // Retorna la bandera
+    }
+    
+    /**
+     * Marca si es el ultimo mensaje de una secuencia
+     * @param last true si no vienen mas trozos
+     */
+    public void setLast(boolean last) {
+        this.last = last;  // Asigna la bandera
+    }
+    
+    /**
+     * Obtiene las sub-peticiones (o resultados) de un lote
+     * @return Array de mensajes (o null si no hay)
+     */
+    public FileProtocol[] getItems() {
+        return items;  // Retorna los mensajes del lote
+    }
+    
+    /**
+     * Establece las sub-peticiones (o resultados) de un lote
+     * @param items Array de mensajes en orden
+     */
+    public void setItems(FileProtocol[] items) {
+        this.items = items;  // Asigna los mensajes del lote
+    }
+    
+    /**
+     * Obtiene el identificador de correlacion
+     * @return El identificador (0 si la peticion no tiene)
+     */
+    public long getRequestId() {
+        return requestId;  // Retorna el identificador
+    }
+    
+    /**
+     * Establece el identificador de correlacion
+     * @param requestId Identificador unico entre las peticiones en vuelo
+     */
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;  // Asigna el identificador
+    }
+    
+    /**
+     * Obtiene la version del archivo
+     * @return La version (0 si no se informa)
+     */
+    public long getVersion() {
+        return version;  // Retorna la version
+    }
+    
+    /**
+     * Establece la version del archivo
+     * @param version Version informada por el servidor o esperada por el cliente
+     */
+    public void setVersion(long version) {
+        this.version = version;  // Asigna la version
+    }
 }
@@ -0,0 +1,235 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para las versiones de archivos
+// ============================================================================
+
+// Importa clases de archivos (fecha, tamanio y registros de version)
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+// Importa el mapa con orden de acceso (base de la politica LRU)
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Clase FileVersions - Numero de version de cada archivo
+ *
+ * El cliente recibe la version en READ y la devuelve en MODIFY: si no
+ * coincide con la actual, otro cliente escribio entre medio y el servidor
+ * responde CONFLICT en lugar de pisar ese cambio.
+ *
+ * - Cada escritura del servidor guarda un registro con la version, la
+ *   fecha y el tamanio que quedaron, en la carpeta oculta ".versions"
+ *   (un archivo por ruta). La version nueva
+ *   es siempre mayor que la anterior, aunque la fecha y el tamanio
+ *   vuelvan a ser los mismos (ej: fecha con precision de 1 o 2 s).
+ * - Despues de reiniciar el servidor, un archivo sin cambios coincide
+ *   con su registro y conserva su version: el cliente que lo tenia
+ *   abierto puede guardarlo sin un CONFLICT falso.
+ * - Un cambio hecho desde fuera del servidor no coincide con el registro:
+ *   se le da una version mayor (aunque la fecha haya vuelto atras) y se
+ *   registra.
+ * - Un archivo que el servidor nunca escribio no tiene registro: su
+ *   version sale de la fecha y el tamanio.
+ * - El registro se reemplaza con un rename atomico pero sin fsync: si un
+ *   corte de luz lo pierde, el archivo no coincide con el registro
+ *   anterior y recibe una version mayor, sin costar un segundo fsync
+ *   en cada escritura.
+ *
+ * Se llama con el lock del archivo tomado (FileLockManager): leer la
+ * version y escribir el archivo ocurren sin que nadie se cruce.
+ */
+public class FileVersions {
+
+    // Carpeta (dentro del directorio de trabajo) con los registros
+    public static final String VERSION_DIR = ".versions";
+
+    // Versiones por milisegundo de la fecha (el resto distingue tamanios)
+    private static final long SIZES_PER_MILLI = 1_000_000;
+
+    // Registros guardados en memoria a la vez (los demas se leen del disco)
+    private static final int MAX_CACHED = 4096;
+
+    // Marca en memoria de una ruta sin registro (no se vuelve a buscar)
+    private static final Record NONE = new Record(0, -1, -1);
+
+    // Directorio de trabajo (para armar la ruta de cada registro)
+    private final Path root;
+
+    // Carpeta de los registros
+    private final File versionDirectory;
+
+    // Registros usados mas recientemente por ruta (protegido por this)
+    private final LinkedHashMap<String, Record> cached = new LinkedHashMap<String, Record>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Record> eldest) {
+            return size() > MAX_CACHED;
+        }
+    };
+
+    /**
+     * Constructor de las versiones
+     *
+     * @param workingDirectory Directorio de trabajo del servidor
+     */
+    public FileVersions(String workingDirectory) {
+        this.root = new File(workingDirectory).toPath().toAbsolutePath();
+        this.versionDirectory = new File(workingDirectory, VERSION_DIR);
+    }
+
+    /**
+     * Obtiene la version actual de un archivo
+     *
+     * Si el archivo cambio desde fuera del servidor, se registra la version
+     * nueva; si no se puede guardar, vale igual mientras el servidor siga
+     * abierto.
+     *
+     * @param file Archivo del directorio de trabajo
+     * @return La version, o 0 si el archivo no existe
+     */
+    public long current(File file) {
+        long modified = file.lastModified();
+        if (modified == 0) {
+            return 0;
+        }
+        long size = file.length();
+        String path = pathOf(file);
+        Record record = lookup(path);
+        if (record != null && record.matches(modified, size)) {
+            return record.version;
+        }
+        long version = versionOf(modified, size);
+        if (record == null) {
+            return version;
+        }
+        // Cambio desde fuera: nunca vuelve a una version ya entregada
+        Record external = new Record(Math.max(record.version + 1, version), modified, size);
+        try {
+            save(path, external);
+        } catch (IOException e) {
+            remember(path, external);
+        }
+        return external.version;
+    }
+
+    /**
+     * Da una version nueva al archivo despues de escribirlo y la registra
+     *
+     * @param file Archivo recien escrito
+     * @param previous Version que tenia antes de escribirlo (0 si no existia)
+     * @return La version nueva, mayor que previous y que cualquier otra
+     *         registrada para esta ruta
+     * @throws IOException Si no se pudo guardar el registro: la escritura
+     *         debe informarse como fallida
+     */
+    public long changed(File file, long previous) throws IOException {
+        long modified = file.lastModified();
+        long size = file.length();
+        String path = pathOf(file);
+        Record record = lookup(path);
+        long version = Math.max(previous + 1, versionOf(modified, size));
+        if (record != null) {
+            version = Math.max(version, record.version + 1);
+        }
+        save(path, new Record(version, modified, size));
+        return version;
+    }
+
+    // ============================================================================
+    // REGISTROS
+    // ============================================================================
+
+    /**
+     * Busca el registro de una ruta (en memoria o en el disco)
+     *
+     * @return El registro, o null si el servidor nunca escribio el archivo
+     */
+    private Record lookup(String path) {
+        synchronized (this) {
+            Record record = cached.get(path);
+            if (record != null) {
+                return record != NONE ? record : null;
+            }
+        }
+        Record record;
+        try {
+            String[] fields = new String(Files.readAllBytes(recordFile(path).toPath()), StandardCharsets.UTF_8)
+                .trim().split(" ");
+            record = new Record(Long.parseLong(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+        } catch (IOException | RuntimeException e) {
+            // Sin registro (o ilegible): la version sale de fecha y tamanio
+            record = NONE;
+        }
+        remember(path, record);
+        return record != NONE ? record : null;
+    }
+
+    /**
+     * Guarda el registro de una ruta en el disco y en memoria
+     */
+    private void save(String path, Record record) throws IOException {
+        File target = recordFile(path);
+        File parent = target.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("No se pudo crear " + parent);
+        }
+        String line = record.version + " " + record.modified + " " + record.size + "\n";
+        // Temporal propio (dos lectores pueden registrar el mismo cambio a la vez)
+        Path temp = Files.createTempFile(parent.toPath(), "." + target.getName() + ".", ".tmp");
+        try {
+            Files.write(temp, line.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        remember(path, record);
+    }
+
+    private synchronized void remember(String path, Record record) {
+        cached.put(path, record);
+    }
+
+    /**
+     * Ruta del archivo relativa al directorio de trabajo, separada por "/"
+     */
+    private String pathOf(File file) {
+        return root.relativize(file.toPath().toAbsolutePath()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Archivo donde se guarda el registro de una ruta
+     */
+    private File recordFile(String path) {
+        return new File(versionDirectory, path);
+    }
+
+    /**
+     * Convierte fecha y tamanio en un numero de version
+     */
+    private static long versionOf(long modified, long size) {
+        return modified * SIZES_PER_MILLI + size % SIZES_PER_MILLI;
+    }
+
+    /**
+     * Version que se entrego para un estado del archivo (fecha y tamanio)
+     */
+    private static final class Record {
+
+        final long version;
+        final long modified;
+        final long size;
+
+        Record(long version, long modified, long size) {
+            this.version = version;
+            this.modified = modified;
+            this.size = size;
+        }
+
+        boolean matches(long modified, long size) {
+            return this.modified == modified && this.size == size;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para codificar los mensajes
+// ============================================================================
+
+// Importa clases de entrada/salida (streams de bytes y de objetos)
+import java.io.*;
+
+// Importa ByteBuffer para decodificar desde buffers de canales NIO
+import java.nio.ByteBuffer;
+
+/**
+ * Clase FrameCodec - Formato de tramas del protocolo con longitud prefijada
+ *
+ * El protocolo original envia un flujo continuo de ObjectOutputStream,
+ * que no se puede leer de forma no bloqueante porque no tiene limites
+ * entre mensajes. Este formato agrega esos limites:
+ *
+ *   Saludo del cliente:  [MAGIC (4 bytes)] [version (1)] [opciones (1)]
+ *   Saludo del servidor: [MAGIC (4 bytes)] [version (1)] [opciones (1)]
+ *   Cada mensaje:        [longitud (4 bytes)] [FileProtocol codificado]
+ *
+ * Como se codifica el FileProtocol depende de la version acordada:
+ *   1 = serializacion de Java (un ObjectOutputStream nuevo por mensaje)
+ *   2 = formato binario compacto de BinaryCodec
+ *
+ * El byte de opciones acuerda la compresion (ver Compression). Si hay
+ * una activa, los metodos que la reciben comprimen/descomprimen cada
+ * cuerpo; con null se comportan igual que sin compresion.
+ *
+ * El servidor clasico distingue a un cliente nuevo de uno antiguo mirando
+ * los primeros 4 bytes: MAGIC para tramas, 0xACED para serializacion Java.
+ */
+public class FrameCodec {
+
+    // ============================================================================
+    // CONSTANTES DEL SALUDO
+    // ============================================================================
+
+    // Numero magico "FPRF" que abre el saludo de un cliente con tramas
+    public static final int MAGIC = 0x46505246;
+
+    // Cabecera de un flujo de ObjectOutputStream (clientes antiguos)
+    public static final int JAVA_STREAM_MAGIC = 0xACED0005;
+
+    // Version 1: el cuerpo de cada trama es un FileProtocol serializado
+    public static final byte VERSION_SERIALIZED = 1;
+
+    // Version 2: el cuerpo de cada trama usa BinaryCodec
+    public static final byte VERSION_BINARY = 2;
+
+    // Version mas alta que entiende esta implementacion
+    public static final byte MAX_VERSION = VERSION_BINARY;
+
+    // Longitud del saludo en bytes (magic + version + opciones)
+    public static final int HANDSHAKE_LENGTH = 6;
+
+    // Tamanio maximo aceptado para el cuerpo de una trama (64 MB)
+    // Evita reservar memoria sin limite si llega una longitud corrupta
+    public static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    // Constructor privado: la clase solo tiene metodos estaticos
+    private FrameCodec() {
+    }
+
+    // ============================================================================
+    // SALUDO (HANDSHAKE)
+    // ============================================================================
+
+    /**
+     * Escribe el saludo con la version y opciones ofrecidas
+     *
+     * @param out Stream de salida del socket
+     * @param version Version ofrecida (cliente) o elegida (servidor)
+     * @param options Bits de opciones (0 si no hay ninguna)
+     */
+    public static void writeHandshake(DataOutputStream out, byte version, byte options) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(version);
+        out.writeByte(options);
+        out.flush();
+    }
+
+    /**
+     * Lee el saludo del otro extremo y devuelve {version, opciones}
+     *
+     * @param in Stream de entrada del socket
+     * @return Arreglo de 2 bytes: version y opciones
+     * @throws IOException Si el numero magico no coincide
+     */
+    public static byte[] readHandshake(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new StreamCorruptedException("Saludo invalido: 0x" + Integer.toHexString(magic));
+        }
+        return new byte[] { in.readByte(), in.readByte() };
+    }
+
+    /**
+     * Elige la version a usar: la menor entre la ofrecida y la soportada
+     *
+     * @param offered Version que ofrece el cliente
+     * @return Version acordada
+     */
+    public static byte negotiateVersion(byte offered) {
+        return (byte) Math.max(1, Math.min(offered, MAX_VERSION));
+    }
+
+    // ============================================================================
+    // CODIFICACION DE MENSAJES
+    // ============================================================================
+
+    /**
+     * Convierte un FileProtocol en el cuerpo de una trama
+     *
+     * @param message El mensaje a codificar
+     * @param version Version del protocolo acordada en el saludo
+     * @return Los bytes del cuerpo (sin la longitud)
+     */
+    public static byte[] encode(FileProtocol message, byte version) throws IOException {
+        if (version >= VERSION_BINARY) {
+            return BinaryCodec.encode(message);
+        }
+        return serialize(message);
+    }
+
+    /**
+     * Convierte un FileProtocol en el cuerpo de una trama, comprimido
+     * si la conexion acordo compresion
+     *
+     * @param message El mensaje a codificar
+     * @param version Version del protocolo acordada en el saludo
+     * @param compression Compresion de la conexion (null si no hay)
+     * @return Los bytes del cuerpo (sin la longitud)
+     */
+    public static byte[] encode(FileProtocol message, byte version, Compression compression) throws IOException {
+        byte[] body = encode(message, version);
+        return compression != null ? compression.compress(body) : body;
+    }
+
+    /**
+     * Reconstruye un FileProtocol a partir de un cuerpo quizas comprimido
+     *
+     * @param data Arreglo que contiene el cuerpo
+     * @param offset Posicion inicial del cuerpo
+     * @param length Cantidad de bytes del cuerpo
+     * @param version Version del protocolo acordada en el saludo
+     * @param compression Compresion de la conexion (null si no hay)
+     * @return El mensaje decodificado
+     */
+    public static FileProtocol decode(byte[] data, int offset, int length, byte version,
+                                      Compression compression) throws IOException {
+        if (compression == null) {
+            return decode(data, offset, length, version);
+        }
+        byte[] body = compression.decompress(data, offset, length);
+        return decode(body, 0, body.length, version);
+    }
+
+    /**
+     * Reconstruye un FileProtocol a partir del cuerpo de una trama
+     *
+     * @param data Arreglo que contiene el cuerpo
+     * @param offset Posicion inicial del cuerpo
+     * @param length Cantidad de bytes del cuerpo
+     * @param version Version del protocolo acordada en el saludo
+     * @return El mensaje decodificado
+     */
+    public static FileProtocol decode(byte[] data, int offset, int length, byte version) throws IOException {
+        if (version >= VERSION_BINARY) {
+            return BinaryCodec.decode(data, offset, length);
+        }
+        return deserialize(data, offset, length);
+    }
+
+    /**
+     * Serializa un FileProtocol (version 1)
+     *
+     * Se usa un ObjectOutputStream nuevo por mensaje para que cada trama
+     * sea independiente (no hay referencias a mensajes anteriores).
+     *
+     * @param message El mensaje a codificar
+     * @return Los bytes serializados
+     */
+    private static byte[] serialize(FileProtocol message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserializa un FileProtocol (version 1)
+     *
+     * @param data Arreglo que contiene el cuerpo
+     * @param offset Posicion inicial del cuerpo
+     * @param length Cantidad de bytes del cuerpo
+     * @return El mensaje decodificado
+     */
+    private static FileProtocol deserialize(byte[] data, int offset, int length) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(data, offset, length))) {
+            return (FileProtocol) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            // Se reporta como error de E/S para simplificar el manejo
+            throw new StreamCorruptedException("Mensaje invalido: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodifica el cuerpo de una trama desde un ByteBuffer (motor NIO)
+     *
+     * @param buffer Buffer posicionado al inicio del cuerpo
+     * @param length Cantidad de bytes del cuerpo
+     * @param version Version del protocolo acordada en el saludo
+     * @return El mensaje decodificado
+     */
+    public static FileProtocol decode(ByteBuffer buffer, int length, byte version) throws IOException {
+        return decode(buffer, length, version, null);
+    }
+
+    /**
+     * Decodifica desde un ByteBuffer un cuerpo quizas comprimido (motor NIO)
+     *
+     * @param buffer Buffer posicionado al inicio del cuerpo
+     * @param length Cantidad de bytes del cuerpo
+     * @param version Version del protocolo acordada en el saludo
+     * @param compression Compresion de la conexion (null si no hay)
+     * @return El mensaje decodificado
+     */
+    public static FileProtocol decode(ByteBuffer buffer, int length, byte version,
+                                      Compression compression) throws IOException {
+        if (buffer.hasArray()) {
+            // Buffer en heap: se decodifica sin copiar
+            int offset = buffer.arrayOffset() + buffer.position();
+            buffer.position(buffer.position() + length);
+            return decode(buffer.array(), offset, length, version, compression);
+        }
+        byte[] data = new byte[length];
+        buffer.get(data);
+        return decode(data, 0, length, version, compression);
+    }
+
+    /**
+     * Crea una trama completa (longitud + cuerpo) lista para un canal NIO
+     *
+     * @param message El mensaje a enviar
+     * @param version Version del protocolo acordada en el saludo
+     * @return ByteBuffer en modo lectura con la trama
+     */
+    public static ByteBuffer toFrame(FileProtocol message, byte version) throws IOException {
+        return toFrame(message, version, null);
+    }
+
+    /**
+     * Crea una trama completa, comprimida si la conexion lo acordo
+     *
+     * @param message El mensaje a enviar
+     * @param version Version del protocolo acordada en el saludo
+     * @param compression Compresion de la conexion (null si no hay)
+     * @return ByteBuffer en modo lectura con la trama
+     */
+    public static ByteBuffer toFrame(FileProtocol message, byte version, Compression compression) throws IOException {
+        byte[] body = encode(message, version, compression);
+        ByteBuffer frame = ByteBuffer.allocate(4 + body.length);
+        frame.putInt(body.length);
+        frame.put(body);
+        frame.flip();
+        return frame;
+    }
+
+    // ============================================================================
+    // LECTURA Y ESCRITURA SOBRE STREAMS BLOQUEANTES
+    // ============================================================================
+
+    /**
+     * Escribe un mensaje como trama y fuerza el envio
+     *
+     * @param out Stream de salida del socket
+     * @param message El mensaje a enviar
+     * @param version Version del protocolo acordada en el saludo
+     */
+    public static void writeFrame(DataOutputStream out, FileProtocol message, byte version) throws IOException {
+        writeFrame(out, message, version, null);
+    }
+
+    /**
+     * Escribe un mensaje como trama (comprimida si se acordo) y fuerza el envio
+     *
+     * @param out Stream de salida del socket
+     * @param message El mensaje a enviar
+     * @param version Version del protocolo acordada en el saludo
+     * @param compression Compresion de la conexion (null si no hay)
+     */
+    public static void writeFrame(DataOutputStream out, FileProtocol message, byte version,
+                                  Compression compression) throws IOException {
+        byte[] body = encode(message, version, compression);
+        out.writeInt(body.length);
+        out.write(body);
+        out.flush();
+    }
+
+    /**
+     * Lee una trama completa y la decodifica
+     *
+     * @param in Stream de entrada del socket
+     * @param version Version del protocolo acordada en el saludo
+     * @return El mensaje recibido
+     * @throws EOFException Si el otro extremo cerro la conexion
+     */
+    public static FileProtocol readFrame(DataInputStream in, byte version) throws IOException {
+        return readFrame(in, version, null);
+    }
+
+    /**
+     * Lee una trama completa (quizas comprimida) y la decodifica
+     *
+     * @param in Stream de entrada del socket
+     * @param version Version del protocolo acordada en el saludo
+     * @param compression Compresion de la conexion (null si no hay)
+     * @return El mensaje recibido
+     */
+    public static FileProtocol readFrame(DataInputStream in, byte version, Compression compression) throws IOException {
+        int length = in.readInt();
+        checkLength(length);
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return decode(body, 0, length, version, compression);
+    }
+
+    /**
+     * Verifica que la longitud anunciada de una trama sea razonable
+     *
+     * @param length Longitud leida de la cabecera
+     */
+    public static void checkLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Longitud de trama invalida: " + length);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para las vistas del listado
+// ============================================================================
+
+// Importa IOException (la vista se arma leyendo el directorio)
+import java.io.IOException;
+
+// Importa el mapa con orden de acceso (base de la politica LRU)
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Clase ListingViews - Listados filtrados y ordenados que LISTPAGE reutiliza
+ *
+ * Un cliente que recorre un directorio de un millon de archivos pide
+ * paginas en cualquier orden (salta con la barra de la tabla). Sin esta
+ * cache, cada pagina volveria a filtrar el millon de nombres y, si el
+ * orden es por tamanio o fecha, a leer y ordenar todos.
+ *
+ * Cada vista es el arreglo de nombres que pasan un filtro, en un orden:
+ * una pagina es solo un tramo de ese arreglo (cursor = posicion).
+ *
+ * - Ordenada por nombre, la vista vale mientras el indice del directorio
+ *   no cambie (su version se compara en cada consulta).
+ * - Por tamanio o fecha depende de datos que cambian sin que cambie el
+ *   indice: ademas vence a los TTL_MS (-Dservidor.vistaListadoMs, 2 s).
+ *   Mientras tanto las paginas de un mismo recorrido son coherentes.
+ * - Los arboles de LISTTREE (orden TREE) y las vistas armadas sin indice
+ *   (version -1) no tienen version que comparar: vencen siempre a los
+ *   TTL_MS.
+ * - Se guardan las MAX_VIEWS vistas usadas mas recientemente.
+ *
+ * Todos los metodos son seguros para llamarse desde cualquier hilo.
+ */
+public class ListingViews {
+
+    // Orden de las vistas de LISTTREE (arbol completo, rutas ordenadas)
+    public static final String TREE = "tree";
+
+    // Vistas guardadas a la vez
+    private static final int MAX_VIEWS = 8;
+
+    // Vida de una vista por tamanio o fecha: -Dservidor.vistaListadoMs=N
+    private static final long TTL_MS = Long.getLong("servidor.vistaListadoMs", 2000);
+
+    // Vistas por filtro y orden, de la menos a la mas usada (protegido por this)
+    private final LinkedHashMap<String, View> views = new LinkedHashMap<String, View>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, View> eldest) {
+            return size() > MAX_VIEWS;
+        }
+    };
+
+    // Contadores para el log de estadisticas (protegidos por this)
+    private long hits;
+    private long builds;
+
+    /**
+     * Devuelve la vista de un filtro y un orden, armandola si no hay una vigente
+     *
+     * @param filter Filtro pedido (puede ser null)
+     * @param sort Orden pedido (name, size o mtime, con "-" adelante si es descendente, o TREE)
+     * @param indexVersion Version del indice del directorio (-1 si no hay indice)
+     * @param builder Arma la vista si hace falta
+     * @return Nombres filtrados y ordenados (no se deben modificar)
+     */
+    public String[] get(String filter, String sort, long indexVersion, Builder builder) throws IOException {
+        String key = (filter != null ? filter : "") + '\0' + sort;
+        long now = System.currentTimeMillis();
+        // Solo por nombre y con indice la version alcanza para saber si vale
+        boolean versioned = indexVersion >= 0 && sort.endsWith("name");
+        synchronized (this) {
+            View view = views.get(key);
+            if (view != null && view.indexVersion == indexVersion
+                    && (versioned || now - view.built < TTL_MS)) {
+                hits++;
+                return view.names;
+            }
+        }
+        // Se arma fuera del lock: dos pedidos a la vez pueden armarla los dos
+        String[] names = builder.build();
+        synchronized (this) {
+            builds++;
+            views.put(key, new View(names, indexVersion, now));
+        }
+        return names;
+    }
+
+    /**
+     * Genera un resumen legible para el log del servidor
+     *
+     * @return Texto con vistas reutilizadas y armadas
+     */
+    public synchronized String report() {
+        return "[LISTADOS] Vistas reutilizadas: " + hits + " | Armadas: " + builds + " | Guardadas: " + views.size();
+    }
+
+    /**
+     * Nombres de una vista y con que estado del directorio se armo
+     */
+    private static final class View {
+
+        final String[] names;
+        final long indexVersion;
+        final long built;
+
+        View(String[] names, long indexVersion, long built) {
+            this.names = names;
+            this.indexVersion = indexVersion;
+            this.built = built;
+        }
+    }
+
+    /**
+     * Interfaz Builder - Arma una vista recorriendo el directorio
+     */
+    public interface Builder {
+
+        /**
+         * @return Nombres filtrados y ordenados
+         */
+        String[] build() throws IOException;
+    }
+}
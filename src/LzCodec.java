@@ -0,0 +1,200 @@
+// Importa la excepcion para datos corruptos
+import java.io.StreamCorruptedException;
+
+// Importa Arrays para recortar el resultado
+import java.util.Arrays;
+
+/**
+ * Clase LzCodec - Compresion LZ77 rapida escrita en Java puro
+ *
+ * Sigue la idea del formato de bloques de LZ4: se buscan repeticiones
+ * de 4 bytes con una tabla hash y se emiten secuencias de
+ *
+ *   [token][literales extra][literales][distancia (2 bytes)][coincidencia extra]
+ *
+ * - token: 4 bits altos = cantidad de literales, 4 bits bajos =
+ *   largo de la coincidencia - 4. El valor 15 indica que siguen bytes
+ *   extra (255 = sigue otro).
+ * - La ultima secuencia solo tiene literales.
+ *
+ * Comprime menos que Deflater pero es varias veces mas rapido, util
+ * cuando el enlace es rapido y la CPU es el limite.
+ */
+public final class LzCodec {
+
+    // Largo minimo de una coincidencia
+    private static final int MIN_MATCH = 4;
+
+    // Distancia maxima hacia atras (cabe en 2 bytes)
+    private static final int MAX_DISTANCE = 65535;
+
+    // Bits de la tabla hash (4096 entradas)
+    private static final int HASH_BITS = 12;
+
+    // Los ultimos bytes siempre van como literales (simplifica los limites)
+    private static final int LAST_LITERALS = 5;
+
+    // Constructor privado: la clase solo tiene metodos estaticos
+    private LzCodec() {
+    }
+
+    /**
+     * Comprime un arreglo de bytes
+     *
+     * @param src Datos originales
+     * @param off Posicion inicial
+     * @param len Cantidad de bytes
+     * @return Datos comprimidos
+     */
+    public static byte[] compress(byte[] src, int off, int len) {
+        // Peor caso: todo literal, con los bytes de largo extra
+        byte[] dst = new byte[len + len / 255 + 16];
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+
+        int end = off + len;
+        int limit = end - LAST_LITERALS;
+        int anchor = off;
+        int pos = off;
+        int out = 0;
+
+        while (pos < limit - MIN_MATCH) {
+            int h = hash(src, pos);
+            int ref = table[h];
+            table[h] = pos;
+            if (ref < off || pos - ref > MAX_DISTANCE || !equals4(src, ref, pos)) {
+                pos++;
+                continue;
+            }
+            // Extiende la coincidencia tanto como se pueda
+            int matchLen = MIN_MATCH;
+            while (pos + matchLen < limit && src[ref + matchLen] == src[pos + matchLen]) {
+                matchLen++;
+            }
+            out = writeSequence(src, anchor, pos - anchor, pos - ref, matchLen, dst, out);
+            pos += matchLen;
+            anchor = pos;
+        }
+
+        // Ultima secuencia: solo literales
+        out = writeLiterals(src, anchor, end - anchor, dst, out, 0);
+        return Arrays.copyOf(dst, out);
+    }
+
+    /**
+     * Descomprime un bloque
+     *
+     * @param src Datos comprimidos
+     * @param off Posicion inicial
+     * @param len Cantidad de bytes comprimidos
+     * @param originalLength Largo exacto de los datos originales
+     * @return Datos originales
+     * @throws StreamCorruptedException Si el bloque es invalido
+     */
+    public static byte[] decompress(byte[] src, int off, int len, int originalLength) throws StreamCorruptedException {
+        if (originalLength < 0) throw corrupt();
+        byte[] dst = new byte[originalLength];
+        int end = off + len;
+        int in = off;
+        int out = 0;
+
+        while (in < end) {
+            int token = src[in++] & 0xFF;
+
+            // Literales
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (in >= end) throw corrupt();
+                    b = src[in++] & 0xFF;
+                    literals += b;
+                    // Se corta antes de que la suma pueda desbordar el int
+                    if (literals > end - in || literals > dst.length - out) throw corrupt();
+                } while (b == 255);
+            }
+            if (literals > end - in || literals > dst.length - out) throw corrupt();
+            System.arraycopy(src, in, dst, out, literals);
+            in += literals;
+            out += literals;
+            if (in >= end) {
+                break;  // Ultima secuencia: no tiene coincidencia
+            }
+
+            // Coincidencia
+            if (in + 2 > end) throw corrupt();
+            int distance = (src[in] & 0xFF) | ((src[in + 1] & 0xFF) << 8);
+            in += 2;
+            int matchLen = (token & 0x0F) + MIN_MATCH;
+            if ((token & 0x0F) == 15) {
+                int b;
+                do {
+                    if (in >= end) throw corrupt();
+                    b = src[in++] & 0xFF;
+                    matchLen += b;
+                    if (matchLen > dst.length - out) throw corrupt();
+                } while (b == 255);
+            }
+            int ref = out - distance;
+            if (distance == 0 || ref < 0 || matchLen > dst.length - out) throw corrupt();
+            // Copia byte a byte: la coincidencia puede solaparse consigo misma
+            for (int i = 0; i < matchLen; i++) {
+                dst[out++] = dst[ref + i];
+            }
+        }
+        if (out != dst.length) throw corrupt();
+        return dst;
+    }
+
+    // ============================================================================
+    // AUXILIARES
+    // ============================================================================
+
+    private static int writeSequence(byte[] src, int litStart, int litLen, int distance, int matchLen,
+                                     byte[] dst, int out) {
+        int matchCode = matchLen - MIN_MATCH;
+        out = writeLiterals(src, litStart, litLen, dst, out, Math.min(matchCode, 15));
+        dst[out++] = (byte) distance;
+        dst[out++] = (byte) (distance >>> 8);
+        if (matchCode >= 15) {
+            out = writeExtraLength(matchCode - 15, dst, out);
+        }
+        return out;
+    }
+
+    /**
+     * Escribe el token y los literales de una secuencia
+     *
+     * @param lowNibble Parte baja del token (largo de la coincidencia)
+     */
+    private static int writeLiterals(byte[] src, int start, int length, byte[] dst, int out, int lowNibble) {
+        dst[out++] = (byte) ((Math.min(length, 15) << 4) | lowNibble);
+        if (length >= 15) {
+            out = writeExtraLength(length - 15, dst, out);
+        }
+        System.arraycopy(src, start, dst, out, length);
+        return out + length;
+    }
+
+    private static int writeExtraLength(int value, byte[] dst, int out) {
+        while (value >= 255) {
+            dst[out++] = (byte) 255;
+            value -= 255;
+        }
+        dst[out++] = (byte) value;
+        return out;
+    }
+
+    private static int hash(byte[] b, int i) {
+        int v = (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | (b[i + 3] & 0xFF) << 24;
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    private static boolean equals4(byte[] b, int i, int j) {
+        return b[i] == b[j] && b[i + 1] == b[j + 1] && b[i + 2] == b[j + 2] && b[i + 3] == b[j + 3];
+    }
+
+    private static StreamCorruptedException corrupt() {
+        return new StreamCorruptedException("Bloque LZ invalido");
+    }
+}
@@ -0,0 +1,945 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para el motor NIO
+// ============================================================================
+
+// Importa clases de entrada/salida (IOException)
+import java.io.*;
+
+// Importa InetSocketAddress para enlazar el puerto
+import java.net.*;
+
+// Importa ByteBuffer para leer y escribir en los canales
+import java.nio.ByteBuffer;
+
+// Importa los canales no bloqueantes y el Selector
+// Incluye: ServerSocketChannel, SocketChannel, Selector, SelectionKey
+import java.nio.channels.*;
+
+// Importa colecciones (colas de escritura y de peticiones pendientes)
+import java.util.*;
+
+// Importa utilidades de concurrencia (pool de trabajadores, colas, contadores)
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Importa la interfaz funcional Consumer (destino del log)
+import java.util.function.Consumer;
+
+/**
+ * Clase NioServerEngine - Motor de servidor basado en Selector (multi-reactor)
+ *
+ * Alternativa al modelo de un hilo por cliente de ServerGUI. En lugar de
+ * bloquear un hilo en readObject() por cada conexion, usa:
+ *
+ * 1. Un hilo aceptador que recibe conexiones nuevas
+ * 2. N reactores (por defecto uno por nucleo), cada uno con su Selector,
+ *    que hacen lecturas y escrituras no bloqueantes
+ * 3. Un pool pequenio de trabajadores que ejecuta processRequest, para
+ *    que el acceso a disco nunca detenga a un reactor
+ *
+ * Cada conexion es un objeto Connection con su estado propio. Una conexion
+ * inactiva no tiene hilo ni buffer de lectura asignado, por lo que el
+ * servidor puede mantener decenas de miles de clientes conectados.
+ *
+ * Solo habla el protocolo de tramas de FrameCodec; los clientes que usan
+ * serializacion continua deben conectarse al motor de hilos.
+ */
+public class NioServerEngine {
+
+    // Tamanio del buffer de lectura compartido por cada reactor
+    private static final int SCRATCH_SIZE = 64 * 1024;
+
+    // Bytes pendientes de escritura a partir de los cuales un streaming
+    // espera a que el cliente lea (contrapresion por conexion)
+    private static final int HIGH_WATERMARK = 1024 * 1024;
+
+    // Bytes pendientes por debajo de los cuales el streaming continua
+    private static final int LOW_WATERMARK = 256 * 1024;
+
+    // Peticiones con identificador de una misma conexion que pueden
+    // ejecutarse a la vez (el resto espera en la cola de la conexion)
+    private static final int PIPELINE_DEPTH = 8;
+
+    // Puerto donde escucha el motor
+    private final int port;
+
+    // Procesador que ejecuta los comandos de archivos
+    private final RequestProcessor processor;
+
+    // Destino de los mensajes de log
+    private final Consumer<String> logger;
+
+    // Cantidad de reactores (hilos con Selector)
+    private final int reactorCount;
+
+    // Canal del servidor que acepta conexiones
+    private ServerSocketChannel serverChannel;
+
+    // Hilo que ejecuta el bucle de aceptacion
+    private Thread acceptorThread;
+
+    // Reactores que atienden las conexiones abiertas
+    private Reactor[] reactors;
+
+    // Pool que ejecuta processRequest fuera de los reactores
+    private ExecutorService workers;
+
+    // Bandera que indica si el motor esta activo
+    private volatile boolean running = false;
+
+    // Estadisticas de conexiones y latencia compartidas con ServerGUI
+    private final ServerStats stats;
+
+    /**
+     * Constructor del motor NIO
+     *
+     * @param port Puerto donde escuchar
+     * @param processor Procesador de comandos compartido
+     * @param logger Funcion que recibe cada mensaje de log
+     * @param reactorCount Cantidad de reactores (minimo 1)
+     * @param stats Estadisticas donde registrar conexiones y latencias
+     */
+    public NioServerEngine(int port, RequestProcessor processor, Consumer<String> logger,
+                           int reactorCount, ServerStats stats) {
+        this.port = port;
+        this.processor = processor;
+        this.logger = logger;
+        this.reactorCount = Math.max(1, reactorCount);
+        this.stats = stats;
+    }
+
+    // ============================================================================
+    // INICIO Y DETENCION
+    // ============================================================================
+
+    /**
+     * Abre el puerto, inicia los reactores y el hilo aceptador
+     *
+     * @throws IOException Si el puerto esta en uso o no se puede abrir
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        // Backlog amplio para soportar rafagas de conexiones
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+
+        running = true;
+
+        // Pool de trabajadores: los comandos tocan disco, se usan 2 por nucleo
+        int workerCount = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        workers = Executors.newFixedThreadPool(workerCount, namedThreads("nio-worker"));
+
+        // Crea e inicia cada reactor en su propio hilo
+        reactors = new Reactor[reactorCount];
+        for (int i = 0; i < reactorCount; i++) {
+            reactors[i] = new Reactor();
+            Thread t = new Thread(reactors[i], "nio-reactor-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+
+        // El aceptador usa accept() bloqueante: solo hay un hilo asi
+        acceptorThread = new Thread(this::acceptLoop, "nio-acceptor");
+        acceptorThread.setDaemon(true);
+        acceptorThread.start();
+
+        logger.accept("[INFO] Motor NIO con " + reactorCount + " reactores y " + workerCount + " trabajadores");
+    }
+
+    /**
+     * Detiene el motor y cierra todas las conexiones
+     */
+    public void stop() {
+        running = false;
+
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();  // Interrumpe accept()
+            }
+        } catch (IOException e) {
+            logger.accept("[AVISO] Error al cerrar canal del servidor: " + e.getMessage());
+        }
+
+        if (reactors != null) {
+            for (Reactor reactor : reactors) {
+                reactor.shutdown();
+            }
+        }
+
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Obtiene la cantidad de conexiones abiertas
+     * @return Numero de clientes conectados
+     */
+    public int getOpenConnections() {
+        return stats.getOpenConnections();
+    }
+
+    /**
+     * Bucle del hilo aceptador: reparte cada conexion entre los reactores
+     */
+    private void acceptLoop() {
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                // Reparto round-robin entre reactores
+                reactors[next].register(channel);
+                next = (next + 1) % reactors.length;
+
+            } catch (IOException e) {
+                // Si isRunning es false, el error es esperado (servidor detenido)
+                if (running) {
+                    logger.accept("[ERROR] Error aceptando conexion: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Crea una fabrica de hilos daemon con nombre (para depuracion)
+     *
+     * @param prefix Prefijo del nombre de cada hilo
+     * @return ThreadFactory configurada
+     */
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // ============================================================================
+    // CLASE INTERNA: Reactor - Un Selector atendido por un hilo
+    // ============================================================================
+
+    /**
+     * Reactor que multiplexa muchas conexiones en un solo hilo
+     *
+     * Otros hilos nunca tocan el Selector directamente: encolan tareas
+     * en pendingTasks y despiertan al reactor con wakeup().
+     */
+    private class Reactor implements Runnable {
+
+        // Selector que avisa que canales estan listos
+        private final Selector selector;
+
+        // Tareas de otros hilos que deben ejecutarse en este reactor
+        private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+
+        // Buffer compartido para leer; las conexiones no guardan uno propio
+        private final ByteBuffer scratch = ByteBuffer.allocateDirect(SCRATCH_SIZE);
+
+        // Bandera de ejecucion de este reactor
+        private volatile boolean active = true;
+
+        /**
+         * Constructor: abre el Selector del reactor
+         */
+        Reactor() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Registra una conexion nueva en este reactor
+         *
+         * @param channel Canal ya configurado como no bloqueante
+         */
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    Connection conn = new Connection(channel, this);
+                    conn.key = channel.register(selector, SelectionKey.OP_READ, conn);
+                    stats.connectionOpened();
+                    logger.accept("[CONEXION] Cliente conectado desde: " + conn.clientIP);
+                } catch (IOException e) {
+                    closeQuietly(channel);
+                }
+            });
+        }
+
+        /**
+         * Ejecuta una tarea en el hilo del reactor
+         *
+         * @param task La tarea a ejecutar
+         */
+        void execute(Runnable task) {
+            pendingTasks.add(task);
+            selector.wakeup();
+        }
+
+        /**
+         * Detiene el reactor (el cierre se hace en su propio hilo)
+         */
+        void shutdown() {
+            active = false;
+            selector.wakeup();
+        }
+
+        /**
+         * Bucle principal del reactor
+         */
+        @Override
+        public void run() {
+            try {
+                while (active) {
+                    // Espera eventos de E/S o un wakeup()
+                    selector.select();
+
+                    // Ejecuta las tareas encoladas por otros hilos
+                    Runnable task;
+                    while ((task = pendingTasks.poll()) != null) {
+                        task.run();
+                    }
+
+                    // Atiende cada canal listo
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection conn = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                conn.onReadable(scratch);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                conn.onWritable();
+                            }
+                        } catch (IOException | CancelledKeyException e) {
+                            conn.close();
+                        } catch (RuntimeException e) {
+                            // Un error inesperado (ej: mensaje mal formado) cierra
+                            // solo esta conexion; el reactor sigue con las demas
+                            logger.accept("[ERROR] [" + conn.clientIP + "] Error inesperado, se cierra la conexion: " + e);
+                            conn.close();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.accept("[ERROR] Reactor detenido: " + e.getMessage());
+            } finally {
+                // Cierra todas las conexiones de este reactor
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    // Ignorar errores al cerrar
+                }
+            }
+        }
+    }
+
+    // ============================================================================
+    // CLASE INTERNA: Connection - Estado de una conexion de cliente
+    // ============================================================================
+
+    /**
+     * Estado por conexion: buffers, cola de escritura y peticiones pendientes
+     *
+     * Las peticiones de una misma conexion se ejecutan en orden, una a la
+     * vez, para que las respuestas salgan en el mismo orden que llegaron.
+     */
+    private class Connection implements ResponseSink {
+
+        // Canal no bloqueante del cliente
+        private final SocketChannel channel;
+
+        // Reactor al que pertenece la conexion
+        private final Reactor reactor;
+
+        // Llave de registro en el Selector
+        private SelectionKey key;
+
+        // IP del cliente (para mostrar en el log)
+        private final String clientIP;
+
+        // Bytes recibidos que aun no forman una trama completa (null si no hay)
+        private ByteBuffer partial;
+
+        // true cuando ya se recibio el saludo del cliente
+        private boolean handshakeDone = false;
+
+        // Version del protocolo acordada en el saludo
+        private volatile byte version;
+
+        // Compresion acordada en el saludo (null si no hay)
+        private volatile Compression compression;
+
+        // Tramas (ByteBuffer) y regiones de archivo (FileRegion) esperando
+        // ser escritas, en orden (protegida por this)
+        private final ArrayDeque<Object> writeQueue = new ArrayDeque<>();
+
+        // Total de bytes de tramas en writeQueue (protegida por this)
+        // Las regiones de archivo no cuentan: no ocupan memoria
+        private long queuedBytes = 0;
+
+        // Peticiones recibidas que esperan su turno (protegida por this)
+        private final ArrayDeque<PendingRequest> pendingRequests = new ArrayDeque<>();
+
+        // Trabajadores procesando peticiones de esta conexion (protegida por this)
+        private int activeWorkers = 0;
+
+        // true mientras se procesa una peticion sin identificador: se
+        // ejecuta sola y en orden, como en el protocolo original (protegida por this)
+        private boolean exclusive = false;
+
+        // true si hay que cerrar al terminar de escribir (DISCONNECT)
+        private boolean closeAfterWrite = false;
+
+        // true cuando la conexion ya fue cerrada
+        private boolean closed = false;
+
+        /**
+         * Constructor de la conexion
+         *
+         * @param channel Canal del cliente
+         * @param reactor Reactor que la atiende
+         */
+        Connection(SocketChannel channel, Reactor reactor) throws IOException {
+            this.channel = channel;
+            this.reactor = reactor;
+            InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+            this.clientIP = remote != null ? remote.getAddress().getHostAddress() : "?";
+        }
+
+        // --------------------------------------------------------------------
+        // LECTURA (hilo del reactor)
+        // --------------------------------------------------------------------
+
+        /**
+         * Lee los bytes disponibles y despacha las tramas completas
+         *
+         * @param scratch Buffer compartido del reactor
+         */
+        void onReadable(ByteBuffer scratch) throws IOException {
+            // Si hay una trama a medias se sigue llenando su buffer propio
+            ByteBuffer buf;
+            if (partial != null) {
+                buf = partial;
+            } else {
+                scratch.clear();
+                buf = scratch;
+            }
+
+            int n = channel.read(buf);
+            if (n < 0) {
+                // El cliente cerro la conexion
+                close();
+                return;
+            }
+
+            buf.flip();
+            if (!parse(buf)) {
+                return;
+            }
+
+            // Guarda lo que sobre (trama incompleta) para la proxima lectura
+            if (!buf.hasRemaining()) {
+                partial = null;
+                return;
+            }
+            int needed = requiredBytes(buf);
+            if (buf == partial && partial.capacity() >= needed) {
+                partial.compact();  // Queda en modo escritura
+            } else {
+                ByteBuffer keep = ByteBuffer.allocate(Math.max(needed, buf.remaining()));
+                keep.put(buf);
+                partial = keep;
+            }
+        }
+
+        /**
+         * Calcula cuantos bytes hacen falta para la siguiente unidad
+         *
+         * @param buf Buffer en modo lectura con los bytes pendientes
+         * @return Bytes necesarios (saludo, cabecera o trama completa)
+         */
+        private int requiredBytes(ByteBuffer buf) {
+            if (!handshakeDone) {
+                return FrameCodec.HANDSHAKE_LENGTH;
+            }
+            if (buf.remaining() < 4) {
+                return 4;
+            }
+            return 4 + buf.getInt(buf.position());
+        }
+
+        /**
+         * Extrae el saludo y todas las tramas completas del buffer
+         *
+         * @param buf Buffer en modo lectura
+         * @return false si la conexion se cerro por un error de protocolo
+         */
+        private boolean parse(ByteBuffer buf) throws IOException {
+            while (true) {
+                if (!handshakeDone) {
+                    if (buf.remaining() < FrameCodec.HANDSHAKE_LENGTH) {
+                        return true;
+                    }
+                    int magic = buf.getInt();
+                    byte offered = buf.get();
+                    byte options = buf.get();
+                    if (magic != FrameCodec.MAGIC) {
+                        logger.accept("[AVISO] [" + clientIP + "] Cliente sin protocolo de tramas, se cierra");
+                        close();
+                        return false;
+                    }
+                    handshakeDone = true;
+                    version = FrameCodec.negotiateVersion(offered);
+                    byte chosen = Compression.negotiate(options);
+                    compression = Compression.forOption(chosen);
+
+                    // Responde con la version y la compresion elegidas
+                    ByteBuffer reply = ByteBuffer.allocate(FrameCodec.HANDSHAKE_LENGTH);
+                    reply.putInt(FrameCodec.MAGIC);
+                    reply.put(version);
+                    reply.put(chosen);
+                    reply.flip();
+                    enqueueWrite(reply, false);
+                    continue;
+                }
+
+                if (buf.remaining() < 4) {
+                    return true;
+                }
+                int length = buf.getInt(buf.position());
+                FrameCodec.checkLength(length);
+                if (buf.remaining() < 4 + length) {
+                    return true;
+                }
+                buf.getInt();
+                dispatch(FrameCodec.decode(buf, length, version, compression));
+            }
+        }
+
+        // --------------------------------------------------------------------
+        // PROCESAMIENTO (hilos trabajadores)
+        // --------------------------------------------------------------------
+
+        /**
+         * Encola una peticion y lanza un trabajador si corresponde
+         *
+         * @param request La peticion recibida
+         */
+        private void dispatch(FileProtocol request) {
+            int start;
+            synchronized (this) {
+                pendingRequests.add(new PendingRequest(request, System.nanoTime()));
+                start = workersToStart();
+            }
+            startWorkers(start);
+        }
+
+        /**
+         * Cuenta cuantos trabajadores nuevos hacen falta y los reserva
+         *
+         * Sin identificador (cliente de una peticion a la vez) hay como
+         * mucho un trabajador. Las peticiones con identificador se reparten
+         * entre hasta PIPELINE_DEPTH trabajadores y sus respuestas salen
+         * en el orden en que terminan.
+         *
+         * @return Trabajadores a lanzar (se llama con el lock tomado)
+         */
+        private int workersToStart() {
+            if (activeWorkers == 0) {
+                if (pendingRequests.isEmpty()) {
+                    return 0;
+                }
+                activeWorkers = 1;
+                return 1;
+            }
+            if (exclusive) {
+                return 0;
+            }
+            int start = 0;
+            for (PendingRequest pending : pendingRequests) {
+                if (activeWorkers >= PIPELINE_DEPTH || pending.request.getRequestId() == 0) {
+                    break;
+                }
+                activeWorkers++;
+                start++;
+            }
+            return start;
+        }
+
+        /**
+         * Lanza trabajadores ya reservados con workersToStart()
+         */
+        private void startWorkers(int count) {
+            for (int i = 0; i < count; i++) {
+                try {
+                    workers.execute(this::drainRequests);
+                } catch (RejectedExecutionException e) {
+                    // El motor se esta deteniendo
+                    close();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Procesa peticiones pendientes de la conexion hasta vaciar la cola
+         *
+         * Una peticion sin identificador espera a que terminen las que
+         * estan en curso y se procesa sola.
+         */
+        private void drainRequests() {
+            while (true) {
+                PendingRequest pending;
+                int start;
+                synchronized (this) {
+                    pending = pendingRequests.peek();
+                    boolean ordered = pending != null && pending.request.getRequestId() == 0;
+                    if (pending == null || (ordered && activeWorkers > 1)) {
+                        // Sin trabajo, o la peticion ordenada queda para el ultimo trabajador
+                        activeWorkers--;
+                        return;
+                    }
+                    pendingRequests.poll();
+                    exclusive = ordered;
+                    start = workersToStart();
+                }
+                startWorkers(start);
+
+                FileProtocol request = pending.request;
+                try {
+                    if (FileProtocol.CMD_DISCONNECT.equals(request.getCommand())) {
+                        // La respuesta se encola junto con la marca de cierre
+                        FileProtocol response = processor.processRequest(request, clientIP);
+                        enqueueWrite(FrameCodec.toFrame(response, version, compression), true);
+                    } else {
+                        processor.handleRequest(request, clientIP, this);
+                    }
+                    stats.recordLatency(pending.receivedAt);
+                } catch (IOException e) {
+                    logger.accept("[ERROR] [" + clientIP + "] No se pudo enviar respuesta: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    // Un error inesperado no debe dejar la conexion sin trabajador:
+                    // se responde ERROR a esta peticion y se sigue con la cola
+                    logger.accept("[ERROR] [" + clientIP + "] Error interno en " + request.getCommand() + ": " + e);
+                    sendInternalError(request, e);
+                } finally {
+                    synchronized (this) {
+                        exclusive = false;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Responde ERROR a una peticion que fallo con una excepcion inesperada
+         *
+         * Lleva last=true: si era un comando de streaming, cierra la secuencia.
+         */
+        private void sendInternalError(FileProtocol request, RuntimeException cause) {
+            FileProtocol error = new FileProtocol();
+            error.setResponse(FileProtocol.RESP_ERROR);
+            error.setContent("Error interno del servidor: " + cause);
+            error.setRequestId(request.getRequestId());
+            error.setLast(true);
+            try {
+                send(error);
+            } catch (IOException | RuntimeException e) {
+                logger.accept("[ERROR] [" + clientIP + "] No se pudo enviar respuesta: " + e.getMessage());
+            }
+        }
+
+        // --------------------------------------------------------------------
+        // ENVIO DESDE LOS TRABAJADORES (ResponseSink)
+        // --------------------------------------------------------------------
+
+        /**
+         * Envia un mensaje desde un hilo trabajador (implementa ResponseSink)
+         *
+         * Codifica el mensaje en el momento y, si ya hay demasiados bytes
+         * sin escribir, espera a que el reactor los vacie. Asi un READSTREAM
+         * hacia un cliente lento no llena la memoria del servidor.
+         *
+         * @param message El mensaje a enviar
+         */
+        @Override
+        public void send(FileProtocol message) throws IOException {
+            ByteBuffer frame = FrameCodec.toFrame(message, version, compression);
+            awaitWriteCapacity();
+            enqueueWrite(frame, false);
+        }
+
+        /**
+         * Encola un mensaje solo si hay lugar (implementa ResponseSink)
+         *
+         * Nunca espera: con mas de HIGH_WATERMARK bytes sin escribir
+         * devuelve false y quien llama decide (ChangeNotifier pasa a RESYNC).
+         *
+         * @param message El mensaje a enviar
+         * @return false si el cliente tiene demasiados bytes sin leer
+         */
+        @Override
+        public boolean offer(FileProtocol message) throws IOException {
+            ByteBuffer frame = FrameCodec.toFrame(message, version, compression);
+            synchronized (this) {
+                if (closed) {
+                    throw new IOException("Conexion cerrada");
+                }
+                if (queuedBytes > HIGH_WATERMARK) {
+                    return false;
+                }
+                writeQueue.add(frame);
+                queuedBytes += frame.remaining();
+            }
+            requestWrite();
+            return true;
+        }
+
+        /**
+         * Encola una cabecera y una region de archivo (implementa ResponseSink)
+         *
+         * La region se escribe desde el reactor con FileChannel.transferTo
+         * directo al SocketChannel (sendfile en Linux): los bytes del archivo
+         * nunca se copian al heap. El trabajador no espera a que termine.
+         *
+         * @param header Cabecera con la cantidad de bytes
+         * @param file Canal del archivo (se cierra al terminar)
+         * @param position Posicion inicial
+         * @param count Cantidad de bytes
+         */
+        @Override
+        public void sendFile(FileProtocol header, FileChannel file, long position, long count) throws IOException {
+            try {
+                ByteBuffer frame = FrameCodec.toFrame(header, version, compression);
+                awaitWriteCapacity();
+                synchronized (this) {
+                    if (closed) {
+                        throw new IOException("Conexion cerrada");
+                    }
+                    // Cabecera y region se encolan juntas, sin nada en medio
+                    writeQueue.add(frame);
+                    queuedBytes += frame.remaining();
+                    writeQueue.add(new FileRegion(file, position, count));
+                }
+            } catch (IOException e) {
+                closeQuietly(file);
+                throw e;
+            }
+            requestWrite();
+        }
+
+        /**
+         * Bloquea al trabajador mientras haya demasiados bytes sin escribir
+         */
+        private synchronized void awaitWriteCapacity() throws IOException {
+            while (queuedBytes > HIGH_WATERMARK && !closed) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Envio interrumpido");
+                }
+            }
+            if (closed) {
+                throw new IOException("Conexion cerrada");
+            }
+        }
+
+        /**
+         * Agrega una trama a la cola de escritura y activa OP_WRITE
+         *
+         * @param frame Trama en modo lectura
+         * @param closeAfter true para cerrar la conexion tras escribirla
+         */
+        private void enqueueWrite(ByteBuffer frame, boolean closeAfter) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                writeQueue.add(frame);
+                queuedBytes += frame.remaining();
+                closeAfterWrite |= closeAfter;
+            }
+            requestWrite();
+        }
+
+        /**
+         * Pide al reactor que avise cuando se pueda escribir
+         */
+        private void requestWrite() {
+            reactor.execute(() -> {
+                if (key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            });
+        }
+
+        // --------------------------------------------------------------------
+        // ESCRITURA (hilo del reactor)
+        // --------------------------------------------------------------------
+
+        /**
+         * Escribe lo que el socket acepte sin bloquear
+         */
+        void onWritable() throws IOException {
+            boolean closeNow;
+            synchronized (this) {
+                Object head;
+                while ((head = writeQueue.peek()) != null) {
+                    if (head instanceof FileRegion) {
+                        // Region de archivo: del disco al socket sin pasar por el heap
+                        if (!((FileRegion) head).transferTo(channel)) {
+                            return;
+                        }
+                        writeQueue.poll();
+                        continue;
+                    }
+                    ByteBuffer frame = (ByteBuffer) head;
+                    queuedBytes -= channel.write(frame);
+                    if (queuedBytes < LOW_WATERMARK) {
+                        // Despierta a los streamings que esperan espacio
+                        notifyAll();
+                    }
+                    if (frame.hasRemaining()) {
+                        // El buffer del socket esta lleno: se reintenta luego
+                        return;
+                    }
+                    writeQueue.poll();
+                }
+                // Cola vacia: ya no interesa saber si se puede escribir
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                closeNow = closeAfterWrite;
+            }
+            if (closeNow) {
+                close();
+            }
+        }
+
+        /**
+         * Cierra la conexion y libera sus recursos (idempotente)
+         */
+        void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                // Las regiones pendientes tienen archivos abiertos
+                for (Object item : writeQueue) {
+                    if (item instanceof FileRegion) {
+                        closeQuietly(((FileRegion) item).file);
+                    }
+                }
+                writeQueue.clear();
+                queuedBytes = 0;
+                notifyAll();
+                pendingRequests.clear();
+                partial = null;
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+            stats.connectionClosed();
+            Compression c = compression;
+            if (c != null) {
+                stats.recordCompression(c.getRawBytes(), c.getWireBytes());
+                logger.accept("[COMPRESION] [" + clientIP + "] " + c.report());
+                c.close();
+            }
+            logger.accept("[DESCONEXION] Cliente " + clientIP + " desconectado");
+        }
+    }
+
+    // ============================================================================
+    // CLASE INTERNA: FileRegion - Parte de un archivo pendiente de envio
+    // ============================================================================
+
+    /**
+     * Region de un archivo que se envia con transferTo
+     *
+     * Ocupa unos pocos bytes en la cola sin importar el tamanio del archivo.
+     */
+    private static class FileRegion {
+
+        // Canal del archivo (se cierra al terminar)
+        final FileChannel file;
+
+        // Siguiente posicion a enviar
+        long position;
+
+        // Bytes que faltan por enviar
+        long remaining;
+
+        FileRegion(FileChannel file, long position, long count) {
+            this.file = file;
+            this.position = position;
+            this.remaining = count;
+        }
+
+        /**
+         * Envia lo que el socket acepte de la region
+         *
+         * @param target Canal del socket (no bloqueante)
+         * @return true si la region se envio completa
+         * @throws IOException Si el archivo se acorto y no se puede completar
+         */
+        boolean transferTo(SocketChannel target) throws IOException {
+            while (remaining > 0) {
+                long sent = file.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    if (position >= file.size()) {
+                        // El archivo se acorto: la cabecera ya anuncio mas bytes
+                        file.close();
+                        throw new IOException("El archivo cambio durante la descarga");
+                    }
+                    // El buffer del socket esta lleno: se reintenta luego
+                    return false;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            file.close();
+            return true;
+        }
+    }
+
+    /**
+     * Peticion recibida junto con el instante en que llego
+     * (para medir la latencia incluyendo el tiempo en cola)
+     */
+    private static class PendingRequest {
+
+        // La peticion decodificada
+        final FileProtocol request;
+
+        // Valor de System.nanoTime() al decodificarla
+        final long receivedAt;
+
+        PendingRequest(FileProtocol request, long receivedAt) {
+            this.request = request;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    /**
+     * Cierra un canal ignorando errores
+     *
+     * @param channel El canal a cerrar
+     */
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignorar errores al cerrar
+        }
+    }
+}
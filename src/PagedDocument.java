@@ -0,0 +1,481 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para el documento paginado
+// ============================================================================
+
+// Importa colecciones para las piezas, las paginas en cache y las pedidas
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Importa futuros para las paginas que llegan de la red
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Clase PagedDocument - Archivo del servidor editado sin traerlo entero
+ *
+ * Abrir un archivo de cientos de MB con READ lo copiaria completo a la
+ * memoria del cliente (y al JTextArea). PagedDocument en cambio:
+ *
+ *   - Pide el archivo por paginas de PAGE_SIZE (READRANGE) solo cuando
+ *     se quieren ver, y guarda las ultimas CACHE_PAGES en una cache LRU.
+ *     Al leer una zona tambien pide por adelantado PREFETCH_PAGES paginas
+ *     a cada lado, asi moverse un poco no espera a la red.
+ *
+ *   - Guarda las ediciones en una tabla de piezas (piece table): el
+ *     documento es una lista de piezas que apuntan a un rango del archivo
+ *     original o del buffer de bytes agregados. Editar solo parte piezas
+ *     y agrega bytes al buffer; el archivo original nunca se copia.
+ *
+ *   - Al guardar, delta() convierte las piezas en un delta de DeltaSync:
+ *     las del original son rangos a copiar en el servidor y las agregadas
+ *     son literales. MODIFYDELTA recibe solo los bytes que cambiaron, con
+ *     la version leida para detectar conflictos.
+ *
+ * Se usa desde un solo hilo (el EDT): el cargador debe completar sus
+ * futuros en ese hilo (como AsyncClient con SwingUtilities::invokeLater).
+ *
+ * Configuracion (propiedades del sistema):
+ *   -Dcliente.paginaEditorBytes=N   tamanio de pagina (64 KB)
+ *   -Dcliente.paginasEditor=N       paginas en cache (64)
+ */
+public class PagedDocument {
+
+    // Tamanio de cada pagina pedida al servidor: -Dcliente.paginaEditorBytes=N
+    public static final int PAGE_SIZE = Math.max(4096, Integer.getInteger("cliente.paginaEditorBytes", 64 * 1024));
+
+    // Paginas que se guardan en memoria: -Dcliente.paginasEditor=N
+    private static final int CACHE_PAGES = Math.max(4, Integer.getInteger("cliente.paginasEditor", 64));
+
+    // Paginas que se piden por adelantado a cada lado de la zona leida
+    private static final int PREFETCH_PAGES = 2;
+
+    // Nombre del archivo en el servidor
+    private final String fileName;
+
+    // Trae un rango del archivo original
+    private final PageLoader loader;
+
+    // Tamanio y version del archivo original en el servidor
+    private long size;
+    private long version;
+
+    // Piezas del documento, en orden
+    private List<Piece> pieces = new ArrayList<>();
+
+    // Tamanio actual del documento (suma de las piezas)
+    private long length;
+
+    // Bytes agregados por las ediciones (las piezas agregadas apuntan aqui)
+    private byte[] added = new byte[1024];
+    private int addedLength;
+
+    // Paginas del original recibidas, de la menos a la mas usada
+    private final LinkedHashMap<Long, byte[]> cache = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHE_PAGES;
+        }
+    };
+
+    // Paginas pedidas que todavia no llegaron
+    private final Map<Long, CompletableFuture<byte[]>> loading = new HashMap<>();
+
+    /**
+     * Crea el documento de un archivo sin cambios
+     *
+     * @param fileName Nombre del archivo en el servidor
+     * @param size Tamanio del archivo
+     * @param version Version del archivo (la que deben traer todas las paginas)
+     * @param loader Trae un rango del archivo original
+     */
+    public PagedDocument(String fileName, long size, long version, PageLoader loader) {
+        this.fileName = fileName;
+        this.loader = loader;
+        reset(size, version);
+    }
+
+    /**
+     * Vuelve al archivo original sin ediciones
+     */
+    private void reset(long size, long version) {
+        this.size = size;
+        this.version = version;
+        this.length = size;
+        this.pieces = new ArrayList<>();
+        if (size > 0) {
+            pieces.add(new Piece(false, 0, size));
+        }
+        added = new byte[1024];
+        addedLength = 0;
+        cache.clear();
+        loading.clear();
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Version del archivo original (la que se envia al guardar)
+     * @return Version leida del servidor
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Tamanio del archivo original en el servidor
+     * @return Bytes del archivo sin las ediciones
+     */
+    public long getBaseSize() {
+        return size;
+    }
+
+    /**
+     * Tamanio actual del documento, con las ediciones
+     * @return Bytes del documento
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Indica si hay ediciones sin guardar
+     * @return true si el documento ya no es el archivo original
+     */
+    public boolean isModified() {
+        if (size == 0) {
+            return !pieces.isEmpty();
+        }
+        return pieces.size() != 1 || pieces.get(0).added || pieces.get(0).length != size;
+    }
+
+    // ============================================================================
+    // LECTURA
+    // ============================================================================
+
+    /**
+     * Lee una zona del documento (con las ediciones)
+     *
+     * Pide las paginas del original que falten y, por adelantado, las
+     * vecinas. El resultado se arma con las piezas que haya al llegar.
+     *
+     * @param offset Primer byte del documento
+     * @param count Cantidad de bytes (se recorta al final del documento)
+     * @return Futuro con los bytes leidos
+     */
+    public CompletableFuture<byte[]> read(long offset, int count) {
+        long start = Math.max(0, Math.min(offset, length));
+        int wanted = (int) Math.min(count, length - start);
+
+        // Paginas del original que cubren la zona pedida
+        Map<Long, CompletableFuture<byte[]>> needed = new LinkedHashMap<>();
+        long lowest = Long.MAX_VALUE;
+        long highest = -1;
+        long pos = 0;
+        for (Piece piece : pieces) {
+            long from = Math.max(pos, start);
+            long to = Math.min(pos + piece.length, start + wanted);
+            if (from < to && !piece.added) {
+                long first = (piece.start + from - pos) / PAGE_SIZE;
+                long last = (piece.start + to - pos - 1) / PAGE_SIZE;
+                for (long page = first; page <= last; page++) {
+                    needed.put(page, page(page));
+                }
+                lowest = Math.min(lowest, first);
+                highest = Math.max(highest, last);
+            }
+            pos += piece.length;
+        }
+
+        // Las vecinas se piden sin esperarlas
+        if (highest >= 0) {
+            long pages = (size + PAGE_SIZE - 1) / PAGE_SIZE;
+            for (long page = Math.max(0, lowest - PREFETCH_PAGES); page <= Math.min(pages - 1, highest + PREFETCH_PAGES); page++) {
+                if (!needed.containsKey(page)) {
+                    page(page);
+                }
+            }
+        }
+
+        // Se guardan las paginas usadas: la cache podria descartarlas antes de armar
+        return CompletableFuture.allOf(needed.values().toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                Map<Long, byte[]> data = new HashMap<>();
+                for (Map.Entry<Long, CompletableFuture<byte[]>> page : needed.entrySet()) {
+                    data.put(page.getKey(), page.getValue().join());
+                }
+                return assemble(start, wanted, data);
+            });
+    }
+
+    /**
+     * Copia la zona pedida desde las piezas (las del original, desde las paginas)
+     */
+    private byte[] assemble(long start, int wanted, Map<Long, byte[]> pages) {
+        int count = (int) Math.max(0, Math.min(wanted, length - start));
+        byte[] result = new byte[count];
+        long pos = 0;
+        for (Piece piece : pieces) {
+            long from = Math.max(pos, start);
+            long to = Math.min(pos + piece.length, start + count);
+            if (from < to) {
+                long source = piece.start + from - pos;
+                int target = (int) (from - start);
+                int n = (int) (to - from);
+                if (piece.added) {
+                    System.arraycopy(added, (int) source, result, target, n);
+                } else {
+                    copyFromPages(source, result, target, n, pages);
+                }
+            }
+            pos += piece.length;
+        }
+        return result;
+    }
+
+    /**
+     * Copia bytes del original que pueden abarcar varias paginas
+     */
+    private void copyFromPages(long source, byte[] result, int target, int n, Map<Long, byte[]> pages) {
+        while (n > 0) {
+            long page = source / PAGE_SIZE;
+            byte[] data = pages.get(page);
+            if (data == null) {
+                data = cache.get(page);  // Llego por una lectura anterior
+            }
+            int inPage = (int) (source - page * PAGE_SIZE);
+            int chunk = Math.min(n, PAGE_SIZE - inPage);
+            if (data == null || inPage + chunk > data.length) {
+                throw new IllegalStateException("Pagina no disponible: " + page);
+            }
+            System.arraycopy(data, inPage, result, target, chunk);
+            source += chunk;
+            target += chunk;
+            n -= chunk;
+        }
+    }
+
+    /**
+     * Devuelve una pagina del original: de la cache, la que ya se pidio o
+     * una peticion nueva
+     */
+    private CompletableFuture<byte[]> page(long page) {
+        byte[] cached = cache.get(page);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<byte[]> pending = loading.get(page);
+        if (pending != null) {
+            return pending;
+        }
+        long offset = page * PAGE_SIZE;
+        int count = (int) Math.min(PAGE_SIZE, size - offset);
+        long expected = version;
+        CompletableFuture<byte[]> request = loader.load(offset, count, expected);
+        loading.put(page, request);
+        request.whenComplete((data, error) -> {
+            // Si se guardo o se recargo mientras tanto, la pagina es de otra version
+            if (loading.get(page) == request) {
+                loading.remove(page);
+                if (error == null && expected == version) {
+                    cache.put(page, data);
+                }
+            }
+        });
+        return request;
+    }
+
+    // ============================================================================
+    // EDICION (TABLA DE PIEZAS)
+    // ============================================================================
+
+    /**
+     * Reemplaza una zona del documento
+     *
+     * @param offset Primer byte a reemplazar
+     * @param removed Cantidad de bytes que se quitan
+     * @param inserted Bytes que se ponen en su lugar
+     */
+    public void replace(long offset, long removed, byte[] inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length) {
+            throw new IndexOutOfBoundsException("Zona fuera del documento: " + offset + "+" + removed);
+        }
+        List<Piece> result = new ArrayList<>(pieces.size() + 2);
+        boolean placed = false;
+        long pos = 0;
+        for (Piece piece : pieces) {
+            long end = pos + piece.length;
+            // Lo que queda antes de la zona
+            if (pos < offset) {
+                result.add(piece.slice(0, Math.min(end, offset) - pos));
+            }
+            if (!placed && end >= offset) {
+                insert(result, inserted);
+                placed = true;
+            }
+            // Lo que queda despues de la zona
+            long cut = Math.max(pos, offset + removed);
+            if (cut < end) {
+                result.add(piece.slice(cut - pos, end - cut));
+            }
+            pos = end;
+        }
+        if (!placed) {
+            insert(result, inserted);  // Documento vacio
+        }
+        pieces = result;
+        length += inserted.length - removed;
+    }
+
+    /**
+     * Agrega los bytes al buffer y su pieza a la lista; si la pieza anterior
+     * termina justo donde empiezan (se sigue escribiendo), la alarga
+     */
+    private void insert(List<Piece> result, byte[] inserted) {
+        if (inserted.length == 0) {
+            return;
+        }
+        if (addedLength + inserted.length > added.length) {
+            added = Arrays.copyOf(added, Math.max(added.length * 2, addedLength + inserted.length));
+        }
+        System.arraycopy(inserted, 0, added, addedLength, inserted.length);
+        Piece last = result.isEmpty() ? null : result.get(result.size() - 1);
+        if (last != null && last.added && last.start + last.length == addedLength) {
+            result.set(result.size() - 1, new Piece(true, last.start, last.length + inserted.length));
+        } else {
+            result.add(new Piece(true, addedLength, inserted.length));
+        }
+        addedLength += inserted.length;
+    }
+
+    /**
+     * Reemplaza una zona leida con read() por su version editada,
+     * registrando solo la parte que realmente cambio (se descartan el
+     * principio y el final comunes)
+     *
+     * @param offset Donde empezaba la zona en el documento
+     * @param before Bytes leidos
+     * @param after Bytes editados
+     * @return Bytes que cambiaron (0 si la zona quedo igual)
+     */
+    public int replaceChanged(long offset, byte[] before, byte[] after) {
+        int prefix = 0;
+        int max = Math.min(before.length, after.length);
+        while (prefix < max && before[prefix] == after[prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && before[before.length - 1 - suffix] == after[after.length - 1 - suffix]) {
+            suffix++;
+        }
+        int removed = before.length - prefix - suffix;
+        int insertedLength = after.length - prefix - suffix;
+        if (removed == 0 && insertedLength == 0) {
+            return 0;
+        }
+        replace(offset + prefix, removed, Arrays.copyOfRange(after, prefix, prefix + insertedLength));
+        return Math.max(removed, insertedLength);
+    }
+
+    // ============================================================================
+    // GUARDADO
+    // ============================================================================
+
+    /**
+     * Convierte las piezas en un delta para MODIFYDELTA
+     *
+     * @return Rangos del original a copiar y bytes nuevos, en orden
+     */
+    public byte[] delta() {
+        DeltaSync.Builder delta = new DeltaSync.Builder();
+        long copyStart = -1;
+        long copyLength = 0;
+        for (Piece piece : pieces) {
+            if (!piece.added && copyStart >= 0 && copyStart + copyLength == piece.start) {
+                copyLength += piece.length;  // Contigua a la anterior
+                continue;
+            }
+            delta.copy(copyStart, copyLength);
+            copyStart = -1;
+            copyLength = 0;
+            if (piece.added) {
+                delta.literal(added, (int) piece.start, (int) piece.length);
+            } else {
+                copyStart = piece.start;
+                copyLength = piece.length;
+            }
+        }
+        delta.copy(copyStart, copyLength);
+        return delta.toByteArray();
+    }
+
+    /**
+     * Bytes nuevos que se enviaran al guardar
+     * @return Suma de las piezas agregadas
+     */
+    public long getChangedBytes() {
+        long bytes = 0;
+        for (Piece piece : pieces) {
+            if (piece.added) {
+                bytes += piece.length;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * El servidor acepto el guardado: el documento pasa a ser el archivo
+     * nuevo, sin ediciones pendientes
+     *
+     * @param newSize Tamanio del archivo guardado
+     * @param newVersion Version que respondio el servidor
+     */
+    public void saved(long newSize, long newVersion) {
+        reset(newSize, newVersion);
+    }
+
+    // ============================================================================
+    // CLASES INTERNAS
+    // ============================================================================
+
+    /**
+     * Rango del original o del buffer de agregados
+     */
+    private static final class Piece {
+
+        final boolean added;
+        final long start;
+        final long length;
+
+        Piece(boolean added, long start, long length) {
+            this.added = added;
+            this.start = start;
+            this.length = length;
+        }
+
+        Piece slice(long from, long count) {
+            return new Piece(added, start + from, count);
+        }
+    }
+
+    /**
+     * Interfaz PageLoader - Trae un rango del archivo original
+     */
+    public interface PageLoader {
+
+        /**
+         * Pide un rango del archivo
+         *
+         * @param offset Primer byte
+         * @param count Cantidad de bytes
+         * @param version Version que debe tener el archivo (si no, el futuro falla)
+         * @return Futuro con los bytes, completado en el hilo que usa el documento
+         */
+        CompletableFuture<byte[]> load(long offset, int count, long version);
+    }
+}
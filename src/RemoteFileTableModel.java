@@ -0,0 +1,362 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la tabla de archivos remotos
+// ============================================================================
+
+// Importa el modelo base de las tablas de Swing
+import javax.swing.table.AbstractTableModel;
+
+// Importa clases para formatear la fecha de cada archivo
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+// Importa los mapas de paginas cargadas y pedidas
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Importa CompletableFuture (cada pagina llega cuando responde el servidor)
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Clase RemoteFileTableModel - Modelo de la tabla de archivos que pide
+ * al servidor solo las filas que se muestran
+ *
+ * El directorio puede tener millones de archivos: la tabla conoce el total
+ * (lo informa LISTPAGE) pero solo guarda las paginas por las que paso el
+ * usuario. Al pintar una fila de una pagina que no esta, se pide al
+ * servidor y mientras tanto se muestra "..."; al bajar por una pagina se
+ * pide la siguiente por adelantado. Filtro y orden los aplica el servidor.
+ *
+ * - Cada pagina guarda sus nombres en un solo char[] con la posicion donde
+ *   termina cada uno, y tamanio y fecha en arreglos de long: unos pocos
+ *   objetos por pagina en lugar de varios por fila.
+ * - Se guardan las MAX_PAGES paginas usadas mas recientemente
+ *   (-Dcliente.paginasLista=N); las demas se vuelven a pedir si hacen falta.
+ * - invalidate() marca todas las paginas como viejas: se siguen mostrando
+ *   hasta que llega su reemplazo (sin parpadeo al llegar un evento).
+ *
+ * Se usa solo desde el hilo de eventos de Swing (EDT), como cualquier
+ * modelo de tabla: el PageLoader debe completar sus futuros en el EDT.
+ */
+public class RemoteFileTableModel extends AbstractTableModel {
+
+    // Version de serializacion (AbstractTableModel es Serializable)
+    private static final long serialVersionUID = 1L;
+
+    // Filas de cada pagina (tamanio de pagina de LISTPAGE)
+    public static final int PAGE_ROWS = 200;
+
+    // Paginas guardadas a la vez: -Dcliente.paginasLista=N
+    private static final int MAX_PAGES = Math.max(4, Integer.getInteger("cliente.paginasLista", 500));
+
+    // Texto de las filas cuya pagina todavia no llego
+    private static final String LOADING = "...";
+
+    // Titulos de las columnas
+    private static final String[] COLUMNS = {"Nombre de Archivo", "Tamanio", "Modificado"};
+
+    // Paginas cargadas por numero, de la menos a la mas usada
+    private final LinkedHashMap<Integer, Page> pages = new LinkedHashMap<Integer, Page>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> eldest) {
+            if (size() > MAX_PAGES) {
+                requested.remove(eldest.getKey());  // Si vuelve a hacer falta se pide otra vez
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Paginas pedidas y la generacion con que se pidieron (no se piden dos veces)
+    private final Map<Integer, Long> requested = new HashMap<>();
+
+    // Formato de la columna de fecha
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+
+    // Pide las paginas al servidor (null = tabla vacia, sin conexion)
+    private PageLoader loader;
+
+    // Filas del listado completo segun el servidor
+    private int rowCount;
+
+    // Aumenta con cada reset: las paginas de otro filtro u orden se descartan
+    private long query;
+
+    // Aumenta con cada invalidate: las paginas anteriores quedan viejas
+    private long generation;
+
+    /**
+     * Empieza un listado nuevo (otro filtro, otro orden o recarga)
+     *
+     * @param loader Pide una pagina al servidor (null deja la tabla vacia)
+     */
+    public void reset(PageLoader loader) {
+        this.loader = loader;
+        query++;
+        generation++;
+        pages.clear();
+        requested.clear();
+        rowCount = 0;
+        fireTableDataChanged();
+        request(0);
+    }
+
+    /**
+     * Vacia la tabla (al desconectarse)
+     */
+    public void clear() {
+        reset(null);
+    }
+
+    /**
+     * Marca todas las paginas como viejas despues de un cambio en el servidor
+     *
+     * Las filas visibles se vuelven a pedir al repintarse la tabla; la
+     * primera pagina se pide siempre para conocer el total nuevo.
+     */
+    public void invalidate() {
+        generation++;
+        requested.clear();
+        if (rowCount > 0) {
+            fireTableRowsUpdated(0, rowCount - 1);
+        }
+        request(0);
+    }
+
+    /**
+     * Actualiza tamanio y fecha de un archivo si su fila esta cargada
+     *
+     * @param entry Datos nuevos del archivo
+     * @return true si se encontro la fila
+     */
+    public boolean update(FileEntry entry) {
+        for (Map.Entry<Integer, Page> loaded : pages.entrySet()) {
+            Page page = loaded.getValue();
+            int i = page.indexOf(entry.getName());
+            if (i >= 0) {
+                page.sizes[i] = entry.isDirectory() ? -1 : entry.getSize();
+                page.modified[i] = entry.getModified();
+                int row = loaded.getKey() * PAGE_ROWS + i;
+                fireTableRowsUpdated(row, row);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Nombre del archivo de una fila (el que se esta mostrando)
+     *
+     * @param row Fila de la tabla
+     * @return El nombre, o null si la pagina todavia no llego
+     */
+    public String getName(int row) {
+        Page page = pages.get(row / PAGE_ROWS);
+        int i = row % PAGE_ROWS;
+        return page != null && i < page.count ? page.name(i) : null;
+    }
+
+    /**
+     * Indica si la fila es una carpeta
+     *
+     * @param row Fila de la tabla
+     * @return true si es una carpeta (false tambien si la pagina no llego)
+     */
+    public boolean isDirectory(int row) {
+        Page page = pages.get(row / PAGE_ROWS);
+        int i = row % PAGE_ROWS;
+        return page != null && i < page.count && page.sizes[i] < 0;
+    }
+
+    /**
+     * Busca la fila de un archivo entre las paginas cargadas
+     *
+     * @param name Nombre del archivo
+     * @return La fila, o -1 si no esta cargada
+     */
+    public int indexOf(String name) {
+        for (Map.Entry<Integer, Page> loaded : pages.entrySet()) {
+            int i = loaded.getValue().indexOf(name);
+            if (i >= 0) {
+                return loaded.getKey() * PAGE_ROWS + i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int number = row / PAGE_ROWS;
+        int i = row % PAGE_ROWS;
+        Page page = pages.get(number);
+        if (page == null || page.generation != generation) {
+            request(number);
+        } else if (i >= PAGE_ROWS / 2) {
+            // Pasada la mitad de la pagina se pide la siguiente por adelantado
+            request(number + 1);
+        }
+        if (page == null || i >= page.count) {
+            return column == 0 ? LOADING : "";
+        }
+        switch (column) {
+            case 0:
+                return page.name(i);
+            case 1:
+                return page.sizes[i] < 0 ? "<DIR>" : ClientGUI.formatSize(page.sizes[i]);
+            default:
+                return dateFormat.format(new Date(page.modified[i]));
+        }
+    }
+
+    /**
+     * Pide una pagina si no esta al dia ni pedida en esta generacion
+     *
+     * @param number Numero de pagina
+     */
+    private void request(int number) {
+        if (loader == null || (number > 0 && (long) number * PAGE_ROWS >= rowCount)) {
+            return;
+        }
+        Long asked = requested.get(number);
+        Page page = pages.get(number);
+        if ((asked != null && asked == generation) || (page != null && page.generation == generation)) {
+            return;
+        }
+        long q = query;
+        long g = generation;
+        requested.put(number, g);
+        loader.load((long) number * PAGE_ROWS, PAGE_ROWS).whenComplete((response, error) -> {
+            if (q != query) {
+                return;  // Era de otro listado
+            }
+            if (error != null || !FileProtocol.RESP_OK.equals(response.getResponse())) {
+                // Quien pidio la pagina informa el error; no se reintenta hasta otro cambio
+                return;
+            }
+            received(number, g, response);
+        });
+    }
+
+    /**
+     * Guarda una pagina que llego del servidor y avisa a la tabla
+     *
+     * @param number Numero de pagina
+     * @param g Generacion con que se pidio
+     * @param response Respuesta de LISTPAGE
+     */
+    private void received(int number, long g, FileProtocol response) {
+        Page current = pages.get(number);
+        if (current != null && current.generation > g) {
+            return;  // Ya llego una mas nueva
+        }
+        pages.put(number, new Page(response.getEntries(), g));
+
+        // El total puede haber cambiado (archivos creados o borrados)
+        int total = (int) Math.min(Integer.MAX_VALUE, response.getLength());
+        if (total > rowCount) {
+            int previous = rowCount;
+            rowCount = total;
+            fireTableRowsInserted(previous, total - 1);
+        } else if (total < rowCount) {
+            int previous = rowCount;
+            rowCount = total;
+            fireTableRowsDeleted(total, previous - 1);
+        }
+        int first = number * PAGE_ROWS;
+        int last = Math.min(rowCount, first + PAGE_ROWS) - 1;
+        if (first <= last) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    /**
+     * Interfaz PageLoader - Pide una pagina del listado al servidor
+     */
+    public interface PageLoader {
+
+        /**
+         * @param cursor Posicion de la primera fila
+         * @param count Filas de la pagina
+         * @return Futuro con la respuesta de LISTPAGE (completado en el EDT)
+         */
+        CompletableFuture<FileProtocol> load(long cursor, int count);
+    }
+
+    /**
+     * Filas de una pagina en arreglos de tipos primitivos
+     */
+    private static final class Page {
+
+        // Nombres uno detras de otro; ends[i] es donde termina el i-esimo
+        final char[] names;
+        final int[] ends;
+
+        // Tamanio (-1 para carpetas) y fecha de cada fila
+        final long[] sizes;
+        final long[] modified;
+
+        final int count;
+        final long generation;
+
+        Page(FileEntry[] entries, long generation) {
+            this.count = entries.length;
+            this.generation = generation;
+            this.ends = new int[count];
+            this.sizes = new long[count];
+            this.modified = new long[count];
+            int length = 0;
+            for (FileEntry entry : entries) {
+                length += entry.getName().length();
+            }
+            this.names = new char[length];
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                String name = entries[i].getName();
+                name.getChars(0, name.length(), names, position);
+                position += name.length();
+                ends[i] = position;
+                sizes[i] = entries[i].isDirectory() ? -1 : entries[i].getSize();
+                modified[i] = entries[i].getModified();
+            }
+        }
+
+        String name(int i) {
+            int start = i == 0 ? 0 : ends[i - 1];
+            return new String(names, start, ends[i] - start);
+        }
+
+        int indexOf(String name) {
+            for (int i = 0; i < count; i++) {
+                int start = i == 0 ? 0 : ends[i - 1];
+                if (ends[i] - start == name.length() && matches(name, start)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean matches(String name, int start) {
+            for (int j = 0; j < name.length(); j++) {
+                if (names[start + j] != name.charAt(j)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
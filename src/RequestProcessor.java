@@ -0,0 +1,1577 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para procesar las peticiones
+// ============================================================================
+
+// Importa clases para operaciones de entrada/salida sobre archivos
+// Incluye: File, FileInputStream, IOException, etc.
+import java.io.*;
+
+// Importa ByteBuffer y FileChannel para las descargas sin copia
+// y las lecturas posicionales de READRANGE
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Importa UTF-8: READ, CREATE, MODIFY y los deltas usan los mismos bytes
+import java.nio.charset.StandardCharsets;
+
+// Importa StandardOpenOption para abrir archivos con FileChannel
+import java.nio.file.StandardOpenOption;
+
+// Importa utilidades de archivos para el listado por paginas
+// (filtros glob, lectura de tamanio/fecha en una sola llamada y
+// recorrido de arboles para LISTTREE)
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+// Importa colecciones para recortar trozos y ordenar paginas
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// Importa el pool y los futuros para ejecutar lotes en paralelo
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Importa la interfaz funcional Consumer (usada como destino del log)
+import java.util.function.Consumer;
+
+/**
+ * Clase RequestProcessor - Ejecuta los comandos de archivos del servidor
+ *
+ * Contiene la logica de processRequest que antes vivia dentro de
+ * ClientHandler. Se separo en su propia clase para que cualquier motor
+ * de red (hilo por cliente o NIO con selectores) despache exactamente
+ * los mismos comandos sobre el directorio de trabajo.
+ *
+ * La clase no conoce sockets: recibe un FileProtocol y devuelve otro,
+ * o envia varios a traves de un ResponseSink en los comandos de streaming.
+ * Es segura para usarse desde varios hilos a la vez: el unico estado
+ * que guarda son las subidas en curso, y UploadManager ya es seguro.
+ */
+public class RequestProcessor {
+
+    // Tamanio de cada trozo de READSTREAM (64 KB)
+    // La memoria usada por un streaming no depende del tamanio del archivo
+    public static final int STREAM_CHUNK_SIZE = 64 * 1024;
+
+    // Tamanio de pagina de LISTPAGE si el cliente no pide uno
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
+    // Tamanio maximo de pagina de LISTPAGE (acota el tamanio de la respuesta)
+    public static final int MAX_PAGE_SIZE = 5000;
+
+    // Bytes maximos de un READRANGE (rangos mayores se recortan; el
+    // cliente pide el resto con otro READRANGE o usa DOWNLOAD)
+    public static final int MAX_RANGE_LENGTH = 4 * 1024 * 1024;
+
+    // Cantidad maxima de operaciones en un BATCH
+    public static final int MAX_BATCH_ITEMS = 10000;
+
+    // Hilos para los BATCH en paralelo: -Dservidor.hilosLote=N
+    private static final int BATCH_THREADS = Integer.getInteger("servidor.hilosLote", 8);
+
+    // Ruta del directorio donde se almacenan los archivos
+    private final String workingDirectory;
+
+    // Ruta canonica del directorio de trabajo con separador al final
+    // (las rutas con subcarpetas deben empezar asi)
+    private final String canonicalRoot;
+
+    // Destino de los mensajes de log (normalmente ServerGUI.log)
+    private final Consumer<String> logger;
+
+    // Escrituras atomicas con la durabilidad configurada (fsync, diario)
+    private final DurableWriter writer;
+
+    // Sesiones de subida en trozos (sobreviven a la conexion que las abrio)
+    private final UploadManager uploads;
+
+    // Contenido de los archivos leidos con READ (LRU limitada en bytes)
+    private final ContentCache cache;
+
+    // Lista del directorio en memoria, actualizada por un WatchService
+    private final DirectoryIndex index;
+
+    // Listados filtrados y ordenados de LISTPAGE (paginas de un mismo recorrido)
+    private final ListingViews views = new ListingViews();
+
+    // Locks de lectura/escritura por archivo (lectores en paralelo, escritores de a uno)
+    private final FileLockManager locks = new FileLockManager();
+
+    // Version de cada archivo (MODIFY con version esperada)
+    private final FileVersions versions;
+
+    // Cambios del directorio enviados a las conexiones suscriptas
+    private final ChangeNotifier notifier;
+
+    // Pool para las operaciones de los BATCH en paralelo (se crea al primer uso)
+    private ExecutorService batchPool;
+
+    /**
+     * Constructor del procesador con la cache de tamanio por defecto
+     *
+     * @param workingDirectory Directorio sobre el que operan los comandos
+     * @param logger Funcion que recibe cada mensaje de log
+     */
+    public RequestProcessor(String workingDirectory, Consumer<String> logger) {
+        this(workingDirectory, logger, ContentCache.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructor del procesador
+     *
+     * @param workingDirectory Directorio sobre el que operan los comandos
+     * @param logger Funcion que recibe cada mensaje de log
+     * @param cacheBytes Presupuesto de la cache de contenido (0 la desactiva)
+     */
+    public RequestProcessor(String workingDirectory, Consumer<String> logger, long cacheBytes) {
+        this.workingDirectory = workingDirectory;
+        this.logger = logger;
+        String root;
+        try {
+            root = new File(workingDirectory).getCanonicalPath();
+        } catch (IOException e) {
+            root = new File(workingDirectory).getAbsolutePath();
+        }
+        this.canonicalRoot = root.endsWith(File.separator) ? root : root + File.separator;
+        this.writer = new DurableWriter(workingDirectory, logger);
+        try {
+            // Antes que el indice: la recuperacion puede crear o borrar archivos
+            this.writer.start();
+        } catch (IOException e) {
+            logger.accept("[AVISO] No se pudo abrir el diario de escrituras, se usara fsync: " + e.getMessage());
+        }
+        this.uploads = new UploadManager(workingDirectory, writer);
+        this.versions = new FileVersions(workingDirectory);
+        this.cache = new ContentCache(cacheBytes);
+        this.notifier = new ChangeNotifier(this::readEntry, logger);
+        this.index = new DirectoryIndex(workingDirectory, logger, notifier);
+        this.index.start();
+    }
+
+    /**
+     * Obtiene el directorio de trabajo del procesador
+     * @return La ruta del directorio de trabajo
+     */
+    public String getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    /**
+     * Obtiene la cache de contenido (para mostrar sus contadores)
+     * @return La cache de READ
+     */
+    public ContentCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Obtiene las vistas del listado (para mostrar sus contadores)
+     * @return Las vistas de LISTPAGE
+     */
+    public ListingViews getViews() {
+        return views;
+    }
+
+    /**
+     * Obtiene el escritor durable (para mostrar sus contadores)
+     * @return El escritor de CREATE, WRITE, MODIFY y DELETE
+     */
+    public DurableWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Obtiene los bloqueos por archivo (para mostrar sus contadores)
+     * @return El administrador de bloqueos
+     */
+    public FileLockManager getLocks() {
+        return locks;
+    }
+
+    /**
+     * Obtiene el notificador de cambios (para mostrar sus contadores)
+     * @return El notificador de SUBSCRIBE
+     */
+    public ChangeNotifier getNotifier() {
+        return notifier;
+    }
+
+    /**
+     * Libera los recursos del procesador (al detener el servidor)
+     */
+    public void close() {
+        uploads.close();
+        index.close();
+        notifier.close();
+        writer.close();
+        synchronized (this) {
+            if (batchPool != null) {
+                batchPool.shutdownNow();
+                batchPool = null;
+            }
+        }
+    }
+
+    /**
+     * Registra un mensaje usando el logger configurado
+     * @param message El mensaje a registrar
+     */
+    private void log(String message) {
+        logger.accept(message);
+    }
+
+    /**
+     * Indica si un comando responde con una secuencia de mensajes
+     *
+     * @param command El comando de la peticion
+     * @return true si debe atenderse con handleRequest y un ResponseSink
+     */
+    public static boolean isStreaming(String command) {
+        return FileProtocol.CMD_READ_STREAM.equals(command)
+            || FileProtocol.CMD_DOWNLOAD.equals(command)
+            || FileProtocol.CMD_SUBSCRIBE.equals(command);
+    }
+
+    /**
+     * Atiende una peticion enviando sus respuestas al sink
+     *
+     * Es el punto de entrada de los motores de red: los comandos normales
+     * envian una sola respuesta y los de streaming envian varias.
+     *
+     * @param request La peticion recibida del cliente
+     * @param clientIP IP del cliente (para mostrar en el log)
+     * @param sink Destino de las respuestas
+     * @throws IOException Si falla el envio al cliente
+     */
+    public void handleRequest(FileProtocol request, String clientIP, ResponseSink sink) throws IOException {
+        long requestId = request.getRequestId();
+        if (requestId != 0 && isStreaming(request.getCommand())) {
+            // Cada mensaje de la secuencia lleva el identificador de la peticion
+            ResponseSink target = sink;
+            sink = new ResponseSink() {
+                @Override
+                public void send(FileProtocol message) throws IOException {
+                    message.setRequestId(requestId);
+                    target.send(message);
+                }
+
+                @Override
+                public boolean offer(FileProtocol message) throws IOException {
+                    message.setRequestId(requestId);
+                    return target.offer(message);
+                }
+
+                @Override
+                public void sendFile(FileProtocol header, FileChannel file, long position, long count)
+                        throws IOException {
+                    header.setRequestId(requestId);
+                    target.sendFile(header, file, position, count);
+                }
+            };
+        }
+        if (isStreaming(request.getCommand()) && !FileProtocol.CMD_SUBSCRIBE.equals(request.getCommand())) {
+            FileProtocol rejected = new FileProtocol();
+            if (!checkPath(request, rejected, clientIP)) {
+                sink.send(rejected);
+                return;
+            }
+        }
+        if (FileProtocol.CMD_READ_STREAM.equals(request.getCommand())) {
+            streamFile(request, clientIP, sink);
+        } else if (FileProtocol.CMD_DOWNLOAD.equals(request.getCommand())) {
+            downloadFile(request, clientIP, sink);
+        } else if (FileProtocol.CMD_SUBSCRIBE.equals(request.getCommand())) {
+            // El sink queda guardado: los eventos se envian despues, desde otro hilo
+            sink.send(notifier.subscribe(sink, clientIP, request.getContent()));
+        } else {
+            sink.send(processRequest(request, clientIP));
+        }
+    }
+
+    // ============================================================================
+    // LECTURA EN TROZOS (STREAMING)
+    // ============================================================================
+
+    /**
+     * Envia un archivo como una secuencia de trozos de tamanio fijo
+     *
+     * Se lee un trozo, se envia y recien entonces se lee el siguiente:
+     * la memoria usada es siempre un solo buffer, y si el cliente lee
+     * despacio, sink.send() bloquea y frena la lectura del disco.
+     * La secuencia termina con un trozo vacio marcado con last=true
+     * (asi no importa si el archivo crece mientras se envia).
+     *
+     * @param request Peticion con el nombre del archivo
+     * @param clientIP IP del cliente (para mostrar en el log)
+     * @param sink Destino de los trozos
+     */
+    private void streamFile(FileProtocol request, String clientIP, ResponseSink sink) throws IOException {
+        String fileName = request.getFileName();
+        log("[LEER] [" + clientIP + "] Enviando en trozos: " + fileName);
+
+        File file = new File(workingDirectory, fileName);
+        if (!file.isFile()) {
+            FileProtocol error = new FileProtocol();
+            error.setResponse(FileProtocol.RESP_ERROR);
+            error.setContent("Archivo no encontrado: " + fileName);
+            error.setLast(true);
+            sink.send(error);
+            log("[ERROR] [" + clientIP + "] Archivo no encontrado: " + fileName);
+            return;
+        }
+
+        // Mensaje reutilizado para cada trozo (sink lo codifica al enviarlo)
+        FileProtocol chunk = new FileProtocol();
+        chunk.setCommand(FileProtocol.RESP_FILE_CHUNK);
+        chunk.setResponse(FileProtocol.RESP_OK);
+        chunk.setFileName(fileName);
+        chunk.setLength(file.length());
+
+        byte[] buffer = new byte[STREAM_CHUNK_SIZE];
+        long offset = 0;
+
+        try (InputStream in = openLocked(file)) {
+            int n;
+            while ((n = readChunk(in, buffer)) > 0) {
+                // El ultimo trozo puede venir incompleto: se recorta
+                chunk.setData(n == buffer.length ? buffer : Arrays.copyOf(buffer, n));
+                chunk.setOffset(offset);
+                sink.send(chunk);
+                offset += n;
+            }
+        } catch (IOException e) {
+            // Error de disco a mitad del envio: se avisa y se corta la secuencia
+            FileProtocol error = new FileProtocol();
+            error.setResponse(FileProtocol.RESP_ERROR);
+            error.setContent("Error leyendo archivo: " + e.getMessage());
+            error.setLast(true);
+            sink.send(error);
+            log("[ERROR] [" + clientIP + "] Error enviando " + fileName + ": " + e.getMessage());
+            return;
+        }
+
+        // Trozo final vacio que cierra la secuencia
+        chunk.setData(new byte[0]);
+        chunk.setOffset(offset);
+        chunk.setLast(true);
+        sink.send(chunk);
+        log("[OK] [" + clientIP + "] Archivo enviado en trozos: " + fileName + " (" + offset + " bytes)");
+    }
+
+    // ============================================================================
+    // DESCARGA SIN COPIA (ZERO-COPY)
+    // ============================================================================
+
+    /**
+     * Envia un archivo (o un rango) con una cabecera y sus bytes crudos
+     *
+     * A diferencia de READ y READSTREAM, el contenido nunca se convierte
+     * en String ni en byte[]: el sink usa FileChannel.transferTo para
+     * pasar los bytes del archivo al socket directamente.
+     *
+     * Con offset/length se envia solo ese rango: el cliente puede pedir
+     * partes de un archivo grande por varias conexiones a la vez. La
+     * cabecera trae offset, length (bytes que siguen) y version.
+     *
+     * @param request Peticion con el nombre del archivo (y el rango opcional)
+     * @param clientIP IP del cliente (para mostrar en el log)
+     * @param sink Destino de la cabecera y los bytes
+     */
+    private void downloadFile(FileProtocol request, String clientIP, ResponseSink sink) throws IOException {
+        String fileName = request.getFileName();
+        log("[DESCARGA] [" + clientIP + "] Descargando archivo: " + fileName);
+
+        File file = new File(workingDirectory, fileName);
+        FileChannel channel;
+        long version = 0;
+        try {
+            FileLockManager.Hold hold = locks.read(file);
+            try {
+                channel = file.isFile() ? FileChannel.open(file.toPath(), StandardOpenOption.READ) : null;
+                if (channel != null) {
+                    // Version del contenido que se abrio (las partes de una descarga
+                    // en paralelo deben coincidir)
+                    version = versions.current(file);
+                }
+            } finally {
+                hold.close();
+            }
+        } catch (IOException e) {
+            channel = null;
+        }
+        if (channel == null) {
+            FileProtocol error = new FileProtocol();
+            error.setResponse(FileProtocol.RESP_ERROR);
+            error.setContent("Archivo no encontrado: " + fileName);
+            sink.send(error);
+            log("[ERROR] [" + clientIP + "] Archivo no encontrado: " + fileName);
+            return;
+        }
+
+        // El tamanio se fija al abrir: la cabecera anuncia cuanto se envia
+        long size = channel.size();
+
+        // Rango pedido: offset y length (0 = hasta el final); sin rango, el archivo entero
+        long start = Math.min(Math.max(request.getOffset(), 0), size);
+        long count = request.getLength() > 0 ? Math.min(request.getLength(), size - start) : size - start;
+
+        FileProtocol header = new FileProtocol();
+        header.setCommand(FileProtocol.RESP_FILE_DATA);
+        header.setResponse(FileProtocol.RESP_OK);
+        header.setFileName(fileName);
+        header.setOffset(start);
+        header.setLength(count);
+        header.setVersion(version);
+
+        // El sink cierra el canal cuando termina de enviarlo
+        sink.sendFile(header, channel, start, count);
+        log("[OK] [" + clientIP + "] Descarga iniciada: " + fileName + " (" + count + " bytes"
+            + (count < size ? " desde " + start + " de " + size : "") + ")");
+    }
+
+    /**
+     * Abre un archivo para enviarlo con el lock de lectura tomado
+     *
+     * El lock se suelta despues de abrir: las escrituras renombran un
+     * archivo nuevo encima, asi que el stream abierto sigue leyendo la
+     * version completa que habia al abrirlo sin frenar a los escritores.
+     */
+    private InputStream openLocked(File file) throws IOException {
+        FileLockManager.Hold hold = locks.read(file);
+        try {
+            return new FileInputStream(file);
+        } finally {
+            hold.close();
+        }
+    }
+
+    /**
+     * Llena el buffer tanto como se pueda (read() puede devolver menos)
+     *
+     * @param in Stream del archivo
+     * @param buffer Buffer a llenar
+     * @return Bytes leidos (0 al final del archivo)
+     */
+    private static int readChunk(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int n = in.read(buffer, total, buffer.length - total);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    // ============================================================================
+    // LECTURA DE UN RANGO
+    // ============================================================================
+
+    /**
+     * Lee solo los bytes pedidos de un archivo
+     *
+     * Usa lecturas posicionales de FileChannel: no se recorre el archivo
+     * hasta el offset ni se lee nada fuera del rango, asi que leer la
+     * cola de un archivo de varios GB cuesta lo mismo que leer su inicio.
+     *
+     * @param request Peticion con fileName, offset, length y last (desde el final)
+     * @param response Respuesta CHUNK con los bytes leidos
+     */
+    private void readRange(FileProtocol request, FileProtocol response) throws IOException {
+        File file = new File(workingDirectory, request.getFileName());
+        if (!file.isFile()) {
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("Archivo no encontrado: " + request.getFileName());
+            return;
+        }
+        if (request.getOffset() < 0 || request.getLength() < 0) {
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("Rango invalido");
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long wanted = request.getLength() == 0 ? MAX_RANGE_LENGTH
+                : Math.min(request.getLength(), MAX_RANGE_LENGTH);
+
+            // Desde el final: offset cuenta hacia atras desde el ultimo byte
+            long end = request.isLast() ? Math.max(0, size - request.getOffset()) : size;
+            long start = request.isLast() ? Math.max(0, end - wanted) : Math.min(request.getOffset(), size);
+            int count = (int) Math.min(wanted, end - start);
+
+            ByteBuffer buffer = ByteBuffer.allocate(count);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    break;  // El archivo se acorto mientras se leia
+                }
+            }
+
+            response.setCommand(FileProtocol.RESP_FILE_CHUNK);
+            response.setResponse(FileProtocol.RESP_OK);
+            response.setFileName(request.getFileName());
+            response.setData(buffer.position() == count ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position()));
+            response.setOffset(start);
+            response.setLength(size);
+            response.setLast(start + buffer.position() >= size);
+            response.setVersion(versions.current(file));
+        }
+    }
+
+    // ============================================================================
+    // LISTADO POR PAGINAS
+    // ============================================================================
+
+    /**
+     * Arma una pagina del listado con filtro, orden y cursor
+     *
+     * El listado filtrado y ordenado se guarda en las vistas (ListingViews):
+     * las paginas siguientes, o las que el cliente pide al saltar con la
+     * barra, son un tramo de esa vista y solo se leen tamanio y fecha de
+     * los archivos de la pagina. Sin filtro y por nombre se usa directamente
+     * el indice, que ya esta ordenado.
+     *
+     * El orden es name, size o mtime; con "-" adelante es descendente.
+     *
+     * @param request Peticion con filtro, orden, cursor y tamanio de pagina
+     * @param response Respuesta a completar
+     */
+    private void listPage(FileProtocol request, FileProtocol response) throws IOException {
+        String pattern = request.getFileName();
+        String sort = request.getContent() != null && !request.getContent().isEmpty() ? request.getContent() : "name";
+        boolean descending = sort.startsWith("-");
+        String key = descending ? sort.substring(1) : sort;
+        if (!"name".equals(key) && !"size".equals(key) && !"mtime".equals(key)) {
+            throw new IOException("Orden desconocido: " + sort);
+        }
+        long cursor = Math.max(0, request.getOffset());
+        int pageSize = request.getLength() > 0
+            ? (int) Math.min(request.getLength(), MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+
+        // Un glob mal formado (ej: "a[") se rechaza antes de armar la vista
+        try {
+            nameFilter(pattern);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Filtro invalido: " + pattern);
+        }
+
+        String[] names;
+        if (!descending && "name".equals(key) && (pattern == null || pattern.isEmpty())) {
+            names = index.isActive() ? index.list() : sortedDirectoryList();
+        } else {
+            long indexVersion = index.isActive() ? index.getVersion() : -1;
+            names = views.get(pattern, sort, indexVersion, () -> buildView(pattern, key, descending));
+        }
+
+        fillPage(names, cursor, pageSize, response);
+    }
+
+    /**
+     * Completa la respuesta con un tramo de una vista de nombres
+     *
+     * Solo se leen tamanio y fecha de los archivos del tramo.
+     *
+     * @param names Vista completa (filtrada y ordenada)
+     * @param cursor Posicion del primero
+     * @param pageSize Cantidad maxima de entradas
+     * @param response Respuesta: entries, length = total, offset = siguiente, last
+     */
+    private void fillPage(String[] names, long cursor, int pageSize, FileProtocol response) {
+        List<FileEntry> page = new ArrayList<>(pageSize);
+        long total = names.length;
+        for (long i = cursor; i < total && page.size() < pageSize; i++) {
+            FileEntry entry = readEntry(names[(int) i]);
+            if (entry != null) {
+                page.add(entry);
+            }
+        }
+
+        long next = Math.min(total, cursor + pageSize);
+        response.setCommand(FileProtocol.RESP_FILE_PAGE);
+        response.setResponse(FileProtocol.RESP_OK);
+        response.setEntries(page.toArray(new FileEntry[0]));
+        response.setLength(total);
+        response.setOffset(next);
+        response.setLast(next >= total);
+    }
+
+    /**
+     * Filtra y ordena el directorio completo para una vista de LISTPAGE
+     *
+     * @param pattern Filtro pedido (puede ser null)
+     * @param key Orden: name, size o mtime
+     * @param descending true para invertir el orden
+     * @return Nombres que pasan el filtro, en el orden pedido
+     */
+    private String[] buildView(String pattern, String key, boolean descending) {
+        Predicate<String> filter = nameFilter(pattern);
+        String[] names = index.isActive() ? index.list() : sortedDirectoryList();
+        if ("name".equals(key)) {
+            List<String> matching = new ArrayList<>();
+            for (String name : names) {
+                if (filter.test(name)) {
+                    matching.add(name);
+                }
+            }
+            if (descending) {
+                Collections.reverse(matching);
+            }
+            return matching.toArray(new String[0]);
+        }
+
+        // Tamanio o fecha: se leen de todos los que pasan el filtro
+        List<FileEntry> all = new ArrayList<>();
+        for (String name : names) {
+            if (filter.test(name)) {
+                FileEntry entry = readEntry(name);
+                if (entry != null) {
+                    all.add(entry);
+                }
+            }
+        }
+        Comparator<FileEntry> order = "size".equals(key)
+            ? Comparator.comparingLong(FileEntry::getSize)
+            : Comparator.comparingLong(FileEntry::getModified);
+        if (descending) {
+            order = order.reversed();
+        }
+        // Empates por nombre para que el cursor sea estable entre paginas
+        all.sort(order.thenComparing(FileEntry::getName));
+        String[] sorted = new String[all.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = all.get(i).getName();
+        }
+        return sorted;
+    }
+
+    // ============================================================================
+    // ARBOLES DE CARPETAS (LISTTREE, MKDIR)
+    // ============================================================================
+
+    /**
+     * Arma una pagina con todas las carpetas y archivos debajo de una carpeta
+     *
+     * El recorrido completo se guarda como una vista mas de ListingViews:
+     * las paginas siguientes son tramos de la misma lista. El indice no ve
+     * las subcarpetas, asi que esta vista vence solo por tiempo.
+     *
+     * @param request Peticion con la carpeta (null = todo), cursor y tamanio de pagina
+     * @param response Respuesta a completar
+     */
+    private void listTree(FileProtocol request, FileProtocol response) throws IOException {
+        String folder = request.getFileName();
+        File root = folder != null ? new File(workingDirectory, folder) : new File(workingDirectory);
+        if (!root.isDirectory()) {
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("Carpeta no encontrada: " + folder);
+            return;
+        }
+        long cursor = Math.max(0, request.getOffset());
+        int pageSize = request.getLength() > 0
+            ? (int) Math.min(request.getLength(), MAX_PAGE_SIZE) : DEFAULT_PAGE_SIZE;
+        String[] names = views.get(folder, ListingViews.TREE, -1, () -> walkTree(root));
+        fillPage(names, cursor, pageSize, response);
+    }
+
+    /**
+     * Recorre un arbol sin entrar en lo oculto ni seguir enlaces simbolicos
+     *
+     * @param root Carpeta donde empieza (no se incluye)
+     * @return Rutas relativas al directorio de trabajo, separadas por "/" y
+     *         ordenadas (cada carpeta aparece antes que su contenido)
+     */
+    private String[] walkTree(File root) throws IOException {
+        Path base = Paths.get(workingDirectory).toAbsolutePath();
+        Path start = root.toPath().toAbsolutePath();
+        List<String> names = new ArrayList<>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (dir.equals(start)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (dir.getFileName().toString().startsWith(".")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                names.add(relativeName(base, dir));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!file.getFileName().toString().startsWith(".")) {
+                    names.add(relativeName(base, file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;  // Borrado mientras se recorria
+            }
+        });
+        String[] sorted = names.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Ruta relativa al directorio de trabajo con "/" como separador
+     */
+    private static String relativeName(Path base, Path path) {
+        return base.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Crea una carpeta y las que falten en su ruta
+     *
+     * Si aparece una carpeta nueva en el primer nivel se avisa como
+     * cualquier archivo creado (el listado y los eventos ven ese nivel).
+     *
+     * @param folder Ruta relativa de la carpeta
+     */
+    private void makeDirectory(String folder) throws IOException {
+        int slash = folder.indexOf('/');
+        String top = slash < 0 ? folder : folder.substring(0, slash);
+        boolean existed = new File(workingDirectory, top).exists();
+        Files.createDirectories(Paths.get(workingDirectory, folder));
+        if (!existed) {
+            index.added(top);
+            notifier.changed(top, ChangeNotifier.CREATED);
+        }
+    }
+
+    /**
+     * Crea las carpetas que faltan antes de escribir un archivo
+     *
+     * @param fileName Ruta relativa del archivo (sin "/" no hace nada)
+     */
+    private void makeParents(String fileName) throws IOException {
+        int slash = fileName != null ? fileName.lastIndexOf('/') : -1;
+        if (slash > 0) {
+            makeDirectory(fileName.substring(0, slash));
+        }
+    }
+
+    /**
+     * Comprueba que el archivo de una peticion quede dentro del directorio de trabajo
+     *
+     * Se admiten subcarpetas separadas con "/", pero no rutas absolutas,
+     * partes vacias ni partes que empiecen con punto ("..", o lo oculto
+     * como la carpeta de subidas parciales y el diario). Una ruta con
+     * subcarpetas tampoco puede salir por un enlace simbolico.
+     * LISTPAGE no se comprueba: su fileName es un filtro. Solo los
+     * comandos de takesNoFile() pueden venir sin nombre.
+     *
+     * @param request Peticion a comprobar
+     * @param response Respuesta de error si la ruta no es valida
+     * @param clientIP IP del cliente (para mostrar en el log)
+     * @return true si se puede ejecutar
+     */
+    private boolean checkPath(FileProtocol request, FileProtocol response, String clientIP) {
+        String name = request.getFileName();
+        if (FileProtocol.CMD_LIST_PAGE.equals(request.getCommand())) {
+            return true;
+        }
+        if (name == null) {
+            if (takesNoFile(request.getCommand())) {
+                return true;
+            }
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("Falta el nombre del archivo");
+            log("[AVISO] [" + clientIP + "] " + request.getCommand() + " sin nombre de archivo");
+            return false;
+        }
+        boolean valid = !name.isEmpty() && name.indexOf('\\') < 0 && !new File(name).isAbsolute();
+        for (String part : name.split("/", -1)) {
+            valid &= !part.isEmpty() && !part.startsWith(".");
+        }
+        if (valid && name.indexOf('/') >= 0) {
+            try {
+                valid = new File(workingDirectory, name).getCanonicalPath().startsWith(canonicalRoot);
+            } catch (IOException e) {
+                valid = false;
+            }
+        }
+        if (!valid) {
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("Ruta invalida: " + name);
+            log("[AVISO] [" + clientIP + "] Ruta invalida: " + name);
+        }
+        return valid;
+    }
+
+    /**
+     * Indica si un comando puede venir sin nombre de archivo
+     *
+     * @param command Comando de la peticion
+     * @return true para listados, lotes, suscripcion y desconexion
+     */
+    private static boolean takesNoFile(String command) {
+        return FileProtocol.CMD_LIST_FILES.equals(command)
+            || FileProtocol.CMD_LIST_PAGE.equals(command)
+            || FileProtocol.CMD_LIST_TREE.equals(command)
+            || FileProtocol.CMD_BATCH.equals(command)
+            || FileProtocol.CMD_SUBSCRIBE.equals(command)
+            || FileProtocol.CMD_DISCONNECT.equals(command);
+    }
+
+    /**
+     * Convierte el filtro del cliente en una condicion sobre el nombre
+     *
+     * Si tiene caracteres de glob (* ? [ {) se usa como glob; si no,
+     * como prefijo. Sin filtro se aceptan todos los nombres.
+     *
+     * @param pattern Filtro pedido (puede ser null o vacio)
+     * @return Condicion a aplicar a cada nombre
+     * @throws IllegalArgumentException Si el glob esta mal formado (ej: "a[" o "{x")
+     */
+    static Predicate<String> nameFilter(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            return name -> true;
+        }
+        if (pattern.matches(".*[*?\\[{].*")) {
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            return name -> matcher.matches(Paths.get(name));
+        }
+        return name -> name.startsWith(pattern);
+    }
+
+    /**
+     * Lee tamanio, fecha y tipo de un archivo del directorio de trabajo
+     *
+     * @param name Nombre del archivo
+     * @return La entrada, o null si el archivo se borro mientras tanto
+     */
+    private FileEntry readEntry(String name) {
+        Path path = Paths.get(workingDirectory, name);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return new FileEntry(name, attrs.isDirectory() ? 0 : attrs.size(),
+                attrs.lastModifiedTime().toMillis(), attrs.isDirectory());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Lista el directorio recorriendolo (cuando no hay indice activo)
+     *
+     * @return Nombres visibles en orden alfabetico
+     */
+    private String[] sortedDirectoryList() {
+        String[] names = new File(workingDirectory).list((parent, name) -> !name.startsWith("."));
+        if (names == null) {
+            return new String[0];
+        }
+        Arrays.sort(names);
+        return names;
+    }
+
+    // ============================================================================
+    // MODIFICACION POR BLOQUES (DELTA)
+    // ============================================================================
+
+    /**
+     * Responde con la firma por bloques del archivo actual (SIGNATURE)
+     *
+     * @param request Peticion con fileName y tamanio de bloque en length
+     * @param response Respuesta: firma en data, bloque en offset, tamanio en length
+     */
+    private void blockSignature(FileProtocol request, FileProtocol response) throws IOException {
+        int blockSize = blockSize(request.getLength());
+        File file = new File(workingDirectory, request.getFileName());
+        if (!file.isFile()) {
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("Archivo no encontrado: " + request.getFileName());
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            response.setData(DeltaSync.signature(channel, blockSize));
+            response.setLength(channel.size());
+        }
+        response.setResponse(FileProtocol.RESP_OK);
+        response.setFileName(request.getFileName());
+        response.setOffset(blockSize);
+    }
+
+    /**
+     * Arma el archivo nuevo desde el actual y el delta (MODIFYDELTA)
+     *
+     * El resultado se escribe en un archivo temporal y solo reemplaza al
+     * original si su SHA-256 coincide con el que calculo el cliente. Si el
+     * archivo cambio desde que se pidio la firma, se rechaza el delta y el
+     * cliente debe volver a intentarlo (o enviar el contenido completo).
+     *
+     * @param request Peticion con fileName, delta, tamanio de bloque, tamanio base y hash
+     * @param response Respuesta a completar (length = tamanio nuevo)
+     */
+    private void modifyDelta(FileProtocol request, FileProtocol response) throws IOException {
+        String fileName = request.getFileName();
+        File file = new File(workingDirectory, fileName);
+        if (!file.isFile()) {
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("Archivo no encontrado");
+            return;
+        }
+        if (!checkVersion(request, file, response)) {
+            return;
+        }
+        long previous = versions.current(file);
+        int blockSize = blockSize(request.getOffset());
+        byte[] delta = request.getData() != null ? request.getData() : new byte[0];
+        // Temporal oculto junto al original (asi el rename no cruza discos)
+        File temp = new File(file.getParentFile(), "." + file.getName() + ".delta");
+
+        try (FileChannel base = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (base.size() != request.getLength()) {
+                response.setResponse(FileProtocol.RESP_ERROR);
+                response.setContent("El archivo cambio desde que se pidio la firma");
+                return;
+            }
+            try (FileChannel target = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long written = DeltaSync.apply(base, delta, blockSize, target);
+                String hash = request.getContent();
+                if (hash != null && !hash.equalsIgnoreCase(UploadManager.sha256(target))) {
+                    response.setResponse(FileProtocol.RESP_ERROR);
+                    response.setContent("El resultado del delta no coincide con el hash esperado");
+                    return;
+                }
+                response.setLength(written);
+            }
+            writer.publish(temp, file);
+        } finally {
+            // Si algo fallo, no queda el temporal; si salio bien ya se movio
+            temp.delete();
+            cache.invalidate(file);
+        }
+        response.setResponse(FileProtocol.RESP_OK);
+        response.setContent("Archivo modificado exitosamente");
+        response.setVersion(versions.changed(file, previous));
+        notifier.changed(fileName, ChangeNotifier.MODIFIED);
+    }
+
+    /**
+     * Compara la version esperada por el cliente con la actual
+     *
+     * Si no coinciden, otro cliente escribio el archivo despues de que
+     * este lo leyo: se responde CONFLICT con la version actual en lugar
+     * de pisar ese cambio. Se llama con el lock exclusivo tomado.
+     *
+     * @param request Peticion con la version esperada (0 = sin comprobar)
+     * @param file Archivo a escribir
+     * @param response Respuesta a completar si hay conflicto
+     * @return true si se puede escribir
+     */
+    private boolean checkVersion(FileProtocol request, File file, FileProtocol response) throws IOException {
+        if (request.getVersion() == 0) {
+            return true;
+        }
+        long current = versions.current(file);
+        if (current == request.getVersion()) {
+            return true;
+        }
+        response.setResponse(FileProtocol.RESP_CONFLICT);
+        response.setContent("El archivo fue modificado por otro cliente");
+        response.setVersion(current);
+        return false;
+    }
+
+    /**
+     * Acota el tamanio de bloque pedido (0 = por defecto)
+     */
+    private static int blockSize(long requested) {
+        if (requested <= 0) {
+            return DeltaSync.DEFAULT_BLOCK_SIZE;
+        }
+        return (int) Math.max(512, Math.min(requested, STREAM_CHUNK_SIZE));
+    }
+
+    // ============================================================================
+    // LOTES (BATCH)
+    // ============================================================================
+
+    /**
+     * Ejecuta las sub-peticiones de un BATCH y arma un resultado por cada una
+     *
+     * Cada sub-peticion pasa por processRequest igual que si hubiera
+     * llegado sola, pero todas viajan en una trama y vuelven en otra:
+     * borrar 500 archivos cuesta un viaje de red en lugar de 500.
+     *
+     * @param request Peticion con items y opciones en offset
+     * @param response Respuesta: items con los resultados, length = correctas
+     * @param clientIP IP del cliente (para mostrar en el log)
+     */
+    private void executeBatch(FileProtocol request, FileProtocol response, String clientIP) throws IOException {
+        FileProtocol[] items = request.getItems();
+        if (items == null || items.length == 0 || items.length > MAX_BATCH_ITEMS) {
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("El lote debe tener entre 1 y " + MAX_BATCH_ITEMS + " operaciones");
+            return;
+        }
+        boolean stopOnError = (request.getOffset() & FileProtocol.BATCH_STOP_ON_ERROR) != 0;
+        boolean parallel = (request.getOffset() & FileProtocol.BATCH_PARALLEL) != 0;
+
+        FileProtocol[] results = new FileProtocol[items.length];
+        AtomicBoolean failed = new AtomicBoolean();
+        if (parallel) {
+            runParallel(items, results, stopOnError, failed, clientIP);
+        } else {
+            for (int i = 0; i < items.length; i++) {
+                runBatchItem(items, results, i, stopOnError, failed, clientIP);
+            }
+        }
+
+        int ok = 0;
+        for (FileProtocol result : results) {
+            if (succeeded(result)) {
+                ok++;
+            }
+        }
+        response.setItems(results);
+        response.setLength(ok);
+        response.setResponse(ok == items.length ? FileProtocol.RESP_OK : FileProtocol.RESP_ERROR);
+        response.setContent(ok + " de " + items.length + " operaciones correctas");
+    }
+
+    /**
+     * Ejecuta en paralelo las operaciones sobre archivos distintos
+     *
+     * Las operaciones de un mismo archivo forman un grupo que se ejecuta
+     * en orden en un solo hilo. Las que no nombran un archivo (LIST)
+     * dependen de todas las anteriores: actuan como barrera.
+     */
+    private void runParallel(FileProtocol[] items, FileProtocol[] results, boolean stopOnError,
+                             AtomicBoolean failed, String clientIP) throws IOException {
+        int start = 0;
+        while (start < items.length) {
+            // Tramo hasta la proxima operacion sin archivo
+            int end = start;
+            while (end < items.length && items[end] != null && items[end].getFileName() != null) {
+                end++;
+            }
+
+            Map<String, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = start; i < end; i++) {
+                groups.computeIfAbsent(items[i].getFileName(), k -> new ArrayList<>()).add(i);
+            }
+            if (groups.size() == 1) {
+                // Un solo archivo: no vale la pena pasar a otro hilo
+                for (int i = start; i < end; i++) {
+                    runBatchItem(items, results, i, stopOnError, failed, clientIP);
+                }
+            } else if (!groups.isEmpty()) {
+                ExecutorService pool = batchPool();
+                List<Future<?>> futures = new ArrayList<>(groups.size());
+                for (List<Integer> group : groups.values()) {
+                    futures.add(pool.submit(() -> {
+                        for (int i : group) {
+                            runBatchItem(items, results, i, stopOnError, failed, clientIP);
+                        }
+                    }));
+                }
+                awaitAll(futures);
+            }
+
+            // La barrera se ejecuta sola, despues de todo lo anterior
+            if (end < items.length) {
+                runBatchItem(items, results, end, stopOnError, failed, clientIP);
+                end++;
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Espera a que terminen las tareas de un tramo del lote
+     */
+    private static void awaitAll(List<Future<?>> futures) throws IOException {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Lote interrumpido");
+        } catch (ExecutionException e) {
+            throw new IOException("Error en el lote: " + e.getCause(), e.getCause());
+        }
+    }
+
+    /**
+     * Ejecuta una sub-peticion y guarda su resultado en su posicion
+     */
+    private void runBatchItem(FileProtocol[] items, FileProtocol[] results, int i, boolean stopOnError,
+                              AtomicBoolean failed, String clientIP) {
+        FileProtocol result;
+        if (stopOnError && failed.get()) {
+            result = new FileProtocol();
+            result.setResponse(FileProtocol.RESP_ERROR);
+            result.setContent("No ejecutado: fallo una operacion anterior");
+        } else {
+            result = batchItem(items[i], clientIP);
+            if (!succeeded(result)) {
+                failed.set(true);
+            }
+        }
+        results[i] = result;
+    }
+
+    /**
+     * Indica si una operacion del lote salio bien (un READ sin cambios tambien)
+     */
+    private static boolean succeeded(FileProtocol result) {
+        return FileProtocol.RESP_OK.equals(result.getResponse())
+            || FileProtocol.RESP_NOT_MODIFIED.equals(result.getResponse());
+    }
+
+    /**
+     * Ejecuta una sub-peticion sin dejar que su error corte el lote
+     */
+    private FileProtocol batchItem(FileProtocol item, String clientIP) {
+        String command = item != null ? item.getCommand() : null;
+        if (FileProtocol.CMD_BATCH.equals(command) || FileProtocol.CMD_DISCONNECT.equals(command)
+                || isStreaming(command)) {
+            FileProtocol result = new FileProtocol();
+            result.setResponse(FileProtocol.RESP_ERROR);
+            result.setContent("Comando no permitido dentro de un lote: " + command);
+            return result;
+        }
+        try {
+            return processRequest(item != null ? item : new FileProtocol(), clientIP);
+        } catch (RuntimeException e) {
+            // Ej: una sub-peticion sin nombre de archivo
+            FileProtocol result = new FileProtocol();
+            result.setResponse(FileProtocol.RESP_ERROR);
+            result.setContent("Error: " + e);
+            return result;
+        }
+    }
+
+    /**
+     * Obtiene el pool de los lotes, creandolo al primer uso
+     *
+     * Es un pool propio: las tareas de un lote nunca esperan a otras,
+     * asi que no puede quedar bloqueado aunque todos los hilos esten ocupados.
+     */
+    private synchronized ExecutorService batchPool() {
+        if (batchPool == null) {
+            AtomicInteger counter = new AtomicInteger();
+            batchPool = Executors.newFixedThreadPool(BATCH_THREADS, r -> {
+                Thread t = new Thread(r, "batch-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return batchPool;
+    }
+
+    // ============================================================================
+    // BLOQUEOS POR ARCHIVO
+    // ============================================================================
+
+    /**
+     * Toma el lock que necesita un comando sobre su archivo
+     *
+     * Los que leen el archivo toman el compartido; los que lo cambian,
+     * el exclusivo. Los demas (listados, lotes, subidas en curso) no
+     * toman ninguno: cada operacion de un lote toma el suyo.
+     *
+     * @return El bloqueo tomado, o null si el comando no lo necesita
+     */
+    private FileLockManager.Hold lockFor(FileProtocol request) throws IOException {
+        String fileName = request.getFileName();
+        if (fileName == null) {
+            return null;
+        }
+        File file = new File(workingDirectory, fileName);
+        switch (request.getCommand()) {
+            case FileProtocol.CMD_READ_FILE:
+            case FileProtocol.CMD_READ_RANGE:
+            case FileProtocol.CMD_SIGNATURE:
+                return locks.read(file);
+            case FileProtocol.CMD_CREATE_FILE:
+            case FileProtocol.CMD_WRITE_FILE:
+            case FileProtocol.CMD_MODIFY_FILE:
+            case FileProtocol.CMD_MODIFY_DELTA:
+            case FileProtocol.CMD_UPLOAD_COMMIT:
+            case FileProtocol.CMD_DELETE_FILE:
+                return locks.write(file);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Procesa una peticion del cliente y genera la respuesta
+     *
+     * El comando DISCONNECT solo genera la respuesta: cerrar la conexion
+     * es responsabilidad del motor de red que llamo a este metodo.
+     *
+     * @param request La peticion recibida del cliente
+     * @param clientIP IP del cliente (para mostrar en el log)
+     * @return La respuesta a enviar al cliente
+     */
+    public FileProtocol processRequest(FileProtocol request, String clientIP) {
+        // Crea objeto de respuesta vacio (con el identificador de la peticion)
+        FileProtocol response = new FileProtocol();
+        response.setRequestId(request.getRequestId());
+
+        // Obtiene el comando de la peticion
+        String command = request.getCommand();
+
+        // Un comando nulo no puede despacharse en el switch
+        if (command == null) {
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("Comando vacio");
+            log("[AVISO] [" + clientIP + "] Peticion sin comando");
+            return response;
+        }
+
+        // Solo rutas dentro del directorio de trabajo
+        if (!checkPath(request, response, clientIP)) {
+            return response;
+        }
+
+        // Lock del archivo durante todo el comando (null si no usa ninguno)
+        FileLockManager.Hold hold = null;
+        try {
+            hold = lockFor(request);
+
+            // Las subcarpetas que falten en la ruta de un archivo nuevo se crean antes
+            if (FileProtocol.CMD_CREATE_FILE.equals(command) || FileProtocol.CMD_WRITE_FILE.equals(command)
+                    || FileProtocol.CMD_UPLOAD_COMMIT.equals(command)) {
+                makeParents(request.getFileName());
+            }
+
+            // Switch para manejar cada tipo de comando
+            switch (command) {
+
+                // ========================================================
+                // COMANDO: LISTAR ARCHIVOS
+                // ========================================================
+                case FileProtocol.CMD_LIST_FILES:
+                    log("[LISTAR] [" + clientIP + "] Solicito listar archivos");
+
+                    // Obtiene lista de nombres de archivos/carpetas
+                    // (sin los ocultos, como la carpeta de subidas parciales)
+                    String[] files;
+                    if (index.isActive()) {
+                        // Lista en memoria: no recorre el directorio
+                        files = index.list();
+                    } else {
+                        // Crea objeto File apuntando al directorio de trabajo
+                        File dir = new File(workingDirectory);
+                        files = dir.list((parent, name) -> !name.startsWith("."));
+                    }
+
+                    // Configura la respuesta
+                    response.setCommand(FileProtocol.RESP_FILE_LIST);
+                    response.setFileList(files != null ? files : new String[0]);
+                    response.setResponse(FileProtocol.RESP_OK);
+                    break;
+
+                // ========================================================
+                // COMANDO: LISTAR ARCHIVOS POR PAGINAS
+                // ========================================================
+                case FileProtocol.CMD_LIST_PAGE:
+                    listPage(request, response);
+                    log("[LISTAR] [" + clientIP + "] Pagina desde " + request.getOffset() + ": "
+                        + response.getEntries().length + " de " + response.getLength() + " archivos");
+                    break;
+
+                // ========================================================
+                // COMANDOS: ARBOLES DE CARPETAS
+                // ========================================================
+                case FileProtocol.CMD_LIST_TREE:
+                    listTree(request, response);
+                    if (FileProtocol.RESP_OK.equals(response.getResponse())) {
+                        log("[LISTAR] [" + clientIP + "] Arbol de " + (request.getFileName() != null ? request.getFileName() : "/")
+                            + " desde " + request.getOffset() + ": " + response.getEntries().length + " de "
+                            + response.getLength() + " entradas");
+                    } else {
+                        log("[ERROR] [" + clientIP + "] " + response.getContent());
+                    }
+                    break;
+
+                case FileProtocol.CMD_MAKE_DIR:
+                    log("[CARPETA] [" + clientIP + "] Creando carpeta: " + request.getFileName());
+                    makeDirectory(request.getFileName());
+                    response.setResponse(FileProtocol.RESP_OK);
+                    response.setContent("Carpeta creada");
+                    break;
+
+                // ========================================================
+                // COMANDO: LEER ARCHIVO
+                // ========================================================
+                case FileProtocol.CMD_READ_FILE:
+                    // Obtiene el nombre del archivo de la peticion
+                    String fileName = request.getFileName();
+                    log("[LEER] [" + clientIP + "] Leyendo archivo: " + fileName);
+
+                    // Crea objeto File combinando directorio + nombre
+                    File file = new File(workingDirectory, fileName);
+
+                    // Verifica que existe y es un archivo (no directorio)
+                    if (file.exists() && file.isFile()) {
+                        // Fecha y tamanio antes de leer: validan la cache y el READ condicional
+                        long modified = file.lastModified();
+                        long size = file.length();
+                        response.setOffset(modified);
+                        response.setLength(size);
+                        response.setVersion(versions.current(file));
+
+                        // El cliente ya tiene esta version: no se reenvia el contenido
+                        if (request.getOffset() != 0 && request.getOffset() == modified
+                                && request.getLength() == size) {
+                            response.setResponse(FileProtocol.RESP_NOT_MODIFIED);
+                            log("[OK] [" + clientIP + "] Archivo sin cambios: " + fileName);
+                            break;
+                        }
+
+                        // Primero se busca en la cache (valida por fecha y tamanio)
+                        String cached = cache.get(file);
+                        if (cached == null) {
+                            // Los bytes tal cual (sin rearmar los fin de linea) en UTF-8:
+                            // asi el texto que vuelve en MODIFY o MODIFYDELTA coincide
+                            // byte a byte con el archivo en disco
+                            cached = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+                            cache.put(file, modified, size, cached);
+                        }
+
+                        // Configura respuesta exitosa con el contenido
+                        response.setCommand(FileProtocol.RESP_FILE_CONTENT);
+                        response.setContent(cached);
+                        response.setResponse(FileProtocol.RESP_OK);
+                        log("[OK] [" + clientIP + "] Archivo leido exitosamente: " + fileName);
+
+                    } else {
+                        // El archivo no existe o no es un archivo valido
+                        response.setResponse(FileProtocol.RESP_ERROR);
+                        response.setContent("Archivo no encontrado: " + fileName);
+                        log("[ERROR] [" + clientIP + "] Archivo no encontrado: " + fileName);
+                    }
+                    break;
+
+                // ========================================================
+                // COMANDO: LEER UN RANGO DEL ARCHIVO
+                // ========================================================
+                case FileProtocol.CMD_READ_RANGE:
+                    readRange(request, response);
+                    if (FileProtocol.RESP_OK.equals(response.getResponse())) {
+                        log("[LEER] [" + clientIP + "] Rango de " + request.getFileName() + ": "
+                            + response.getData().length + " bytes desde " + response.getOffset());
+                    } else {
+                        log("[ERROR] [" + clientIP + "] " + response.getContent());
+                    }
+                    break;
+
+                // ========================================================
+                // COMANDOS: CREAR O ESCRIBIR ARCHIVO
+                // ========================================================
+                case FileProtocol.CMD_CREATE_FILE:
+                case FileProtocol.CMD_WRITE_FILE:
+                    String newFileName = request.getFileName();
+                    String newContent = request.getContent();
+                    log("[ESCRIBIR] [" + clientIP + "] Creando/Escribiendo archivo: " + newFileName);
+
+                    // Crea el archivo
+                    File newFile = new File(workingDirectory, newFileName);
+                    boolean existed = newFile.exists();
+                    long previousVersion = versions.current(newFile);
+
+                    // Escribe el contenido (en UTF-8) en un temporal y lo renombra encima
+                    try {
+                        // Si el contenido es null, escribe cadena vacia
+                        writer.write(newFile, (newContent != null ? newContent : "").getBytes(StandardCharsets.UTF_8));
+                    } finally {
+                        // Lo guardado en la cache ya no vale (aunque falle a medias)
+                        cache.invalidate(newFile);
+                        if (newFile.exists()) {
+                            index.added(newFileName);
+                        }
+                    }
+
+                    response.setResponse(FileProtocol.RESP_OK);
+                    response.setContent("Archivo creado/escrito exitosamente");
+                    response.setVersion(versions.changed(newFile, previousVersion));
+                    notifier.changed(newFileName, existed ? ChangeNotifier.MODIFIED : ChangeNotifier.CREATED);
+                    log("[OK] [" + clientIP + "] Archivo creado/escrito: " + newFileName);
+                    break;
+
+                // ========================================================
+                // COMANDOS: SUBIDA EN TROZOS (REANUDABLE)
+                // ========================================================
+                case FileProtocol.CMD_UPLOAD_BEGIN:
+                    uploads.begin(request, response);
+                    log("[SUBIR] [" + clientIP + "] Subida de " + request.getFileName() + " ("
+                        + request.getLength() + " bytes) desde el byte " + response.getOffset());
+                    break;
+
+                case FileProtocol.CMD_UPLOAD_CHUNK:
+                    uploads.chunk(request, response);
+                    break;
+
+                case FileProtocol.CMD_UPLOAD_COMMIT:
+                    File replacedFile = new File(workingDirectory, request.getFileName());
+                    boolean replaced = replacedFile.exists();
+                    long replacedVersion = versions.current(replacedFile);
+                    File uploaded = uploads.commit(request, response);
+                    if (uploaded != null) {
+                        cache.invalidate(uploaded);
+                        response.setVersion(versions.changed(uploaded, replacedVersion));
+                        notifier.changed(request.getFileName(), replaced ? ChangeNotifier.MODIFIED : ChangeNotifier.CREATED);
+                        index.added(request.getFileName());
+                        log("[OK] [" + clientIP + "] Archivo subido: " + request.getFileName()
+                            + " (" + response.getOffset() + " bytes)");
+                    } else {
+                        log("[ERROR] [" + clientIP + "] " + response.getContent());
+                    }
+                    break;
+
+                // ========================================================
+                // COMANDO: MODIFICAR ARCHIVO EXISTENTE
+                // ========================================================
+                case FileProtocol.CMD_MODIFY_FILE:
+                    String modFileName = request.getFileName();
+                    String modContent = request.getContent();
+                    log("[MODIFICAR] [" + clientIP + "] Modificando archivo: " + modFileName);
+
+                    File modFile = new File(workingDirectory, modFileName);
+
+                    // Solo modifica si el archivo existe
+                    if (!modFile.exists()) {
+                        response.setResponse(FileProtocol.RESP_ERROR);
+                        response.setContent("Archivo no encontrado");
+                        log("[ERROR] [" + clientIP + "] No se pudo modificar, archivo no existe: " + modFileName);
+                    } else if (!checkVersion(request, modFile, response)) {
+                        // Otro cliente lo cambio desde que este lo leyo
+                        log("[CONFLICTO] [" + clientIP + "] " + modFileName + ": version esperada "
+                            + request.getVersion() + ", actual " + response.getVersion());
+                    } else {
+                        long modVersion = versions.current(modFile);
+                        try {
+                            writer.write(modFile, (modContent != null ? modContent : "").getBytes(StandardCharsets.UTF_8));
+                        } finally {
+                            cache.invalidate(modFile);
+                        }
+                        response.setResponse(FileProtocol.RESP_OK);
+                        response.setContent("Archivo modificado exitosamente");
+                        response.setVersion(versions.changed(modFile, modVersion));
+                        notifier.changed(modFileName, ChangeNotifier.MODIFIED);
+                        log("[OK] [" + clientIP + "] Archivo modificado: " + modFileName);
+                    }
+                    break;
+
+                // ========================================================
+                // COMANDOS: MODIFICAR POR BLOQUES (DELTA)
+                // ========================================================
+                case FileProtocol.CMD_SIGNATURE:
+                    blockSignature(request, response);
+                    break;
+
+                case FileProtocol.CMD_MODIFY_DELTA:
+                    log("[MODIFICAR] [" + clientIP + "] Modificando por bloques: " + request.getFileName()
+                        + " (delta de " + (request.getData() != null ? request.getData().length : 0) + " bytes)");
+                    modifyDelta(request, response);
+                    if (FileProtocol.RESP_OK.equals(response.getResponse())) {
+                        log("[OK] [" + clientIP + "] Archivo modificado: " + request.getFileName()
+                            + " (" + response.getLength() + " bytes)");
+                    } else {
+                        log("[ERROR] [" + clientIP + "] " + response.getContent());
+                    }
+                    break;
+
+                // ========================================================
+                // COMANDO: ELIMINAR ARCHIVO
+                // ========================================================
+                case FileProtocol.CMD_DELETE_FILE:
+                    String delFileName = request.getFileName();
+                    log("[ELIMINAR] [" + clientIP + "] Eliminando archivo: " + delFileName);
+
+                    File delFile = new File(workingDirectory, delFileName);
+
+                    // Verifica que existe e intenta eliminar
+                    // delete() retorna true si la eliminacion fue exitosa
+                    if (delFile.exists() && writer.delete(delFile)) {
+                        cache.invalidate(delFile);
+                        notifier.changed(delFileName, ChangeNotifier.DELETED);
+                        index.removed(delFileName);
+                        response.setResponse(FileProtocol.RESP_OK);
+                        response.setContent("Archivo eliminado exitosamente");
+                        log("[OK] [" + clientIP + "] Archivo eliminado: " + delFileName);
+                    } else {
+                        response.setResponse(FileProtocol.RESP_ERROR);
+                        response.setContent("No se pudo eliminar el archivo");
+                        log("[ERROR] [" + clientIP + "] No se pudo eliminar: " + delFileName);
+                    }
+                    break;
+
+                // ========================================================
+                // COMANDO: LOTE DE OPERACIONES
+                // ========================================================
+                case FileProtocol.CMD_BATCH:
+                    int count = request.getItems() != null ? request.getItems().length : 0;
+                    log("[LOTE] [" + clientIP + "] " + count + " operaciones"
+                        + ((request.getOffset() & FileProtocol.BATCH_PARALLEL) != 0 ? " en paralelo" : "")
+                        + ((request.getOffset() & FileProtocol.BATCH_STOP_ON_ERROR) != 0 ? ", se detiene al primer error" : ""));
+                    executeBatch(request, response, clientIP);
+                    log((FileProtocol.RESP_OK.equals(response.getResponse()) ? "[OK]" : "[AVISO]")
+                        + " [" + clientIP + "] Lote: " + response.getContent());
+                    break;
+
+                // ========================================================
+                // COMANDO: DESCONECTAR
+                // ========================================================
+                case FileProtocol.CMD_DISCONNECT:
+                    log("[DESCONEXION] [" + clientIP + "] Cliente solicito desconexion");
+                    response.setResponse(FileProtocol.RESP_OK);
+                    response.setContent("Desconectado exitosamente");
+                    // El motor de red cierra la conexion al ver este comando
+                    break;
+
+                // ========================================================
+                // COMANDO DESCONOCIDO
+                // ========================================================
+                default:
+                    response.setResponse(FileProtocol.RESP_ERROR);
+                    response.setContent("Comando desconocido: " + command);
+                    log("[AVISO] [" + clientIP + "] Comando desconocido: " + command);
+            }
+
+        } catch (IOException e) {
+            // Error al leer/escribir archivos
+            response.setResponse(FileProtocol.RESP_ERROR);
+            response.setContent("Error: " + e.getMessage());
+            log("[ERROR] [" + clientIP + "] Error procesando solicitud: " + e.getMessage());
+        } finally {
+            if (hold != null) {
+                hold.close();
+            }
+        }
+
+        // Retorna la respuesta para enviarla al cliente
+        return response;
+    }
+}
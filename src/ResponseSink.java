@@ -0,0 +1,62 @@
+// Importa la excepcion de entrada/salida
+import java.io.IOException;
+
+// Importa FileChannel para las descargas sin copia
+import java.nio.channels.FileChannel;
+
+/**
+ * Interfaz ResponseSink - Destino de las respuestas de una peticion
+ *
+ * La mayoria de los comandos generan una sola respuesta, pero algunos
+ * (como READSTREAM) envian una secuencia de mensajes. Cada motor de red
+ * implementa esta interfaz sobre su propia conexion.
+ *
+ * Contrato para quien la implementa:
+ * - send() debe codificar el mensaje antes de retornar, porque quien
+ *   llama puede reutilizar el buffer de datos en el siguiente trozo.
+ * - send() debe bloquear si el cliente no lee lo bastante rapido
+ *   (contrapresion), en lugar de acumular mensajes sin limite.
+ */
+public interface ResponseSink {
+
+    /**
+     * Envia un mensaje al cliente
+     *
+     * @param message El mensaje a enviar
+     * @throws IOException Si la conexion se cerro o fallo la escritura
+     */
+    void send(FileProtocol message) throws IOException;
+
+    /**
+     * Envia un mensaje sin esperar a un cliente lento
+     *
+     * Lo usan los eventos de SUBSCRIBE: un suscriptor que no lee no debe
+     * ocupar un hilo de envio. Si el sink no puede evitar bloquear (ej:
+     * un socket de java.io), envia con send().
+     *
+     * @param message El mensaje a enviar
+     * @return false si no se envio porque el cliente tiene demasiados
+     *         bytes sin leer
+     * @throws IOException Si la conexion se cerro o fallo la escritura
+     */
+    default boolean offer(FileProtocol message) throws IOException {
+        send(message);
+        return true;
+    }
+
+    /**
+     * Envia una cabecera seguida de bytes crudos de un archivo
+     *
+     * Los bytes van del archivo al socket con FileChannel.transferTo,
+     * sin pasar por el heap (sendfile en Linux) cuando el destino es
+     * un canal de socket. El sink toma posesion del canal del archivo
+     * y lo cierra al terminar, incluso si ocurre un error.
+     *
+     * @param header Mensaje que anuncia la cantidad de bytes (length)
+     * @param file Canal del archivo abierto para lectura
+     * @param position Posicion inicial dentro del archivo
+     * @param count Cantidad de bytes a enviar
+     * @throws IOException Si la conexion se cerro o fallo la escritura
+     */
+    void sendFile(FileProtocol header, FileChannel file, long position, long count) throws IOException;
+}
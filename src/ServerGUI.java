@@ -21,12 +21,18 @@ import java.io.*;
 // Incluye: Socket, ServerSocket, InetAddress
 import java.net.*;
 
+// Importa canales para las descargas con FileChannel.transferTo
+import java.nio.channels.*;
+
 // Importa clase para formatear fechas y horas
 import java.text.SimpleDateFormat;
 
 // Importa clase Date para obtener la hora actual
 import java.util.Date;
 
+// Importa utilidades de concurrencia (ejecutores para hilos virtuales y disco)
+import java.util.concurrent.*;
+
 /**
  * Clase ServerGUI - Servidor con interfaz grafica para gestion remota de archivos
  * 
@@ -68,6 +74,9 @@ public class ServerGUI extends JFrame {
     // Panel que contiene la barra de estado (cambia de color segun estado)
     private JPanel statusPanel;
     
+    // Lista desplegable para elegir el motor de red del servidor
+    private JComboBox<String> cmbEngine;
+    
     // ============================================================================
     // ATRIBUTOS DE RED Y CONTROL
     // ============================================================================
@@ -87,6 +96,35 @@ public class ServerGUI extends JFrame {
     // Ruta del directorio donde se almacenan los archivos
     private String workingDirectory;
     
+    // Procesador de comandos compartido por todos los clientes
+    private RequestProcessor processor;
+    
+    // Motor NIO (solo se usa si se elige ese modo; null en otro caso)
+    private NioServerEngine nioEngine;
+    
+    // Ejecutor de hilos virtuales para los ClientHandler (null en otros modos)
+    private ExecutorService virtualExecutor;
+    
+    // Pool acotado para el trabajo de disco en modo de hilos virtuales
+    // Limita cuantas operaciones de archivo bloquean a la vez
+    private ExecutorService diskExecutor;
+    
+    // Estadisticas de conexiones, latencia y memoria del motor activo
+    private ServerStats stats = new ServerStats();
+    
+    // ============================================================================
+    // MOTORES DE RED DISPONIBLES
+    // ============================================================================
+    
+    // Motor clasico: un hilo bloqueado en readObject() por cada cliente
+    private static final String ENGINE_THREADS = "Hilo por cliente";
+    
+    // Motor de hilos virtuales: un hilo virtual por cliente (Java 21+)
+    private static final String ENGINE_VIRTUAL = "Hilos virtuales";
+    
+    // Motor NIO: pocos reactores con Selector atienden todas las conexiones
+    private static final String ENGINE_NIO = "NIO (reactores)";
+    
     // ============================================================================
     // CONSTRUCTOR
     // ============================================================================
@@ -235,7 +273,26 @@ public class ServerGUI extends JFrame {
         configPanel.add(btnSelectDir, gbc);
         
         // --------------------------------------------------------------------
-        // FILA 2: Botones de Iniciar y Detener servidor
+        // FILA 2: Motor de red del servidor
+        // --------------------------------------------------------------------
+        
+        // Crea etiqueta "Motor:"
+        JLabel lblEngine = new JLabel("Motor:");
+        lblEngine.setForeground(Color.WHITE);
+        lblEngine.setFont(new Font("Segoe UI", Font.BOLD, 12));
+        gbc.gridx = 0; 
+        gbc.gridy = 2;
+        configPanel.add(lblEngine, gbc);
+        
+        // Lista con los motores disponibles (el clasico es el por defecto)
+        cmbEngine = new JComboBox<>(new String[] { ENGINE_THREADS, ENGINE_VIRTUAL, ENGINE_NIO });
+        cmbEngine.setFont(new Font("Segoe UI", Font.PLAIN, 12));
+        gbc.gridx = 1; 
+        gbc.gridy = 2;
+        configPanel.add(cmbEngine, gbc);
+        
+        // --------------------------------------------------------------------
+        // FILA 3: Botones de Iniciar y Detener servidor
         // --------------------------------------------------------------------
         
         // Panel para contener los botones centrados
@@ -271,7 +328,7 @@ public class ServerGUI extends JFrame {
         
         // Posiciona el panel de botones ocupando 3 columnas
         gbc.gridx = 0; 
-        gbc.gridy = 2;
+        gbc.gridy = 3;
         gbc.gridwidth = 3;  // Ocupa 3 columnas
         configPanel.add(buttonPanel, gbc);
         
@@ -318,9 +375,17 @@ public class ServerGUI extends JFrame {
         // Al hacer clic, limpia el contenido del log
         btnClearLog.addActionListener(e -> logArea.setText(""));
         
-        // Panel para el boton de limpiar (alineado a la derecha)
+        // Boton para mostrar conexiones, latencias, memoria y cache en el log
+        JButton btnStats = new JButton("Estadisticas");
+        btnStats.setFont(new Font("Segoe UI", Font.PLAIN, 11));
+        btnStats.setBackground(new Color(70, 70, 75));
+        btnStats.setForeground(Color.WHITE);
+        btnStats.addActionListener(e -> logStats());
+        
+        // Panel para los botones del log (alineados a la derecha)
         JPanel logButtonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
         logButtonPanel.setBackground(new Color(30, 30, 32));
+        logButtonPanel.add(btnStats);
         logButtonPanel.add(btnClearLog);
         logPanel.add(logButtonPanel, BorderLayout.SOUTH);
         
@@ -399,12 +464,39 @@ public class ServerGUI extends JFrame {
                 dir.mkdirs();  // Crea el directorio y sus padres si es necesario
             }
             
-            // ================================================================
-            // CREAR EL SERVERSOCKET - Este es el corazon del servidor
-            // ================================================================
-            // ServerSocket escucha en el puerto especificado
-            // Cuando un cliente intenta conectarse, accept() creara un Socket
-            serverSocket = new ServerSocket(port);
+            // Crea el procesador de comandos sobre el directorio elegido
+            // Presupuesto de la cache de READ: -Dservidor.cacheBytes=N (0 la desactiva)
+            long cacheBytes = Long.getLong("servidor.cacheBytes", ContentCache.DEFAULT_MAX_BYTES);
+            processor = new RequestProcessor(workingDirectory, this::log, cacheBytes);
+            
+            // Motor elegido en la lista desplegable
+            String engine = (String) cmbEngine.getSelectedItem();
+            
+            // Estadisticas nuevas para poder comparar cada ejecucion
+            stats = new ServerStats();
+            
+            if (ENGINE_NIO.equals(engine)) {
+                // ============================================================
+                // MOTOR NIO - Reactores con Selector, sin hilo por cliente
+                // ============================================================
+                // La cantidad de reactores se puede ajustar con
+                // -Dservidor.reactores=N (por defecto, uno por nucleo)
+                int reactors = Integer.getInteger("servidor.reactores",
+                    Runtime.getRuntime().availableProcessors());
+                nioEngine = new NioServerEngine(port, processor, this::log, reactors, stats);
+                nioEngine.start();
+            } else {
+                // ================================================================
+                // CREAR EL SERVERSOCKET - Este es el corazon del servidor
+                // ================================================================
+                // ServerSocket escucha en el puerto especificado
+                // Cuando un cliente intenta conectarse, accept() creara un Socket
+                serverSocket = new ServerSocket(port);
+                
+                if (ENGINE_VIRTUAL.equals(engine)) {
+                    startVirtualThreadMode();
+                }
+            }
             
             // Marca el servidor como activo
             isRunning = true;
@@ -418,6 +510,7 @@ public class ServerGUI extends JFrame {
             txtPort.setEnabled(false);          // Deshabilita campo puerto
             txtDirectory.setEnabled(false);     // Deshabilita campo directorio
             btnSelectDir.setEnabled(false);     // Deshabilita boton seleccionar
+            cmbEngine.setEnabled(false);        // Deshabilita seleccion de motor
             
             // Cambia el color de la barra de estado a verde
             statusPanel.setBackground(new Color(40, 167, 69));
@@ -426,12 +519,18 @@ public class ServerGUI extends JFrame {
             // Registra mensajes en el log
             log("[OK] Servidor iniciado en puerto " + port);
             log("[INFO] Directorio de trabajo: " + workingDirectory);
+            log("[INFO] Motor de red: " + engine);
             
             // Obtiene y muestra la IP local de la maquina
             // Esto es util para que el cliente sepa a que IP conectarse
             log("[INFO] IP Local: " + InetAddress.getLocalHost().getHostAddress());
             log("[ESPERA] Esperando conexiones de clientes...");
             
+            // El motor NIO ya tiene sus propios hilos de aceptacion
+            if (nioEngine != null) {
+                return;
+            }
+            
             // ================================================================
             // CREAR HILO DEL SERVIDOR - Para no bloquear la interfaz
             // ================================================================
@@ -461,7 +560,12 @@ public class ServerGUI extends JFrame {
                         // ============================================
                         // Cada cliente se maneja en su propio hilo
                         // Esto permite atender multiples clientes simultaneamente
-                        new Thread(new ClientHandler(clientSocket)).start();
+                        if (virtualExecutor != null) {
+                            // Modo hilos virtuales: el hilo casi no usa memoria
+                            virtualExecutor.execute(new ClientHandler(clientSocket));
+                        } else {
+                            new Thread(new ClientHandler(clientSocket)).start();
+                        }
                         
                     } catch (IOException e) {
                         // Si ocurre un error y el servidor sigue activo, lo registra
@@ -509,12 +613,37 @@ public class ServerGUI extends JFrame {
             log("[AVISO] Error al cerrar servidor: " + e.getMessage());
         }
         
+        // Detiene el motor NIO si era el que estaba activo
+        if (nioEngine != null) {
+            nioEngine.stop();
+            nioEngine = null;
+        }
+        
+        // Libera los ejecutores del modo de hilos virtuales
+        if (virtualExecutor != null) {
+            virtualExecutor.shutdown();
+            virtualExecutor = null;
+        }
+        if (diskExecutor != null) {
+            diskExecutor.shutdown();
+            diskExecutor = null;
+        }
+        
+        // Cierra las subidas en curso (sus archivos parciales quedan en disco)
+        if (processor != null) {
+            processor.close();
+        }
+        
+        // Deja en el log el resumen de la ejecucion para compararla
+        logStats();
+        
         // Restaura el estado de los botones
         btnStartServer.setEnabled(true);
         btnStopServer.setEnabled(false);
         txtPort.setEnabled(true);
         txtDirectory.setEnabled(true);
         btnSelectDir.setEnabled(true);
+        cmbEngine.setEnabled(true);
         
         // Cambia el color de la barra de estado a rojo
         statusPanel.setBackground(new Color(220, 53, 69));
@@ -523,6 +652,56 @@ public class ServerGUI extends JFrame {
         log("[STOP] Servidor detenido");
     }
     
+    // ============================================================================
+    // MODO DE HILOS VIRTUALES
+    // ============================================================================
+    
+    /**
+     * Prepara los ejecutores del modo de hilos virtuales
+     * 
+     * Cada ClientHandler corre en un hilo virtual (barato de crear y de
+     * bloquear en la lectura del socket). El trabajo de disco se manda a
+     * un pool acotado: un hilo virtual que bloquea en archivos ocupa su
+     * hilo portador, asi se limita cuantos lo hacen a la vez.
+     * 
+     * Si la JVM no tiene hilos virtuales (antes de Java 21) se usa el
+     * modo clasico y se avisa en el log.
+     */
+    private void startVirtualThreadMode() {
+        virtualExecutor = newVirtualThreadExecutor();
+        if (virtualExecutor == null) {
+            log("[AVISO] Esta JVM no soporta hilos virtuales, se usa un hilo por cliente");
+            return;
+        }
+        
+        // Tamanio del pool de disco: -Dservidor.hilosDisco=N (por defecto 2 por nucleo)
+        int diskThreads = Integer.getInteger("servidor.hilosDisco",
+            Runtime.getRuntime().availableProcessors() * 2);
+        
+        // Cola acotada: si se llena, el propio hilo virtual ejecuta la tarea
+        diskExecutor = new ThreadPoolExecutor(diskThreads, diskThreads,
+            0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        
+        log("[INFO] Hilos virtuales activos, pool de disco de " + diskThreads + " hilos");
+    }
+    
+    /**
+     * Crea Executors.newVirtualThreadPerTaskExecutor() por reflexion
+     * 
+     * Se usa reflexion para que el proyecto siga compilando con JDK 8.
+     * 
+     * @return El ejecutor, o null si la JVM no soporta hilos virtuales
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+    
     // ============================================================================
     // METODO PARA REGISTRAR MENSAJES EN EL LOG
     // ============================================================================
@@ -547,7 +726,22 @@ public class ServerGUI extends JFrame {
             logArea.setCaretPosition(logArea.getDocument().getLength());
         });
     }
-    
+
+    /**
+     * Registra en el log las estadisticas del motor, de la cache de READ,
+     * del listado y de las escrituras, bloqueos y eventos de cambios
+     */
+    private void logStats() {
+        log(stats.report());
+        if (processor != null) {
+            log(processor.getCache().report());
+            log(processor.getViews().report());
+            log(processor.getWriter().report());
+            log(processor.getLocks().report());
+            log(processor.getNotifier().report());
+        }
+    }
+
     // ============================================================================
     // CLASE INTERNA: ClientHandler - Maneja la comunicacion con un cliente
     // ============================================================================
@@ -555,18 +749,39 @@ public class ServerGUI extends JFrame {
     /**
      * Clase que maneja la comunicacion con un cliente especifico
      * Implementa Runnable para poder ejecutarse en un hilo separado
+     * 
+     * Atiende dos tipos de cliente en el mismo puerto:
+     * - Clientes antiguos que envian un flujo continuo de ObjectOutputStream
+     * - Clientes que usan el protocolo de tramas de FrameCodec
+     * Se distinguen mirando los primeros 4 bytes que envia el cliente
+     * 
+     * Tambien es el ResponseSink de sus peticiones: las respuestas se
+     * escriben directo en el socket del cliente
      */
-    private class ClientHandler implements Runnable {
+    private class ClientHandler implements Runnable, ResponseSink {
         
         // Socket para comunicarse con el cliente
         private Socket socket;
         
-        // Stream para recibir objetos del cliente
+        // Stream para recibir objetos del cliente (clientes antiguos)
         private ObjectInputStream in;
         
-        // Stream para enviar objetos al cliente
+        // Stream para enviar objetos al cliente (clientes antiguos)
         private ObjectOutputStream out;
         
+        // Streams para clientes que usan el protocolo de tramas
+        private DataInputStream frameIn;
+        private DataOutputStream frameOut;
+        
+        // true si el cliente envio el saludo de FrameCodec
+        private boolean framed = false;
+        
+        // Version del protocolo de tramas acordada con el cliente
+        private byte version;
+        
+        // Compresion acordada en el saludo (null si no hay)
+        private Compression compression;
+        
         // IP del cliente (para mostrar en el log)
         private String clientIP;
         
@@ -587,17 +802,12 @@ public class ServerGUI extends JFrame {
          */
         @Override
         public void run() {
+            // Registra la conexion para las estadisticas
+            stats.connectionOpened();
+            
             try {
-                // ============================================================
-                // CREAR STREAMS DE COMUNICACION
-                // ============================================================
-                // ObjectOutputStream permite enviar objetos Java serializados
-                // ObjectInputStream permite recibir objetos Java serializados
-                // IMPORTANTE: El output debe crearse ANTES que el input
-                // debido a como funcionan los headers de serializacion
-                
-                out = new ObjectOutputStream(socket.getOutputStream());
-                in = new ObjectInputStream(socket.getInputStream());
+                // Detecta el protocolo del cliente y crea los streams
+                openStreams();
                 
                 // Bucle principal: procesa peticiones mientras el socket este abierto
                 while (!socket.isClosed()) {
@@ -605,18 +815,19 @@ public class ServerGUI extends JFrame {
                         // ====================================================
                         // RECIBIR PETICION DEL CLIENTE
                         // ====================================================
-                        // readObject() bloquea hasta recibir un objeto
-                        // El cast (FileProtocol) convierte el objeto generico
-                        FileProtocol request = (FileProtocol) in.readObject();
-                        
-                        // Procesa la peticion y obtiene la respuesta
-                        FileProtocol response = processRequest(request);
+                        FileProtocol request = readRequest();
+                        long receivedAt = System.nanoTime();
                         
                         // ====================================================
-                        // ENVIAR RESPUESTA AL CLIENTE
+                        // PROCESAR Y ENVIAR RESPUESTA(S) AL CLIENTE
                         // ====================================================
-                        out.writeObject(response);  // Envia el objeto
-                        out.flush();                // Fuerza el envio inmediato
+                        execute(request);
+                        stats.recordLatency(receivedAt);
+                        
+                        // Tras DISCONNECT se sale del bucle y se cierra el socket
+                        if (FileProtocol.CMD_DISCONNECT.equals(request.getCommand())) {
+                            break;
+                        }
                         
                     } catch (EOFException e) {
                         // EOFException ocurre cuando el cliente cierra la conexion
@@ -637,6 +848,12 @@ public class ServerGUI extends JFrame {
             } finally {
                 // El bloque finally SIEMPRE se ejecuta, haya o no errores
                 // Aqui cerramos el socket para liberar recursos
+                stats.connectionClosed();
+                if (compression != null) {
+                    stats.recordCompression(compression.getRawBytes(), compression.getWireBytes());
+                    log("[COMPRESION] [" + clientIP + "] " + compression.report());
+                    compression.close();
+                }
                 try {
                     if (socket != null) {
                         socket.close();
@@ -648,183 +865,142 @@ public class ServerGUI extends JFrame {
         }
         
         /**
-         * Procesa una peticion del cliente y genera la respuesta
-         * 
-         * @param request La peticion recibida del cliente
-         * @return La respuesta a enviar al cliente
+         * Lee los primeros bytes del cliente para elegir el protocolo
+         * y crea los streams correspondientes
          */
-        private FileProtocol processRequest(FileProtocol request) {
-            // Crea objeto de respuesta vacio
-            FileProtocol response = new FileProtocol();
-            
-            // Obtiene el comando de la peticion
-            String command = request.getCommand();
+        private void openStreams() throws IOException {
+            // BufferedInputStream permite "mirar" bytes y luego retroceder
+            BufferedInputStream bufferedIn = new BufferedInputStream(socket.getInputStream());
+            bufferedIn.mark(4);
+            int magic = new DataInputStream(bufferedIn).readInt();
+            bufferedIn.reset();
             
+            if (magic == FrameCodec.MAGIC) {
+                // Cliente con protocolo de tramas: responde al saludo
+                framed = true;
+                frameIn = new DataInputStream(bufferedIn);
+                frameOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                byte[] offer = FrameCodec.readHandshake(frameIn);
+                version = FrameCodec.negotiateVersion(offer[0]);
+                byte chosen = Compression.negotiate(offer[1]);
+                compression = Compression.forOption(chosen);
+                FrameCodec.writeHandshake(frameOut, version, chosen);
+            } else {
+                // ============================================================
+                // CLIENTE ANTIGUO - Streams de objetos serializados
+                // ============================================================
+                // IMPORTANTE: El output debe crearse ANTES que el input
+                // debido a como funcionan los headers de serializacion
+                out = new ObjectOutputStream(socket.getOutputStream());
+                in = new ObjectInputStream(bufferedIn);
+            }
+        }
+        
+        /**
+         * Ejecuta una peticion y envia su respuesta (o sus trozos)
+         * 
+         * En modo de hilos virtuales el trabajo se manda al pool de disco
+         * y el hilo virtual espera el resultado sin ocupar un portador.
+         * Los comandos de streaming se quedan en el hilo del cliente: pasan
+         * la mayor parte del tiempo esperando a la red, no al disco.
+         * 
+         * @param request La peticion recibida
+         */
+        private void execute(FileProtocol request) throws IOException {
+            ExecutorService disk = diskExecutor;
+            if (disk == null || RequestProcessor.isStreaming(request.getCommand())) {
+                // Cada respuesta se escribe directo en el socket; si el
+                // cliente lee despacio, la escritura bloquea (contrapresion)
+                processor.handleRequest(request, clientIP, this);
+                return;
+            }
             try {
-                // Switch para manejar cada tipo de comando
-                switch (command) {
-                    
-                    // ========================================================
-                    // COMANDO: LISTAR ARCHIVOS
-                    // ========================================================
-                    case FileProtocol.CMD_LIST_FILES:
-                        log("[LISTAR] [" + clientIP + "] Solicito listar archivos");
-                        
-                        // Crea objeto File apuntando al directorio de trabajo
-                        File dir = new File(workingDirectory);
-                        
-                        // Obtiene lista de nombres de archivos/carpetas
-                        String[] files = dir.list();
-                        
-                        // Configura la respuesta
-                        response.setCommand(FileProtocol.RESP_FILE_LIST);
-                        response.setFileList(files != null ? files : new String[0]);
-                        response.setResponse(FileProtocol.RESP_OK);
-                        break;
-                    
-                    // ========================================================
-                    // COMANDO: LEER ARCHIVO
-                    // ========================================================
-                    case FileProtocol.CMD_READ_FILE:
-                        // Obtiene el nombre del archivo de la peticion
-                        String fileName = request.getFileName();
-                        log("[LEER] [" + clientIP + "] Leyendo archivo: " + fileName);
-                        
-                        // Crea objeto File combinando directorio + nombre
-                        File file = new File(workingDirectory, fileName);
-                        
-                        // Verifica que existe y es un archivo (no directorio)
-                        if (file.exists() && file.isFile()) {
-                            // StringBuilder para construir el contenido
-                            StringBuilder content = new StringBuilder();
-                            
-                            // try-with-resources: cierra el reader automaticamente
-                            try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                                String line;
-                                // Lee linea por linea hasta el final (null)
-                                while ((line = reader.readLine()) != null) {
-                                    content.append(line).append("\n");
-                                }
-                            }
-                            
-                            // Configura respuesta exitosa con el contenido
-                            response.setCommand(FileProtocol.RESP_FILE_CONTENT);
-                            response.setContent(content.toString());
-                            response.setResponse(FileProtocol.RESP_OK);
-                            log("[OK] [" + clientIP + "] Archivo leido exitosamente: " + fileName);
-                            
-                        } else {
-                            // El archivo no existe o no es un archivo valido
-                            response.setResponse(FileProtocol.RESP_ERROR);
-                            response.setContent("Archivo no encontrado: " + fileName);
-                            log("[ERROR] [" + clientIP + "] Archivo no encontrado: " + fileName);
-                        }
-                        break;
-                    
-                    // ========================================================
-                    // COMANDOS: CREAR O ESCRIBIR ARCHIVO
-                    // ========================================================
-                    case FileProtocol.CMD_CREATE_FILE:
-                    case FileProtocol.CMD_WRITE_FILE:
-                        String newFileName = request.getFileName();
-                        String newContent = request.getContent();
-                        log("[ESCRIBIR] [" + clientIP + "] Creando/Escribiendo archivo: " + newFileName);
-                        
-                        // Crea el archivo
-                        File newFile = new File(workingDirectory, newFileName);
-                        
-                        // Escribe el contenido usando BufferedWriter
-                        try (BufferedWriter writer = new BufferedWriter(new FileWriter(newFile))) {
-                            // Si el contenido es null, escribe cadena vacia
-                            writer.write(newContent != null ? newContent : "");
-                        }
-                        
-                        response.setResponse(FileProtocol.RESP_OK);
-                        response.setContent("Archivo creado/escrito exitosamente");
-                        log("[OK] [" + clientIP + "] Archivo creado/escrito: " + newFileName);
-                        break;
-                    
-                    // ========================================================
-                    // COMANDO: MODIFICAR ARCHIVO EXISTENTE
-                    // ========================================================
-                    case FileProtocol.CMD_MODIFY_FILE:
-                        String modFileName = request.getFileName();
-                        String modContent = request.getContent();
-                        log("[MODIFICAR] [" + clientIP + "] Modificando archivo: " + modFileName);
-                        
-                        File modFile = new File(workingDirectory, modFileName);
-                        
-                        // Solo modifica si el archivo existe
-                        if (modFile.exists()) {
-                            try (BufferedWriter writer = new BufferedWriter(new FileWriter(modFile))) {
-                                writer.write(modContent != null ? modContent : "");
-                            }
-                            response.setResponse(FileProtocol.RESP_OK);
-                            response.setContent("Archivo modificado exitosamente");
-                            log("[OK] [" + clientIP + "] Archivo modificado: " + modFileName);
-                        } else {
-                            response.setResponse(FileProtocol.RESP_ERROR);
-                            response.setContent("Archivo no encontrado");
-                            log("[ERROR] [" + clientIP + "] No se pudo modificar, archivo no existe: " + modFileName);
-                        }
-                        break;
-                    
-                    // ========================================================
-                    // COMANDO: ELIMINAR ARCHIVO
-                    // ========================================================
-                    case FileProtocol.CMD_DELETE_FILE:
-                        String delFileName = request.getFileName();
-                        log("[ELIMINAR] [" + clientIP + "] Eliminando archivo: " + delFileName);
-                        
-                        File delFile = new File(workingDirectory, delFileName);
-                        
-                        // Verifica que existe e intenta eliminar
-                        // delete() retorna true si la eliminacion fue exitosa
-                        if (delFile.exists() && delFile.delete()) {
-                            response.setResponse(FileProtocol.RESP_OK);
-                            response.setContent("Archivo eliminado exitosamente");
-                            log("[OK] [" + clientIP + "] Archivo eliminado: " + delFileName);
-                        } else {
-                            response.setResponse(FileProtocol.RESP_ERROR);
-                            response.setContent("No se pudo eliminar el archivo");
-                            log("[ERROR] [" + clientIP + "] No se pudo eliminar: " + delFileName);
-                        }
-                        break;
-                    
-                    // ========================================================
-                    // COMANDO: DESCONECTAR
-                    // ========================================================
-                    case FileProtocol.CMD_DISCONNECT:
-                        log("[DESCONEXION] [" + clientIP + "] Cliente solicito desconexion");
-                        response.setResponse(FileProtocol.RESP_OK);
-                        response.setContent("Desconectado exitosamente");
-                        
-                        // Cierra el socket del cliente
-                        try {
-                            socket.close();
-                        } catch (IOException e) {
-                            // Ignorar errores al cerrar
-                        }
-                        break;
-                    
-                    // ========================================================
-                    // COMANDO DESCONOCIDO
-                    // ========================================================
-                    default:
-                        response.setResponse(FileProtocol.RESP_ERROR);
-                        response.setContent("Comando desconocido: " + command);
-                        log("[AVISO] [" + clientIP + "] Comando desconocido: " + command);
+                writeResponse(disk.submit(() -> processor.processRequest(request, clientIP)).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Peticion interrumpida");
+            } catch (ExecutionException | RejectedExecutionException e) {
+                throw new IOException("Error ejecutando peticion: " + e.getMessage());
+            }
+        }
+        
+        /**
+         * Recibe la siguiente peticion segun el protocolo del cliente
+         * 
+         * @return La peticion recibida
+         */
+        private FileProtocol readRequest() throws IOException, ClassNotFoundException {
+            if (framed) {
+                return FrameCodec.readFrame(frameIn, version, compression);
+            }
+            // readObject() bloquea hasta recibir un objeto
+            // El cast (FileProtocol) convierte el objeto generico
+            return (FileProtocol) in.readObject();
+        }
+        
+        /**
+         * Envia un mensaje al cliente (implementa ResponseSink)
+         * 
+         * @param message El mensaje a enviar
+         */
+        @Override
+        public void send(FileProtocol message) throws IOException {
+            writeResponse(message);
+        }
+        
+        /**
+         * Envia una cabecera y los bytes crudos de un archivo
+         * 
+         * Este motor usa sockets clasicos (sin SocketChannel), por lo que
+         * transferTo copia a traves de un buffer pequenio en lugar de usar
+         * sendfile; el contenido tampoco pasa por String ni por
+         * ObjectOutputStream. La descarga con sendfile real la hace el motor NIO.
+         * 
+         * @param header Cabecera con la cantidad de bytes
+         * @param file Canal del archivo (se cierra al terminar)
+         * @param position Posicion inicial
+         * @param count Cantidad de bytes
+         */
+        @Override
+        public synchronized void sendFile(FileProtocol header, FileChannel file, long position, long count)
+                throws IOException {
+            try {
+                if (!framed) {
+                    // El flujo de objetos no admite bytes crudos intercalados
+                    throw new IOException("Descarga no soportada por clientes antiguos");
                 }
+                writeResponse(header);  // Escribe y vacia el buffer
                 
-            } catch (IOException e) {
-                // Error al leer/escribir archivos
-                response.setResponse(FileProtocol.RESP_ERROR);
-                response.setContent("Error: " + e.getMessage());
-                log("[ERROR] [" + clientIP + "] Error procesando solicitud: " + e.getMessage());
+                WritableByteChannel target = Channels.newChannel(socket.getOutputStream());
+                long end = position + count;
+                while (position < end) {
+                    long sent = file.transferTo(position, end - position, target);
+                    if (sent <= 0) {
+                        // El archivo se acorto: ya no se puede cumplir la cabecera
+                        throw new IOException("El archivo cambio durante la descarga");
+                    }
+                    position += sent;
+                }
+            } finally {
+                file.close();
+            }
+        }
+        
+        /**
+         * Envia una respuesta segun el protocolo del cliente
+         * 
+         * Es synchronized: los eventos de SUBSCRIBE llegan desde otro hilo
+         * y no deben mezclarse con una respuesta a medio escribir.
+         * 
+         * @param response La respuesta a enviar
+         */
+        private synchronized void writeResponse(FileProtocol response) throws IOException {
+            if (framed) {
+                FrameCodec.writeFrame(frameOut, response, version, compression);
+            } else {
+                out.writeObject(response);  // Envia el objeto
+                out.flush();                // Fuerza el envio inmediato
             }
-            
-            // Retorna la respuesta para enviarla al cliente
-            return response;
         }
     }
     
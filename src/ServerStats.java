@@ -0,0 +1,185 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para las estadisticas
+// ============================================================================
+
+// Importa la interfaz de administracion para contar hilos de plataforma
+import java.lang.management.ManagementFactory;
+
+// Importa contadores atomicos (seguros entre hilos sin bloqueos)
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Clase ServerStats - Mide conexiones, latencia y memoria del servidor
+ *
+ * Sirve para comparar los motores de red (hilo por cliente, hilos
+ * virtuales y NIO) bajo la misma carga. Registra:
+ * - Conexiones abiertas en este momento
+ * - Latencia de cada peticion (desde que se recibe hasta que se responde)
+ *   en un histograma log-lineal, del que se obtienen p50 y p99
+ * - Heap usado por conexion e hilos de plataforma vivos
+ *
+ * Todos los metodos son seguros para llamarse desde cualquier hilo.
+ */
+public class ServerStats {
+
+    // Sub-divisiones por cada potencia de 2 (precision de 12.5%)
+    private static final int SUB_BUCKETS = 8;
+
+    // Cubetas del histograma de latencias (en microsegundos)
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    // Cantidad total de peticiones registradas
+    private final AtomicLong requestCount = new AtomicLong();
+
+    // Latencia maxima observada (microsegundos)
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    // Conexiones abiertas en este momento
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    // Maximo de conexiones abiertas a la vez
+    private final AtomicInteger peakConnections = new AtomicInteger();
+
+    // Bytes de cuerpos antes de comprimir y tal como viajaron (conexiones cerradas)
+    private final AtomicLong compressionRaw = new AtomicLong();
+    private final AtomicLong compressionWire = new AtomicLong();
+
+    // ============================================================================
+    // CONEXIONES
+    // ============================================================================
+
+    /**
+     * Registra la apertura de una conexion
+     */
+    public void connectionOpened() {
+        int now = openConnections.incrementAndGet();
+        peakConnections.accumulateAndGet(now, Math::max);
+    }
+
+    /**
+     * Registra el cierre de una conexion
+     */
+    public void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    /**
+     * Obtiene la cantidad de conexiones abiertas
+     * @return Numero de clientes conectados
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Suma los bytes comprimidos de una conexion que se cerro
+     *
+     * @param raw Bytes de cuerpos sin comprimir
+     * @param wire Bytes de cuerpos tal como viajaron
+     */
+    public void recordCompression(long raw, long wire) {
+        compressionRaw.addAndGet(raw);
+        compressionWire.addAndGet(wire);
+    }
+
+    // ============================================================================
+    // LATENCIA
+    // ============================================================================
+
+    /**
+     * Registra la latencia de una peticion
+     *
+     * @param startNanos Valor de System.nanoTime() al recibir la peticion
+     */
+    public void recordLatency(long startNanos) {
+        long micros = Math.max(0, (System.nanoTime() - startNanos) / 1000);
+        buckets.incrementAndGet(indexFor(micros));
+        requestCount.incrementAndGet();
+        maxLatency.accumulateAndGet(micros, Math::max);
+    }
+
+    /**
+     * Calcula un percentil de latencia a partir del histograma
+     *
+     * @param percentile Valor entre 0 y 1 (ej: 0.99 para p99)
+     * @return Latencia en microsegundos (cota superior de la cubeta)
+     */
+    public long latencyPercentile(double percentile) {
+        long total = requestCount.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return Math.min(lowerBound(i + 1) - 1, maxLatency.get());
+            }
+        }
+        return maxLatency.get();
+    }
+
+    /**
+     * Calcula la cubeta de un valor: exacta hasta 8 y luego
+     * 8 cubetas por cada potencia de 2
+     *
+     * @param micros Latencia en microsegundos
+     * @return Indice de la cubeta
+     */
+    private static int indexFor(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) ((micros >>> (exp - 3)) & (SUB_BUCKETS - 1));
+        return (exp - 2) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Valor mas pequenio que cae en una cubeta
+     *
+     * @param index Indice de la cubeta
+     * @return Limite inferior en microsegundos
+     */
+    private static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exp = index / SUB_BUCKETS + 2;
+        int sub = index % SUB_BUCKETS;
+        return ((long) SUB_BUCKETS + sub) << (exp - 3);
+    }
+
+    // ============================================================================
+    // REPORTE
+    // ============================================================================
+
+    /**
+     * Genera un resumen legible para el log del servidor
+     *
+     * El heap por conexion no incluye la pila nativa de los hilos de
+     * plataforma, por eso tambien se informa cuantos hay vivos.
+     *
+     * @return Texto con conexiones, latencias y memoria
+     */
+    public String report() {
+        Runtime rt = Runtime.getRuntime();
+        long heapUsed = rt.totalMemory() - rt.freeMemory();
+        int connections = openConnections.get();
+        int platformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long raw = compressionRaw.get();
+
+        return "[STATS] Conexiones: " + connections + " (max " + peakConnections.get() + ")"
+            + " | Peticiones: " + requestCount.get()
+            + " | Latencia p50=" + latencyPercentile(0.50) + "us"
+            + " p99=" + latencyPercentile(0.99) + "us"
+            + " max=" + maxLatency.get() + "us"
+            + " | Heap: " + (heapUsed / (1024 * 1024)) + " MB"
+            + (connections > 0 ? " (" + (heapUsed / 1024 / connections) + " KB/conexion)" : "")
+            + " | Hilos de plataforma: " + platformThreads
+            + (raw > 0 ? " | Compresion: " + (compressionWire.get() * 100 / raw) + "% del original" : "");
+    }
+}
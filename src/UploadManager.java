@@ -0,0 +1,361 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para las subidas por sesiones
+// ============================================================================
+
+// Importa clases de entrada/salida (File, IOException)
+import java.io.*;
+
+// Importa ByteBuffer y FileChannel para las escrituras posicionales
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+// Importa StandardOpenOption para abrir el archivo parcial
+import java.nio.file.StandardOpenOption;
+
+// Importa MessageDigest para verificar el hash al confirmar
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Importa Map y el mapa concurrente de sesiones
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Clase UploadManager - Subidas de archivos en trozos que se pueden reanudar
+ *
+ * Una subida tiene tres pasos:
+ *
+ *   UPLOADBEGIN  (fileName, length = tamanio, content = SHA-256 opcional)
+ *                -> OK con offset = bytes que el servidor ya tiene
+ *   UPLOADCHUNK  (fileName, offset, data) -> OK con offset = bytes confirmados
+ *   UPLOADCOMMIT (fileName) -> OK cuando el archivo quedo en su lugar
+ *
+ * Los trozos se escriben con FileChannel.write(buffer, posicion) en un
+ * archivo parcial dentro de la carpeta oculta ".uploads". Las sesiones
+ * viven en el servidor, no en la conexion: si la conexion se corta, el
+ * cliente repite UPLOADBEGIN con el mismo tamanio y hash y continua desde
+ * el offset que recibe en la respuesta.
+ *
+ * Hay una sesion por nombre de archivo. Es segura para varios hilos.
+ */
+public class UploadManager {
+
+    // Carpeta (dentro del directorio de trabajo) con los archivos parciales
+    public static final String UPLOAD_DIR = ".uploads";
+
+    // Tiempo sin actividad tras el cual se descarta una sesion (1 hora)
+    private static final long SESSION_TIMEOUT_MS = 60 * 60 * 1000L;
+
+    // Directorio de trabajo donde quedan los archivos confirmados
+    private final File workingDirectory;
+
+    // Carpeta de archivos parciales
+    private final File uploadDirectory;
+
+    // Publica el archivo confirmado con la durabilidad del servidor
+    private final DurableWriter writer;
+
+    // Sesiones abiertas por nombre de archivo
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor del administrador de subidas
+     *
+     * @param workingDirectory Directorio de trabajo del servidor
+     * @param writer Escritor que renombra el parcial sobre el destino
+     */
+    public UploadManager(String workingDirectory, DurableWriter writer) {
+        this.workingDirectory = new File(workingDirectory);
+        this.uploadDirectory = new File(workingDirectory, UPLOAD_DIR);
+        this.writer = writer;
+    }
+
+    // ============================================================================
+    // PASOS DE LA SUBIDA
+    // ============================================================================
+
+    /**
+     * Abre una sesion o retoma la existente (UPLOADBEGIN)
+     *
+     * Si ya hay una sesion para el archivo con el mismo tamanio y hash,
+     * se retoma y se informa cuantos bytes tiene. Si no coinciden, la
+     * anterior se descarta y se empieza desde cero.
+     *
+     * @param request Peticion con fileName, length y hash en content
+     * @param response Respuesta a completar (offset = bytes confirmados)
+     */
+    public synchronized void begin(FileProtocol request, FileProtocol response) throws IOException {
+        String fileName = request.getFileName();
+        long size = request.getLength();
+        String hash = request.getContent();
+        if (fileName == null || size < 0) {
+            throw new IOException("Subida sin nombre o con tamanio invalido");
+        }
+        expireIdleSessions();
+
+        UploadSession session = sessions.get(fileName);
+        if (session != null) {
+            synchronized (session) {
+                if (session.matches(size, hash)) {
+                    session.touch();
+                    response.setResponse(FileProtocol.RESP_OK);
+                    response.setFileName(fileName);
+                    response.setOffset(session.received);
+                    return;
+                }
+                // Otro contenido para el mismo nombre: la sesion vieja se descarta
+                session.discard();
+                sessions.remove(fileName, session);
+            }
+        }
+
+        // Un archivo de una subcarpeta deja su parte en la misma subcarpeta de .uploads
+        File partFile = new File(uploadDirectory, fileName + ".part");
+        File partDirectory = partFile.getParentFile();
+        if (!partDirectory.isDirectory() && !partDirectory.mkdirs()) {
+            throw new IOException("No se pudo crear " + partDirectory);
+        }
+        session = new UploadSession(fileName, size, hash, partFile);
+        sessions.put(fileName, session);
+
+        response.setResponse(FileProtocol.RESP_OK);
+        response.setFileName(fileName);
+        response.setOffset(0);
+    }
+
+    /**
+     * Escribe un trozo en su posicion (UPLOADCHUNK)
+     *
+     * Se aceptan trozos que empiezan en o antes de lo ya confirmado
+     * (un reintento puede repetir bytes). Un trozo que deja un hueco se
+     * rechaza y la respuesta indica desde donde debe seguir el cliente.
+     *
+     * @param request Peticion con fileName, offset y data
+     * @param response Respuesta a completar (offset = bytes confirmados)
+     */
+    public void chunk(FileProtocol request, FileProtocol response) throws IOException {
+        UploadSession session = requireSession(request.getFileName());
+        byte[] data = request.getData() != null ? request.getData() : new byte[0];
+        long offset = request.getOffset();
+
+        synchronized (session) {
+            session.touch();
+            response.setFileName(session.fileName);
+            if (offset < 0 || offset > session.received || offset + data.length > session.size) {
+                response.setResponse(FileProtocol.RESP_ERROR);
+                response.setContent("Trozo fuera de rango en " + offset);
+                response.setOffset(session.received);
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += session.channel.write(buffer, position);
+            }
+            session.received = Math.max(session.received, position);
+            response.setResponse(FileProtocol.RESP_OK);
+            response.setOffset(session.received);
+        }
+    }
+
+    /**
+     * Verifica y mueve el archivo a su lugar definitivo (UPLOADCOMMIT)
+     *
+     * @param request Peticion con fileName
+     * @param response Respuesta a completar
+     * @return El archivo confirmado
+     */
+    public File commit(FileProtocol request, FileProtocol response) throws IOException {
+        UploadSession session = requireSession(request.getFileName());
+        synchronized (session) {
+            response.setFileName(session.fileName);
+            response.setOffset(session.received);
+            if (session.received != session.size) {
+                response.setResponse(FileProtocol.RESP_ERROR);
+                response.setContent("Subida incompleta: " + session.received + " de " + session.size + " bytes");
+                return null;
+            }
+            if (session.hash != null && !session.hash.equalsIgnoreCase(session.computeHash())) {
+                // Contenido corrupto: no tiene sentido reanudarlo
+                session.discard();
+                sessions.remove(session.fileName, session);
+                response.setResponse(FileProtocol.RESP_ERROR);
+                response.setContent("El hash no coincide, la subida se descarto");
+                response.setOffset(0);
+                return null;
+            }
+            // El fsync (si el modo lo pide) lo hace el escritor antes del rename.
+            // Con el canal cerrado la sesion ya no sirve: sale del mapa antes,
+            // y si la publicacion falla se descarta (la subida vuelve a empezar)
+            sessions.remove(session.fileName, session);
+            File target = new File(workingDirectory, session.fileName);
+            try {
+                session.channel.close();
+                writer.publish(session.partFile, target);
+            } catch (IOException | RuntimeException e) {
+                session.discard();
+                throw e;
+            }
+
+            response.setResponse(FileProtocol.RESP_OK);
+            response.setContent("Archivo subido exitosamente");
+            return target;
+        }
+    }
+
+    /**
+     * Obtiene la sesion de un archivo o falla si no hay ninguna
+     */
+    private UploadSession requireSession(String fileName) throws IOException {
+        UploadSession session = fileName != null ? sessions.get(fileName) : null;
+        if (session == null) {
+            throw new IOException("No hay una subida abierta para " + fileName);
+        }
+        return session;
+    }
+
+    /**
+     * Descarta las sesiones abandonadas (se llama al abrir una nueva)
+     */
+    private void expireIdleSessions() {
+        long now = System.currentTimeMillis();
+        Iterator<UploadSession> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            UploadSession session = it.next();
+            synchronized (session) {
+                if (now - session.lastActivity > SESSION_TIMEOUT_MS) {
+                    session.discard();
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra las sesiones abiertas (al detener el servidor)
+     *
+     * Los archivos parciales se conservan en disco, pero sin sesion no
+     * se pueden retomar: la proxima subida empieza desde cero.
+     */
+    public void close() {
+        for (UploadSession session : sessions.values()) {
+            synchronized (session) {
+                session.closeChannel();
+            }
+        }
+        sessions.clear();
+    }
+
+    // ============================================================================
+    // CLASE INTERNA: UploadSession - Estado de una subida en curso
+    // ============================================================================
+
+    /**
+     * Estado de una subida (protegido por el monitor de la propia sesion)
+     */
+    private static class UploadSession {
+
+        // Nombre final del archivo
+        final String fileName;
+
+        // Tamanio anunciado en UPLOADBEGIN
+        final long size;
+
+        // SHA-256 en hexadecimal (null si el cliente no lo envio)
+        final String hash;
+
+        // Archivo parcial donde se escriben los trozos
+        final File partFile;
+
+        // Canal para las escrituras posicionales
+        final FileChannel channel;
+
+        // Bytes contiguos recibidos desde el inicio
+        long received;
+
+        // Ultima vez que se uso la sesion
+        long lastActivity;
+
+        UploadSession(String fileName, long size, String hash, File partFile) throws IOException {
+            this.fileName = fileName;
+            this.size = size;
+            this.hash = hash;
+            this.partFile = partFile;
+            this.channel = FileChannel.open(partFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+            touch();
+        }
+
+        boolean matches(long size, String hash) {
+            return this.size == size && (this.hash == null ? hash == null : this.hash.equalsIgnoreCase(hash));
+        }
+
+        void touch() {
+            lastActivity = System.currentTimeMillis();
+        }
+
+        /**
+         * Calcula el SHA-256 del archivo parcial
+         */
+        String computeHash() throws IOException {
+            return sha256(channel);
+        }
+
+        void closeChannel() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Ignorar errores al cerrar
+            }
+        }
+
+        /**
+         * Cierra el canal y borra el archivo parcial
+         */
+        void discard() {
+            closeChannel();
+            partFile.delete();
+        }
+    }
+
+    /**
+     * Calcula el SHA-256 de todo el contenido de un canal
+     *
+     * @param channel Canal del archivo (se lee con posiciones, sin moverlo)
+     * @return El hash en hexadecimal
+     */
+    public static String sha256(FileChannel channel) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 no disponible", e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RequestProcessor.STREAM_CHUNK_SIZE);
+        long position = 0;
+        int n;
+        while ((n = channel.read(buffer, position)) > 0) {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+            position += n;
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Convierte bytes a texto hexadecimal en minusculas
+     *
+     * @param bytes Los bytes a convertir
+     * @return El texto hexadecimal
+     */
+    public static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,147 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la prueba del codec binario
+// ============================================================================
+
+// Importa las excepciones que debe lanzar el decodificador
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+// Importa Arrays para recortar mensajes
+import java.util.Arrays;
+
+/**
+ * Clase BinaryCodecTest - Prueba que BinaryCodec rechace mensajes
+ * truncados o con longitudes invalidas
+ *
+ * Los mensajes llegan de la red: uno mal formado debe terminar en
+ * StreamCorruptedException (que cierra solo esa conexion) y nunca en otra
+ * excepcion que tire abajo el hilo del motor NIO.
+ *
+ * Se ejecuta sin bibliotecas externas:
+ *   javac -d bin src/*.java test/*.java
+ *   java -cp bin BinaryCodecTest
+ */
+public class BinaryCodecTest {
+
+    // Varint de 10 bytes que decodifica a -1
+    private static final byte[] MINUS_ONE = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+        (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01};
+
+    // Cantidad de verificaciones fallidas
+    private static int failures;
+
+    public static void main(String[] args) throws IOException {
+        roundTrip();
+        truncated();
+        negativeLengths();
+
+        if (failures > 0) {
+            System.out.println(failures + " verificaciones fallidas");
+            System.exit(1);
+        }
+        System.out.println("BinaryCodecTest: todo OK");
+    }
+
+    /**
+     * Un mensaje con todos los campos vuelve igual
+     */
+    private static void roundTrip() throws IOException {
+        byte[] encoded = BinaryCodec.encode(sample());
+        FileProtocol decoded = BinaryCodec.decode(encoded, 0, encoded.length);
+        check("WRITE".equals(decoded.getCommand()), "comando");
+        check("docs/notas.txt".equals(decoded.getFileName()), "nombre");
+        check("hola".equals(decoded.getContent()), "contenido");
+        check(Arrays.equals(new String[] {"a", "b"}, decoded.getFileList()), "lista");
+        check(Arrays.equals(new byte[] {1, 2, 3}, decoded.getData()), "datos");
+        check(decoded.getOffset() == 7 && decoded.getLength() == 300, "offset y length");
+        check(decoded.getEntries().length == 1 && decoded.getEntries()[0].isDirectory(), "entradas");
+        check(decoded.getItems().length == 1 && "READ".equals(decoded.getItems()[0].getCommand()), "lote");
+        check(decoded.getRequestId() == 42 && decoded.getVersion() == 9, "id y version");
+    }
+
+    /**
+     * Cualquier recorte del mensaje se rechaza como corrupto
+     */
+    private static void truncated() {
+        byte[] encoded = BinaryCodec.encode(sample());
+        for (int n = 0; n < encoded.length; n++) {
+            expectCorrupted(Arrays.copyOf(encoded, n), "mensaje recortado a " + n + " bytes");
+        }
+    }
+
+    /**
+     * Un varint de 10 bytes con el bit alto da una longitud negativa
+     */
+    private static void negativeLengths() {
+        // Nombre, contenido, lista, datos, entradas y lote (bits de la mascara)
+        int[] fields = {1, 1 << 1, 1 << 2, 1 << 3, 1 << 7, 1 << 8};
+        for (int field : fields) {
+            expectCorrupted(message(field, MINUS_ONE), "longitud negativa con mascara " + field);
+        }
+
+        // Lote con un mensaje: la longitud del mensaje es la negativa
+        byte[] count = {1};
+        byte[] batch = message(1 << 8, count);
+        byte[] withItem = Arrays.copyOf(batch, batch.length + MINUS_ONE.length);
+        System.arraycopy(MINUS_ONE, 0, withItem, batch.length, MINUS_ONE.length);
+        expectCorrupted(withItem, "mensaje de un lote con longitud negativa");
+
+        // El caso reportado: cuerpo de 13 bytes con una lista de cantidad -1
+        expectCorrupted(new byte[] {1, 0, 4, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+            (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01}, "lista de cantidad -1");
+    }
+
+    /**
+     * Arma un mensaje LIST con la mascara indicada seguida de los bytes dados
+     */
+    private static byte[] message(int mask, byte[] rest) {
+        BinaryCodec.Writer w = new BinaryCodec.Writer(16);
+        w.writeByte(1);  // Comando LIST
+        w.writeByte(0);  // Sin respuesta
+        w.writeVarLong(mask);
+        byte[] head = w.toByteArray();
+        byte[] message = Arrays.copyOf(head, head.length + rest.length);
+        System.arraycopy(rest, 0, message, head.length, rest.length);
+        return message;
+    }
+
+    /**
+     * Mensaje con todos los campos
+     */
+    private static FileProtocol sample() {
+        FileProtocol message = new FileProtocol(FileProtocol.CMD_WRITE_FILE);
+        message.setFileName("docs/notas.txt");
+        message.setContent("hola");
+        message.setFileList(new String[] {"a", "b"});
+        message.setData(new byte[] {1, 2, 3});
+        message.setOffset(7);
+        message.setLength(300);
+        message.setEntries(new FileEntry[] {new FileEntry("docs", -1, 1000, true)});
+        message.setItems(new FileProtocol[] {new FileProtocol(FileProtocol.CMD_READ_FILE)});
+        message.setRequestId(42);
+        message.setVersion(9);
+        return message;
+    }
+
+    private static void expectCorrupted(byte[] message, String what) {
+        try {
+            BinaryCodec.decode(message, 0, message.length);
+            fail(what + ": se acepto");
+        } catch (StreamCorruptedException e) {
+            // Esperado
+        } catch (IOException | RuntimeException e) {
+            fail(what + ": " + e);
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            fail(what);
+        }
+    }
+
+    private static void fail(String what) {
+        failures++;
+        System.out.println("FALLA: " + what);
+    }
+}
@@ -0,0 +1,149 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la prueba de los deltas
+// ============================================================================
+
+// Importa las excepciones que debe lanzar apply()
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+
+// Importa canales y archivos temporales
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Importa utilidades para armar datos y cortar una prueba colgada
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Clase DeltaSyncTest - Prueba que DeltaSync.apply() arme el archivo
+ * nuevo y rechace rangos o bloques fuera del archivo base
+ *
+ * Un MODIFYDELTA se aplica con el lock exclusivo del archivo tomado: un
+ * rango mal formado debe terminar enseguida en StreamCorruptedException,
+ * nunca en un bucle que deje el archivo bloqueado.
+ *
+ *   javac -d bin src/*.java test/*.java
+ *   java -cp bin DeltaSyncTest
+ */
+public class DeltaSyncTest {
+
+    // Tamanio de bloque de la prueba
+    private static final int BLOCK = 512;
+
+    // Cantidad de verificaciones fallidas
+    private static int failures;
+
+    // Hilo donde corre cada apply() (para cortarlo si no termina)
+    private static final ExecutorService runner = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "prueba-delta");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public static void main(String[] args) throws Exception {
+        Path base = Files.createTempFile("base", ".bin");
+        byte[] original = new byte[100 * BLOCK + 100];
+        new Random(1).nextBytes(original);
+        Files.write(base, original);
+
+        // Firma y delta de una version con un bloque cambiado
+        byte[] edited = original.clone();
+        edited[5 * BLOCK + 3] ^= 1;
+        byte[] signature;
+        try (FileChannel channel = FileChannel.open(base, StandardOpenOption.READ)) {
+            signature = DeltaSync.signature(channel, BLOCK);
+        }
+        byte[] delta = DeltaSync.delta(edited, signature, BLOCK, original.length);
+        check(Arrays.equals(edited, apply(base, delta)), "delta por bloques");
+
+        // Rangos y literales (como los arma PagedDocument)
+        byte[] ranges = new DeltaSync.Builder().copy(0, 10).literal(new byte[] {7}, 0, 1)
+            .copy(11, original.length - 11).toByteArray();
+        byte[] expected = original.clone();
+        expected[10] = 7;
+        check(Arrays.equals(expected, apply(base, ranges)), "delta por rangos");
+
+        // Rangos que desbordan o salen del archivo
+        expectCorrupted(base, new DeltaSync.Builder().copy(Long.MAX_VALUE - 10, 100).toByteArray(),
+            "rango que desborda");
+        expectCorrupted(base, new DeltaSync.Builder().copy(original.length - 5, 10).toByteArray(),
+            "rango despues del final");
+        expectCorrupted(base, instruction(2, original.length + 1, 0), "rango que empieza despues del final");
+
+        // Bloques (OP_COPY = 0) con numeros enormes
+        expectCorrupted(base, instruction(0, Long.MAX_VALUE / 2, 1), "bloque que desborda");
+        expectCorrupted(base, instruction(0, 1000, 1), "bloque fuera del archivo");
+        check(apply(base, instruction(0, 0, Long.MAX_VALUE)).length == original.length,
+            "cantidad de bloques enorme se recorta al archivo");
+
+        if (failures > 0) {
+            System.out.println(failures + " verificaciones fallidas");
+            System.exit(1);
+        }
+        System.out.println("DeltaSyncTest: todo OK");
+    }
+
+    /**
+     * Delta con una sola instruccion (0 = bloques, 2 = rango) sin validar
+     */
+    private static byte[] instruction(int op, long start, long count) {
+        BinaryCodec.Writer w = new BinaryCodec.Writer(32);
+        w.writeByte(op);
+        w.writeVarLong(start);
+        w.writeVarLong(count);
+        return w.toByteArray();
+    }
+
+    /**
+     * Aplica un delta sobre la base (falla si tarda mas de 5 s)
+     */
+    private static byte[] apply(Path base, byte[] delta) throws Exception {
+        Path result = Files.createTempFile("resultado", ".bin");
+        Future<?> task = runner.submit(() -> {
+            try (FileChannel in = FileChannel.open(base, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(result, StandardOpenOption.WRITE)) {
+                DeltaSync.apply(in, delta, BLOCK, out);
+            }
+            return null;
+        });
+        try {
+            task.get(5, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            throw new IOException("apply() no termino en 5 s");
+        }
+        return Files.readAllBytes(result);
+    }
+
+    private static void expectCorrupted(Path base, byte[] delta, String what) {
+        try {
+            apply(base, delta);
+            fail(what + ": se acepto");
+        } catch (ExecutionException e) {
+            if (!(e.getCause() instanceof StreamCorruptedException)) {
+                fail(what + ": " + e.getCause());
+            }
+        } catch (Exception e) {
+            fail(what + ": " + e);
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            fail(what);
+        }
+    }
+
+    private static void fail(String what) {
+        failures++;
+        System.out.println("FALLA: " + what);
+    }
+}
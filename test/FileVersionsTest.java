@@ -0,0 +1,109 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la prueba de versiones
+// ============================================================================
+
+// Importa clases de archivos (directorio temporal y cambio desde fuera)
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Clase FileVersionsTest - Prueba las versiones que usa MODIFY para
+ * detectar conflictos, incluso despues de reiniciar el servidor
+ *
+ * Trabaja con un RequestProcessor sobre un directorio temporal, sin red:
+ *   javac -d bin src/*.java test/*.java
+ *   java -cp bin FileVersionsTest
+ */
+public class FileVersionsTest {
+
+    // Cantidad de verificaciones fallidas
+    private static int failures;
+
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("versiones").toFile();
+
+        RequestProcessor processor = new RequestProcessor(directory.getPath(), message -> { });
+        long created = send(processor, FileProtocol.CMD_CREATE_FILE, "a.txt", "aaaa", 0).getVersion();
+        check(created != 0, "CREATE devuelve una version");
+        check(send(processor, FileProtocol.CMD_READ_FILE, "a.txt", null, 0).getVersion() == created,
+            "READ devuelve la misma version que CREATE");
+
+        // Escrituras seguidas del mismo tamanio (caen en el mismo milisegundo)
+        long version = created;
+        for (int i = 0; i < 20; i++) {
+            FileProtocol response = send(processor, FileProtocol.CMD_MODIFY_FILE, "a.txt", "bbb" + (i % 10), version);
+            check(FileProtocol.RESP_OK.equals(response.getResponse()), "MODIFY " + i + " con la version actual");
+            check(response.getVersion() > version, "MODIFY " + i + " da una version mayor");
+            version = response.getVersion();
+        }
+        check(FileProtocol.RESP_CONFLICT.equals(
+            send(processor, FileProtocol.CMD_MODIFY_FILE, "a.txt", "cccc", created).getResponse()),
+            "MODIFY con una version vieja es CONFLICT");
+        processor.close();
+
+        // Reinicio: el archivo no cambio, la version del cliente sigue valiendo
+        processor = new RequestProcessor(directory.getPath(), message -> { });
+        check(send(processor, FileProtocol.CMD_READ_FILE, "a.txt", null, 0).getVersion() == version,
+            "la version se conserva al reiniciar");
+        FileProtocol response = send(processor, FileProtocol.CMD_MODIFY_FILE, "a.txt", "dddd", version);
+        check(FileProtocol.RESP_OK.equals(response.getResponse()), "MODIFY despues de reiniciar no es CONFLICT");
+
+        // Un cambio desde fuera del servidor da otra version
+        try (FileWriter out = new FileWriter(new File(directory, "a.txt"), true)) {
+            out.write("x");
+        }
+        check(FileProtocol.RESP_CONFLICT.equals(
+            send(processor, FileProtocol.CMD_MODIFY_FILE, "a.txt", "eeee", response.getVersion()).getResponse()),
+            "un cambio desde fuera es CONFLICT");
+
+        // Cambios desde fuera que la fecha y el tamanio solos no distinguen
+        File file = new File(directory, "a.txt");
+        long before = send(processor, FileProtocol.CMD_READ_FILE, "a.txt", null, 0).getVersion();
+        long modified = file.lastModified();
+        Files.write(file.toPath(), new byte[(int) file.length() + 1_000_000]);
+        file.setLastModified(modified);
+        long bigger = send(processor, FileProtocol.CMD_READ_FILE, "a.txt", null, 0).getVersion();
+        check(bigger > before, "un tamanio 1000000 bytes mayor con la misma fecha da otra version");
+        Files.write(file.toPath(), "ffff".getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(1_000_000_000L);
+        long rolledBack = send(processor, FileProtocol.CMD_READ_FILE, "a.txt", null, 0).getVersion();
+        check(rolledBack > bigger, "una fecha vuelta atras no repite una version vieja");
+
+        // Volver al contenido anterior (misma fecha y tamanio) da otra version
+        long first = send(processor, FileProtocol.CMD_MODIFY_FILE, "a.txt", "gggg", rolledBack).getVersion();
+        long second = send(processor, FileProtocol.CMD_MODIFY_FILE, "a.txt", "hhhh", first).getVersion();
+        long third = send(processor, FileProtocol.CMD_MODIFY_FILE, "a.txt", "gggg", second).getVersion();
+        check(first > rolledBack && second > first && third > second,
+            "volver al contenido anterior da una version nueva");
+
+        // Sin donde guardar la version, la escritura falla
+        check(new File(directory, FileVersions.VERSION_DIR + "/c.txt").mkdirs(), "carpeta que tapa el registro");
+        check(FileProtocol.RESP_ERROR.equals(
+            send(processor, FileProtocol.CMD_CREATE_FILE, "c.txt", "cccc", 0).getResponse()),
+            "sin registro de version la escritura es ERROR");
+        processor.close();
+
+        if (failures > 0) {
+            System.out.println(failures + " verificaciones fallidas");
+            System.exit(1);
+        }
+        System.out.println("FileVersionsTest: todo OK");
+    }
+
+    private static FileProtocol send(RequestProcessor processor, String command, String fileName,
+                                     String content, long version) {
+        FileProtocol request = new FileProtocol(command, fileName, content);
+        request.setVersion(version);
+        return processor.processRequest(request, "prueba");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            failures++;
+            System.out.println("FALLA: " + what);
+        }
+    }
+}
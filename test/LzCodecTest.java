@@ -0,0 +1,137 @@
+// ============================================================================
+// IMPORTACIONES - Bibliotecas necesarias para la prueba del compresor LZ
+// ============================================================================
+
+// Importa la excepcion que debe lanzar el descompresor
+import java.io.StreamCorruptedException;
+
+// Importa utilidades para armar datos de prueba
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Clase LzCodecTest - Prueba que LzCodec descomprima lo que comprime y
+ * rechace bloques mal formados solo con StreamCorruptedException
+ *
+ * La descompresion corre en el hilo del motor NIO: cualquier otra
+ * excepcion (ej: un largo que desborda el int) cerraria la conexion por
+ * el camino de los errores inesperados.
+ *
+ *   javac -d bin src/*.java test/*.java
+ *   java -cp bin LzCodecTest
+ */
+public class LzCodecTest {
+
+    // Cantidad de verificaciones fallidas
+    private static int failures;
+
+    public static void main(String[] args) {
+        roundTrip();
+        overflowingLengths();
+        randomGarbage();
+
+        if (failures > 0) {
+            System.out.println(failures + " verificaciones fallidas");
+            System.exit(1);
+        }
+        System.out.println("LzCodecTest: todo OK");
+    }
+
+    /**
+     * Datos repetitivos y al azar vuelven iguales
+     */
+    private static void roundTrip() {
+        Random random = new Random(1);
+        byte[] text = new byte[200_000];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) "abcabcabd xyz\n".charAt((i * 7 + i / 100) % 14);
+        }
+        byte[] noise = new byte[50_000];
+        random.nextBytes(noise);
+        for (byte[] data : new byte[][] {text, noise, new byte[0], new byte[100_000]}) {
+            byte[] packed = LzCodec.compress(data, 0, data.length);
+            try {
+                check(Arrays.equals(data, LzCodec.decompress(packed, 0, packed.length, data.length)),
+                    "ida y vuelta de " + data.length + " bytes");
+            } catch (StreamCorruptedException e) {
+                fail("ida y vuelta de " + data.length + " bytes: " + e);
+            }
+        }
+    }
+
+    /**
+     * Largos extendidos con millones de bytes 255 (la suma desbordaria el int)
+     */
+    private static void overflowingLengths() {
+        int extra = Integer.MAX_VALUE / 255 + 2;
+
+        // Literales: token 0xF0, bytes 255 y un 0 que cierra el largo
+        byte[] literals = new byte[2 + extra];
+        literals[0] = (byte) 0xF0;
+        Arrays.fill(literals, 1, literals.length - 1, (byte) 0xFF);
+        expectCorrupted(literals, 1000, "largo de literales desbordado");
+
+        // Coincidencia: un literal, distancia 1, bytes 255 y un 0
+        byte[] match = new byte[5 + extra];
+        match[0] = 0x1F;
+        match[1] = 'a';
+        match[2] = 1;
+        match[3] = 0;
+        Arrays.fill(match, 4, match.length - 1, (byte) 0xFF);
+        expectCorrupted(match, 1000, "largo de coincidencia desbordado");
+
+        // Largo original negativo
+        expectCorrupted(new byte[] {0x10, 'a'}, -1, "largo original negativo");
+    }
+
+    /**
+     * Bytes al azar (y bloques validos con bytes cambiados)
+     */
+    private static void randomGarbage() {
+        Random random = new Random(2);
+        byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 37);
+        }
+        byte[] packed = LzCodec.compress(data, 0, data.length);
+        for (int round = 0; round < 5000; round++) {
+            byte[] block;
+            if (round % 2 == 0) {
+                block = new byte[1 + random.nextInt(64)];
+                random.nextBytes(block);
+            } else {
+                block = packed.clone();
+                block[random.nextInt(block.length)] = (byte) random.nextInt(256);
+            }
+            try {
+                LzCodec.decompress(block, 0, block.length, random.nextInt(8192));
+            } catch (StreamCorruptedException e) {
+                // Esperado casi siempre
+            } catch (RuntimeException e) {
+                fail("bloque al azar " + round + ": " + e);
+            }
+        }
+    }
+
+    private static void expectCorrupted(byte[] block, int originalLength, String what) {
+        try {
+            LzCodec.decompress(block, 0, block.length, originalLength);
+            fail(what + ": se acepto");
+        } catch (StreamCorruptedException e) {
+            // Esperado
+        } catch (RuntimeException e) {
+            fail(what + ": " + e);
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        if (!ok) {
+            fail(what);
+        }
+    }
+
+    private static void fail(String what) {
+        failures++;
+        System.out.println("FALLA: " + what);
+    }
+}